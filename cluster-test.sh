@@ -0,0 +1,199 @@
+#! /usr/bin/env bash
+#*******************************************************************************
+# Copyright (c) 2019 Eclipse Foundation and others.
+# This program and the accompanying materials are made available
+# under the terms of the Eclipse Public License 2.0
+# which is available at http://www.eclipse.org/legal/epl-v20.html
+# SPDX-License-Identifier: EPL-2.0
+#*******************************************************************************
+
+# Runs a cluster of cerberus instances on this host, sharing a cluster
+# directory, against a local mock of the statuspage.io API. Checks that every
+# component is monitored by exactly one instance, then kills one instance and
+# checks that its components are taken over by the others.
+#
+# Usage:
+#   ./cluster-test.sh target/cerberus-<version>-<os>-<arch>
+#   ./cluster-test.sh java -jar target/cerberus-<version>-<classifier>.jar
+#
+# Requires python3 (mock status page) and curl.
+
+# Bash strict-mode
+set -o errexit
+set -o nounset
+set -o pipefail
+
+CLUSTER_TEST_TIMEOUT="${CLUSTER_TEST_TIMEOUT:-30}"
+NODES="${NODES:-3}"
+COMPONENTS="${COMPONENTS:-30}"
+MOCK_PORT="${MOCK_PORT:-18090}"
+METRICS_BASE_PORT="${METRICS_BASE_PORT:-18100}"
+
+if [[ $# -eq 0 ]]; then
+  >&2 echo "Usage: ${0} <cerberus command>"
+  exit 1
+fi
+
+WORK_DIR="$(mktemp -d)"
+MOCK_PID=""
+NODE_PIDS=()
+
+cleanup() {
+  for pid in "${NODE_PIDS[@]}"; do
+    kill "${pid}" 2>/dev/null || true
+  done
+  [[ -n "${MOCK_PID}" ]] && kill "${MOCK_PID}" 2>/dev/null || true
+  rm -rf "${WORK_DIR}"
+}
+trap cleanup EXIT
+
+cat > "${WORK_DIR}/mock.py" <<MOCK
+import json
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+components = {}
+for i in range(${COMPONENTS}):
+  components["c%d" % i] = {
+    "id": "c%d" % i, "page_id": "page", "group_id": None,
+    "created_at": "2020-01-01T00:00:00Z", "updated_at": "2020-01-01T00:00:00Z",
+    "group": False, "name": "component-%d" % i, "description": None, "position": i,
+    "status": "major_outage", "showcase": False, "only_show_if_degraded": False,
+    "automation_email": None,
+  }
+
+class Handler(BaseHTTPRequestHandler):
+  def reply(self, code, body):
+    payload = json.dumps(body).encode() if body is not None else b""
+    self.send_response(code)
+    self.send_header("Content-Type", "application/json")
+    self.send_header("Content-Length", str(len(payload)))
+    self.end_headers()
+    self.wfile.write(payload)
+
+  def do_HEAD(self):
+    self.reply(200, None)
+
+  def do_GET(self):
+    if self.path == "/health":
+      self.reply(200, {"status": "ok"})
+    elif self.path == "/v1/pages/page/components":
+      self.reply(200, list(components.values()))
+    else:
+      self.reply(404, {"error": "not found"})
+
+  def do_PATCH(self):
+    body = json.loads(self.rfile.read(int(self.headers["Content-Length"])))
+    component = components.get(self.path.rsplit("/", 1)[-1])
+    if component is None:
+      self.reply(404, {"error": "not found"})
+      return
+    component["status"] = body["component"]["status"]
+    self.reply(200, component)
+
+  def log_message(self, format, *args):
+    pass
+
+ThreadingHTTPServer(("127.0.0.1", ${MOCK_PORT}), Handler).serve_forever()
+MOCK
+
+cat > "${WORK_DIR}/statuspage.io.json" <<STATUSPAGE
+{
+  "statuspage.io": [
+    {
+      "url": "http://127.0.0.1:${MOCK_PORT}/v1/",
+      "page_id": "page",
+      "token": "cluster-test",
+      "fetch_rate": "PT1M",
+      "update_window": "PT1S"
+    }
+  ]
+}
+STATUSPAGE
+
+{
+  echo '{ "monitors": { "http_status": ['
+  for (( i = 0; i < COMPONENTS; i++ )); do
+    [[ ${i} -gt 0 ]] && echo ','
+    echo "{ \"component_name\": \"component-${i}\", \"target\": \"http://127.0.0.1:${MOCK_PORT}/health\" }"
+  done
+  cat <<DEFAULTS
+  ] },
+  "default_configuration": {
+    "http_status": {
+      "method": "GET",
+      "status_code_min": 200,
+      "status_code_max": 399,
+      "monitoring_history": "PT1M",
+      "initial_delay": "PT0S",
+      "period": "PT1S",
+      "anomalies_detection": {
+        "degraded_performance_threshold": 1,
+        "partial_outage_threshold": 3,
+        "major_outage_threshold": 5,
+        "period": "PT1S",
+        "initial_delay": "PT1S"
+      }
+    }
+  }
+}
+DEFAULTS
+} > "${WORK_DIR}/monitors.json"
+
+python3 "${WORK_DIR}/mock.py" > "${WORK_DIR}/mock.log" 2>&1 &
+MOCK_PID=$!
+
+for (( n = 0; n < NODES; n++ )); do
+  "$@" -c "${WORK_DIR}/monitors.json" -s "${WORK_DIR}/statuspage.io.json" --prewarm-timeout PT0S \
+    --cluster-dir "${WORK_DIR}/cluster" --node-id "node-${n}" --heartbeat-period PT0.5S --node-timeout PT3S \
+    --metrics-port $(( METRICS_BASE_PORT + n )) > "${WORK_DIR}/node-${n}.log" 2>&1 &
+  NODE_PIDS+=($!)
+done
+
+# components monitored by a node, one per line
+owned() {
+  curl -fsS "http://127.0.0.1:$(( METRICS_BASE_PORT + ${1} ))/metrics" 2>/dev/null \
+    | grep '^cerberus_component_status{' | sed -E 's/.*component="([^"]*)".*/\1/' | sort -u || true
+}
+
+# waits until the nodes given as arguments monitor every component exactly once
+wait_for_partition() {
+  local deadline=$(( $(date +%s) + CLUSTER_TEST_TIMEOUT ))
+  local all total distinct n
+  while true; do
+    all=""
+    for n in "$@"; do
+      all+="$(owned "${n}")"$'\n'
+    done
+    total="$(grep -c . <<< "${all}" || true)"
+    distinct="$(grep . <<< "${all}" | sort -u | wc -l || true)"
+    if [[ "${total}" -eq "${COMPONENTS}" && "${distinct}" -eq "${COMPONENTS}" ]]; then
+      for n in "$@"; do
+        echo "  node-${n}: $(owned "${n}" | wc -l) components"
+      done
+      return 0
+    fi
+    if [[ $(date +%s) -gt ${deadline} ]]; then
+      >&2 echo "Cluster test FAILED: ${total} monitors for ${distinct}/${COMPONENTS} components after ${CLUSTER_TEST_TIMEOUT}s"
+      for n in "$@"; do
+        >&2 echo "--- node-${n}"
+        >&2 tail -n 20 "${WORK_DIR}/node-${n}.log"
+      done
+      exit 1
+    fi
+    sleep 0.5
+  done
+}
+
+LIVE=()
+for (( n = 0; n < NODES; n++ )); do
+  LIVE+=("${n}")
+done
+
+echo "Waiting for ${NODES} nodes to share ${COMPONENTS} components..."
+wait_for_partition "${LIVE[@]}"
+
+echo "Killing node-0..."
+kill -9 "${NODE_PIDS[0]}"
+wait_for_partition "${LIVE[@]:1}"
+
+echo "Cluster test PASSED: $*"
@@ -0,0 +1,161 @@
+#! /usr/bin/env bash
+#*******************************************************************************
+# Copyright (c) 2019 Eclipse Foundation and others.
+# This program and the accompanying materials are made available
+# under the terms of the Eclipse Public License 2.0
+# which is available at http://www.eclipse.org/legal/epl-v20.html
+# SPDX-License-Identifier: EPL-2.0
+#*******************************************************************************
+
+# Runs cerberus against a local mock of the statuspage.io API, until the status
+# of the monitored component has been updated on the mock, then prints startup
+# timings and memory usage.
+#
+# Usage:
+#   ./smoke-test.sh target/cerberus-<version>-<os>-<arch>
+#   ./smoke-test.sh java -jar target/cerberus-<version>-<classifier>.jar
+#
+# Requires python3 (mock status page) and curl.
+
+# Bash strict-mode
+set -o errexit
+set -o nounset
+set -o pipefail
+
+SMOKE_TEST_TIMEOUT="${SMOKE_TEST_TIMEOUT:-30}"
+MOCK_PORT="${MOCK_PORT:-18080}"
+METRICS_PORT="${METRICS_PORT:-18081}"
+
+if [[ $# -eq 0 ]]; then
+  >&2 echo "Usage: ${0} <cerberus command>"
+  exit 1
+fi
+
+WORK_DIR="$(mktemp -d)"
+MOCK_PID=""
+CERBERUS_PID=""
+
+cleanup() {
+  [[ -n "${CERBERUS_PID}" ]] && kill "${CERBERUS_PID}" 2>/dev/null || true
+  [[ -n "${MOCK_PID}" ]] && kill "${MOCK_PID}" 2>/dev/null || true
+  rm -rf "${WORK_DIR}"
+}
+trap cleanup EXIT
+
+cat > "${WORK_DIR}/mock.py" <<EOF
+import json, sys
+from http.server import BaseHTTPRequestHandler, HTTPServer
+
+component = {
+  "id": "smoke", "page_id": "page", "group_id": None,
+  "created_at": "2020-01-01T00:00:00Z", "updated_at": "2020-01-01T00:00:00Z",
+  "group": False, "name": "smoke", "description": None, "position": 1,
+  "status": "major_outage", "showcase": False, "only_show_if_degraded": False,
+  "automation_email": None,
+}
+
+class Handler(BaseHTTPRequestHandler):
+  def reply(self, code, body):
+    payload = json.dumps(body).encode() if body is not None else b""
+    self.send_response(code)
+    self.send_header("Content-Type", "application/json")
+    self.send_header("Content-Length", str(len(payload)))
+    self.end_headers()
+    self.wfile.write(payload)
+
+  def do_HEAD(self):
+    self.reply(200, None)
+
+  def do_GET(self):
+    if self.path == "/health":
+      self.reply(200, {"status": "ok"})
+    elif self.path == "/v1/pages/page/components":
+      self.reply(200, [component])
+    else:
+      self.reply(404, {"error": "not found"})
+
+  def do_PATCH(self):
+    body = json.loads(self.rfile.read(int(self.headers["Content-Length"])))
+    component["status"] = body["component"]["status"]
+    component["updated_at"] = "2020-01-01T00:00:01Z"
+    print("PATCH " + component["status"], flush=True)
+    self.reply(200, component)
+
+  def log_message(self, format, *args):
+    pass
+
+HTTPServer(("127.0.0.1", ${MOCK_PORT}), Handler).serve_forever()
+EOF
+
+cat > "${WORK_DIR}/statuspage.io.json" <<EOF
+{
+  "statuspage.io": [
+    {
+      "url": "http://127.0.0.1:${MOCK_PORT}/v1/",
+      "page_id": "page",
+      "token": "smoke-test",
+      "fetch_rate": "PT1M",
+      "update_window": "PT1S"
+    }
+  ]
+}
+EOF
+
+cat > "${WORK_DIR}/monitors.json" <<EOF
+{
+  "monitors": {
+    "http_status": [
+      {
+        "component_name": "smoke",
+        "target": "http://127.0.0.1:${MOCK_PORT}/health"
+      }
+    ]
+  },
+  "default_configuration": {
+    "http_status": {
+      "method": "GET",
+      "status_code_min": 200,
+      "status_code_max": 399,
+      "monitoring_history": "PT1M",
+      "initial_delay": "PT0S",
+      "period": "PT1S",
+      "anomalies_detection": {
+        "degraded_performance_threshold": 1,
+        "partial_outage_threshold": 3,
+        "major_outage_threshold": 5,
+        "period": "PT1S",
+        "initial_delay": "PT1S"
+      }
+    }
+  }
+}
+EOF
+
+python3 "${WORK_DIR}/mock.py" > "${WORK_DIR}/mock.log" &
+MOCK_PID=$!
+
+START="$(date +%s%N)"
+"$@" -c "${WORK_DIR}/monitors.json" -s "${WORK_DIR}/statuspage.io.json" --metrics-port "${METRICS_PORT}" --prewarm-timeout PT0S > "${WORK_DIR}/cerberus.log" 2>&1 &
+CERBERUS_PID=$!
+
+DEADLINE=$(( $(date +%s) + SMOKE_TEST_TIMEOUT ))
+until grep -q "PATCH operational" "${WORK_DIR}/mock.log"; do
+  if [[ $(date +%s) -gt ${DEADLINE} ]] || ! kill -0 "${CERBERUS_PID}" 2>/dev/null; then
+    >&2 echo "Smoke test FAILED: the component has not been updated within ${SMOKE_TEST_TIMEOUT}s"
+    >&2 cat "${WORK_DIR}/cerberus.log"
+    exit 1
+  fi
+  sleep 0.05
+done
+UPDATED_MS=$(( ($(date +%s%N) - START) / 1000000 ))
+
+metric() {
+  curl -fsS "http://127.0.0.1:${METRICS_PORT}/metrics" | awk -v name="${1}" '$1 ~ "^"name"[{ ]" || $1 == name { print $2; exit }'
+}
+
+echo "Smoke test PASSED: $*"
+echo "  status page ready:        $(metric cerberus_startup_page_ready_seconds)s"
+echo "  first status:             $(metric cerberus_startup_first_status_seconds)s"
+echo "  component updated after:  ${UPDATED_MS}ms (including process startup)"
+echo "  peak RSS:                 $(awk '/VmHWM/ { print $2 " " $3 }' "/proc/${CERBERUS_PID}/status")"
+echo "  RSS:                      $(awk '/VmRSS/ { print $2 " " $3 }' "/proc/${CERBERUS_PID}/status")"
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.moshi.JsonAdapter;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of large monitors configurations, and merging of each monitor
+ * configuration with the default one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CerberusConfigurationBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  int monitorsCount;
+
+  JsonAdapter<CerberusConfiguration> adapter;
+  String json;
+  CerberusConfiguration configuration;
+
+  @Setup
+  public void setup() throws IOException {
+    adapter = Cerberus.moshi().adapter(CerberusConfiguration.class);
+    json = configurationJson(monitorsCount);
+    configuration = adapter.fromJson(json);
+  }
+
+  @Benchmark
+  public CerberusConfiguration parse() throws IOException {
+    return adapter.fromJson(json);
+  }
+
+  @Benchmark
+  public List<CerberusConfiguration.Monitor.HttpStatus> withDefault() {
+    return configuration.monitors().httpStatus().stream()
+      .map(m -> m.withDefault(configuration.defaultConfiguration()))
+      .collect(ImmutableList.toImmutableList());
+  }
+
+  static String configurationJson(int monitorsCount) {
+    StringBuilder sb = new StringBuilder("{\"monitors\":{\"http_status\":[");
+    for (int i = 0; i < monitorsCount; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"component_name\":\"component-").append(i).append("\",")
+        .append("\"target\":\"https://www.example.org/").append(i).append('"');
+      if (i % 2 == 0) {
+        // half of the monitors override part of the defaults
+        sb.append(",\"period\":\"PT5S\",\"anomalies_detection\":{\"major_outage_threshold\":20}");
+      }
+      sb.append('}');
+    }
+    sb.append("]},")
+      .append("\"default_configuration\":{\"http_status\":{")
+      .append("\"method\":\"GET\",\"status_code_min\":200,\"status_code_max\":399,")
+      .append("\"connectTimeout\":\"PT10S\",\"readTimeout\":\"PT10S\",")
+      .append("\"monitoring_history\":\"PT10M\",\"initial_delay\":\"PT0S\",\"period\":\"PT15S\",")
+      .append("\"anomalies_detection\":{\"degraded_performance_threshold\":1,\"partial_outage_threshold\":3,")
+      .append("\"major_outage_threshold\":5,\"period\":\"PT1M\",\"initial_delay\":\"PT1M\"}}}}");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+import com.google.common.collect.EvictingQueue;
+
+import org.eclipsefoundation.cerberus.monitors.http.status.Report;
+
+/**
+ * Baseline: the datapoints storage of HttpStatusMonitor before
+ * {@link MonitorHistory}, i.e. an {@link EvictingQueue} of {@link Report}
+ * protected by a {@link ReentrantReadWriteLock} and rescanned on each count.
+ */
+class LockedHistory {
+
+  private final EvictingQueue<Report> datapoints;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final IntPredicate isAnomaly;
+
+  LockedHistory(int capacity, IntPredicate isAnomaly) {
+    this.datapoints = EvictingQueue.create(capacity);
+    this.isAnomaly = isAnomaly;
+  }
+
+  void add(OffsetDateTime time, int code, Optional<Exception> exception) {
+    lock.writeLock().lock();
+    try {
+      datapoints.add(Report.create(time, code, exception));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  int anomaliesCount() {
+    lock.readLock().lock();
+    try {
+      return (int)datapoints.stream()
+        .map(Report::statusCode)
+        .filter(isAnomaly::test)
+        .count();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single-threaded cost of recording a datapoint and of counting anomalies, for
+ * several history sizes, compared to the former lock-based
+ * {@code EvictingQueue<Report>} storage ({@link LockedHistory}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MonitorHistoryBenchmark {
+
+  @Param({"60", "600", "6000", "60000"})
+  int historySize;
+
+  MonitorHistory history;
+  LockedHistory lockedHistory;
+  int i;
+
+  @Setup
+  public void setup() {
+    history = new MonitorHistory(historySize, code -> code >= 500);
+    lockedHistory = new LockedHistory(historySize, code -> code >= 500);
+    for (int j = 0; j < historySize; j++) {
+      history.add(MonitorHistory.nowEpochNanos(), statusCode(j));
+      lockedHistory.add(OffsetDateTime.now(), statusCode(j), Optional.empty());
+    }
+  }
+
+  static int statusCode(int i) {
+    return i % 10 == 0 ? 503 : 200;
+  }
+
+  @Benchmark
+  public void add() {
+    history.add(MonitorHistory.nowEpochNanos(), statusCode(i++));
+  }
+
+  @Benchmark
+  public int anomaliesCount() {
+    return history.anomaliesCount();
+  }
+
+  @Benchmark
+  public void lockedAdd() {
+    lockedHistory.add(OffsetDateTime.now(), statusCode(i++), Optional.empty());
+  }
+
+  @Benchmark
+  public int lockedAnomaliesCount() {
+    return lockedHistory.anomaliesCount();
+  }
+}
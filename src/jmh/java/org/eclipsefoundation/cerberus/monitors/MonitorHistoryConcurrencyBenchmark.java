@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Probe (writer) and anomaly detection (reader) working concurrently on the
+ * same monitors, {@link MonitorHistory} vs. the former lock-based storage.
+ * There is one writer/reader pair per core, each pair owning
+ * {@code monitorsPerCore} monitors that it visits in turn.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Group)
+public class MonitorHistoryConcurrencyBenchmark {
+
+  private static final int HISTORY_SIZE = 600;
+
+  @Param({"1", "8", "64"})
+  int monitorsPerCore;
+
+  MonitorHistory[] histories;
+  LockedHistory[] lockedHistories;
+
+  @Setup
+  public void setup() {
+    histories = new MonitorHistory[monitorsPerCore];
+    lockedHistories = new LockedHistory[monitorsPerCore];
+    for (int i = 0; i < monitorsPerCore; i++) {
+      histories[i] = new MonitorHistory(HISTORY_SIZE, code -> code >= 500);
+      lockedHistories[i] = new LockedHistory(HISTORY_SIZE, code -> code >= 500);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+
+    int next(int bound) {
+      int ret = next;
+      next = (next + 1) % bound;
+      return ret;
+    }
+  }
+
+  @Benchmark
+  @Group("lockFree")
+  @GroupThreads(1)
+  public void lockFreeProbe(Cursor cursor) {
+    int i = cursor.next(monitorsPerCore);
+    histories[i].add(MonitorHistory.nowEpochNanos(), MonitorHistoryBenchmark.statusCode(i));
+  }
+
+  @Benchmark
+  @Group("lockFree")
+  @GroupThreads(1)
+  public int lockFreeDetect(Cursor cursor) {
+    return histories[cursor.next(monitorsPerCore)].anomaliesCount();
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(1)
+  public void lockedProbe(Cursor cursor) {
+    int i = cursor.next(monitorsPerCore);
+    lockedHistories[i].add(OffsetDateTime.now(), MonitorHistoryBenchmark.statusCode(i), Optional.empty());
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(1)
+  public int lockedDetect(Cursor cursor) {
+    return lockedHistories[cursor.next(monitorsPerCore)].anomaliesCount();
+  }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http.status;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.HttpStatus.AnomaliesDetection;
+import org.eclipsefoundation.cerberus.monitors.http.HttpClients;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Anomaly detection for several history sizes, and probe round-trips against a
+ * local {@link MockWebServer}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpStatusMonitorBenchmark {
+
+  static final Duration PERIOD = Duration.ofSeconds(5);
+
+  @Param({"60", "600", "6000"})
+  int historySize;
+
+  MockWebServer server;
+  HttpStatusMonitor monitor;
+
+  @Setup
+  public void setup() throws IOException {
+    server = startServer(0);
+    CerberusConfiguration.Monitor.HttpStatus configuration = configuration(server, "benchmark", historySize);
+    HttpClients clients = HttpClients.create(new OkHttpClient(), List.of(configuration.target()), configuration.period());
+    monitor = new HttpStatusMonitor.HttpStatusMonitorFactory(clients, HttpMonitor.ProbeMode.BLOCKING)
+      .createMonitor(configuration, List.of());
+    for (int i = 0; i < historySize; i++) {
+      monitor.run();
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void drainRequests() throws InterruptedException {
+    drainRequests(server);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Benchmark
+  public void detectAnomalies() {
+    monitor.detectAnomalies();
+  }
+
+  @Benchmark
+  public void blockingRoundTrip() {
+    monitor.run();
+  }
+
+  static MockWebServer startServer(long headersDelayMillis) throws IOException {
+    MockWebServer server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return new MockResponse().setResponseCode(200).setBody("OK").setHeadersDelay(headersDelayMillis, TimeUnit.MILLISECONDS);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  /**
+   * MockWebServer records every request, don't let them pile up in memory.
+   */
+  static void drainRequests(MockWebServer server) throws InterruptedException {
+    while (server.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+      // discard
+    }
+  }
+
+  static CerberusConfiguration.Monitor.HttpStatus configuration(MockWebServer server, String componentName, int historySize) {
+    return CerberusConfiguration.Monitor.HttpStatus.builder()
+      .componentName(componentName)
+      .target(server.url("/" + componentName).toString())
+      .method("GET")
+      .statusCodeMin(200)
+      .statusCodeMax(399)
+      .connectTimeout(Duration.ofSeconds(10))
+      .readTimeout(Duration.ofSeconds(10))
+      .monitoringHistory(PERIOD.multipliedBy(historySize))
+      .initialDelay(Duration.ZERO)
+      .period(PERIOD)
+      .anomaliesDetection(AnomaliesDetection.builder()
+        .degradedPerformanceThreshold(1)
+        .partialOutageThreshold(3)
+        .majorOutageThreshold(5)
+        .period(Duration.ofMinutes(1))
+        .initialDelay(Duration.ZERO)
+        .build())
+      .build();
+  }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http.status;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipsefoundation.cerberus.monitors.http.HttpClients;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Distribution of the time a scheduler thread is held by a monitor tick
+ * ({@link HttpStatusMonitor#run()}), against a slow target, with a few
+ * scheduler threads ticking many monitors. This is what makes ticks drift off
+ * their period (jitter) under load: in BLOCKING mode, each tick holds the
+ * thread for the whole round-trip, while in ASYNC mode it only holds it for the
+ * dispatch.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ProbeDispatchBenchmark {
+
+  @Param({"BLOCKING", "ASYNC"})
+  HttpMonitor.ProbeMode probeMode;
+
+  @Param({"0", "50"})
+  long serverDelayMillis;
+
+  @Param({"1000"})
+  int monitorsCount;
+
+  MockWebServer server;
+  HttpStatusMonitor[] monitors;
+
+  @Setup
+  public void setup() throws IOException {
+    server = HttpStatusMonitorBenchmark.startServer(serverDelayMillis);
+    Dispatcher dispatcher = new Dispatcher(new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>()));
+    dispatcher.setMaxRequests(monitorsCount);
+    dispatcher.setMaxRequestsPerHost(monitorsCount);
+    OkHttpClient client = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+    HttpClients clients = HttpClients.create(client, List.of(server.url("/").toString()), Duration.ofMinutes(1));
+    HttpStatusMonitor.HttpStatusMonitorFactory factory = new HttpStatusMonitor.HttpStatusMonitorFactory(clients, probeMode);
+    monitors = new HttpStatusMonitor[monitorsCount];
+    for (int i = 0; i < monitorsCount; i++) {
+      monitors[i] = factory.createMonitor(HttpStatusMonitorBenchmark.configuration(server, "component" + i, 60), List.of());
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  @TearDown(Level.Iteration)
+  public void drainRequests() throws InterruptedException {
+    HttpStatusMonitorBenchmark.drainRequests(server);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Benchmark
+  public void tick(Cursor cursor) {
+    monitors[Math.floorMod(cursor.next++, monitorsCount)].run();
+  }
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http.status;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.HttpStatus.AnomaliesDetection;
+import org.eclipsefoundation.cerberus.monitors.ExecutorMonitorScheduler;
+import org.eclipsefoundation.cerberus.monitors.MonitorScheduler;
+import org.eclipsefoundation.cerberus.monitors.http.HttpClients;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Tick jitter of the scheduler with thousands of ASYNC probes in flight, on a
+ * handful of threads, as configured by Cerberus: {@value #SCHEDULER_THREADS}
+ * scheduler threads tick all monitors, and {@value #CLIENT_THREADS} threads
+ * run the completions of their probes. Each monitor probes every second a
+ * target answering after {@code serverDelayMillis}, so that about 90% of the
+ * monitors have a probe in flight at any time.
+ *
+ * <p>
+ * Each sample is the delay between the moment a task is due on the scheduler
+ * (a zero-delay task, as any due monitor tick) and the moment it starts: the
+ * jitter every tick suffers from. {@code BLOCKING} probes are not measured:
+ * with a thread held for each probe in flight, a few threads can't sustain this
+ * load at all (see {@link ProbeDispatchBenchmark}).
+ *
+ * <p>
+ * The target is a single-threaded non-blocking server, as MockWebServer would
+ * need a thread per connection. Client and server sockets are in the same
+ * process: more than about 8000 monitors need a limit of open files (ulimit
+ * -n) above twice their number.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class ProbeJitterBenchmark {
+
+  static final int SCHEDULER_THREADS = 4;
+  static final int CLIENT_THREADS = 4;
+  static final Duration PERIOD = Duration.ofSeconds(1);
+
+  @Param({"1000", "5000"})
+  int monitorsCount;
+
+  @Param({"900"})
+  long serverDelayMillis;
+
+  SlowServer server;
+  ScheduledExecutorService scheduler;
+  ExecutorService clientExecutor;
+  MonitorScheduler monitorScheduler;
+  HttpClients clients;
+  List<HttpStatusMonitor> monitors;
+
+  @Setup
+  public void setup() throws IOException, InterruptedException {
+    server = SlowServer.start(serverDelayMillis);
+    scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS);
+    clientExecutor = Executors.newFixedThreadPool(CLIENT_THREADS);
+    monitorScheduler = new ExecutorMonitorScheduler(scheduler, MoreExecutors.directExecutor());
+    clients = HttpClients.create(new OkHttpClient(), clientExecutor, Integer.MAX_VALUE, Integer.MAX_VALUE,
+      List.of(server.url()), PERIOD);
+    HttpStatusMonitor.HttpStatusMonitorFactory factory = new HttpStatusMonitor.HttpStatusMonitorFactory(clients, HttpMonitor.ProbeMode.ASYNC);
+    monitors = new ArrayList<>(monitorsCount);
+    for (int i = 0; i < monitorsCount; i++) {
+      HttpStatusMonitor monitor = factory.createMonitor(configuration(server.url() + "component" + i, "component" + i), List.of());
+      monitor.schedule(monitorScheduler);
+      monitors.add(monitor);
+    }
+    // first ticks are spread over one period, let connections be opened
+    Thread.sleep(PERIOD.multipliedBy(3).toMillis());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    monitors.forEach(HttpStatusMonitor::cancel);
+    scheduler.shutdownNow();
+    clientExecutor.shutdownNow();
+    server.close();
+  }
+
+  @Benchmark
+  public void tickJitter() throws InterruptedException, ExecutionException {
+    CompletableFuture<Void> started = new CompletableFuture<>();
+    monitorScheduler.schedule(() -> started.complete(null), Duration.ZERO);
+    started.get();
+  }
+
+  static CerberusConfiguration.Monitor.HttpStatus configuration(String target, String componentName) {
+    return CerberusConfiguration.Monitor.HttpStatus.builder()
+      .componentName(componentName)
+      .target(target)
+      .method("GET")
+      .statusCodeMin(200)
+      .statusCodeMax(399)
+      .connectTimeout(Duration.ofSeconds(10))
+      .readTimeout(Duration.ofSeconds(10))
+      .monitoringHistory(PERIOD.multipliedBy(60))
+      .initialDelay(Duration.ZERO)
+      .period(PERIOD)
+      .anomaliesDetection(AnomaliesDetection.builder()
+        .degradedPerformanceThreshold(1)
+        .partialOutageThreshold(3)
+        .majorOutageThreshold(5)
+        .period(Duration.ofMinutes(1))
+        .initialDelay(Duration.ZERO)
+        .build())
+      .build();
+  }
+
+  /**
+   * HTTP/1.1 server answering each request with a {@code 200} after a delay, on
+   * a single thread, keeping connections alive.
+   */
+  static final class SlowServer implements Closeable {
+
+    private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_OF_HEADERS = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final long delayNanos;
+    private final Thread thread;
+
+    /**
+     * Due time of the responses, in the order they are due.
+     */
+    private final PriorityQueue<Pending> pending = new PriorityQueue<>((a, b) -> Long.compare(a.dueNanos, b.dueNanos));
+
+    private static final class Pending {
+      final long dueNanos;
+      final SocketChannel channel;
+
+      Pending(long dueNanos, SocketChannel channel) {
+        this.dueNanos = dueNanos;
+        this.channel = channel;
+      }
+    }
+
+    /**
+     * Progress of a connection through the end of the headers of its current
+     * request.
+     */
+    private static final class Connection {
+      int matched;
+    }
+
+    private SlowServer(long delayMillis) throws IOException {
+      this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      this.selector = Selector.open();
+      this.serverChannel = ServerSocketChannel.open();
+      serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      this.thread = new Thread(this::loop, "SlowServer");
+      thread.setDaemon(true);
+    }
+
+    static SlowServer start(long delayMillis) throws IOException {
+      SlowServer server = new SlowServer(delayMillis);
+      server.thread.start();
+      return server;
+    }
+
+    String url() throws IOException {
+      return "http://127.0.0.1:" + ((InetSocketAddress)serverChannel.getLocalAddress()).getPort() + "/";
+    }
+
+    private void loop() {
+      ByteBuffer buffer = ByteBuffer.allocate(4096);
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          Pending next = pending.peek();
+          long wait = next == null ? 0 : TimeUnit.NANOSECONDS.toMillis(next.dueNanos - System.nanoTime());
+          if (next == null) {
+            selector.select();
+          } else if (wait > 0) {
+            selector.select(wait);
+          } else {
+            selector.selectNow();
+          }
+          for (SelectionKey key : selector.selectedKeys()) {
+            if (key.isAcceptable()) {
+              SocketChannel channel;
+              while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+              }
+            } else if (key.isReadable()) {
+              read(key, buffer);
+            }
+          }
+          selector.selectedKeys().clear();
+          long now = System.nanoTime();
+          while (!pending.isEmpty() && pending.peek().dueNanos <= now) {
+            SocketChannel channel = pending.poll().channel;
+            if (channel.isOpen()) {
+              // small enough for the socket buffer of a connection with no other response in flight
+              channel.write(ByteBuffer.wrap(RESPONSE));
+            }
+          }
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        if (selector.isOpen()) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+
+    private void read(SelectionKey key, ByteBuffer buffer) throws IOException {
+      SocketChannel channel = (SocketChannel)key.channel();
+      Connection connection = (Connection)key.attachment();
+      buffer.clear();
+      int read;
+      try {
+        read = channel.read(buffer);
+      } catch (IOException e) {
+        read = -1;
+      }
+      if (read == -1) {
+        key.cancel();
+        channel.close();
+        return;
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        byte b = buffer.get();
+        connection.matched = b == END_OF_HEADERS[connection.matched] ? connection.matched + 1 : b == END_OF_HEADERS[0] ? 1 : 0;
+        if (connection.matched == END_OF_HEADERS.length) {
+          connection.matched = 0;
+          pending.add(new Pending(System.nanoTime() + delayNanos, channel));
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      thread.interrupt();
+      selector.close();
+      serverChannel.close();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage.statuspageio;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipsefoundation.cerberus.component.Component;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.eclipsefoundation.cerberus.statuspage.TokenBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Component lookups done on each anomaly detection tick, for pages of
+ * {@code componentsCount} components served by a local {@link MockWebServer}.
+ * The updated status is identical to the remote one, so no update request is
+ * sent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SPIOComponentUpdaterBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  int componentsCount;
+
+  MockWebServer server;
+  ScheduledExecutorService executor;
+  ComponentUpdater updater;
+  int next;
+
+  @Setup
+  public void setup() throws IOException {
+    server = new MockWebServer();
+    server.enqueue(new MockResponse().setResponseCode(200).setBody(componentsJson(componentsCount)));
+    server.start();
+    executor = Executors.newSingleThreadScheduledExecutor();
+    updater = SPIOComponentUpdater.create(executor, new OkHttpClient(), server.url("/").toString(), "page", "token", Duration.ofDays(1),
+      new TokenBucket(SPIOComponentUpdater.DEFAULT_RATE_LIMIT, SPIOComponentUpdater.DEFAULT_RATE_LIMIT_BURST));
+    updater.ready().join();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+    server.shutdown();
+  }
+
+  @Benchmark
+  public void updateStatusUnchanged() {
+    updater.updateStatus(componentName(Math.floorMod(next++, componentsCount)), Status.OPERATIONAL);
+  }
+
+  @Benchmark
+  public List<Component> components() {
+    return updater.components();
+  }
+
+  static String componentName(int i) {
+    return "component-" + i;
+  }
+
+  static String componentsJson(int count) {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"id\":\"id").append(i).append("\",")
+        .append("\"page_id\":\"page\",")
+        .append("\"group_id\":null,")
+        .append("\"created_at\":\"2020-01-01T00:00:00Z\",")
+        .append("\"updated_at\":\"2020-01-01T00:00:00Z\",")
+        .append("\"group\":false,")
+        .append("\"name\":\"").append(componentName(i)).append("\",")
+        .append("\"description\":\"Component ").append(i).append("\",")
+        .append("\"position\":").append(i).append(',')
+        .append("\"status\":\"operational\",")
+        .append("\"showcase\":true,")
+        .append("\"only_show_if_degraded\":false,")
+        .append("\"automation_email\":\"component-").append(i).append("@notifications.statuspage.io\"}");
+    }
+    return sb.append(']').toString();
+  }
+}
@@ -8,37 +8,67 @@
 package org.eclipsefoundation.cerberus;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.squareup.moshi.FromJson;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
-import com.squareup.moshi.ToJson;
 
+import org.eclipsefoundation.cerberus.archive.ProbeArchive;
+import org.eclipsefoundation.cerberus.cluster.ClusterMembership;
+import org.eclipsefoundation.cerberus.cluster.HashRing;
 import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.eclipsefoundation.cerberus.configuration.DurationAdapter;
+import org.eclipsefoundation.cerberus.configuration.MonitorConfiguration;
+import org.eclipsefoundation.cerberus.metrics.MetricsServer;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.monitors.ExecutorMonitorScheduler;
+import org.eclipsefoundation.cerberus.monitors.MonitorScheduler;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournals;
+import org.eclipsefoundation.cerberus.monitors.TimingWheelMonitorScheduler;
+import org.eclipsefoundation.cerberus.monitors.http.HttpClients;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.eclipsefoundation.cerberus.monitors.http.responsetime.HttpResponseTimeMonitor;
 import org.eclipsefoundation.cerberus.monitors.http.status.HttpStatusMonitor;
+import org.eclipsefoundation.cerberus.quorum.QuorumComponentUpdater;
+import org.eclipsefoundation.cerberus.statuspage.CoalescingComponentUpdater;
 import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.eclipsefoundation.cerberus.statuspage.TokenBucket;
 import org.eclipsefoundation.cerberus.statuspage.statuspageio.SPIOComponentUpdater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import okhttp3.ConnectionPool;
 import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
@@ -47,59 +77,177 @@ import okio.Okio;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.IVersionProvider;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 @Command(name = "cerberus", 
 versionProvider = Cerberus.MavenVersion.class, 
 mixinStandardHelpOptions = true, 
-showDefaultValues = true)
+showDefaultValues = true,
+subcommands = { QueryCommand.class })
 public class Cerberus implements Callable<Integer> {
 
   private static Logger LOGGER = LoggerFactory.getLogger(Cerberus.class);
 
-  @Option(names = {"-c", "--configuration"}, required = true, description = "Configuration file (JSON)")
+  /**
+   * Points of each member on the consistent-hash ring of the cluster
+   */
+  private static final int CLUSTER_VIRTUAL_NODES = 128;
+
+  @Spec
+  private CommandSpec spec;
+
+  // not required by picocli, as it would be required by subcommands as well
+  @Option(names = {"-c", "--configuration"}, description = "Configuration file (JSON), required")
   private Path configurationFile;
 
   @Option(names = {"-s", "--statuspage"}, description = "Status Pages Configuration file (JSON)")
   private Path statusPageConfiguration;
 
+  @Option(names = {"--probe-mode"}, showDefaultValue = CommandLine.Help.Visibility.NEVER, description = "How HTTP probes are executed: "
+    + "${COMPLETION-CANDIDATES}. In ASYNC mode, probes are sent with a non-blocking client: scheduler threads only dispatch them, "
+    + "no thread waits for their responses, and results are recorded from completion callbacks, but their phases are not timed. "
+    + "Default: ASYNC, or BLOCKING with --phase-latencies")
+  private HttpMonitor.ProbeMode probeMode;
+
+  @Option(names = {"--phase-latencies"}, description = "Break BLOCKING probes down in phases (DNS, connect, TLS, request, time to first byte, response) "
+    + "and keep a latency histogram of each phase per monitor")
+  private boolean phaseLatencies;
+
+  @Option(names = {"--max-inflight-probes"}, description = "Maximum number of probes in flight in ASYNC mode. Probes over this limit wait for a slot")
+  private int maxInflightProbes = 16384;
+
+  @Option(names = {"--max-requests-per-host"}, description = "Maximum number of probes in flight to a single origin in ASYNC mode. "
+    + "Probes over this limit wait for a slot, on top of HTTP/2 multiplexing")
+  private int maxRequestsPerHost = 64;
+
+  @Option(names = {"--max-requests-per-origin"}, paramLabel = "ORIGIN=COUNT", description = "Maximum number of probes in flight to a specific origin "
+    + "(e.g. https://api.example.org=8) in ASYNC mode, instead of --max-requests-per-host. Can be repeated")
+  private Map<String, Integer> maxRequestsPerOrigin = new LinkedHashMap<>();
+
+  @Option(names = {"--prewarm-timeout"}, description = "How long to wait for connections to every monitored origin to be opened before the first probes "
+    + "(ISO-8601 duration, PT0S to disable)")
+  private Duration prewarmTimeout = Duration.ofSeconds(10);
+
+  @Option(names = {"--page-init-timeout"}, description = "How long monitors wait for the status pages to be initialized (ISO-8601 duration). "
+    + "Monitors start as soon as a page listing their component is ready, and all of them start after this timeout")
+  private Duration pageInitTimeout = Duration.ofSeconds(30);
+
+  @Option(names = {"--executor"}, description = "Threads running monitors and HTTP calls: ${COMPLETION-CANDIDATES}. "
+    + "VIRTUAL requires Java 21+ and keeps only a small platform thread pool for timing")
+  private ExecutorKind executorKind = ExecutorKind.PLATFORM;
+
+  enum ExecutorKind {
+    PLATFORM,
+    VIRTUAL;
+  }
+
+  @Option(names = {"--scheduler"}, description = "How monitor ticks are timed: ${COMPLETION-CANDIDATES}. "
+    + "TIMING_WHEEL gives O(1) scheduling for large numbers of monitors")
+  private SchedulerKind schedulerKind = SchedulerKind.EXECUTOR;
+
+  @Option(names = {"--timing-wheel-tick"}, description = "Tick duration (precision) of the TIMING_WHEEL scheduler (ISO-8601 duration)")
+  private Duration timingWheelTick = Duration.ofMillis(100);
+
+  enum SchedulerKind {
+    EXECUTOR,
+    TIMING_WHEEL;
+  }
+
+  @Option(names = {"--history-dir"}, description = "Directory where the probe results of each monitor are persisted, so that the monitoring history "
+    + "survives restarts. Disabled when not set")
+  private Path historyDirectory;
+
+  @Option(names = {"--archive-dir"}, description = "Directory where the probe results of each monitor are archived for the long term, "
+    + "see the query subcommand. Disabled when not set")
+  private Path archiveDirectory;
+
+  @Option(names = {"--watch"}, description = "Reload the configuration files when they change. Only the monitors and status pages "
+    + "whose configuration changed are restarted, and changed monitors keep their history when they probe the same way")
+  private boolean watch;
+
+  @Option(names = {"--cluster-dir"}, description = "Directory shared by the instances of a cluster: each instance only runs the monitors of "
+    + "its consistent-hash share of the components, rebalanced when instances join or leave. Disabled when not set")
+  private Path clusterDirectory;
+
+  @Option(names = {"--node-id"}, description = "Identifier of this instance in the cluster. <hostname>-<pid> when not set")
+  private String nodeId;
+
+  @Option(names = {"--heartbeat-period"}, description = "How often this instance signals that it is alive, and checks the other members of the cluster")
+  private Duration heartbeatPeriod = Duration.ofSeconds(2);
+
+  @Option(names = {"--node-timeout"}, description = "How long after its last heartbeat a member that is still running is considered dead "
+    + "(members that exit are noticed on the next check)")
+  private Duration nodeTimeout = Duration.ofSeconds(10);
+
+  @Option(names = {"--vantage-peers"}, split = ",", description = "Other instances (host:port) monitoring the same components from other vantage points. "
+    + "Statuses are only pushed to the status pages once a quorum of vantage points agree. Disabled when not set")
+  private List<String> vantagePeers;
+
+  @Option(names = {"--vantage-port"}, description = "UDP port on which this instance exchanges votes with the other vantage points")
+  private int vantagePort = 7946;
+
+  @Option(names = {"--quorum"}, description = "Number of vantage points, this one included, that must agree on a status. Majority when not set")
+  private Integer quorum;
+
+  @Option(names = {"--vantage-period"}, description = "How often changed votes are sent to the other vantage points")
+  private Duration vantagePeriod = Duration.ofSeconds(1);
+
+  @Option(names = {"--vantage-timeout"}, description = "How long after its latest message the votes of another vantage point stop counting")
+  private Duration vantageTimeout = Duration.ofSeconds(10);
+
+  @Option(names = {"--metrics-port"}, description = "Port of the Prometheus metrics endpoint (/metrics). Disabled when not set")
+  private Integer metricsPort;
+
   public static void main(String... args) {
-    int exitCode = new CommandLine(new Cerberus()).execute(args);
+    int exitCode = new CommandLine(new Cerberus()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
     System.exit(exitCode);
   }
 
   public Integer call() throws Exception {
+    if (configurationFile == null) {
+      throw new ParameterException(spec.commandLine(), "Missing required option: '--configuration=<configurationFile>'");
+    }
+    if (probeMode == null) {
+      // phases are only timed by the blocking client
+      probeMode = phaseLatencies ? HttpMonitor.ProbeMode.BLOCKING : HttpMonitor.ProbeMode.ASYNC;
+    } else if (phaseLatencies && probeMode != HttpMonitor.ProbeMode.BLOCKING) {
+      throw new ParameterException(spec.commandLine(), "--phase-latencies requires --probe-mode=BLOCKING");
+    }
     LOGGER.info("Starting...");
-    Moshi moshi = new Moshi.Builder().add(new Object() {
-      @FromJson
-      Duration fromJson(String date) {
-        return Duration.parse(date);
-      }
+    StartupMetrics startupMetrics = new StartupMetrics();
+    Moshi moshi = moshi();
 
-      @ToJson
-      String toJson(Duration date) {
-        return date.toString();
-      }
-    }).build();
+    CerberusConfiguration configuration = readConfiguration(moshi);
 
-    CerberusConfiguration configuration;
-    JsonAdapter<CerberusConfiguration> configAdapter = moshi.adapter(CerberusConfiguration.class);
-    try (BufferedSource configSource = Okio.buffer(Okio.source(Files.newInputStream(configurationFile)))) {
-      if (statusPageConfiguration != null) {
-        JsonAdapter<CerberusConfiguration.StatusPages> statusPageAdapter = moshi.adapter(CerberusConfiguration.StatusPages.class);
-        try (BufferedSource statusPageConfigSource = Okio.buffer(Okio.source(Files.newInputStream(statusPageConfiguration)))) {
-          CerberusConfiguration.StatusPages statusPageConfig = statusPageAdapter.fromJson(statusPageConfigSource);
-          configuration = configAdapter.fromJson(configSource).toBuilder().statusPages(statusPageConfig).build();
-        }
-      } else {
-        configuration = configAdapter.fromJson(configSource);
+    ScheduledExecutorService executor;
+    Executor worker;
+    Executor asyncExecutor;
+    Dispatcher dispatcher;
+    if (executorKind == ExecutorKind.VIRTUAL) {
+      if (!VirtualThreads.isSupported()) {
+        throw new ParameterException(spec.commandLine(), 
+          "--executor=VIRTUAL requires Java 21+ (running on " + Runtime.version() + ")");
       }
+      // platform threads are only used for timing, all the work happens on virtual threads
+      executor = Executors.newScheduledThreadPool(2, threadFactory("Cerberus-Timer-%d"));
+      worker = VirtualThreads.newVirtualThreadPerTaskExecutor("Cerberus-VThread-");
+      asyncExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor("HTTPClient-VThread-");
+      dispatcher = new Dispatcher(VirtualThreads.newVirtualThreadPerTaskExecutor("HTTPClient-VThread-"));
+    } else {
+      // in async mode, scheduler threads never block on I/O, so a handful of them is enough
+      int schedulerThreads = probeMode == HttpMonitor.ProbeMode.ASYNC ? Math.max(2, Runtime.getRuntime().availableProcessors()) : 64;
+      executor = Executors.newScheduledThreadPool(schedulerThreads, threadFactory("Cerberus-Thread-%d"));
+      // the timing wheel timer thread must never run the monitors itself
+      worker = schedulerKind == SchedulerKind.TIMING_WHEEL ? executor : MoreExecutors.directExecutor();
+      // completion callbacks of async probes never block, whatever the number of probes in flight
+      asyncExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), threadFactory("HTTPClient-Async-%d"));
+      // status pages calls, and blocking probes prewarming
+      dispatcher = new Dispatcher(
+        new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory("HTTPClient-Thread-%d")));
     }
-
-    ScheduledExecutorService executor = Executors.newScheduledThreadPool(64, threadFactory("Cerberus-Thread-%d"));
-
-    Dispatcher dispatcher = new Dispatcher(
-      new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory("HTTPClient-Thread-%d")));
     HttpLoggingInterceptor loggingInterceptor;
     if (LOGGER.isTraceEnabled()) {
       loggingInterceptor = new HttpLoggingInterceptor((message) -> {
@@ -118,23 +266,93 @@ public class Cerberus implements Callable<Integer> {
     .addInterceptor(loggingInterceptor)
     .build();
 
+    // pages are initialized concurrently, in the background, see componentsReadiness()
     LOGGER.info("Initializing status pages...");
-    List<ComponentUpdater> updaters = configuration.statusPages().statusPageIO().stream()
-      .map(c -> SPIOComponentUpdater.create(executor, client, c.url(), c.pageId(), c.token(), c.fetchRate()))
-      .collect(ImmutableList.toImmutableList());
-    LOGGER.info("Status pages initialized!");
+    LiveStatusPages statusPages = new LiveStatusPages(c -> createUpdater(c, executor, client, startupMetrics));
+    statusPages.apply(configuration.statusPages().statusPageIO());
+    List<ComponentUpdater> updaters = statusPages.updaters();
+    QuorumComponentUpdater quorumUpdater = null;
+    if (vantagePeers != null && !vantagePeers.isEmpty()) {
+      if (clusterDirectory != null) {
+        throw new ParameterException(spec.commandLine(), "--vantage-peers and --cluster-dir are mutually exclusive");
+      }
+      quorumUpdater = startQuorum(updaters, executor);
+    }
 
-    ConnectionPool connectionPool = new ConnectionPool(configuration.monitors().httpStatus().size(), 5, TimeUnit.MINUTES);
-    HttpStatusMonitor.HttpStatusMonitorFactory factory = new HttpStatusMonitor.HttpStatusMonitorFactory(connectionPool);
+    MonitorScheduler monitorScheduler;
+    if (schedulerKind == SchedulerKind.TIMING_WHEEL) {
+      monitorScheduler = new TimingWheelMonitorScheduler(timingWheelTick, 512, threadFactory("Cerberus-TimingWheel-%d"), worker);
+    } else {
+      monitorScheduler = new ExecutorMonitorScheduler(executor, worker);
+    }
 
-    CompletableFuture<?>[] statusMonitors = configuration.monitors().httpStatus().stream()
-      .map(m -> m.withDefault(configuration.defaultConfiguration()))
-      .map(m -> {
-        HttpStatusMonitor monitor1 = factory.createMonitor(m, client, updaters);
-        return monitor1.schedule(executor);
-      }).toArray(CompletableFuture[]::new);
+    List<CerberusConfiguration.Monitor.HttpStatus> statusConfigurations = statusConfigurations(configuration);
+    List<CerberusConfiguration.Monitor.HttpResponseTime> responseTimeConfigurations = responseTimeConfigurations(configuration);
+    List<MonitorConfiguration> monitorConfigurations = ImmutableList.<MonitorConfiguration>builder()
+      .addAll(statusConfigurations)
+      .addAll(responseTimeConfigurations)
+      .build();
 
-    CompletableFuture.anyOf(statusMonitors).exceptionally(e -> { 
+    HttpClients clients;
+    try {
+      clients = HttpClients.create(client, asyncExecutor, maxInflightProbes, maxRequestsPerHost, maxRequestsPerOrigin,
+        monitorConfigurations.stream().map(MonitorConfiguration::target).collect(ImmutableList.toImmutableList()),
+        monitorConfigurations.stream().map(MonitorConfiguration::period).max(Comparator.naturalOrder()).orElse(Duration.ZERO));
+    } catch (IllegalArgumentException e) {
+      throw new ParameterException(spec.commandLine(), e.getMessage());
+    }
+    if (phaseLatencies) {
+      clients = clients.withPhaseLatencies();
+    }
+    ProbeJournals journals = historyDirectory != null ? ProbeJournals.in(historyDirectory) : ProbeJournals.disabled();
+    if (historyDirectory != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(journals::close, "Cerberus-ProbeJournals-Close"));
+    }
+    ProbeArchive archive = archiveDirectory != null ? ProbeArchive.in(archiveDirectory, threadFactory("Cerberus-Archive-%d")) : null;
+    if (archive != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(archive::close, "Cerberus-ProbeArchive-Close"));
+    }
+    HttpStatusMonitor.HttpStatusMonitorFactory factory = new HttpStatusMonitor.HttpStatusMonitorFactory(clients, probeMode, journals, archive);
+    HttpResponseTimeMonitor.HttpResponseTimeMonitorFactory responseTimeFactory = new HttpResponseTimeMonitor.HttpResponseTimeMonitorFactory(clients, probeMode, 
+      journals, archive);
+
+    // in quorum mode, monitors vote and only decided statuses reach the status pages
+    LiveMonitors monitors = new LiveMonitors(monitorScheduler, factory, responseTimeFactory, 
+      quorumUpdater != null ? ImmutableList.of(quorumUpdater) : updaters);
+
+    if (prewarmTimeout.compareTo(Duration.ZERO) > 0) {
+      LOGGER.info("Opening connections to {} origins...", clients.originsCount());
+      clients.prewarm(probeMode).completeOnTimeout(null, prewarmTimeout.toMillis(), TimeUnit.MILLISECONDS).join();
+    }
+
+    Map<String, CompletableFuture<Void>> componentsReadiness = componentsReadiness(ImmutableList.copyOf(updaters), 
+      monitorConfigurations.stream().map(MonitorConfiguration::componentName).collect(ImmutableSet.toImmutableSet()), pageInitTimeout);
+    ClusterMembership membership = null;
+    if (clusterDirectory != null) {
+      membership = joinCluster(monitors);
+      membership.start(executor);
+    }
+    monitors.apply(statusConfigurations, responseTimeConfigurations, componentsReadiness::get);
+
+    startupMetrics.monitors(monitors.monitors());
+    if (metricsPort != null) {
+      ImmutableList.Builder<MetricsSource> metricsSources = ImmutableList.<MetricsSource>builder().add(monitors, statusPages, startupMetrics);
+      if (membership != null) {
+        metricsSources.add(membership);
+      }
+      if (quorumUpdater != null) {
+        metricsSources.add(quorumUpdater);
+      }
+      MetricsServer.start(new InetSocketAddress(metricsPort), metricsSources.build());
+    }
+
+    if (watch) {
+      ConfigurationWatcher.start(threadFactory("Cerberus-ConfigurationWatcher-%d"), 
+        Stream.of(configurationFile, statusPageConfiguration).filter(Objects::nonNull).collect(ImmutableList.toImmutableList()), 
+        () -> reload(moshi, statusPages, monitors, startupMetrics));
+    }
+
+    monitors.fatalError().exceptionally(e -> { 
       LOGGER.error("Fatal error", e.getCause());
       throw new RuntimeException(e);
     }).join();
@@ -142,6 +360,164 @@ public class Cerberus implements Callable<Integer> {
     return 0;
   }
 
+  /**
+   * Joins the cluster, and waits for one heartbeat period so that instances
+   * started together see each other before taking their share of the monitors.
+   * Monitors are rebalanced whenever the membership changes.
+   */
+  private ClusterMembership joinCluster(LiveMonitors monitors) throws IOException, InterruptedException {
+    String id = nodeId != null ? nodeId : defaultNodeId();
+    ClusterMembership membership = ClusterMembership.join(clusterDirectory, id, heartbeatPeriod, nodeTimeout, members -> {
+      HashRing ring = HashRing.of(members, CLUSTER_VIRTUAL_NODES);
+      LiveMonitors.Diff diff = monitors.own(componentName -> ring.owner(componentName).equals(id));
+      LOGGER.info("Monitors rebalanced over {} members: {}", members.size(), diff);
+    });
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        membership.close();
+      } catch (IOException e) {
+        LOGGER.warn("Unable to leave the cluster", e);
+      }
+    }, "Cerberus-Cluster-Leave"));
+    Thread.sleep(heartbeatPeriod.toMillis());
+    return membership;
+  }
+
+  /**
+   * Starts exchanging votes with the other vantage points.
+   */
+  private QuorumComponentUpdater startQuorum(List<ComponentUpdater> updaters, ScheduledExecutorService executor) throws IOException {
+    List<InetSocketAddress> peers = vantagePeers.stream().map(peer -> {
+      try {
+        HostAndPort hostAndPort = HostAndPort.fromString(peer);
+        return new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort());
+      } catch (IllegalArgumentException | IllegalStateException e) {
+        throw new ParameterException(spec.commandLine(), "Invalid vantage point '" + peer + "', expected host:port");
+      }
+    }).collect(ImmutableList.toImmutableList());
+    int vantagePoints = peers.size() + 1;
+    QuorumComponentUpdater quorumUpdater;
+    try {
+      quorumUpdater = QuorumComponentUpdater.start(vantagePort, peers, quorum != null ? quorum : vantagePoints / 2 + 1, vantagePeriod, vantageTimeout,
+        updaters, executor, threadFactory("Cerberus-Quorum-%d"));
+    } catch (IllegalArgumentException e) {
+      throw new ParameterException(spec.commandLine(), e.getMessage());
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(quorumUpdater::close, "Cerberus-Quorum-Close"));
+    return quorumUpdater;
+  }
+
+  private static String defaultNodeId() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      host = "localhost";
+    }
+    return host + "-" + ProcessHandle.current().pid();
+  }
+
+  /**
+   * Reads the configuration files again, and applies the differences with the
+   * current configuration. Errors are logged, and leave the current
+   * configuration running.
+   */
+  private void reload(Moshi moshi, LiveStatusPages statusPages, LiveMonitors monitors, StartupMetrics startupMetrics) {
+    try {
+      CerberusConfiguration configuration = readConfiguration(moshi);
+      List<CerberusConfiguration.Monitor.HttpStatus> statusConfigurations = statusConfigurations(configuration);
+      List<CerberusConfiguration.Monitor.HttpResponseTime> responseTimeConfigurations = responseTimeConfigurations(configuration);
+      boolean pagesChanged = statusPages.apply(configuration.statusPages().statusPageIO());
+      LiveMonitors.Diff diff = monitors.apply(statusConfigurations, responseTimeConfigurations, name -> CompletableFuture.completedFuture(null));
+      startupMetrics.monitors(monitors.monitors());
+      LOGGER.info("Configuration reloaded: monitors {}, status pages {}", diff, pagesChanged ? "changed" : "unchanged");
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Unable to reload the configuration, keeping the current one", e);
+    }
+  }
+
+  private CerberusConfiguration readConfiguration(Moshi moshi) throws IOException {
+    JsonAdapter<CerberusConfiguration> configAdapter = moshi.adapter(CerberusConfiguration.class);
+    try (BufferedSource configSource = Okio.buffer(Okio.source(Files.newInputStream(configurationFile)))) {
+      if (statusPageConfiguration != null) {
+        JsonAdapter<CerberusConfiguration.StatusPages> statusPageAdapter = moshi.adapter(CerberusConfiguration.StatusPages.class);
+        try (BufferedSource statusPageConfigSource = Okio.buffer(Okio.source(Files.newInputStream(statusPageConfiguration)))) {
+          CerberusConfiguration.StatusPages statusPageConfig = statusPageAdapter.fromJson(statusPageConfigSource);
+          return configAdapter.fromJson(configSource).toBuilder().statusPages(statusPageConfig).build();
+        }
+      } else {
+        return configAdapter.fromJson(configSource);
+      }
+    }
+  }
+
+  /**
+   * Configurations of the HTTP status monitors, with defaults applied.
+   *
+   * @throws IllegalArgumentException if one of them is invalid
+   */
+  private static List<CerberusConfiguration.Monitor.HttpStatus> statusConfigurations(CerberusConfiguration configuration) {
+    return configuration.monitors().httpStatus().stream()
+      .map(m -> m.withDefault(configuration.defaultConfiguration()).validate())
+      .collect(ImmutableList.toImmutableList());
+  }
+
+  private static List<CerberusConfiguration.Monitor.HttpResponseTime> responseTimeConfigurations(CerberusConfiguration configuration) {
+    return configuration.monitors().httpResponseTime() == null 
+      ? ImmutableList.of() 
+      : configuration.monitors().httpResponseTime().stream()
+        .map(m -> m.withDefault(configuration.defaultConfiguration()))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private static ComponentUpdater createUpdater(CerberusConfiguration.StatusPages.StatusPageIO c, ScheduledExecutorService executor, OkHttpClient client, 
+      StartupMetrics startupMetrics) {
+    TokenBucket rateLimiter = new TokenBucket(
+      c.rateLimit() != null ? c.rateLimit() : SPIOComponentUpdater.DEFAULT_RATE_LIMIT,
+      c.rateLimitBurst() != null ? c.rateLimitBurst() : SPIOComponentUpdater.DEFAULT_RATE_LIMIT_BURST);
+    ComponentUpdater updater = CoalescingComponentUpdater.create(executor, c.pageId(), 
+      SPIOComponentUpdater.create(executor, client, c.url(), c.pageId(), c.token(), c.fetchRate(), rateLimiter),
+      c.updateWindow() != null ? c.updateWindow() : CoalescingComponentUpdater.DEFAULT_WINDOW,
+      c.updateBudget() != null ? c.updateBudget() : CoalescingComponentUpdater.DEFAULT_BUDGET,
+      rateLimiter);
+    updater.ready().thenRun(() -> LOGGER.info("Status page {} initialized with {} components in {}s", 
+      c.pageId(), updater.components().size(), startupMetrics.pageReady(c.pageId())));
+    return updater;
+  }
+
+  /**
+   * Futures telling when the monitors of each component can start: as soon as
+   * a status page listing the component is ready, and at the latest once all
+   * pages are ready or {@code timeout} has elapsed (the component may then be
+   * missing from all pages, or listed on a page that is not available yet).
+   */
+  static Map<String, CompletableFuture<Void>> componentsReadiness(List<ComponentUpdater> updaters, Set<String> componentNames, Duration timeout) {
+    Map<String, CompletableFuture<Void>> readiness = componentNames.stream()
+      .collect(ImmutableMap.toImmutableMap(Function.identity(), name -> new CompletableFuture<>()));
+    for (ComponentUpdater updater : updaters) {
+      updater.ready().thenRun(() -> updater.components().forEach(c -> {
+        CompletableFuture<Void> componentReady = readiness.get(c.name());
+        if (componentReady != null) {
+          componentReady.complete(null);
+        }
+      }));
+    }
+    CompletableFuture.allOf(updaters.stream().map(ComponentUpdater::ready).toArray(CompletableFuture[]::new))
+      .completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS)
+      .thenRun(() -> {
+        long notReady = updaters.stream().filter(u -> !u.ready().isDone()).count();
+        if (notReady > 0) {
+          LOGGER.warn("{} status pages are not initialized after {}, starting all monitors", notReady, timeout);
+        }
+        readiness.values().forEach(f -> f.complete(null));
+      });
+    return readiness;
+  }
+
+  static Moshi moshi() {
+    return new Moshi.Builder().add(Duration.class, new DurationAdapter()).build();
+  }
+
   static ThreadFactory threadFactory(String nameFormat) {
     return new ThreadFactoryBuilder()
     .setNameFormat(nameFormat)
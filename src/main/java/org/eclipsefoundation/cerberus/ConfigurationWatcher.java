@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches configuration files and calls back when one of them changes. The
+ * parent directories are watched rather than the files, so that files replaced
+ * by a rename (editors, Kubernetes ConfigMap volumes which swap a
+ * {@value #CONFIG_MAP_DATA} symlink) are noticed. Bursts of events are
+ * debounced: the callback runs once no event was received for
+ * {@link #QUIET_PERIOD_MILLIS}.
+ */
+final class ConfigurationWatcher {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(ConfigurationWatcher.class);
+
+  private static final long QUIET_PERIOD_MILLIS = 500;
+
+  private static final String CONFIG_MAP_DATA = "..data";
+
+  private final WatchService watchService;
+  private final Set<Path> fileNames;
+  private final Runnable onChange;
+
+  private ConfigurationWatcher(WatchService watchService, Set<Path> fileNames, Runnable onChange) {
+    this.watchService = watchService;
+    this.fileNames = fileNames;
+    this.onChange = onChange;
+  }
+
+  /**
+   * Starts watching {@code files} on a thread of {@code threadFactory}.
+   * {@code onChange} is called on that thread, never concurrently.
+   */
+  static void start(ThreadFactory threadFactory, List<Path> files, Runnable onChange) throws IOException {
+    WatchService watchService = FileSystems.getDefault().newWatchService();
+    Set<Path> directories = files.stream()
+      .map(f -> f.toAbsolutePath().getParent())
+      .collect(ImmutableSet.toImmutableSet());
+    for (Path directory : directories) {
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+    ConfigurationWatcher watcher = new ConfigurationWatcher(watchService, 
+      files.stream().map(Path::getFileName).collect(ImmutableSet.toImmutableSet()), onChange);
+    Thread thread = threadFactory.newThread(watcher::loop);
+    thread.setDaemon(true);
+    thread.start();
+    LOGGER.info("Watching configuration files {}", files);
+  }
+
+  private void loop() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        if (!relevant(watchService.take())) {
+          continue;
+        }
+        // debounce: wait until the files are quiet
+        WatchKey key;
+        while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          relevant(key);
+        }
+        try {
+          onChange.run();
+        } catch (RuntimeException e) {
+          LOGGER.error("Error while applying configuration changes", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      LOGGER.debug("Configuration watch service closed", e);
+    }
+  }
+
+  /**
+   * Whether the events of {@code key} concern one of the watched files. The key
+   * is reset.
+   */
+  private boolean relevant(WatchKey key) {
+    boolean relevant = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        relevant = true;
+      } else if (event.context() instanceof Path) {
+        Path name = (Path)event.context();
+        relevant |= fileNames.contains(name) || CONFIG_MAP_DATA.equals(name.toString());
+      }
+    }
+    key.reset();
+    return relevant;
+  }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.google.common.collect.ImmutableList;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.eclipsefoundation.cerberus.configuration.HttpMonitorConfiguration;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.monitors.MonitorScheduler;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.eclipsefoundation.cerberus.monitors.http.responsetime.HttpResponseTimeMonitor;
+import org.eclipsefoundation.cerberus.monitors.http.status.HttpStatusMonitor;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The monitors currently scheduled, by kind and component name. A new
+ * configuration is applied by diffing it against the current one: unchanged
+ * monitors are left alone, removed ones are cancelled, and added or changed
+ * ones are (re)created and scheduled. A changed monitor inherits the history
+ * of the monitor it replaces whenever it probes the same way.
+ *
+ * <p>
+ * In cluster mode, only the monitors of the components owned by this node are
+ * scheduled (see {@link #own(Predicate)}).
+ *
+ * <p>
+ * Changes are applied under the lock of this object (they come from startup,
+ * the configuration watcher and cluster membership changes).
+ */
+final class LiveMonitors implements MetricsSource {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(LiveMonitors.class);
+
+  private final MonitorScheduler scheduler;
+  private final HttpStatusMonitor.HttpStatusMonitorFactory statusFactory;
+  private final HttpResponseTimeMonitor.HttpResponseTimeMonitorFactory responseTimeFactory;
+  private final List<ComponentUpdater> updaters;
+
+  private final Map<String, HttpStatusMonitor> statusMonitors = new ConcurrentHashMap<>();
+  private final Map<String, HttpResponseTimeMonitor> responseTimeMonitors = new ConcurrentHashMap<>();
+
+  private final CompletableFuture<Void> fatalError = new CompletableFuture<>();
+
+  /**
+   * Latest configurations and ownership, guarded by this.
+   */
+  private List<CerberusConfiguration.Monitor.HttpStatus> statusConfigurations = ImmutableList.of();
+  private List<CerberusConfiguration.Monitor.HttpResponseTime> responseTimeConfigurations = ImmutableList.of();
+  private Predicate<String> owned = componentName -> true;
+
+  /**
+   * Number of monitors affected by a configuration change.
+   */
+  static final class Diff {
+    int added;
+    int changed;
+    int removed;
+
+    boolean isEmpty() {
+      return added == 0 && changed == 0 && removed == 0;
+    }
+
+    @Override
+    public String toString() {
+      return added + " added, " + changed + " changed, " + removed + " removed";
+    }
+  }
+
+  @FunctionalInterface
+  private interface MonitorFactory<C, M> {
+    M create(C configuration, List<ComponentUpdater> updaters, M previous);
+  }
+
+  /**
+   * @param updaters updaters of all monitors, which may change over time
+   */
+  LiveMonitors(MonitorScheduler scheduler, HttpStatusMonitor.HttpStatusMonitorFactory statusFactory, 
+      HttpResponseTimeMonitor.HttpResponseTimeMonitorFactory responseTimeFactory, List<ComponentUpdater> updaters) {
+    this.scheduler = scheduler;
+    this.statusFactory = statusFactory;
+    this.responseTimeFactory = responseTimeFactory;
+    this.updaters = updaters;
+  }
+
+  /**
+   * Completes exceptionally when a monitor fails with an {@link Error}.
+   */
+  CompletableFuture<Void> fatalError() {
+    return fatalError;
+  }
+
+  /**
+   * Applies the (defaulted) configurations of the monitors.
+   *
+   * @param readiness tells when the monitors of a component can be scheduled
+   * @return the number of monitors added, changed and removed
+   */
+  synchronized Diff apply(List<CerberusConfiguration.Monitor.HttpStatus> statusConfigurations, 
+      List<CerberusConfiguration.Monitor.HttpResponseTime> responseTimeConfigurations, Function<String, CompletableFuture<Void>> readiness) {
+    this.statusConfigurations = statusConfigurations;
+    this.responseTimeConfigurations = responseTimeConfigurations;
+    Diff diff = new Diff();
+    reconcile(statusMonitors, owned(statusConfigurations), statusFactory::createMonitor, readiness, diff);
+    reconcile(responseTimeMonitors, owned(responseTimeConfigurations), responseTimeFactory::createMonitor, readiness, diff);
+    return diff;
+  }
+
+  /**
+   * Only keeps the monitors of the components matching {@code owned}: the
+   * monitors of components no longer owned are cancelled, and the ones of newly
+   * owned components are scheduled (without waiting for status pages, which are
+   * assumed ready).
+   *
+   * @return the number of monitors added and removed
+   */
+  synchronized Diff own(Predicate<String> owned) {
+    this.owned = owned;
+    return apply(statusConfigurations, responseTimeConfigurations, componentName -> CompletableFuture.completedFuture(null));
+  }
+
+  private <C extends HttpMonitorConfiguration> List<C> owned(List<C> configurations) {
+    return configurations.stream().filter(c -> owned.test(c.componentName())).collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Current monitors, in no particular order.
+   */
+  List<HttpMonitor> monitors() {
+    List<HttpMonitor> monitors = new ArrayList<>(statusMonitors.size() + responseTimeMonitors.size());
+    monitors.addAll(statusMonitors.values());
+    monitors.addAll(responseTimeMonitors.values());
+    return monitors;
+  }
+
+  private <C extends HttpMonitorConfiguration, M extends HttpMonitor> void reconcile(Map<String, M> current, List<C> configurations, 
+      MonitorFactory<C, M> factory, Function<String, CompletableFuture<Void>> readiness, Diff diff) {
+    Map<String, C> byName = new LinkedHashMap<>();
+    for (C configuration : configurations) {
+      if (byName.put(configuration.componentName(), configuration) != null) {
+        LOGGER.warn("Several monitors of the same kind for component {}, only the last one is kept", configuration.componentName());
+      }
+    }
+    for (Iterator<Map.Entry<String, M>> it = current.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, M> entry = it.next();
+      if (!byName.containsKey(entry.getKey())) {
+        entry.getValue().cancel();
+        it.remove();
+        diff.removed++;
+        LOGGER.info("Removed {} of component {}", entry.getValue().getClass().getSimpleName(), entry.getKey());
+      }
+    }
+    for (C configuration : byName.values()) {
+      M previous = current.get(configuration.componentName());
+      if (previous != null && previous.configuration().equals(configuration)) {
+        continue;
+      }
+      CompletableFuture<Void> previousDrained;
+      if (previous != null) {
+        previousDrained = previous.cancel();
+        diff.changed++;
+      } else {
+        previousDrained = CompletableFuture.completedFuture(null);
+        diff.added++;
+      }
+      M monitor = factory.create(configuration, updaters, previous);
+      current.put(configuration.componentName(), monitor);
+      // the journal of the component has a single writer: the new monitor only
+      // probes once the probe in flight of the previous one has been recorded
+      readiness.apply(configuration.componentName())
+        .thenCombine(previousDrained, (ready, drained) -> ready)
+        .thenCompose(ready -> current.get(configuration.componentName()) == monitor ? monitor.schedule(scheduler) : new CompletableFuture<>())
+        .whenComplete((result, error) -> {
+          if (error != null) {
+            fatalError.completeExceptionally(error);
+          }
+        });
+    }
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    statusMonitors.values().forEach(m -> m.writeMetrics(writer));
+    responseTimeMonitors.values().forEach(m -> m.writeMetrics(writer));
+  }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.StatusPages.StatusPageIO;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The updaters of the status pages currently configured, by page id. Like
+ * {@link LiveMonitors}, a new configuration is applied by diffing it against
+ * the current one: only the updaters of removed or changed pages are closed,
+ * and only added or changed pages get a new updater.
+ *
+ * <p>
+ * {@link #updaters()} is the live list shared by all monitors, so monitors
+ * don't need to be recreated when pages change.
+ */
+final class LiveStatusPages implements MetricsSource {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(LiveStatusPages.class);
+
+  private final Function<StatusPageIO, ComponentUpdater> factory;
+
+  private final List<ComponentUpdater> updaters = new CopyOnWriteArrayList<>();
+
+  /**
+   * Only accessed by {@link #apply(List)}, which must not be called concurrently.
+   */
+  private final Map<String, Page> pages = new LinkedHashMap<>();
+
+  private static final class Page {
+    final StatusPageIO configuration;
+    final ComponentUpdater updater;
+
+    Page(StatusPageIO configuration, ComponentUpdater updater) {
+      this.configuration = configuration;
+      this.updater = updater;
+    }
+  }
+
+  LiveStatusPages(Function<StatusPageIO, ComponentUpdater> factory) {
+    this.factory = factory;
+  }
+
+  List<ComponentUpdater> updaters() {
+    return updaters;
+  }
+
+  /**
+   * @return whether any page was added, changed or removed
+   */
+  boolean apply(List<StatusPageIO> configurations) {
+    Map<String, StatusPageIO> byId = new LinkedHashMap<>();
+    configurations.forEach(c -> byId.put(c.pageId(), c));
+    boolean changed = false;
+    for (Iterator<Map.Entry<String, Page>> it = pages.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, Page> entry = it.next();
+      StatusPageIO configuration = byId.get(entry.getKey());
+      if (configuration == null || !configuration.equals(entry.getValue().configuration)) {
+        LOGGER.info("Closing status page {}", entry.getKey());
+        updaters.remove(entry.getValue().updater);
+        entry.getValue().updater.close();
+        it.remove();
+        changed = true;
+      }
+    }
+    for (StatusPageIO configuration : byId.values()) {
+      if (!pages.containsKey(configuration.pageId())) {
+        Page page = new Page(configuration, factory.apply(configuration));
+        pages.put(configuration.pageId(), page);
+        updaters.add(page.updater);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    for (ComponentUpdater updater : updaters) {
+      if (updater instanceof MetricsSource) {
+        ((MetricsSource) updater).writeMetrics(writer);
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.eclipsefoundation.cerberus.archive.ArchiveQuery;
+import org.eclipsefoundation.cerberus.archive.Totals;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+/**
+ * Prints the uptime of archived monitors over a time range, and how much of
+ * their error budget was burnt.
+ */
+@Command(name = "query", 
+description = "Query the probe archive: uptime and error budget burn of each monitor over a time range", 
+mixinStandardHelpOptions = true, 
+showDefaultValues = true)
+class QueryCommand implements Callable<Integer> {
+
+  @Spec
+  private CommandSpec spec;
+
+  @Option(names = {"--archive-dir"}, required = true, description = "Directory of the probe archive (see --archive-dir of the main command)")
+  private Path archiveDirectory;
+
+  @Option(names = {"--from"}, required = true, description = "Start of the range (inclusive), e.g. 2021-01-01T00:00:00Z")
+  private Instant from;
+
+  @Option(names = {"--to"}, description = "End of the range (exclusive). Now when not set")
+  private Instant to;
+
+  @Option(names = {"--component"}, description = "Only report these components (repeatable). All components when not set")
+  private List<String> components;
+
+  @Option(names = {"--slo"}, description = "Uptime objective in percent (e.g. 99.9), to report the error budget burn")
+  private Double slo;
+
+  @Override
+  public Integer call() throws Exception {
+    if (!Files.isDirectory(archiveDirectory)) {
+      throw new ParameterException(spec.commandLine(), "Not a directory: " + archiveDirectory);
+    }
+    if (slo != null && (slo <= 0 || slo >= 100)) {
+      throw new ParameterException(spec.commandLine(), "--slo must be in ]0, 100[");
+    }
+    Instant end = to != null ? to : Instant.now();
+    PrintWriter out = spec.commandLine().getOut();
+    out.printf("%-20s %-30s %10s %10s %9s %9s %9s", "KIND", "COMPONENT", "PROBES", "FAILURES", "UPTIME", "MEAN", "MAX");
+    if (slo != null) {
+      out.printf(" %10s %9s", "BUDGET", "BURN");
+    }
+    out.println();
+    for (ArchiveQuery.Result result : ArchiveQuery.query(archiveDirectory, c -> components == null || components.contains(c), 
+        from.toEpochMilli(), end.toEpochMilli())) {
+      Totals totals = result.totals();
+      out.printf("%-20s %-30s %10d %10d %8.3f%% %7dms %7dms", result.kind(), result.componentName(), totals.probes(), totals.failures(), 
+        totals.uptime(), totals.latencyMeanMicros() / 1000, totals.latencyMaxMicros() / 1000);
+      if (slo != null) {
+        double budget = (1 - slo / 100) * totals.probes();
+        out.printf(" %10.1f %8.1f%%", budget, budget == 0 ? Double.NaN : 100 * totals.failures() / budget);
+      }
+      out.println();
+    }
+    out.flush();
+    return 0;
+  }
+}
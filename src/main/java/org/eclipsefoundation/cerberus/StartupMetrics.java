@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.monitors.Monitor;
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+
+/**
+ * Startup timings: how long after the start of the process each status page
+ * was ready, and each monitor published its first status. The start of the
+ * process is the one reported by the OS, so JVM startup and class loading are
+ * included, or the creation of this object where the OS does not report it.
+ */
+final class StartupMetrics implements MetricsSource {
+
+  private final long startEpochNanos = ProcessHandle.current().info().startInstant()
+    .map(MonitorHistory::epochNanos)
+    .orElseGet(MonitorHistory::nowEpochNanos);
+
+  private final Map<String, Long> pagesReady = new ConcurrentHashMap<>();
+
+  private volatile List<HttpMonitor> monitors = ImmutableList.of();
+
+  /**
+   * @return the number of seconds since the start of the process
+   */
+  double pageReady(String pageId) {
+    long now = MonitorHistory.nowEpochNanos();
+    pagesReady.putIfAbsent(pageId, now);
+    return (now - startEpochNanos) / 1e9;
+  }
+
+  void monitors(List<? extends Monitor> monitors) {
+    this.monitors = monitors.stream()
+      .filter(HttpMonitor.class::isInstance)
+      .map(HttpMonitor.class::cast)
+      .collect(ImmutableList.toImmutableList());
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    pagesReady.forEach((pageId, ready) -> writer.gauge("cerberus_startup_page_ready_seconds", 
+      "Time from the start of the process to the first successful fetch of the components of the status page", 
+      (ready - startEpochNanos) / 1e9, "page", pageId));
+    for (HttpMonitor monitor : monitors) {
+      long firstStatus = monitor.firstStatusEpochNanos();
+      if (firstStatus != 0) {
+        writer.gauge("cerberus_startup_first_status_seconds", 
+          "Time from the start of the process to the first status published by the monitor", 
+          (firstStatus - startEpochNanos) / 1e9, "component", monitor.configuration().componentName());
+      }
+    }
+  }
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads factory. This is the Java 11 version, where virtual threads
+ * are not available. The Java 21+ version lives in {@code src/main/java21} and is
+ * packaged in the multi-release section of the jar.
+ */
+final class VirtualThreads {
+
+  private VirtualThreads() {}
+
+  static boolean isSupported() {
+    return false;
+  }
+
+  static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+    throw new UnsupportedOperationException("Virtual threads require Java 21+ (running on " + Runtime.version() + ")");
+  }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Read-only queries over a {@link ProbeArchive}, safe to run while it is
+ * being written.
+ */
+public final class ArchiveQuery {
+
+  /**
+   * Totals of the probes of a monitor over a time range.
+   */
+  public static final class Result {
+    private final String kind;
+    private final String componentName;
+    private final Totals totals;
+
+    private Result(String kind, String componentName, Totals totals) {
+      this.kind = kind;
+      this.componentName = componentName;
+      this.totals = totals;
+    }
+
+    public String kind() {
+      return kind;
+    }
+
+    public String componentName() {
+      return componentName;
+    }
+
+    public Totals totals() {
+      return totals;
+    }
+  }
+
+  private ArchiveQuery() {
+  }
+
+  /**
+   * Totals of each monitor of the archive in {@code root} whose component
+   * name matches {@code components}, between {@code fromMillis} (inclusive)
+   * and {@code toMillis} (exclusive), see
+   * {@link MonitorArchive#query(Path, long, long)}.
+   */
+  public static List<Result> query(Path root, Predicate<String> components, long fromMillis, long toMillis) throws IOException {
+    ImmutableList.Builder<Result> results = ImmutableList.builder();
+    for (Path directory : MonitorArchive.list(root)) {
+      List<String> name = MonitorArchive.name(directory);
+      if (name.size() < 2 || !components.test(name.get(1))) {
+        continue;
+      }
+      results.add(new Result(name.get(0), name.get(1), MonitorArchive.query(directory, fromMillis, toMillis)));
+    }
+    return results.build();
+  }
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+/**
+ * Reads bits written by a {@link BitWriter}.
+ */
+final class BitReader {
+
+  private final byte[] bytes;
+  private long bits;
+
+  BitReader(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  boolean readBit() {
+    boolean bit = (bytes[(int)(bits >>> 3)] & (0x80 >>> (bits & 7))) != 0;
+    bits++;
+    return bit;
+  }
+
+  /**
+   * Reads {@code count} (at most 64) bits as an unsigned value.
+   */
+  long readBits(int count) {
+    long value = 0;
+    for (int i = 0; i < count; i++) {
+      value = (value << 1) | (readBit() ? 1 : 0);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import java.util.Arrays;
+
+/**
+ * Writes bits, most significant first, into a growable byte array.
+ */
+final class BitWriter {
+
+  private byte[] bytes;
+  private long bits;
+
+  BitWriter(int initialCapacity) {
+    this.bytes = new byte[Math.max(1, initialCapacity)];
+  }
+
+  void writeBit(boolean bit) {
+    writeBits(bit ? 1 : 0, 1);
+  }
+
+  /**
+   * Writes the {@code count} (at most 64) low bits of {@code value}.
+   */
+  void writeBits(long value, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      int index = (int)(bits >>> 3);
+      if (index == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+      if (((value >>> i) & 1) != 0) {
+        bytes[index] |= 0x80 >>> (bits & 7);
+      }
+      bits++;
+    }
+  }
+
+  /**
+   * The bits written so far, the last byte padded with zeros.
+   */
+  byte[] toByteArray() {
+    return Arrays.copyOf(bytes, (int)((bits + 7) >>> 3));
+  }
+}
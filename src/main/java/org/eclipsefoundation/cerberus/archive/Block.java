@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournal;
+
+/**
+ * Probe results of a monitor over at most {@link #SPAN_MILLIS}, aligned on
+ * hours, compressed column by column.
+ *
+ * <ul>
+ * <li>Times (milliseconds) are encoded as delta-of-deltas with variable-size
+ * prefix codes: a monitor probing at a steady period costs about one bit per
+ * probe.</li>
+ * <li>Status codes, error classes and failure flags are run-length encoded:
+ * a healthy target costs a few bytes per block.</li>
+ * <li>Latencies (microseconds) are XORed with the previous one, and only the
+ * meaningful bits of the result are written, reusing the previous window of
+ * meaningful bits when possible (as in Facebook's Gorilla).</li>
+ * </ul>
+ *
+ * A serialized block starts with a fixed-size header holding its time range,
+ * its {@link Totals} and the lengths of its columns, so that readers can
+ * aggregate or skip it without decoding it.
+ */
+final class Block {
+
+  /**
+   * Maximum time span of a block, which divides an hour.
+   */
+  static final long SPAN_MILLIS = 10 * 60 * 1000;
+
+  static final int MAGIC = 0x43524241; // "CRBA"
+  static final int HEADER_SIZE = 4 + 8 + 8 + Totals.SIZE + 3 * 4;
+
+  private static final int MAX_RECORDS = 1 << 16;
+
+  /**
+   * Receives decoded records.
+   */
+  @FunctionalInterface
+  interface Visitor {
+    /**
+     * @param statusCode the status code, or {@link MonitorHistory#NO_STATUS_CODE}
+     */
+    void record(long epochMillis, long latencyMicros, int statusCode, ProbeJournal.ErrorClass errorClass, boolean failed);
+  }
+
+  /**
+   * Header of a serialized block.
+   */
+  static final class Header {
+    final long startMillis;
+    final long endMillis;
+    final Totals totals;
+    final int timesLength;
+    final int codesLength;
+    final int latenciesLength;
+
+    private Header(long startMillis, long endMillis, Totals totals, int timesLength, int codesLength, int latenciesLength) {
+      this.startMillis = startMillis;
+      this.endMillis = endMillis;
+      this.totals = totals;
+      this.timesLength = timesLength;
+      this.codesLength = codesLength;
+      this.latenciesLength = latenciesLength;
+    }
+
+    int bodyLength() {
+      return timesLength + codesLength + latenciesLength;
+    }
+
+    static Header read(DataInput in) throws IOException {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not an archive block");
+      }
+      return new Header(in.readLong(), in.readLong(), Totals.read(in), in.readInt(), in.readInt(), in.readInt());
+    }
+  }
+
+  private long[] times = new long[64];
+  private int[] latencies = new int[64];
+  private short[] codes = new short[64];
+  /**
+   * Error class ordinal shifted left by one, or'ed with the failure flag.
+   */
+  private byte[] flags = new byte[64];
+  private int size;
+  private final Totals totals = new Totals();
+
+  int size() {
+    return size;
+  }
+
+  boolean isFull() {
+    return size == MAX_RECORDS;
+  }
+
+  long startMillis() {
+    return times[0];
+  }
+
+  /**
+   * Start of the span of blocks {@code epochMillis} belongs to.
+   */
+  static long span(long epochMillis) {
+    return Math.floorDiv(epochMillis, SPAN_MILLIS) * SPAN_MILLIS;
+  }
+
+  void add(long epochMillis, long latencyMicros, int statusCode, ProbeJournal.ErrorClass errorClass, boolean failed) {
+    if (size == times.length) {
+      int capacity = Math.min(MAX_RECORDS, size * 2);
+      times = Arrays.copyOf(times, capacity);
+      latencies = Arrays.copyOf(latencies, capacity);
+      codes = Arrays.copyOf(codes, capacity);
+      flags = Arrays.copyOf(flags, capacity);
+    }
+    int latency = (int)Math.min(Math.max(0, latencyMicros), Integer.MAX_VALUE);
+    times[size] = epochMillis;
+    latencies[size] = latency;
+    codes[size] = statusCode == MonitorHistory.NO_STATUS_CODE ? -1 : (short)statusCode;
+    flags[size] = (byte)(errorClass.ordinal() << 1 | (failed ? 1 : 0));
+    size++;
+    totals.add(latency, failed);
+  }
+
+  void write(DataOutput out) throws IOException {
+    byte[] timesColumn = encodeTimes();
+    byte[] codesColumn = encodeCodes();
+    byte[] latenciesColumn = encodeLatencies();
+    out.writeInt(MAGIC);
+    out.writeLong(times[0]);
+    out.writeLong(times[size - 1]);
+    totals.write(out);
+    out.writeInt(timesColumn.length);
+    out.writeInt(codesColumn.length);
+    out.writeInt(latenciesColumn.length);
+    out.write(timesColumn);
+    out.write(codesColumn);
+    out.write(latenciesColumn);
+  }
+
+  Totals totals() {
+    return totals;
+  }
+
+  private byte[] encodeTimes() {
+    BitWriter out = new BitWriter(size / 4 + 16);
+    out.writeBits(times[0], 64);
+    long previousDelta = 0;
+    for (int i = 1; i < size; i++) {
+      long delta = times[i] - times[i - 1];
+      // fits in an int as a block spans at most SPAN_MILLIS
+      int deltaOfDelta = (int)(delta - previousDelta);
+      previousDelta = delta;
+      if (deltaOfDelta == 0) {
+        out.writeBit(false);
+      } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+        out.writeBits(0b10, 2);
+        out.writeBits(deltaOfDelta + 63, 7);
+      } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+        out.writeBits(0b110, 3);
+        out.writeBits(deltaOfDelta + 255, 9);
+      } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+        out.writeBits(0b1110, 4);
+        out.writeBits(deltaOfDelta + 2047, 12);
+      } else {
+        out.writeBits(0b1111, 4);
+        out.writeBits(deltaOfDelta, 32);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private byte[] encodeCodes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    int runStart = 0;
+    for (int i = 1; i <= size; i++) {
+      if (i == size || codes[i] != codes[runStart] || flags[i] != flags[runStart]) {
+        writeVarInt(out, i - runStart);
+        out.writeShort(codes[runStart]);
+        out.writeByte(flags[runStart]);
+        runStart = i;
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private byte[] encodeLatencies() {
+    BitWriter out = new BitWriter(size + 16);
+    out.writeBits(latencies[0], 32);
+    int previousLeading = -1;
+    int previousTrailing = 0;
+    for (int i = 1; i < size; i++) {
+      int xor = latencies[i] ^ latencies[i - 1];
+      if (xor == 0) {
+        out.writeBit(false);
+        continue;
+      }
+      out.writeBit(true);
+      int leading = Integer.numberOfLeadingZeros(xor);
+      int trailing = Integer.numberOfTrailingZeros(xor);
+      if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+        // fits in the previous window of meaningful bits
+        out.writeBit(false);
+        out.writeBits(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+      } else {
+        int meaningful = 32 - leading - trailing;
+        out.writeBit(true);
+        out.writeBits(leading, 5);
+        out.writeBits(meaningful - 1, 5);
+        out.writeBits(xor >>> trailing, meaningful);
+        previousLeading = leading;
+        previousTrailing = trailing;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes the body of the block of {@code header}, read from {@code in}.
+   */
+  static void read(Header header, DataInput in, Visitor visitor) throws IOException {
+    byte[] timesColumn = new byte[header.timesLength];
+    byte[] codesColumn = new byte[header.codesLength];
+    byte[] latenciesColumn = new byte[header.latenciesLength];
+    in.readFully(timesColumn);
+    in.readFully(codesColumn);
+    in.readFully(latenciesColumn);
+    BitReader timesIn = new BitReader(timesColumn);
+    DataInputStream codesIn = new DataInputStream(new ByteArrayInputStream(codesColumn));
+    BitReader latenciesIn = new BitReader(latenciesColumn);
+
+    long count = header.totals.probes();
+    long time = timesIn.readBits(64);
+    long delta = 0;
+    int latency = (int)latenciesIn.readBits(32);
+    int leading = 0;
+    int trailing = 0;
+    int run = 0;
+    int code = 0;
+    int flags = 0;
+    for (long i = 0; i < count; i++) {
+      if (i > 0) {
+        delta += readDeltaOfDelta(timesIn);
+        time += delta;
+        if (latenciesIn.readBit()) {
+          if (latenciesIn.readBit()) {
+            leading = (int)latenciesIn.readBits(5);
+            int meaningful = (int)latenciesIn.readBits(5) + 1;
+            trailing = 32 - leading - meaningful;
+          }
+          latency ^= (int)latenciesIn.readBits(32 - leading - trailing) << trailing;
+        }
+      }
+      if (run == 0) {
+        run = readVarInt(codesIn);
+        code = codesIn.readShort();
+        flags = codesIn.readByte();
+      }
+      run--;
+      visitor.record(time, latency, code == -1 ? MonitorHistory.NO_STATUS_CODE : code, ProbeJournal.ErrorClass.decode(flags >> 1), (flags & 1) != 0);
+    }
+  }
+
+  private static long readDeltaOfDelta(BitReader in) {
+    if (!in.readBit()) {
+      return 0;
+    } else if (!in.readBit()) {
+      return in.readBits(7) - 63;
+    } else if (!in.readBit()) {
+      return in.readBits(9) - 255;
+    } else if (!in.readBit()) {
+      return in.readBits(12) - 2047;
+    }
+    return (int)in.readBits(32);
+  }
+
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.google.common.collect.ImmutableList;
+
+import org.eclipsefoundation.cerberus.monitors.ProbeJournals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Archive of the probe results of a monitor, in a directory holding:
+ * <ul>
+ * <li>{@value #NAME_FILE}: the kind of the monitor and the name of its
+ * component, one per line;</li>
+ * <li>one segment file per day (UTC), {@code yyyy-MM-dd}{@value #SEGMENT_EXTENSION},
+ * a sequence of {@link Block}s;</li>
+ * <li>{@value #HOURLY_ROLLUPS} and {@value #DAILY_ROLLUPS}: the {@link Totals}
+ * of each past hour and day, as fixed-size records appended as soon as a block
+ * of the next hour or day is written.</li>
+ * </ul>
+ *
+ * Writes are confined to a single thread. Rollups are written after blocks, so
+ * that a crash can lose a rollup (queries then aggregate block headers) but
+ * never count a block twice.
+ */
+final class MonitorArchive {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(MonitorArchive.class);
+
+  static final String NAME_FILE = "NAME";
+  static final String SEGMENT_EXTENSION = ".seg";
+  static final String HOURLY_ROLLUPS = "hourly.rollup";
+  static final String DAILY_ROLLUPS = "daily.rollup";
+
+  static final long HOUR_MILLIS = 3_600_000;
+  static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+  private final Path directory;
+
+  private long hourStart = -1;
+  private final Totals hour = new Totals();
+  private long dayStart = -1;
+  private final Totals day = new Totals();
+  private long lastMillis = Long.MIN_VALUE;
+
+  private MonitorArchive(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Opens (or creates) the archive of a monitor in {@code root}, and restores
+   * the rollups in progress from the latest segment.
+   */
+  static MonitorArchive open(Path root, String kind, String componentName) throws IOException {
+    Path directory = root.resolve(ProbeJournals.stem(kind, componentName));
+    Files.createDirectories(directory);
+    Path name = directory.resolve(NAME_FILE);
+    if (!Files.exists(name)) {
+      Files.write(name, ImmutableList.of(kind, componentName), StandardCharsets.UTF_8);
+    }
+    MonitorArchive archive = new MonitorArchive(directory);
+    Optional<Path> latest;
+    try (Stream<Path> files = Files.list(directory)) {
+      latest = files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_EXTENSION)).max(Path::compareTo);
+    }
+    if (latest.isPresent()) {
+      archive.restore(latest.get());
+    }
+    return archive;
+  }
+
+  private void restore(Path segment) throws IOException {
+    long validLength = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+      while (true) {
+        Block.Header header;
+        try {
+          header = Block.Header.read(in);
+        } catch (EOFException e) {
+          break;
+        }
+        if (!skipFully(in, header.bodyLength())) {
+          break;
+        }
+        validLength += Block.HEADER_SIZE + header.bodyLength();
+        accumulate(header.startMillis, header.totals, false);
+        lastMillis = header.endMillis;
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Corrupted archive segment {}, blocks after byte {} are dropped", segment, validLength, e);
+    }
+    if (Files.size(segment) > validLength) {
+      // a block was partially written
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+        channel.truncate(validLength);
+      }
+    }
+  }
+
+  /**
+   * Time of the latest archived probe, or {@link Long#MIN_VALUE}.
+   */
+  long lastMillis() {
+    return lastMillis;
+  }
+
+  /**
+   * Appends {@code block} to the segment of its day, then the rollups of the
+   * hour and day it closes, if any.
+   */
+  void write(Block block) throws IOException {
+    long start = block.startMillis();
+    Path segment = directory.resolve(segmentName(Math.floorDiv(start, DAY_MILLIS) * DAY_MILLIS));
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(segment, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+      block.write(out);
+    }
+    accumulate(start, block.totals(), true);
+  }
+
+  /**
+   * @param persist whether the rollups of the hour and day closed by the block
+   *                are written (they are not when restoring)
+   */
+  private void accumulate(long startMillis, Totals totals, boolean persist) throws IOException {
+    long blockHour = Math.floorDiv(startMillis, HOUR_MILLIS) * HOUR_MILLIS;
+    long blockDay = Math.floorDiv(startMillis, DAY_MILLIS) * DAY_MILLIS;
+    if (hourStart != blockHour) {
+      if (persist && hourStart != -1 && hour.probes() > 0 && blockHour > hourStart) {
+        appendRollup(HOURLY_ROLLUPS, hourStart, hour);
+      }
+      hour.clear();
+      hourStart = blockHour;
+    }
+    if (dayStart != blockDay) {
+      if (persist && dayStart != -1 && day.probes() > 0 && blockDay > dayStart) {
+        appendRollup(DAILY_ROLLUPS, dayStart, day);
+      }
+      day.clear();
+      dayStart = blockDay;
+    }
+    hour.add(totals);
+    day.add(totals);
+  }
+
+  private void appendRollup(String file, long startMillis, Totals totals) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(directory.resolve(file), StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+      out.writeLong(startMillis);
+      totals.write(out);
+    }
+  }
+
+  static String segmentName(long dayStartMillis) {
+    return LocalDate.ofInstant(Instant.ofEpochMilli(dayStartMillis), ZoneOffset.UTC) + SEGMENT_EXTENSION;
+  }
+
+  /**
+   * Directories of the monitor archives in {@code root}.
+   */
+  static List<Path> list(Path root) throws IOException {
+    try (Stream<Path> files = Files.list(root)) {
+      return files.filter(d -> Files.isRegularFile(d.resolve(NAME_FILE))).sorted().collect(ImmutableList.toImmutableList());
+    }
+  }
+
+  /**
+   * Kind and component name of the archive in {@code directory}.
+   */
+  static List<String> name(Path directory) throws IOException {
+    return Files.readAllLines(directory.resolve(NAME_FILE), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Aggregates the probes of the archive in {@code directory} between
+   * {@code fromMillis} (inclusive) and {@code toMillis} (exclusive). Rollups
+   * are used for the days and hours fully within the range, and only the
+   * blocks at the boundaries of the range are decoded: other blocks are
+   * aggregated from their header, or skipped.
+   */
+  static Totals query(Path directory, long fromMillis, long toMillis) throws IOException {
+    Totals result = new Totals();
+    if (fromMillis >= toMillis) {
+      return result;
+    }
+    Map<Long, Totals> daily = readRollups(directory.resolve(DAILY_ROLLUPS), fromMillis, toMillis);
+    Map<Long, Totals> hourly = readRollups(directory.resolve(HOURLY_ROLLUPS), fromMillis, toMillis);
+    for (long d = Math.floorDiv(fromMillis, DAY_MILLIS) * DAY_MILLIS; d < toMillis; d += DAY_MILLIS) {
+      if (d >= fromMillis && d + DAY_MILLIS <= toMillis && daily.containsKey(d)) {
+        result.add(daily.get(d));
+        continue;
+      }
+      Set<Long> coveredHours = new HashSet<>();
+      int hours = 0;
+      for (long h = Math.max(d, Math.floorDiv(fromMillis, HOUR_MILLIS) * HOUR_MILLIS); h < Math.min(d + DAY_MILLIS, toMillis); h += HOUR_MILLIS) {
+        hours++;
+        if (h >= fromMillis && h + HOUR_MILLIS <= toMillis && hourly.containsKey(h)) {
+          result.add(hourly.get(h));
+          coveredHours.add(h);
+        }
+      }
+      Path segment = directory.resolve(segmentName(d));
+      if (coveredHours.size() == hours || !Files.exists(segment)) {
+        continue;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+        while (true) {
+          Block.Header header = Block.Header.read(in);
+          if (coveredHours.contains(Math.floorDiv(header.startMillis, HOUR_MILLIS) * HOUR_MILLIS) 
+              || header.endMillis < fromMillis || header.startMillis >= toMillis) {
+            skipFully(in, header.bodyLength());
+          } else if (header.startMillis >= fromMillis && header.endMillis < toMillis) {
+            // unless the block is being written
+            if (skipFully(in, header.bodyLength())) {
+              result.add(header.totals);
+            }
+          } else {
+            Block.read(header, in, (time, latency, statusCode, errorClass, failed) -> {
+              if (time >= fromMillis && time < toMillis) {
+                result.add(latency, failed);
+              }
+            });
+          }
+        }
+      } catch (EOFException e) {
+        // end of the segment, or block being written
+      }
+    }
+    return result;
+  }
+
+  private static Map<Long, Totals> readRollups(Path file, long fromMillis, long toMillis) throws IOException {
+    Map<Long, Totals> rollups = new HashMap<>();
+    if (!Files.exists(file)) {
+      return rollups;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      while (true) {
+        long start;
+        try {
+          start = in.readLong();
+        } catch (EOFException e) {
+          break;
+        }
+        Totals totals = Totals.read(in);
+        if (start >= fromMillis && start < toMillis) {
+          rollups.put(start, totals);
+        }
+      }
+    } catch (EOFException e) {
+      // partially written last record
+    }
+    return rollups;
+  }
+
+  private static boolean skipFully(DataInputStream in, int length) throws IOException {
+    int remaining = length;
+    while (remaining > 0) {
+      int skipped = in.skipBytes(remaining);
+      if (skipped == 0) {
+        return false;
+      }
+      remaining -= skipped;
+    }
+    return true;
+  }
+}
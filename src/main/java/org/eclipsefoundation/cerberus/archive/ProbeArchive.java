@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipsefoundation.cerberus.monitors.ProbeJournal;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long term archive of the probe results of all monitors, one
+ * {@link MonitorArchive} directory per monitor kind and component.
+ *
+ * <p>
+ * Monitors append their results to their {@link Writer}, which buffers them
+ * in a {@link Block} until it spans {@link Block#SPAN_MILLIS}. Full blocks are
+ * compressed and written by a single archive thread, so probes never wait on
+ * the file system. The block in progress is written on {@link #close()}: a
+ * crash loses it, unless it is still in the probe journal of the monitor (see
+ * {@link ProbeJournal}) which is replayed on startup.
+ */
+public final class ProbeArchive implements AutoCloseable {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(ProbeArchive.class);
+
+  private final Path root;
+
+  private final ExecutorService executor;
+
+  private final Map<Path, Writer> writers = new ConcurrentHashMap<>();
+
+  private ProbeArchive(Path root, ExecutorService executor) {
+    this.root = root;
+    this.executor = executor;
+  }
+
+  /**
+   * Archive in {@code root}, which is created if needed.
+   *
+   * @param threadFactory factory of the archive thread
+   */
+  public static ProbeArchive in(Path root, ThreadFactory threadFactory) throws IOException {
+    Files.createDirectories(root);
+    return new ProbeArchive(root, Executors.newSingleThreadExecutor(threadFactory));
+  }
+
+  public Path root() {
+    return root;
+  }
+
+  /**
+   * Writer of the given monitor kind and component, the same instance for the
+   * life of the archive.
+   *
+   * @throws UncheckedIOException if the archive of the monitor cannot be opened
+   */
+  public Writer writer(String kind, String componentName) {
+    return writers.computeIfAbsent(root.resolve(ProbeJournals.stem(kind, componentName)), directory -> {
+      try {
+        return new Writer(MonitorArchive.open(root, kind, componentName));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to open the archive of " + componentName, e);
+      }
+    });
+  }
+
+  /**
+   * Writes the blocks in progress, and waits for all blocks to be written.
+   */
+  @Override
+  public void close() {
+    writers.values().forEach(Writer::flush);
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOGGER.warn("Timed out while writing the probe archive");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Appends the probe results of a monitor to its archive.
+   */
+  public final class Writer {
+
+    private final MonitorArchive archive;
+
+    private Block block = new Block();
+
+    /**
+     * Time of the latest appended probe, older ones are ignored.
+     */
+    private long lastMillis;
+
+    private Writer(MonitorArchive archive) {
+      this.archive = archive;
+      this.lastMillis = archive.lastMillis();
+    }
+
+    /**
+     * Appends a probe result, unless it is not more recent than the latest one
+     * (e.g. when replaying a journal whose start was already archived). The
+     * lock is uncontended, except on {@link ProbeArchive#close()}.
+     *
+     * @param failed whether the probe counts as a failure for uptime
+     */
+    public synchronized void append(long epochNanos, long latencyNanos, int statusCode, ProbeJournal.ErrorClass errorClass, boolean failed) {
+      long millis = Math.floorDiv(epochNanos, 1_000_000L);
+      if (millis <= lastMillis) {
+        return;
+      }
+      if (block.size() > 0 && (Block.span(millis) != Block.span(block.startMillis()) || block.isFull())) {
+        seal();
+      }
+      block.add(millis, latencyNanos / 1000, statusCode, errorClass, failed);
+      lastMillis = millis;
+    }
+
+    synchronized void flush() {
+      if (block.size() > 0) {
+        seal();
+      }
+    }
+
+    private void seal() {
+      Block sealed = block;
+      block = new Block();
+      try {
+        executor.execute(() -> {
+          try {
+            archive.write(sealed);
+          } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to archive {} probes", sealed.size(), e);
+          }
+        });
+      } catch (RuntimeException e) {
+        LOGGER.error("Unable to archive {} probes", sealed.size(), e);
+      }
+    }
+  }
+}
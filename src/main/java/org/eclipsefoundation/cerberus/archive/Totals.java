@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Aggregates of probe results: number of probes and of failures, and latency
+ * of the successful ones. Used for block summaries, rollups and query results.
+ */
+public final class Totals {
+
+  /**
+   * Size of the serialized form
+   */
+  static final int SIZE = 24;
+
+  private long probes;
+  private long failures;
+  private long latencySumMicros;
+  private long latencyMaxMicros;
+
+  void add(long latencyMicros, boolean failed) {
+    probes++;
+    if (failed) {
+      failures++;
+    } else {
+      latencySumMicros += latencyMicros;
+      latencyMaxMicros = Math.max(latencyMaxMicros, latencyMicros);
+    }
+  }
+
+  void add(Totals other) {
+    probes += other.probes;
+    failures += other.failures;
+    latencySumMicros += other.latencySumMicros;
+    latencyMaxMicros = Math.max(latencyMaxMicros, other.latencyMaxMicros);
+  }
+
+  void clear() {
+    probes = 0;
+    failures = 0;
+    latencySumMicros = 0;
+    latencyMaxMicros = 0;
+  }
+
+  public long probes() {
+    return probes;
+  }
+
+  public long failures() {
+    return failures;
+  }
+
+  /**
+   * Percentage of probes that did not fail, or {@link Double#NaN} if there is
+   * no probe.
+   */
+  public double uptime() {
+    return probes == 0 ? Double.NaN : 100.0 * (probes - failures) / probes;
+  }
+
+  /**
+   * Mean latency of successful probes, in microseconds (0 if there is none).
+   */
+  public long latencyMeanMicros() {
+    long successes = probes - failures;
+    return successes == 0 ? 0 : latencySumMicros / successes;
+  }
+
+  public long latencyMaxMicros() {
+    return latencyMaxMicros;
+  }
+
+  void write(DataOutput out) throws IOException {
+    out.writeInt((int)probes);
+    out.writeInt((int)failures);
+    out.writeLong(latencySumMicros);
+    out.writeLong(latencyMaxMicros);
+  }
+
+  static Totals read(DataInput in) throws IOException {
+    Totals totals = new Totals();
+    totals.probes = Integer.toUnsignedLong(in.readInt());
+    totals.failures = Integer.toUnsignedLong(in.readInt());
+    totals.latencySumMicros = in.readLong();
+    totals.latencyMaxMicros = in.readLong();
+    return totals;
+  }
+}
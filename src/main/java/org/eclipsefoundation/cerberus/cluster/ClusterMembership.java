@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.cluster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Membership of a cluster of Cerberus instances sharing a directory (on a
+ * local or shared file system supporting POSIX locks).
+ *
+ * <p>
+ * Each node holds an exclusive lock on its own {@code <node id>}{@value #EXTENSION}
+ * file for as long as it lives, and writes a heartbeat (the current time) in
+ * it every {@code heartbeat} period. A node considers another one alive when
+ * it cannot lock its file (the OS releases the locks of dead processes, so
+ * crashes are noticed on the next scan) and its heartbeat is more recent than
+ * {@code timeout} (which catches hung processes). Files of nodes dead for
+ * longer than the timeout are deleted, unless they were modified within the
+ * timeout (a node that just created its file may not have locked it yet). A
+ * node whose file was deleted anyway re-creates it on its next heartbeat.
+ * Nodes leaving gracefully delete their file.
+ *
+ * <p>
+ * Each scan of the directory calls the listener when the set of live members
+ * changed. Nodes may briefly disagree on the membership (at most a heartbeat
+ * period), during which a component can be owned by two nodes or none.
+ */
+public final class ClusterMembership implements MetricsSource, AutoCloseable {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(ClusterMembership.class);
+
+  static final String EXTENSION = ".node";
+
+  private final Path directory;
+  private final String nodeId;
+  private final Duration heartbeat;
+  private final Duration timeout;
+  private final Consumer<Set<String>> listener;
+
+  private final Path file;
+  /**
+   * Lock of the node file, on the channel heartbeats are written to. Replaced
+   * when the file has to be re-created.
+   */
+  private FileLock lock;
+  private final ByteBuffer heartbeatBuffer = ByteBuffer.allocate(Long.BYTES);
+
+  private final LongAdder changes = new LongAdder();
+
+  private volatile Set<String> members;
+  private volatile ScheduledFuture<?> task;
+
+  private ClusterMembership(Path directory, String nodeId, Duration heartbeat, Duration timeout, Consumer<Set<String>> listener, Path file, 
+      FileLock lock) {
+    this.directory = directory;
+    this.nodeId = nodeId;
+    this.heartbeat = heartbeat;
+    this.timeout = timeout;
+    this.listener = listener;
+    this.file = file;
+    this.lock = lock;
+    this.members = ImmutableSet.of(nodeId);
+  }
+
+  /**
+   * Joins the cluster of {@code directory} (created if needed) as
+   * {@code nodeId}.
+   *
+   * @throws IOException if the node file cannot be locked, e.g. if a live node
+   *                     already has this id
+   */
+  public static ClusterMembership join(Path directory, String nodeId, Duration heartbeat, Duration timeout, Consumer<Set<String>> listener) 
+      throws IOException {
+    Preconditions.checkArgument(timeout.compareTo(heartbeat) > 0, "timeout must be longer than the heartbeat period");
+    Files.createDirectories(directory);
+    Path file = directory.resolve(nodeId + EXTENSION);
+    ClusterMembership membership = new ClusterMembership(directory, nodeId, heartbeat, timeout, listener, file, lock(file));
+    membership.beat();
+    LOGGER.info("Node {} joined cluster {}", nodeId, directory);
+    return membership;
+  }
+
+  /**
+   * Scans the directory now, then beats and scans every heartbeat period on
+   * {@code executor}.
+   */
+  public void start(ScheduledExecutorService executor) {
+    scan();
+    task = executor.scheduleAtFixedRate(() -> {
+      try {
+        beat();
+        scan();
+      } catch (IOException | RuntimeException e) {
+        LOGGER.error("Error while updating the membership of cluster {}", directory, e);
+      }
+    }, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public String nodeId() {
+    return nodeId;
+  }
+
+  public Duration heartbeat() {
+    return heartbeat;
+  }
+
+  /**
+   * Live members as of the latest scan, this node included.
+   */
+  public Set<String> members() {
+    return members;
+  }
+
+  /**
+   * Creates (if needed) and locks the node file {@code file}.
+   *
+   * @throws IOException if it is locked, e.g. if a live node already has this
+   *                     id
+   */
+  private static FileLock lock(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    if (lock == null) {
+      channel.close();
+      String name = file.getFileName().toString();
+      throw new IOException("Node " + name.substring(0, name.length() - EXTENSION.length()) + " is already a live member of " + file.getParent());
+    }
+    return lock;
+  }
+
+  private synchronized void beat() throws IOException {
+    if (!Files.exists(file)) {
+      // heartbeats would go to an unlinked file, and other nodes would not see this one
+      LOGGER.warn("File of node {} was deleted, re-creating it", nodeId);
+      FileLock previous = lock;
+      lock = lock(file);
+      previous.channel().close();
+    }
+    heartbeatBuffer.clear();
+    heartbeatBuffer.putLong(System.currentTimeMillis()).flip();
+    while (heartbeatBuffer.hasRemaining()) {
+      lock.channel().write(heartbeatBuffer, heartbeatBuffer.position());
+    }
+  }
+
+  /**
+   * Lists the live members, and calls the listener if they changed.
+   */
+  private synchronized void scan() {
+    Set<String> live = new TreeSet<>();
+    live.add(nodeId);
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).forEach(file -> {
+        String id = file.getFileName().toString();
+        id = id.substring(0, id.length() - EXTENSION.length());
+        if (!id.equals(nodeId) && isAlive(file)) {
+          live.add(id);
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.error("Unable to list the members of cluster {}, keeping the current ones", directory, e);
+      return;
+    }
+    if (!live.equals(members)) {
+      LOGGER.info("Members of cluster {}: {} (were {})", directory, live, members);
+      members = ImmutableSet.copyOf(live);
+      changes.increment();
+      listener.accept(members);
+    }
+  }
+
+  private boolean isAlive(Path file) {
+    try (FileChannel other = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+      while (buffer.hasRemaining() && other.read(buffer, buffer.position()) > 0) {
+        // read the heartbeat
+      }
+      long lastBeat = buffer.position() == Long.BYTES ? buffer.getLong(0) : 0;
+      boolean stale = System.currentTimeMillis() - lastBeat > timeout.toMillis();
+      try (FileLock otherLock = other.tryLock()) {
+        if (otherLock == null) {
+          // locked by a live process
+          return !stale;
+        }
+        // a node locks its file right after creating it, before its first heartbeat
+        if (stale && System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > timeout.toMillis()) {
+          LOGGER.info("Removing the file of dead node {}", file);
+          Files.deleteIfExists(file);
+        }
+        return false;
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to check node file {}", file, e);
+      return false;
+    }
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    writer.gauge("cerberus_cluster_members", "Number of live members of the cluster, as seen by this node", members.size(), "node", nodeId);
+    writer.counter("cerberus_cluster_membership_changes_total", "Number of changes of the membership of the cluster", changes.sum(), "node", nodeId);
+  }
+
+  /**
+   * Leaves the cluster: the node file is deleted, so that other nodes notice on
+   * their next scan.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    ScheduledFuture<?> t = task;
+    if (t != null) {
+      t.cancel(false);
+    }
+    Files.deleteIfExists(file);
+    lock.release();
+    lock.channel().close();
+    LOGGER.info("Node {} left cluster {}", nodeId, directory);
+  }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Consistent hashing of keys (component names) onto cluster members. Each
+ * member is placed at {@code virtualNodes} points of a 32 bits ring, and a key
+ * belongs to the member of the first point at or after its hash. When a member
+ * joins or leaves, only the keys of the arcs it gains or loses move, about
+ * 1/N of them, and the virtual nodes keep the shares balanced.
+ */
+public final class HashRing {
+
+  private static final HashFunction HASH = Hashing.murmur3_32_fixed();
+
+  private final Set<String> members;
+  private final int[] points;
+  private final String[] owners;
+
+  private HashRing(Set<String> members, int[] points, String[] owners) {
+    this.members = members;
+    this.points = points;
+    this.owners = owners;
+  }
+
+  public static HashRing of(Collection<String> members, int virtualNodes) {
+    Preconditions.checkArgument(!members.isEmpty(), "a ring needs at least one member");
+    Preconditions.checkArgument(virtualNodes > 0, "virtualNodes must be positive");
+    Set<String> sortedMembers = ImmutableSet.copyOf(members.stream().sorted().toArray(String[]::new));
+    long[] entries = new long[sortedMembers.size() * virtualNodes];
+    String[] byIndex = sortedMembers.toArray(new String[0]);
+    int n = 0;
+    for (int m = 0; m < byIndex.length; m++) {
+      for (int v = 0; v < virtualNodes; v++) {
+        // point in the high bits, member index in the low bits: sorting orders
+        // points, and members on collisions
+        entries[n++] = ((long)hash(byIndex[m] + '#' + v) << 32) | m;
+      }
+    }
+    Arrays.sort(entries);
+    int[] points = new int[entries.length];
+    String[] owners = new String[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      points[i] = (int)(entries[i] >> 32);
+      owners[i] = byIndex[(int)entries[i]];
+    }
+    return new HashRing(sortedMembers, points, owners);
+  }
+
+  private static int hash(String key) {
+    return HASH.hashString(key, StandardCharsets.UTF_8).asInt();
+  }
+
+  public Set<String> members() {
+    return members;
+  }
+
+  /**
+   * Member owning {@code key}.
+   */
+  public String owner(String key) {
+    int i = Arrays.binarySearch(points, hash(key));
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return owners[i == points.length ? 0 : i];
+  }
+}
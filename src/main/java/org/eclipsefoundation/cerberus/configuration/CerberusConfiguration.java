@@ -13,6 +13,7 @@ import java.util.List;
 import javax.annotation.Nullable;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
 import com.squareup.moshi.Json;
 import com.squareup.moshi.JsonClass;
 
@@ -69,6 +70,34 @@ public abstract class CerberusConfiguration {
       @Json(name = "fetch_rate")
       @Nullable
       public abstract Duration fetchRate();
+
+      /**
+       * Status updates are coalesced and issued once per window.
+       */
+      @Json(name = "update_window")
+      @Nullable
+      public abstract Duration updateWindow();
+
+      /**
+       * Maximum number of status updates issued per window.
+       */
+      @Json(name = "update_budget")
+      @Nullable
+      public abstract Integer updateBudget();
+
+      /**
+       * Maximum sustained rate of API calls (per second), fetches included.
+       */
+      @Json(name = "rate_limit")
+      @Nullable
+      public abstract Double rateLimit();
+
+      /**
+       * Number of API calls that can be issued at once after a quiet period.
+       */
+      @Json(name = "rate_limit_burst")
+      @Nullable
+      public abstract Integer rateLimitBurst();
     }
   }
 
@@ -79,9 +108,59 @@ public abstract class CerberusConfiguration {
     @Nullable
     public abstract List<HttpStatus> httpStatus();
 
+    @Json(name = "http_response_time")
+    @Nullable
+    public abstract List<HttpResponseTime> httpResponseTime();
+
+    /**
+     * How probes handle response bodies.
+     */
+    @AutoValue
+    @JsonClass(generateAdapter = true, generator = "avm")
+    public static abstract class Body {
+
+      public static enum Policy {
+        /** Read the whole body, without retaining it */
+        @Json(name = "discard") DISCARD,
+        /** Send HEAD requests, there is no body to read */
+        @Json(name = "head_only") HEAD_ONLY,
+        /** Read up to {@code limit} bytes, then close the connection */
+        @Json(name = "limit") LIMIT;
+      }
+
+      @Nullable
+      public abstract Policy policy();
+
+      /**
+       * Maximum number of bytes read with the {@link Policy#LIMIT} policy.
+       */
+      @Nullable
+      public abstract Long limit();
+
+      /**
+       * Text the body must contain.
+       */
+      @Nullable
+      public abstract String contains();
+
+      /**
+       * Regular expression that must match the body, within {@link #checkWindow()}.
+       */
+      @Nullable
+      public abstract String matches();
+
+      /**
+       * Number of characters of the body kept in memory for the
+       * {@link #matches()} check, i.e. maximum length of a match.
+       */
+      @Json(name = "check_window")
+      @Nullable
+      public abstract Integer checkWindow();
+    }
+
     @AutoValue
     @JsonClass(generateAdapter = true, generator = "avm")
-    public static abstract class HttpStatus implements MonitorConfiguration {
+    public static abstract class HttpStatus implements HttpMonitorConfiguration {
       @Json(name = "component_name")
       @Nullable
       public abstract String componentName();
@@ -92,6 +171,13 @@ public abstract class CerberusConfiguration {
       @Nullable
       public abstract String method();
 
+      /**
+       * Whether probes revalidate the last response with {@code If-None-Match} /
+       * {@code If-Modified-Since}, so that an unchanged target answers 304.
+       */
+      @Nullable
+      public abstract Boolean conditional();
+
       @Json(name = "status_code_min")
       @Nullable
       public abstract Integer statusCodeMin();
@@ -106,6 +192,9 @@ public abstract class CerberusConfiguration {
       @Nullable
       public abstract Duration readTimeout();
 
+      @Nullable
+      public abstract Body body();
+
       @Json(name = "monitoring_history")
       @Nullable
       public abstract Duration monitoringHistory();
@@ -118,13 +207,87 @@ public abstract class CerberusConfiguration {
       @Nullable
       public abstract Duration period();
 
+      @Json(name = "adaptive_period")
+      @Nullable
+      public abstract AdaptivePeriod adaptivePeriod();
+
       @Json(name = "anomalies_detection")
       @Nullable
       public abstract AnomaliesDetection anomaliesDetection();
 
       @AutoValue
       @JsonClass(generateAdapter = true, generator = "avm")
-      public static abstract class AnomaliesDetection implements MonitorConfiguration.AnomaliesDetectionConfiguration {
+      public static abstract class AdaptivePeriod implements MonitorConfiguration.AdaptivePeriodConfiguration {
+
+        public static final double DEFAULT_BACKOFF_FACTOR = 2;
+
+        @Json(name = "min_period")
+        @Nullable
+        public abstract Duration minPeriod();
+
+        @Json(name = "max_period")
+        @Nullable
+        public abstract Duration maxPeriod();
+
+        @Json(name = "backoff_factor")
+        @Nullable
+        public abstract Double backoffFactor();
+
+        public abstract Builder toBuilder();
+
+        public static Builder builder() {
+          return new AutoValue_CerberusConfiguration_Monitor_HttpStatus_AdaptivePeriod.Builder();
+        }
+
+        @AutoValue.Builder
+        public static abstract class Builder {
+          public abstract Builder minPeriod(Duration minPeriod);
+          public abstract Builder maxPeriod(Duration maxPeriod);
+          public abstract Builder backoffFactor(Double backoffFactor);
+          public abstract AdaptivePeriod build();
+        }
+
+        public AdaptivePeriod withDefault(DefaultConfiguration defaultConfiguration) {
+          Builder builder = builder().backoffFactor(DEFAULT_BACKOFF_FACTOR);
+          AdaptivePeriod defaults = defaultConfiguration.httpStatus().adaptivePeriod();
+          if (defaults != null) {
+            if (defaults.minPeriod() != null)
+              builder.minPeriod(defaults.minPeriod());
+            if (defaults.maxPeriod() != null)
+              builder.maxPeriod(defaults.maxPeriod());
+            if (defaults.backoffFactor() != null)
+              builder.backoffFactor(defaults.backoffFactor());
+          }
+          if (minPeriod() != null)
+            builder.minPeriod(minPeriod());
+          if (maxPeriod() != null)
+            builder.maxPeriod(maxPeriod());
+          if (backoffFactor() != null)
+            builder.backoffFactor(backoffFactor());
+          return builder.build();
+        }
+
+        /**
+         * Checks this adaptive period (with defaults applied) against the
+         * period and monitoring history of {@code monitor}.
+         *
+         * @throws IllegalArgumentException if the periods are inconsistent
+         */
+        public void validate(HttpStatus monitor) {
+          String component = monitor.componentName();
+          Preconditions.checkArgument(minPeriod() != null && maxPeriod() != null, 
+            "adaptive_period of %s requires min_period and max_period", component);
+          Preconditions.checkArgument(minPeriod().compareTo(Duration.ZERO) > 0 && minPeriod().compareTo(monitor.period()) <= 0 
+            && monitor.period().compareTo(maxPeriod()) <= 0, "adaptive_period of %s requires 0 < min_period <= period <= max_period", component);
+          Preconditions.checkArgument(maxPeriod().compareTo(monitor.monitoringHistory()) <= 0, 
+            "max_period of %s must not exceed its monitoring_history", component);
+          Preconditions.checkArgument(backoffFactor() >= 1, "backoff_factor of %s must be at least 1", component);
+        }
+      }
+
+      @AutoValue
+      @JsonClass(generateAdapter = true, generator = "avm")
+      public static abstract class AnomaliesDetection implements MonitorConfiguration.AnomaliesCountConfiguration {
         @Json(name = "degraded_performance_threshold")
         @Nullable
         public abstract Integer degradedPerformanceThreshold();
@@ -188,13 +351,16 @@ public abstract class CerberusConfiguration {
         public abstract Builder componentName(String componentName);
         public abstract Builder target(String target);
         public abstract Builder method(String method);
+        public abstract Builder conditional(Boolean conditional);
         public abstract Builder statusCodeMin(Integer statusCodeMin);
         public abstract Builder statusCodeMax(Integer statusCodeMax);
         public abstract Builder connectTimeout(Duration connectTimeout);
         public abstract Builder readTimeout(Duration readTimeout);
+        public abstract Builder body(Body body);
         public abstract Builder monitoringHistory(Duration monitoringHistory);
         public abstract Builder initialDelay(Duration initialDelay);
         public abstract Builder period(Duration period);
+        public abstract Builder adaptivePeriod(AdaptivePeriod adaptivePeriod);
         public abstract Builder anomaliesDetection(AnomaliesDetection anomaliesDetection);
         public abstract HttpStatus build();
       }
@@ -207,6 +373,8 @@ public abstract class CerberusConfiguration {
           builder.target(target());
         if (method() != null)
           builder.method(method());
+        if (conditional() != null)
+          builder.conditional(conditional());
         if (statusCodeMin() != null)
           builder.statusCodeMin(statusCodeMin());
         if (statusCodeMax() != null)
@@ -215,16 +383,255 @@ public abstract class CerberusConfiguration {
           builder.connectTimeout(connectTimeout());
         if (readTimeout() != null)
           builder.readTimeout(readTimeout());
+        if (body() != null)
+          builder.body(body());
         if (monitoringHistory() != null)
           builder.monitoringHistory(monitoringHistory());
         if (initialDelay() != null)
           builder.initialDelay(initialDelay());
         if (period() != null)
           builder.period(period());
+        if (adaptivePeriod() != null)
+          builder.adaptivePeriod(adaptivePeriod().withDefault(defaultConfiguration));
+        else if (defaultConfiguration.httpStatus().adaptivePeriod() != null)
+          builder.adaptivePeriod(defaultConfiguration.httpStatus().adaptivePeriod().withDefault(defaultConfiguration));
         if (anomaliesDetection() != null)
           builder.anomaliesDetection(anomaliesDetection().withDefault(defaultConfiguration));
         return builder.build();
       }
+
+      /**
+       * Checks the consistency of this configuration (with defaults applied),
+       * so that invalid configurations are rejected before any monitor is
+       * created or replaced.
+       *
+       * @return this configuration
+       * @throws IllegalArgumentException if it is inconsistent
+       */
+      public HttpStatus validate() {
+        if (adaptivePeriod() != null) {
+          adaptivePeriod().validate(this);
+        }
+        return this;
+      }
+    }
+
+    @AutoValue
+    @JsonClass(generateAdapter = true, generator = "avm")
+    public static abstract class HttpResponseTime implements HttpMonitorConfiguration {
+      @Json(name = "component_name")
+      @Nullable
+      public abstract String componentName();
+
+      @Nullable
+      public abstract String target();
+
+      @Nullable
+      public abstract String method();
+
+      /**
+       * Whether probes revalidate the last response with {@code If-None-Match} /
+       * {@code If-Modified-Since}, so that an unchanged target answers 304.
+       */
+      @Nullable
+      public abstract Boolean conditional();
+
+      @Json(name = "status_code_min")
+      @Nullable
+      public abstract Integer statusCodeMin();
+
+      @Json(name = "status_code_max")
+      @Nullable
+      public abstract Integer statusCodeMax();
+
+      @Nullable
+      public abstract Duration connectTimeout();
+
+      @Nullable
+      public abstract Duration readTimeout();
+
+      @Nullable
+      public abstract Body body();
+
+      @Json(name = "monitoring_history")
+      @Nullable
+      public abstract Duration monitoringHistory();
+
+      @Json(name = "initial_delay")
+      @Nullable
+      public abstract Duration initialDelay();
+
+      @Json(name = "period")
+      @Nullable
+      public abstract Duration period();
+
+      @Json(name = "anomalies_detection")
+      @Nullable
+      public abstract AnomaliesDetection anomaliesDetection();
+
+      @AutoValue
+      @JsonClass(generateAdapter = true, generator = "avm")
+      public static abstract class AnomaliesDetection implements MonitorConfiguration.ResponseTimeThresholdsConfiguration {
+        @Json(name = "degraded_performance_p95")
+        @Nullable
+        public abstract Duration degradedPerformanceP95();
+
+        @Json(name = "partial_outage_p99")
+        @Nullable
+        public abstract Duration partialOutageP99();
+
+        @Json(name = "major_outage_p99")
+        @Nullable
+        public abstract Duration majorOutageP99();
+
+        @Json(name = "period")
+        @Nullable
+        public abstract Duration period();
+
+        @Json(name = "initial_delay")
+        @Nullable
+        public abstract Duration initialDelay();
+
+        public abstract Builder toBuilder();
+
+        public static Builder builder() {
+          return new AutoValue_CerberusConfiguration_Monitor_HttpResponseTime_AnomaliesDetection.Builder();
+        }
+
+        @AutoValue.Builder
+        public static abstract class Builder {
+          public abstract Builder degradedPerformanceP95(Duration degradedPerformanceP95);
+          public abstract Builder partialOutageP99(Duration partialOutageP99);
+          public abstract Builder majorOutageP99(Duration majorOutageP99);
+          public abstract Builder period(Duration period);
+          public abstract Builder initialDelay(Duration initialDelay);
+          public abstract AnomaliesDetection build();
+        }
+
+        public AnomaliesDetection withDefault(DefaultConfiguration defaultConfiguration) {
+          Builder builder = defaultAnomaliesDetection(defaultConfiguration).toBuilder();
+          if (degradedPerformanceP95() != null)
+            builder.degradedPerformanceP95(degradedPerformanceP95());
+          if (partialOutageP99() != null)
+            builder.partialOutageP99(partialOutageP99());
+          if (majorOutageP99() != null)
+            builder.majorOutageP99(majorOutageP99());
+          if (period() != null)
+            builder.period(period());
+          if (initialDelay() != null)
+            builder.initialDelay(initialDelay());
+          return builder.build();
+        }
+
+        private static AnomaliesDetection defaultAnomaliesDetection(DefaultConfiguration defaultConfiguration) {
+          Builder builder = builder()
+            .degradedPerformanceP95(Duration.ofSeconds(1))
+            .partialOutageP99(Duration.ofSeconds(5))
+            .majorOutageP99(Duration.ofSeconds(15))
+            .period(Duration.ofMinutes(1))
+            .initialDelay(Duration.ofMinutes(1));
+          if (defaultConfiguration == null || defaultConfiguration.httpResponseTime() == null 
+              || defaultConfiguration.httpResponseTime().anomaliesDetection() == null) {
+            return builder.build();
+          }
+          AnomaliesDetection defaults = defaultConfiguration.httpResponseTime().anomaliesDetection();
+          if (defaults.degradedPerformanceP95() != null)
+            builder.degradedPerformanceP95(defaults.degradedPerformanceP95());
+          if (defaults.partialOutageP99() != null)
+            builder.partialOutageP99(defaults.partialOutageP99());
+          if (defaults.majorOutageP99() != null)
+            builder.majorOutageP99(defaults.majorOutageP99());
+          if (defaults.period() != null)
+            builder.period(defaults.period());
+          if (defaults.initialDelay() != null)
+            builder.initialDelay(defaults.initialDelay());
+          return builder.build();
+        }
+      }
+
+      public abstract Builder toBuilder();
+
+      public static Builder builder() {
+        return new AutoValue_CerberusConfiguration_Monitor_HttpResponseTime.Builder();
+      }
+
+      @AutoValue.Builder
+      public static abstract class Builder {
+        public abstract Builder componentName(String componentName);
+        public abstract Builder target(String target);
+        public abstract Builder method(String method);
+        public abstract Builder conditional(Boolean conditional);
+        public abstract Builder statusCodeMin(Integer statusCodeMin);
+        public abstract Builder statusCodeMax(Integer statusCodeMax);
+        public abstract Builder connectTimeout(Duration connectTimeout);
+        public abstract Builder readTimeout(Duration readTimeout);
+        public abstract Builder body(Body body);
+        public abstract Builder monitoringHistory(Duration monitoringHistory);
+        public abstract Builder initialDelay(Duration initialDelay);
+        public abstract Builder period(Duration period);
+        public abstract Builder anomaliesDetection(AnomaliesDetection anomaliesDetection);
+        public abstract HttpResponseTime build();
+      }
+
+      /**
+       * Unlike {@code http_status}, the {@code http_response_time} default configuration
+       * is optional, as this monitor type has been introduced later. When it is missing,
+       * the probing settings default to the {@code http_status} ones.
+       */
+      public HttpResponseTime withDefault(DefaultConfiguration defaultConfiguration) {
+        Builder builder = defaultBuilder(defaultConfiguration);
+        if (componentName() != null)
+          builder.componentName(componentName());
+        if (target() != null)
+          builder.target(target());
+        if (method() != null)
+          builder.method(method());
+        if (conditional() != null)
+          builder.conditional(conditional());
+        if (statusCodeMin() != null)
+          builder.statusCodeMin(statusCodeMin());
+        if (statusCodeMax() != null)
+          builder.statusCodeMax(statusCodeMax());
+        if (connectTimeout() != null)
+          builder.connectTimeout(connectTimeout());
+        if (readTimeout() != null)
+          builder.readTimeout(readTimeout());
+        if (body() != null)
+          builder.body(body());
+        if (monitoringHistory() != null)
+          builder.monitoringHistory(monitoringHistory());
+        if (initialDelay() != null)
+          builder.initialDelay(initialDelay());
+        if (period() != null)
+          builder.period(period());
+        builder.anomaliesDetection((anomaliesDetection() != null ? anomaliesDetection() : AnomaliesDetection.builder().build())
+          .withDefault(defaultConfiguration));
+        return builder.build();
+      }
+
+      private static Builder defaultBuilder(DefaultConfiguration defaultConfiguration) {
+        if (defaultConfiguration == null) {
+          return builder();
+        }
+        if (defaultConfiguration.httpResponseTime() != null) {
+          return defaultConfiguration.httpResponseTime().toBuilder();
+        }
+        HttpStatus httpStatus = defaultConfiguration.httpStatus();
+        if (httpStatus == null) {
+          return builder();
+        }
+        return builder()
+          .method(httpStatus.method())
+          .conditional(httpStatus.conditional())
+          .statusCodeMin(httpStatus.statusCodeMin())
+          .statusCodeMax(httpStatus.statusCodeMax())
+          .connectTimeout(httpStatus.connectTimeout())
+          .readTimeout(httpStatus.readTimeout())
+          .body(httpStatus.body())
+          .monitoringHistory(httpStatus.monitoringHistory())
+          .initialDelay(httpStatus.initialDelay())
+          .period(httpStatus.period());
+      }
     }
   }
 
@@ -234,5 +641,9 @@ public abstract class CerberusConfiguration {
     @Json(name = "http_status")
     @Nullable
     public abstract HttpStatus httpStatus();
+
+    @Json(name = "http_response_time")
+    @Nullable
+    public abstract Monitor.HttpResponseTime httpResponseTime();
   }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.configuration;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+
+/**
+ * ISO-8601 representation of {@link Duration}s (e.g. {@code PT30S}).
+ *
+ * <p>
+ * This is a plain {@link JsonAdapter} rather than {@code @FromJson} /
+ * {@code @ToJson} methods, which Moshi discovers and invokes by reflection:
+ * it works in native images without any reflection configuration.
+ */
+public final class DurationAdapter extends JsonAdapter<Duration> {
+
+  @Override
+  public Duration fromJson(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonReader.Token.NULL) {
+      return reader.nextNull();
+    }
+    String duration = reader.nextString();
+    try {
+      return Duration.parse(duration);
+    } catch (DateTimeParseException e) {
+      throw new JsonDataException("Invalid duration '" + duration + "' at " + reader.getPath(), e);
+    }
+  }
+
+  @Override
+  public void toJson(JsonWriter writer, Duration duration) throws IOException {
+    if (duration == null) {
+      writer.nullValue();
+    } else {
+      writer.value(duration.toString());
+    }
+  }
+}
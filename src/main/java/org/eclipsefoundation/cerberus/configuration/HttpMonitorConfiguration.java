@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.configuration;
+
+import java.time.Duration;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.Body;
+
+/**
+ * Configuration of the probes of monitors targeting an HTTP endpoint.
+ */
+public interface HttpMonitorConfiguration extends MonitorConfiguration {
+
+  String method();
+
+  Boolean conditional();
+
+  Body body();
+
+  Integer statusCodeMin();
+
+  Integer statusCodeMax();
+
+  Duration connectTimeout();
+
+  Duration readTimeout();
+}
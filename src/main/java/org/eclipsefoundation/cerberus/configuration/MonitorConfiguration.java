@@ -23,15 +23,50 @@ public interface MonitorConfiguration {
 
   AnomaliesDetectionConfiguration anomaliesDetection();
 
+  /**
+   * How the period between probes adapts to the health of the component, or
+   * {@code null} if probes run every {@link #period()}.
+   */
+  default AdaptivePeriodConfiguration adaptivePeriod() {
+    return null;
+  }
+
+  /**
+   * The period between probes starts at the configured period, is multiplied
+   * by {@link #backoffFactor()} after each successful probe while the component
+   * is stably operational (up to {@link #maxPeriod()}), and drops to
+   * {@link #minPeriod()} as soon as a probe fails or the component is not
+   * operational.
+   */
+  interface AdaptivePeriodConfiguration {
+    Duration minPeriod();
+    Duration maxPeriod();
+    Double backoffFactor();
+  }
+
   interface AnomaliesDetectionConfiguration {
     Duration period();
     Duration initialDelay();
-  
+  }
+
+  /**
+   * Anomalies detection based on the number of anomalies in the monitoring history.
+   */
+  interface AnomaliesCountConfiguration extends AnomaliesDetectionConfiguration {
     Integer degradedPerformanceThreshold();
     Integer partialOutageThreshold();
     Integer majorOutageThreshold();
 
-    default Status statusFromAnomaliesCount(int anomaliesCount) {
+    /**
+     * @param anomaliesCount time-weighted number of anomalies: each anomaly
+     *                       counts for the time until the next probe, in
+     *                       periods. It is the plain number of anomalies for
+     *                       probes running every period, and probes running
+     *                       more (resp. less) often than the period weigh less
+     *                       (resp. more), so that thresholds do not depend on
+     *                       the spacing of probes.
+     */
+    default Status statusFromAnomaliesCount(double anomaliesCount) {
       if (anomaliesCount >= majorOutageThreshold()) {
         return Status.MAJOR_OUTAGE;
       } else if (anomaliesCount >= partialOutageThreshold()) {
@@ -43,4 +78,25 @@ public interface MonitorConfiguration {
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Anomalies detection based on response time percentiles over the monitoring history.
+   */
+  interface ResponseTimeThresholdsConfiguration extends AnomaliesDetectionConfiguration {
+    Duration degradedPerformanceP95();
+    Duration partialOutageP99();
+    Duration majorOutageP99();
+
+    default Status statusFromPercentiles(Duration p95, Duration p99) {
+      if (p99.compareTo(majorOutageP99()) >= 0) {
+        return Status.MAJOR_OUTAGE;
+      } else if (p99.compareTo(partialOutageP99()) >= 0) {
+        return Status.PARTIAL_OUTAGE;
+      } else if (p95.compareTo(degradedPerformanceP95()) >= 0) {
+        return Status.DEGRADED_PERFORMANCE;
+      } else {
+        return Status.OPERATIONAL;
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the metrics of a set of {@link MetricsSource}s on {@code /metrics}, in
+ * the Prometheus text format, with the JDK built-in HTTP server. Scrapes are
+ * handled one at a time on the server thread, and only read the sources state,
+ * so they never contend with probes.
+ */
+public final class MetricsServer {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final HttpServer server;
+
+  private final List<MetricsSource> sources;
+
+  private MetricsServer(HttpServer server, List<? extends MetricsSource> sources) {
+    this.server = server;
+    this.sources = ImmutableList.copyOf(sources);
+  }
+
+  public static MetricsServer start(InetSocketAddress address, List<? extends MetricsSource> sources) throws IOException {
+    HttpServer server = HttpServer.create(address, 0);
+    MetricsServer ret = new MetricsServer(server, sources);
+    server.createContext("/metrics", ret::handle);
+    server.start();
+    LOGGER.info("Metrics are available on http://{}:{}/metrics", address.getHostString(), server.getAddress().getPort());
+    return ret;
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      if (!"GET".equals(method) && !"HEAD".equals(method)) {
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      if ("HEAD".equals(method)) {
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  String scrape() {
+    MetricsWriter writer = new MetricsWriter();
+    for (MetricsSource source : sources) {
+      try {
+        source.writeMetrics(writer);
+      } catch (RuntimeException e) {
+        LOGGER.error("Unable to collect metrics from {}", source, e);
+      }
+    }
+    return writer.toString();
+  }
+}
@@ -0,0 +1,18 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.metrics;
+
+/**
+ * Something that exposes metrics on the metrics endpoint. Called on each
+ * scrape, from the endpoint thread: implementations must only read state that
+ * is safe to read concurrently (volatile fields, {@code LongAdder}s...).
+ */
+public interface MetricsSource {
+
+  void writeMetrics(MetricsWriter writer);
+}
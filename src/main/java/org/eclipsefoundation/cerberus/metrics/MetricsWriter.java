@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.metrics;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import org.eclipsefoundation.cerberus.monitors.LatencyHistogram;
+
+/**
+ * Builds a scrape in the Prometheus text exposition format (version 0.0.4).
+ *
+ * <p>
+ * Samples of a metric family must be contiguous in the output, while sources
+ * each write samples of several families: samples are buffered per family, in
+ * order of first use, and concatenated by {@link #toString()}.
+ *
+ * <p>
+ * Labels are given as alternating names and values. Not thread safe, one
+ * instance per scrape.
+ */
+public final class MetricsWriter {
+
+  private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+  private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+  /**
+   * Per-bucket counts of the histogram being written, reused by all summaries
+   */
+  private long[] counts;
+
+  public MetricsWriter counter(String name, String help, long value, String... labels) {
+    sample(family(name, "counter", help), name, labels, null, null).append(value).append('\n');
+    return this;
+  }
+
+  public MetricsWriter counter(String name, String help, double value, String... labels) {
+    sample(family(name, "counter", help), name, labels, null, null).append(value).append('\n');
+    return this;
+  }
+
+  public MetricsWriter gauge(String name, String help, long value, String... labels) {
+    sample(family(name, "gauge", help), name, labels, null, null).append(value).append('\n');
+    return this;
+  }
+
+  public MetricsWriter gauge(String name, String help, double value, String... labels) {
+    sample(family(name, "gauge", help), name, labels, null, null).append(value).append('\n');
+    return this;
+  }
+
+  /**
+   * Writes the 0.5, 0.95 and 0.99 quantiles (in seconds) and the count of the
+   * samples of {@code histogram} in its window ending at {@code nowEpochNanos}.
+   * There is no {@code _sum}, as histograms do not keep one.
+   */
+  public MetricsWriter summary(String name, String help, LatencyHistogram histogram, long nowEpochNanos, String... labels) {
+    StringBuilder family = family(name, "summary", help);
+    if (counts == null) {
+      counts = new long[LatencyHistogram.bucketsCount()];
+    }
+    // a single pass over the histogram, consistent across quantiles
+    long count = histogram.snapshot(nowEpochNanos, counts);
+    if (count > 0) {
+      for (double quantile : QUANTILES) {
+        sample(family, name, labels, "quantile", Double.toString(quantile))
+          .append(seconds(LatencyHistogram.percentile(counts, count, quantile * 100))).append('\n');
+      }
+    }
+    sample(family, name + "_count", labels, null, null).append(count).append('\n');
+    return this;
+  }
+
+  public static double seconds(Duration duration) {
+    return duration.toNanos() / 1e9;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder ret = new StringBuilder();
+    families.values().forEach(ret::append);
+    return ret.toString();
+  }
+
+  private StringBuilder family(String name, String type, String help) {
+    return families.computeIfAbsent(name, n -> new StringBuilder()
+      .append("# HELP ").append(n).append(' ').append(help).append('\n')
+      .append("# TYPE ").append(n).append(' ').append(type).append('\n'));
+  }
+
+  private static StringBuilder sample(StringBuilder family, String name, String[] labels, String extraLabel, String extraValue) {
+    Preconditions.checkArgument(labels.length % 2 == 0, "labels must be name/value pairs");
+    family.append(name);
+    if (labels.length > 0 || extraLabel != null) {
+      family.append('{');
+      for (int i = 0; i < labels.length; i += 2) {
+        label(family, labels[i], labels[i + 1]).append(',');
+      }
+      if (extraLabel != null) {
+        label(family, extraLabel, extraValue).append(',');
+      }
+      family.setLength(family.length() - 1);
+      family.append('}');
+    }
+    return family.append(' ');
+  }
+
+  private static StringBuilder label(StringBuilder family, String name, String value) {
+    family.append(name).append("=\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\': family.append("\\\\"); break;
+        case '"': family.append("\\\""); break;
+        case '\n': family.append("\\n"); break;
+        default: family.append(c);
+      }
+    }
+    return family.append('"');
+  }
+}
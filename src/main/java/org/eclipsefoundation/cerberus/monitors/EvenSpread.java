@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low-discrepancy sequence (golden ratio additive recurrence) in [0, 1). Whatever
+ * the number of values drawn so far, they are spread almost evenly over the
+ * interval, each new value falling in the largest remaining gap.
+ */
+final class EvenSpread {
+
+  private static final double GOLDEN_RATIO_CONJUGATE = (Math.sqrt(5) - 1) / 2;
+
+  private final AtomicLong index = new AtomicLong();
+
+  double next() {
+    double value = index.getAndIncrement() * GOLDEN_RATIO_CONJUGATE;
+    return value - Math.floor(value);
+  }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MonitorScheduler} backed by a {@link ScheduledExecutorService}. Ticks
+ * are timed by the executor and tasks are executed on {@code worker}.
+ */
+public class ExecutorMonitorScheduler implements MonitorScheduler {
+
+  private final ScheduledExecutorService scheduler;
+  private final Executor worker;
+  private final EvenSpread spread = new EvenSpread();
+
+  public ExecutorMonitorScheduler(ScheduledExecutorService scheduler, Executor worker) {
+    this.scheduler = scheduler;
+    this.worker = worker;
+  }
+
+  @Override
+  public Registration scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+    ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(() -> worker.execute(task), 
+      initialDelay.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    return () -> future.cancel(false);
+  }
+
+  /**
+   * The next execution is scheduled by the worker once the task completed, as
+   * the executor would only see the (immediate) dispatch to the worker.
+   */
+  @Override
+  public Registration scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay) {
+    FixedDelayTask fixedDelay = new FixedDelayTask(task, delay.toMillis());
+    fixedDelay.scheduleNext(initialDelay.toMillis());
+    return fixedDelay;
+  }
+
+  @Override
+  public Registration schedule(Runnable task, Duration delay) {
+    ScheduledFuture<?> future = scheduler.schedule(() -> worker.execute(task), delay.toNanos(), TimeUnit.NANOSECONDS);
+    return () -> future.cancel(false);
+  }
+
+  @Override
+  public Duration spread(Duration window) {
+    return Duration.ofMillis((long)(spread.next() * window.toMillis()));
+  }
+
+  private final class FixedDelayTask implements Registration {
+    private final Runnable task;
+    private final long delayMillis;
+    private volatile boolean cancelled;
+    private volatile ScheduledFuture<?> next;
+
+    FixedDelayTask(Runnable task, long delayMillis) {
+      this.task = task;
+      this.delayMillis = delayMillis;
+    }
+
+    void scheduleNext(long delayMillis) {
+      next = scheduler.schedule(() -> worker.execute(this::run), delayMillis, TimeUnit.MILLISECONDS);
+      // cancel() may have missed the new future
+      if (cancelled) {
+        next.cancel(false);
+      }
+    }
+
+    private void run() {
+      try {
+        task.run();
+      } finally {
+        if (!cancelled) {
+          try {
+            scheduleNext(delayMillis);
+          } catch (RejectedExecutionException e) {
+            // the scheduler is shut down
+          }
+        }
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      ScheduledFuture<?> future = next;
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Streaming latency sketch over a sliding time window, in fixed memory.
+ *
+ * <p>
+ * Latencies are counted in log-linear buckets (HdrHistogram-style): each power
+ * of two is split in {@value #SUB_BUCKETS} linear sub-buckets, which bounds the
+ * relative error of percentiles to about 6%, from 1 microsecond up to more than an hour.
+ *
+ * <p>
+ * The window is split in {@code slices} (a ring of histograms, each tagged with
+ * the period of time it counts). Recording adds to the slice of the sample
+ * time, which is cleared first when it still counts an older period. Readers
+ * sum the slices of the window. Recording is O(1), percentiles are O(slices *
+ * number of buckets), and memory is {@code slices * }{@value #BUCKETS}
+ * counters, whatever the number of samples.
+ *
+ * <p>
+ * Thread safe, and writers never wait for readers: counters are atomic, and
+ * readers copy them without locking, so an export does not hold up probes. A
+ * writer only locks a slice when it clears it, once per slice duration. A
+ * reader may miss samples recorded while it reads, and sees the oldest slice of
+ * its window partly cleared when a writer moves to the next slice meanwhile:
+ * its result is then somewhere between the window it asked for and the next.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * Values are recorded in microseconds, clamped to 2^32 microseconds (~71 minutes).
+   */
+  private static final int MAX_VALUE_BITS = 32;
+  static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+  /**
+   * Index of the number of samples of a slice, after its buckets
+   */
+  private static final int COUNT = BUCKETS;
+
+  private final long sliceNanos;
+  private final AtomicIntegerArray[] slices;
+  /**
+   * Absolute index (time / sliceNanos) of the period counted by each slice
+   */
+  private final AtomicLongArray periods;
+  /**
+   * Absolute index of the latest period recorded
+   */
+  private final AtomicLong latestPeriod = new AtomicLong(Long.MIN_VALUE);
+
+  public LatencyHistogram(Duration window, int slices) {
+    Preconditions.checkArgument(slices > 0, "slices must be positive");
+    Preconditions.checkArgument(!window.isNegative() && !window.isZero(), "window must be positive");
+    this.sliceNanos = Math.max(1, window.toNanos() / slices);
+    this.slices = new AtomicIntegerArray[slices];
+    this.periods = new AtomicLongArray(slices);
+    for (int i = 0; i < slices; i++) {
+      this.slices[i] = new AtomicIntegerArray(BUCKETS + 1);
+      this.periods.set(i, Long.MIN_VALUE);
+    }
+  }
+
+  /**
+   * Samples older than the latest one recorded are counted with it.
+   *
+   * @param epochNanos time of the sample, see {@link MonitorHistory#nowEpochNanos()}
+   */
+  public void record(long epochNanos, long latencyNanos) {
+    long period = Math.max(Math.floorDiv(epochNanos, sliceNanos), latestPeriod.get());
+    int index = (int)Math.floorMod(period, (long)slices.length);
+    if (periods.get(index) < period) {
+      clear(index, period);
+    }
+    AtomicIntegerArray slice = slices[index];
+    slice.incrementAndGet(bucket(Math.max(0, latencyNanos / 1000)));
+    slice.incrementAndGet(COUNT);
+  }
+
+  /**
+   * Reuses the slice at {@code index} for {@code period}, unless a concurrent
+   * writer already did.
+   */
+  private void clear(int index, long period) {
+    AtomicIntegerArray slice = slices[index];
+    synchronized (slice) {
+      if (periods.get(index) < period) {
+        for (int i = 0; i <= COUNT; i++) {
+          slice.set(i, 0);
+        }
+        periods.set(index, period);
+      }
+    }
+    latestPeriod.accumulateAndGet(period, Math::max);
+  }
+
+  /**
+   * Number of samples in the window ending at {@code nowEpochNanos}.
+   */
+  public long count(long nowEpochNanos) {
+    long last = lastPeriod(nowEpochNanos);
+    long count = 0;
+    for (int i = 0; i < slices.length; i++) {
+      if (inWindow(periods.get(i), last)) {
+        count += slices[i].get(COUNT);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Value at {@code percentile} (in ]0, 100]) of the samples in the window ending
+   * at {@code nowEpochNanos}. This is the upper bound of the bucket holding that
+   * rank, so the result errs on the pessimistic side. Returns
+   * {@link Duration#ZERO} if there is no sample.
+   */
+  public Duration percentile(double percentile, long nowEpochNanos) {
+    long[] counts = new long[BUCKETS];
+    return percentile(counts, snapshot(nowEpochNanos, counts), percentile);
+  }
+
+  /**
+   * Value at {@code percentile} (in ]0, 100]) of the samples of a
+   * {@link #snapshot(long, long[])}, see {@link #percentile(double, long)}.
+   *
+   * @param counts the per-bucket counts of the snapshot
+   * @param count  the number of samples of the snapshot
+   */
+  public static Duration percentile(long[] counts, long count, double percentile) {
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100, "percentile must be in ]0, 100]");
+    if (count == 0) {
+      return Duration.ZERO;
+    }
+    long rank = (long)Math.ceil(percentile / 100 * count);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Duration.ofNanos(upperBound(i) * 1000);
+      }
+    }
+    return Duration.ofNanos(upperBound(BUCKETS - 1) * 1000);
+  }
+
+  /**
+   * Copies the per-bucket counts of the window ending at {@code nowEpochNanos}
+   * into {@code countsOut} (of length {@link #bucketsCount()} at least), so that
+   * several percentiles are computed from a single pass over the slices.
+   *
+   * @return the total number of samples
+   */
+  public long snapshot(long nowEpochNanos, long[] countsOut) {
+    long last = lastPeriod(nowEpochNanos);
+    Arrays.fill(countsOut, 0, BUCKETS, 0);
+    long count = 0;
+    for (int i = 0; i < slices.length; i++) {
+      if (!inWindow(periods.get(i), last)) {
+        continue;
+      }
+      AtomicIntegerArray slice = slices[i];
+      for (int b = 0; b < BUCKETS; b++) {
+        int bucketCount = slice.get(b);
+        countsOut[b] += bucketCount;
+        count += bucketCount;
+      }
+    }
+    return count;
+  }
+
+  public static int bucketsCount() {
+    return BUCKETS;
+  }
+
+  /**
+   * Upper bound (inclusive, in microseconds) of the values counted in {@code bucket}.
+   */
+  public static long upperBound(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  static int bucket(long micros) {
+    long value = Math.min(micros, (1L << MAX_VALUE_BITS) - 1);
+    if (value < 2 * SUB_BUCKETS) {
+      return (int)value;
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(value);
+    int shift = msb - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int)((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Latest period of the window ending at {@code nowEpochNanos}, or of the
+   * latest sample if it is more recent.
+   */
+  private long lastPeriod(long nowEpochNanos) {
+    return Math.max(Math.floorDiv(nowEpochNanos, sliceNanos), latestPeriod.get());
+  }
+
+  private boolean inWindow(long period, long lastPeriod) {
+    return period != Long.MIN_VALUE && period <= lastPeriod && period > lastPeriod - slices.length;
+  }
+}
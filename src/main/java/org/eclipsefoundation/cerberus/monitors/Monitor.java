@@ -8,19 +8,55 @@
 package org.eclipsefoundation.cerberus.monitors;
 
 import java.time.Duration;
-import java.util.Random;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipsefoundation.cerberus.configuration.MonitorConfiguration;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public abstract class Monitor {
+public abstract class Monitor implements MetricsSource {
  
   Logger LOGGER = LoggerFactory.getLogger(Monitor.class);
 
+  /**
+   * Scheduler lag, i.e. delay between the intended and the actual start of
+   * {@link #run()}.
+   */
+  private final LongAdder runs = new LongAdder();
+  private final LongAdder lagNanos = new LongAdder();
+  private volatile long lastLagNanos;
+
+  private volatile MonitorScheduler.Registration runRegistration;
+  private volatile MonitorScheduler.Registration detectAnomaliesRegistration;
+
+  /**
+   * Current period between runs, which only changes for monitors with an
+   * adaptive period (see {@link #adaptPeriod(boolean, boolean)}). 0 until
+   * scheduled, see {@link #period()}.
+   */
+  private volatile long periodNanos;
+
+  /**
+   * Guards the scheduling and cancellation of the monitor, so that a monitor is
+   * never scheduled once cancelled, and the state of the runs of monitors with
+   * an adaptive period, which are scheduled one at a time.
+   */
+  private final Object scheduleLock = new Object();
+  private MonitorScheduler adaptiveScheduler;
+  private CompletableFuture<?> adaptiveRunFuture;
+  /**
+   * Intended start (see {@link System#nanoTime()}) of the next run
+   */
+  private long nextRunNanos;
+  /**
+   * Written under {@code scheduleLock}, volatile for {@link #isCancelled()}.
+   */
+  private volatile boolean cancelled;
+
   public static interface Factory {
 
   }
@@ -31,29 +67,186 @@ public abstract class Monitor {
 
   public abstract void detectAnomalies();
 
-  public CompletableFuture<?> schedule(ScheduledExecutorService executor) {
+  /**
+   * Schedules the runs and anomalies detection of this monitor. A monitor that
+   * has been cancelled is not scheduled.
+   *
+   * @return a future completed exceptionally if a run or detection throws an
+   *         {@link Error}, never completed otherwise
+   */
+  public CompletableFuture<?> schedule(MonitorScheduler scheduler) {
     CompletableFuture<?> runFuture = new CompletableFuture<>();
-    executor.scheduleAtFixedRate(() -> {
-      try {
-        run();
-      } catch (Exception exception) {
-        LOGGER.error("Error while running monitor {}", configuration().componentName(), exception);
-      } catch (Error error) {
-        runFuture.completeExceptionally(error);
-      }
-    }, configuration().initialDelay().toMillis() + new Random().nextInt((int)Duration.ofMinutes(1).toMillis()), configuration().period().toMillis(), TimeUnit.MILLISECONDS);
-
     CompletableFuture<?> detectAnomaliesFuture = new CompletableFuture<>();
-    executor.scheduleWithFixedDelay(() -> {
-      try {
-        detectAnomalies();
-      } catch (Exception exception) {
-        LOGGER.error("Error while detecting anomalies of monitor {}", configuration().componentName(), exception);
-      } catch (Error error) {
-        detectAnomaliesFuture.completeExceptionally(error);
+    // first ticks are spread over one period, on top of the configured initial delay
+    Duration runInitialDelay = configuration().initialDelay().plus(scheduler.spread(configuration().period()));
+    long periodNanos = configuration().period().toNanos();
+    synchronized (scheduleLock) {
+      if (cancelled) {
+        // e.g. replaced by a configuration reload while waiting to be scheduled
+        LOGGER.debug("{} of component {} was cancelled before being scheduled", this.getClass().getSimpleName(), configuration().componentName());
+        return runFuture;
+      }
+      this.periodNanos = periodNanos;
+      if (configuration().adaptivePeriod() != null) {
+        adaptiveScheduler = scheduler;
+        adaptiveRunFuture = runFuture;
+        scheduleRun(System.nanoTime() + runInitialDelay.toNanos());
+      } else {
+        // fixed rate: the n-th run is intended at start + initialDelay + n * period
+        AtomicLong intendedStart = new AtomicLong(System.nanoTime() + runInitialDelay.toNanos());
+        runRegistration = scheduler.scheduleAtFixedRate(() -> tick(intendedStart.getAndAdd(periodNanos), runFuture), 
+          runInitialDelay, configuration().period());
       }
-    }, configuration().anomaliesDetection().initialDelay().toMillis() + new Random().nextInt((int)Duration.ofMinutes(1).toMillis()), configuration().anomaliesDetection().period().toMillis(), TimeUnit.MILLISECONDS);
+
+      detectAnomaliesRegistration = scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          detectAnomalies();
+        } catch (Exception exception) {
+          LOGGER.error("Error while detecting anomalies of monitor {}", configuration().componentName(), exception);
+        } catch (Error error) {
+          detectAnomaliesFuture.completeExceptionally(error);
+        }
+      }, configuration().anomaliesDetection().initialDelay().plus(scheduler.spread(configuration().anomaliesDetection().period())), configuration().anomaliesDetection().period());
+    }
     LOGGER.info("Scheduled {} for component {}", this.getClass().getSimpleName(), configuration().componentName());
     return CompletableFuture.anyOf(runFuture, detectAnomaliesFuture);
   }
-}
\ No newline at end of file
+
+  private void tick(long intendedStartNanos, CompletableFuture<?> runFuture) {
+    long lag = Math.max(0, System.nanoTime() - intendedStartNanos);
+    runs.increment();
+    lagNanos.add(lag);
+    lastLagNanos = lag;
+    try {
+      run();
+    } catch (Exception exception) {
+      LOGGER.error("Error while running monitor {}", configuration().componentName(), exception);
+    } catch (Error error) {
+      runFuture.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * Schedules the next run of a monitor with an adaptive period at
+   * {@code intendedStartNanos}, replacing the pending one. Must hold
+   * {@code scheduleLock}.
+   */
+  private void scheduleRun(long intendedStartNanos) {
+    MonitorScheduler.Registration pending = runRegistration;
+    if (pending != null) {
+      pending.cancel();
+    }
+    nextRunNanos = intendedStartNanos;
+    runRegistration = adaptiveScheduler.schedule(() -> adaptiveRun(intendedStartNanos), 
+      Duration.ofNanos(Math.max(0, intendedStartNanos - System.nanoTime())));
+  }
+
+  /**
+   * Runs a monitor with an adaptive period, then schedules its next run one
+   * (current) period after the intended start of this one.
+   */
+  private void adaptiveRun(long intendedStartNanos) {
+    CompletableFuture<?> runFuture;
+    synchronized (scheduleLock) {
+      if (cancelled || nextRunNanos != intendedStartNanos) {
+        // replaced by an earlier run
+        return;
+      }
+      runFuture = adaptiveRunFuture;
+    }
+    tick(intendedStartNanos, runFuture);
+    synchronized (scheduleLock) {
+      if (!cancelled && nextRunNanos == intendedStartNanos) {
+        runRegistration = null;
+        scheduleRun(Math.max(System.nanoTime(), intendedStartNanos + periodNanos));
+      }
+    }
+  }
+
+  /**
+   * Adapts the period of a monitor with an adaptive period (no-op for other
+   * monitors) after a probe. Shrinking the period takes effect right away: a
+   * next run planned later than one minimum period from now is brought
+   * forward.
+   *
+   * @param shrink whether the probe found an anomaly or the component is
+   *               having an incident, in which case the period drops to the
+   *               minimum
+   * @param grow   whether the component is stably operational, in which case
+   *               the period is multiplied by the backoff factor (up to the
+   *               maximum). Ignored if {@code shrink} is set
+   */
+  protected void adaptPeriod(boolean shrink, boolean grow) {
+    MonitorConfiguration.AdaptivePeriodConfiguration adaptive = configuration().adaptivePeriod();
+    if (adaptive == null || (!shrink && !grow)) {
+      return;
+    }
+    long min = adaptive.minPeriod().toNanos();
+    long max = adaptive.maxPeriod().toNanos();
+    synchronized (scheduleLock) {
+      long previous = period().toNanos();
+      if (shrink) {
+        periodNanos = min;
+        long now = System.nanoTime();
+        if (!cancelled && adaptiveScheduler != null && nextRunNanos > now + min) {
+          scheduleRun(now + min);
+        }
+      } else {
+        periodNanos = Math.min(max, Math.max(min, (long)(previous * adaptive.backoffFactor())));
+      }
+      if (periodNanos != previous) {
+        LOGGER.debug("Period of monitor {}: {}", configuration().componentName(), Duration.ofNanos(periodNanos));
+      }
+    }
+  }
+
+  /**
+   * Current period between runs.
+   */
+  public Duration period() {
+    long period = periodNanos;
+    return period != 0 ? Duration.ofNanos(period) : configuration().period();
+  }
+
+  /**
+   * Stops the ticks of this monitor (a probe in flight is not interrupted). The
+   * future returned by {@link #schedule(MonitorScheduler)} is left incomplete.
+   *
+   * @return a future completed once the run in flight, if any, completed, after
+   *         which this monitor does not write anything anymore (e.g. to a
+   *         journal shared with its replacement)
+   */
+  public CompletableFuture<Void> cancel() {
+    MonitorScheduler.Registration run;
+    MonitorScheduler.Registration detection;
+    synchronized (scheduleLock) {
+      cancelled = true;
+      // either scheduled already, or never will be
+      run = runRegistration;
+      detection = detectAnomaliesRegistration;
+    }
+    if (run != null) {
+      run.cancel();
+    }
+    if (detection != null) {
+      detection.cancel();
+    }
+    return CompletableFuture.completedFuture(null);
+  }
+
+  protected final boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    String component = configuration().componentName();
+    writer.counter("cerberus_monitor_runs_total", "Number of scheduled runs of the monitor", runs.sum(), "component", component);
+    writer.counter("cerberus_monitor_scheduler_lag_seconds_total", "Cumulated delay between the intended and actual start of runs",
+      lagNanos.sum() / 1e9, "component", component);
+    writer.gauge("cerberus_monitor_scheduler_lag_seconds", "Delay between the intended and actual start of the latest run",
+      lastLagNanos / 1e9, "component", component);
+    writer.gauge("cerberus_monitor_period_seconds", "Current period between runs (which changes for monitors with an adaptive period)",
+      MetricsWriter.seconds(period()), "component", component);
+  }
+}
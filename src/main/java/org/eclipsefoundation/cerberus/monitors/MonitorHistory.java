@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.function.IntPredicate;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Fixed-size history of probe results (time, status code and weight), stored
+ * in parallel primitive arrays used as a ring. Recording a datapoint does not
+ * allocate (about 14 bytes per datapoint).
+ *
+ * <p>
+ * The weight of a datapoint is the time it stands for (e.g. the time until the
+ * next probe), so that anomalies can be counted by time when probes are
+ * not evenly spaced, see {@link #anomaliesWeight()}. Datapoints are evicted
+ * when the ring is full, and also once they are older than the {@code window}
+ * if there is one. The writer only evicts datapoints when it adds one, so
+ * readers that must not count datapoints out of the window when the writer
+ * stopped (e.g. probes that no longer complete) pass the current time, see
+ * {@link #anomaliesWeight(long)}.
+ *
+ * <p>
+ * Concurrency model: single producer (the probe), any number of consumers
+ * (anomaly detection, exporters), and no lock.
+ * <ul>
+ * <li>There must be a single writer at a time, with successive writes ordered
+ * by a happens-before relationship (e.g. through the flag that prevents probes
+ * of a monitor to overlap).</li>
+ * <li>The number of anomalies in the ring is maintained incrementally by the
+ * writer and published through a volatile field: {@link #anomaliesCount()} is
+ * O(1) and wait-free. The variants that take the current time are seqlock
+ * reads (see below) of the datapoints out of the window, if any.</li>
+ * <li>Consistent copies of the whole ring are taken with
+ * {@link #snapshot(long[], short[])}, which is a seqlock read: the writer makes
+ * the sequence odd while it updates the arrays, and readers retry if the
+ * sequence was odd or changed during their copy. Readers never block the
+ * writer.</li>
+ * </ul>
+ */
+public final class MonitorHistory {
+
+  /**
+   * Status code stored for probes that ended with an exception.
+   */
+  public static final int NO_STATUS_CODE = Integer.MIN_VALUE;
+
+  private static final short NO_STATUS_CODE_SHORT = -1;
+
+  private static final long EPOCH_NANOS_ORIGIN = epochNanos(Instant.now());
+  private static final long NANO_TIME_ORIGIN = System.nanoTime();
+
+  private final long[] times;
+  private final short[] statusCodes;
+  private final int[] weights;
+  private final IntPredicate isAnomaly;
+  /**
+   * 0 if datapoints are only evicted when the ring is full.
+   */
+  private final long windowNanos;
+
+  /**
+   * Index of the next write. Only accessed by the writer, or by readers between
+   * two reads of {@link #sequence}.
+   */
+  private int head;
+  private int size;
+
+  private volatile long sequence;
+  private volatile int anomaliesCount;
+  private volatile long anomaliesWeight;
+
+  /**
+   * @param isAnomaly tells whether a status code (or {@link #NO_STATUS_CODE} for
+   *                  probes that ended with an exception) is an anomaly
+   */
+  public MonitorHistory(int capacity, IntPredicate isAnomaly) {
+    this(capacity, null, isAnomaly);
+  }
+
+  /**
+   * @param window datapoints older than the most recent one by more than
+   *               {@code window} are evicted, or {@code null}
+   */
+  public MonitorHistory(int capacity, Duration window, IntPredicate isAnomaly) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    this.times = new long[capacity];
+    this.statusCodes = new short[capacity];
+    this.weights = new int[capacity];
+    this.windowNanos = window != null ? window.toNanos() : 0;
+    this.isAnomaly = isAnomaly;
+  }
+
+  /**
+   * Allocation-free wall-clock time, in nanoseconds since the epoch.
+   */
+  public static long nowEpochNanos() {
+    return EPOCH_NANOS_ORIGIN + (System.nanoTime() - NANO_TIME_ORIGIN);
+  }
+
+  public static long epochNanos(Instant instant) {
+    return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+  }
+
+  public static OffsetDateTime toOffsetDateTime(long epochNanos) {
+    return OffsetDateTime.ofInstant(Instant.ofEpochSecond(0, epochNanos), ZoneId.systemDefault());
+  }
+
+  /**
+   * Records a datapoint of weight 1, evicting the oldest one if the ring is
+   * full. Must only be called by the single writer.
+   */
+  public void add(long epochNanos, int statusCode) {
+    add(epochNanos, statusCode, 1);
+  }
+
+  /**
+   * Records a datapoint, evicting the oldest one if the ring is full, and
+   * those that are out of the window. Must only be called by the single
+   * writer.
+   */
+  public void add(long epochNanos, int statusCode, int weight) {
+    int countDelta = 0;
+    long weightDelta = 0;
+    long seq = sequence;
+    sequence = seq + 1;
+    // data writes must not be reordered before the sequence becomes odd
+    VarHandle.storeStoreFence();
+    while (size > 0 && (size == times.length || (windowNanos > 0 && epochNanos - times[oldest()] > windowNanos))) {
+      int oldest = oldest();
+      if (isAnomaly.test(decode(statusCodes[oldest]))) {
+        countDelta--;
+        weightDelta -= weights[oldest];
+      }
+      size--;
+    }
+    if (isAnomaly.test(statusCode)) {
+      countDelta++;
+      weightDelta += weight;
+    }
+    times[head] = epochNanos;
+    statusCodes[head] = statusCode == NO_STATUS_CODE ? NO_STATUS_CODE_SHORT : (short)statusCode;
+    weights[head] = weight;
+    head = (head + 1) % times.length;
+    size++;
+    // single writer, no need for atomic read-modify-writes. Updated before the
+    // sequence becomes even, for readers of the window
+    if (countDelta != 0) {
+      anomaliesCount += countDelta;
+    }
+    if (weightDelta != 0) {
+      anomaliesWeight += weightDelta;
+    }
+    sequence = seq + 2;
+  }
+
+  private int oldest() {
+    return (head - size + times.length) % times.length;
+  }
+
+  /**
+   * Records the datapoints of {@code other}, from the oldest to the most recent
+   * (only the most recent ones if there are more than the capacity of this
+   * history). Anomalies are evaluated with the predicate of this history. Must
+   * only be called by the single writer.
+   */
+  public void addAll(MonitorHistory other) {
+    long[] otherTimes = new long[other.capacity()];
+    short[] otherStatusCodes = new short[other.capacity()];
+    int[] otherWeights = new int[other.capacity()];
+    int n = other.snapshot(otherTimes, otherStatusCodes, otherWeights);
+    for (int i = Math.max(0, n - times.length); i < n; i++) {
+      add(otherTimes[i], decode(otherStatusCodes[i]), otherWeights[i]);
+    }
+  }
+
+  /**
+   * Number of anomalies currently in the ring, in O(1). Can be called from any
+   * thread.
+   */
+  public int anomaliesCount() {
+    return anomaliesCount;
+  }
+
+  /**
+   * Sum of the weights of the anomalies currently in the ring, in O(1). Can be
+   * called from any thread.
+   */
+  public long anomaliesWeight() {
+    return anomaliesWeight;
+  }
+
+  /**
+   * Number of anomalies in the ring that are in the window ending at
+   * {@code nowEpochNanos}, even if no datapoint was added for longer than the
+   * window. Same as {@link #anomaliesCount()} without a window. Can be called
+   * from any thread.
+   */
+  public int anomaliesCount(long nowEpochNanos) {
+    return (int)anomaliesInWindow(nowEpochNanos, false);
+  }
+
+  /**
+   * Sum of the weights of the anomalies in the ring that are in the window
+   * ending at {@code nowEpochNanos}, see {@link #anomaliesCount(long)}.
+   */
+  public long anomaliesWeight(long nowEpochNanos) {
+    return anomaliesInWindow(nowEpochNanos, true);
+  }
+
+  /**
+   * Subtracts the anomalies out of the window from the incremental totals: in
+   * O(1) as long as datapoints keep being added, the writer evicting them.
+   */
+  private long anomaliesInWindow(long nowEpochNanos, boolean weighted) {
+    if (windowNanos == 0) {
+      return weighted ? anomaliesWeight : anomaliesCount;
+    }
+    while (true) {
+      long seq = sequence;
+      if ((seq & 1) == 0) {
+        long total = weighted ? anomaliesWeight : anomaliesCount;
+        int n = size;
+        int start = (head - n + times.length) % times.length;
+        for (int i = 0; i < n; i++) {
+          int index = (start + i) % times.length;
+          if (nowEpochNanos - times[index] <= windowNanos) {
+            break;
+          }
+          if (isAnomaly.test(decode(statusCodes[index]))) {
+            total -= weighted ? weights[index] : 1;
+          }
+        }
+        // data reads must not be reordered after the sequence validation
+        VarHandle.acquireFence();
+        if (sequence == seq) {
+          return total;
+        }
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  public int capacity() {
+    return times.length;
+  }
+
+  /**
+   * Copies the datapoints of the ring, from the oldest to the most recent, into
+   * the given arrays (of length {@link #capacity()} at least). Can be called
+   * from any thread.
+   *
+   * @return the number of datapoints copied
+   */
+  public int snapshot(long[] timesOut, short[] statusCodesOut) {
+    return snapshot(timesOut, statusCodesOut, null);
+  }
+
+  /**
+   * Same as {@link #snapshot(long[], short[])}, also copying the weights if
+   * {@code weightsOut} is not {@code null}.
+   */
+  public int snapshot(long[] timesOut, short[] statusCodesOut, int[] weightsOut) {
+    Preconditions.checkArgument(timesOut.length >= times.length && statusCodesOut.length >= times.length 
+      && (weightsOut == null || weightsOut.length >= times.length), "output arrays are too small");
+    while (true) {
+      long seq = sequence;
+      if ((seq & 1) == 0) {
+        int n = size;
+        int start = (head - n + times.length) % times.length;
+        int firstPart = Math.min(n, times.length - start);
+        System.arraycopy(times, start, timesOut, 0, firstPart);
+        System.arraycopy(times, 0, timesOut, firstPart, n - firstPart);
+        System.arraycopy(statusCodes, start, statusCodesOut, 0, firstPart);
+        System.arraycopy(statusCodes, 0, statusCodesOut, firstPart, n - firstPart);
+        if (weightsOut != null) {
+          System.arraycopy(weights, start, weightsOut, 0, firstPart);
+          System.arraycopy(weights, 0, weightsOut, firstPart, n - firstPart);
+        }
+        // data reads must not be reordered after the sequence validation
+        VarHandle.acquireFence();
+        if (sequence == seq) {
+          return n;
+        }
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Decodes a status code copied by {@link #snapshot(long[], short[])}.
+   */
+  public static int decode(short statusCode) {
+    return statusCode == NO_STATUS_CODE_SHORT ? NO_STATUS_CODE : statusCode;
+  }
+}
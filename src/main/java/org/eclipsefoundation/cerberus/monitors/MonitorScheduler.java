@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.time.Duration;
+
+/**
+ * Schedules the periodic ticks of monitors ({@link Monitor#run()} and
+ * {@link Monitor#detectAnomalies()}).
+ */
+public interface MonitorScheduler {
+
+  /**
+   * Periodic execution of {@code task}, first after {@code initialDelay} and then
+   * every {@code period}, whatever the duration of the task.
+   */
+  Registration scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period);
+
+  /**
+   * Periodic execution of {@code task}, first after {@code initialDelay} and then
+   * {@code delay} after the completion of the previous execution.
+   */
+  Registration scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay);
+
+  /**
+   * Single execution of {@code task} after {@code delay}, e.g. for tasks that
+   * choose the delay of their next execution.
+   */
+  Registration schedule(Runnable task, Duration delay);
+
+  /**
+   * Returns an extra initial delay within {@code [0, window)}. Successive calls
+   * are spread evenly over the window (instead of randomly) so that monitors
+   * scheduled together don't tick in bursts.
+   */
+  Duration spread(Duration window);
+
+  interface Registration {
+    void cancel();
+  }
+}
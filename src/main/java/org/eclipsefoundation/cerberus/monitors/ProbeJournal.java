@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.base.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Probe results of a monitor, persisted in a memory-mapped ring file of
+ * fixed-size records, so that the monitoring history survives restarts.
+ *
+ * <p>
+ * File layout (little endian): a {@value #HEADER_SIZE} bytes header (magic,
+ * version, capacity, record size, number of records ever written), followed by
+ * {@code capacity} records of {@value #RECORD_SIZE} bytes: time (epoch nanos,
+ * 8 bytes), latency (microseconds, 4 bytes), status code (2 bytes, -1 when
+ * there is none) and error class (1 byte, see {@link ErrorClass}).
+ *
+ * <p>
+ * Appending is a few absolute writes to the mapping, without allocation nor
+ * system call: the OS writes dirty pages back in the background, so records
+ * survive a crash or a kill of the process, but not necessarily a crash of the
+ * host. The write count is updated after the record, so a reader never sees a
+ * record that was not fully written by a live process. There must be a single
+ * writer at a time, as for {@link MonitorHistory}: a monitor replacing another
+ * one only probes once the future returned by {@link Monitor#cancel()} of the
+ * previous one completed.
+ */
+public final class ProbeJournal implements AutoCloseable {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(ProbeJournal.class);
+
+  private static final int MAGIC = 0x4a425243; // "CRBJ"
+  private static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 32;
+  static final int RECORD_SIZE = 16;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int CAPACITY_OFFSET = 8;
+  private static final int RECORD_SIZE_OFFSET = 12;
+  private static final int WRITE_COUNT_OFFSET = 16;
+
+  private static final int TIME_OFFSET = 0;
+  private static final int LATENCY_OFFSET = 8;
+  private static final int STATUS_CODE_OFFSET = 12;
+  private static final int ERROR_CLASS_OFFSET = 14;
+
+  private static final short NO_STATUS_CODE_SHORT = -1;
+
+  /**
+   * Coarse class of the exception that ended a probe.
+   */
+  public static enum ErrorClass {
+    NONE, CONTENT_CHECK, TIMEOUT, CONNECT, DNS, TLS, OTHER;
+
+    private static final ErrorClass[] VALUES = values();
+
+    /**
+     * The error class of {@code ordinal}, {@link #OTHER} if unknown.
+     */
+    public static ErrorClass decode(int ordinal) {
+      return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : OTHER;
+    }
+  }
+
+  /**
+   * Receives replayed records.
+   */
+  @FunctionalInterface
+  public static interface Visitor {
+    /**
+     * @param statusCode the status code, or {@link MonitorHistory#NO_STATUS_CODE}
+     */
+    void record(long epochNanos, long latencyNanos, int statusCode, ErrorClass errorClass);
+  }
+
+  private final Path file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+
+  /**
+   * Only written by the single writer, mirrored in the header.
+   */
+  private long writeCount;
+
+  private ProbeJournal(Path file, FileChannel channel, MappedByteBuffer buffer, int capacity, long writeCount) {
+    this.file = file;
+    this.channel = channel;
+    this.buffer = buffer;
+    this.capacity = capacity;
+    this.writeCount = writeCount;
+  }
+
+  /**
+   * Opens (or creates) the journal in {@code file}. A journal of a different
+   * capacity is resized, keeping its most recent records. A file that is not
+   * a journal of this version is overwritten.
+   */
+  public static ProbeJournal open(Path file, int capacity) throws IOException {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long size = HEADER_SIZE + (long)capacity * RECORD_SIZE;
+      long[] times = null;
+      long[] records = null;
+      if (channel.size() >= HEADER_SIZE) {
+        MappedByteBuffer existing = map(channel, channel.size());
+        if (existing.getInt(MAGIC_OFFSET) != MAGIC || existing.getInt(VERSION_OFFSET) != VERSION || existing.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE
+            || channel.size() != HEADER_SIZE + (long)existing.getInt(CAPACITY_OFFSET) * RECORD_SIZE) {
+          LOGGER.warn("{} is not a probe journal, it is reset", file);
+        } else if (existing.getInt(CAPACITY_OFFSET) == capacity) {
+          return new ProbeJournal(file, channel, existing, capacity, existing.getLong(WRITE_COUNT_OFFSET));
+        } else {
+          // keep the most recent records that fit in the new capacity
+          ProbeJournal old = new ProbeJournal(file, channel, existing, existing.getInt(CAPACITY_OFFSET), existing.getLong(WRITE_COUNT_OFFSET));
+          int n = Math.min(old.size(), capacity);
+          times = new long[n];
+          records = new long[n];
+          for (int i = 0; i < n; i++) {
+            int offset = old.offset(old.writeCount - n + i);
+            times[i] = existing.getLong(offset + TIME_OFFSET);
+            // latency, status code and error class
+            records[i] = existing.getLong(offset + LATENCY_OFFSET);
+          }
+          LOGGER.info("Probe journal {} resized from {} to {} records", file, old.capacity, capacity);
+        }
+      }
+      channel.truncate(0);
+      MappedByteBuffer buffer = map(channel, size);
+      buffer.putInt(MAGIC_OFFSET, MAGIC);
+      buffer.putInt(VERSION_OFFSET, VERSION);
+      buffer.putInt(CAPACITY_OFFSET, capacity);
+      buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+      ProbeJournal journal = new ProbeJournal(file, channel, buffer, capacity, 0);
+      if (times != null) {
+        for (int i = 0; i < times.length; i++) {
+          int offset = journal.offset(i);
+          buffer.putLong(offset + TIME_OFFSET, times[i]);
+          buffer.putLong(offset + LATENCY_OFFSET, records[i]);
+        }
+        journal.writeCount = times.length;
+      }
+      buffer.putLong(WRITE_COUNT_OFFSET, journal.writeCount);
+      return journal;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Number of records in the journal.
+   */
+  public int size() {
+    return (int)Math.min(writeCount, capacity);
+  }
+
+  private int offset(long index) {
+    return HEADER_SIZE + (int)(index % capacity) * RECORD_SIZE;
+  }
+
+  /**
+   * Appends a record, overwriting the oldest one if the journal is full. Must
+   * only be called by the single writer.
+   */
+  public void append(long epochNanos, long latencyNanos, int statusCode, ErrorClass errorClass) {
+    int offset = offset(writeCount);
+    buffer.putLong(offset + TIME_OFFSET, epochNanos);
+    buffer.putInt(offset + LATENCY_OFFSET, (int)Math.min(Math.max(0, latencyNanos / 1000), Integer.MAX_VALUE));
+    buffer.putShort(offset + STATUS_CODE_OFFSET, statusCode == MonitorHistory.NO_STATUS_CODE ? NO_STATUS_CODE_SHORT : (short)statusCode);
+    buffer.put(offset + ERROR_CLASS_OFFSET, (byte)errorClass.ordinal());
+    buffer.putLong(WRITE_COUNT_OFFSET, ++writeCount);
+  }
+
+  /**
+   * Calls {@code visitor} with the records at or after {@code sinceEpochNanos},
+   * from the oldest to the most recent. Records are decoded in place from the
+   * mapping, nothing is copied.
+   */
+  public void replay(long sinceEpochNanos, Visitor visitor) {
+    ByteBuffer records = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    for (long i = writeCount - size(); i < writeCount; i++) {
+      int offset = offset(i);
+      long time = records.getLong(offset + TIME_OFFSET);
+      if (time < sinceEpochNanos) {
+        continue;
+      }
+      short statusCode = records.getShort(offset + STATUS_CODE_OFFSET);
+      visitor.record(time, records.getInt(offset + LATENCY_OFFSET) * 1000L, statusCode == NO_STATUS_CODE_SHORT ? MonitorHistory.NO_STATUS_CODE : statusCode, 
+        ErrorClass.decode(records.get(offset + ERROR_CLASS_OFFSET)));
+    }
+  }
+
+  /**
+   * Writes the mapping back to the file, and closes it.
+   */
+  @Override
+  public void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+}
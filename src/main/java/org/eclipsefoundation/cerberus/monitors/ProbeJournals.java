@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ProbeJournal}s of all monitors, one file per monitor kind and
+ * component in a directory. A journal stays open (and keeps its capacity) for
+ * the life of the process, so that a monitor re-created after a configuration
+ * reload keeps appending to the same mapping.
+ */
+public final class ProbeJournals implements AutoCloseable {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(ProbeJournals.class);
+
+  private static final ProbeJournals DISABLED = new ProbeJournals(null);
+
+  static final String EXTENSION = ".journal";
+
+  private final Path directory;
+
+  private final Map<Path, ProbeJournal> journals = new ConcurrentHashMap<>();
+
+  private ProbeJournals(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Journals stored in {@code directory}, which is created if needed.
+   */
+  public static ProbeJournals in(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    return new ProbeJournals(directory);
+  }
+
+  /**
+   * No persistence: {@link #journal(String, String, int)} returns {@code null}.
+   */
+  public static ProbeJournals disabled() {
+    return DISABLED;
+  }
+
+  public Path directory() {
+    return directory;
+  }
+
+  /**
+   * File of the journal of the given monitor kind and component.
+   */
+  public static Path file(Path directory, String kind, String componentName) {
+    return directory.resolve(stem(kind, componentName) + EXTENSION);
+  }
+
+  /**
+   * Name of the files of the given monitor kind and component: the component
+   * name where unsafe characters are replaced, and a hash of the original name.
+   */
+  public static String stem(String kind, String componentName) {
+    StringBuilder name = new StringBuilder(kind).append('-');
+    for (int i = 0; i < componentName.length(); i++) {
+      char c = componentName.charAt(i);
+      name.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.' ? c : '_');
+    }
+    // disambiguates names which only differ by replaced characters
+    return name.append('-').append(Integer.toHexString(componentName.hashCode())).toString();
+  }
+
+  /**
+   * Journal of the given monitor kind and component, opened with
+   * {@code capacity} the first time, or {@code null} when persistence is
+   * disabled.
+   *
+   * @throws UncheckedIOException if the journal cannot be opened
+   */
+  public ProbeJournal journal(String kind, String componentName, int capacity) {
+    if (directory == null) {
+      return null;
+    }
+    return journals.computeIfAbsent(file(directory, kind, componentName), file -> {
+      try {
+        return ProbeJournal.open(file, capacity);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to open probe journal " + file, e);
+      }
+    });
+  }
+
+  @Override
+  public void close() {
+    journals.values().forEach(journal -> {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        LOGGER.warn("Unable to close probe journal {}", journal.file(), e);
+      }
+    });
+    journals.clear();
+  }
+}
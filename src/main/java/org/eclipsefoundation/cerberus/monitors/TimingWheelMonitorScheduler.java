@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link MonitorScheduler} backed by a hashed timing wheel. A single timer
+ * thread advances the wheel every {@code tick}, and fires the tasks of the
+ * current slot on {@code worker}. Scheduling is O(1): tasks are appended to a
+ * lock-free queue and moved to their slot by the timer thread on the next
+ * tick. Tasks due more than one wheel revolution ahead stay in their slot until
+ * their deadline tick is reached.
+ *
+ * Timing precision is one tick, which is plenty for monitors whose periods are
+ * expressed in seconds.
+ */
+public class TimingWheelMonitorScheduler implements MonitorScheduler {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(TimingWheelMonitorScheduler.class);
+
+  /**
+   * Period of entries that are executed once (periods are at least one tick).
+   */
+  private static final long ONE_SHOT = 0;
+
+  private final long tickNanos;
+  private final int mask;
+  private final List<Entry>[] slots;
+  private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+  private final Executor worker;
+  private final EvenSpread spread = new EvenSpread();
+  private final long startTime;
+  private final Thread timer;
+
+  /**
+   * Only read/written by the timer thread.
+   */
+  private long currentTick;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public TimingWheelMonitorScheduler(Duration tick, int wheelSize, ThreadFactory threadFactory, Executor worker) {
+    Preconditions.checkArgument(!tick.isNegative() && !tick.isZero(), "tick must be positive");
+    Preconditions.checkArgument(wheelSize > 0, "wheelSize must be positive");
+    this.tickNanos = tick.toNanos();
+    int size = Integer.highestOneBit(wheelSize - 1) << 1;
+    this.mask = Math.max(size, 1) - 1;
+    this.slots = new List[mask + 1];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new ArrayList<>();
+    }
+    this.worker = worker;
+    this.startTime = System.nanoTime();
+    this.timer = threadFactory.newThread(this::loop);
+    this.timer.start();
+  }
+
+  @Override
+  public Registration scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+    return schedule(task, initialDelay, period, true);
+  }
+
+  @Override
+  public Registration scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay) {
+    return schedule(task, initialDelay, delay, false);
+  }
+
+  @Override
+  public Registration schedule(Runnable task, Duration delay) {
+    Entry entry = new Entry(task, ONE_SHOT, false);
+    entry.deadlineTick = elapsedTicks(delay);
+    pending.add(entry);
+    return entry;
+  }
+
+  /**
+   * Spreads successive initial delays evenly over the slots covered by
+   * {@code window}.
+   */
+  @Override
+  public Duration spread(Duration window) {
+    long windowTicks = Math.max(1, window.toNanos() / tickNanos);
+    return Duration.ofNanos((long)(spread.next() * windowTicks) * tickNanos);
+  }
+
+  private Registration schedule(Runnable task, Duration initialDelay, Duration period, boolean fixedRate) {
+    Entry entry = new Entry(task, ticks(period), fixedRate);
+    entry.deadlineTick = elapsedTicks(initialDelay);
+    pending.add(entry);
+    return entry;
+  }
+
+  private long ticks(Duration duration) {
+    return Math.max(1, LongMath.divide(duration.toNanos(), tickNanos, RoundingMode.CEILING));
+  }
+
+  /**
+   * Absolute tick at which a task scheduled now with {@code delay} is due.
+   */
+  private long elapsedTicks(Duration delay) {
+    return LongMath.divide(System.nanoTime() - startTime + delay.toNanos(), tickNanos, RoundingMode.CEILING);
+  }
+
+  private void loop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      long deadline = startTime + (currentTick + 1) * tickNanos;
+      long now;
+      while ((now = System.nanoTime()) < deadline) {
+        LockSupport.parkNanos(deadline - now);
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+      }
+      transferPending();
+      expire(slots[(int)(currentTick & mask)]);
+      currentTick++;
+    }
+  }
+
+  private void transferPending() {
+    Entry entry;
+    while ((entry = pending.poll()) != null) {
+      if (!entry.cancelled) {
+        place(entry);
+      }
+    }
+  }
+
+  private void place(Entry entry) {
+    // entries already due (or late) go in the current slot
+    long tick = Math.max(entry.deadlineTick, currentTick);
+    slots[(int)(tick & mask)].add(entry);
+  }
+
+  private void expire(List<Entry> slot) {
+    List<Entry> rescheduled = null;
+    int kept = 0;
+    for (int i = 0; i < slot.size(); i++) {
+      Entry entry = slot.get(i);
+      if (entry.cancelled) {
+        continue;
+      }
+      if (entry.deadlineTick > currentTick) {
+        // due in a later revolution of the wheel
+        slot.set(kept++, entry);
+        continue;
+      }
+      fire(entry);
+      if (entry.fixedRate) {
+        entry.deadlineTick += entry.periodTicks;
+        if (rescheduled == null) {
+          rescheduled = new ArrayList<>();
+        }
+        rescheduled.add(entry);
+      }
+    }
+    slot.subList(kept, slot.size()).clear();
+    if (rescheduled != null) {
+      rescheduled.forEach(this::place);
+    }
+  }
+
+  private void fire(Entry entry) {
+    try {
+      worker.execute(() -> {
+        try {
+          entry.task.run();
+        } finally {
+          if (!entry.fixedRate && entry.periodTicks != ONE_SHOT && !entry.cancelled) {
+            entry.deadlineTick = elapsedTicks(Duration.ofNanos(entry.periodTicks * tickNanos));
+            pending.add(entry);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      LOGGER.error("Unable to execute scheduled task", e);
+    }
+  }
+
+  /**
+   * Number of slots, {@code wheelSize} rounded up to a power of two.
+   */
+  int wheelSize() {
+    return slots.length;
+  }
+
+  public void shutdown() {
+    timer.interrupt();
+  }
+
+  private static final class Entry implements Registration {
+    final Runnable task;
+    final long periodTicks;
+    final boolean fixedRate;
+    /**
+     * Written by the timer thread, or by the worker once a fixed delay task is
+     * complete (it is then published to the timer thread through the pending
+     * queue).
+     */
+    long deadlineTick;
+    volatile boolean cancelled;
+
+    Entry(Runnable task, long periodTicks, boolean fixedRate) {
+      this.task = task;
+      this.periodTicks = periodTicks;
+      this.fixedRate = fixedRate;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+}
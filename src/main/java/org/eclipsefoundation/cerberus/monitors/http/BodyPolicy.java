@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.Body;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Reads (or not) the body of probe responses according to the {@link Body}
+ * configuration of a monitor, and checks its content if requested.
+ *
+ * <p>
+ * Bodies are streamed through a scratch buffer owned by the policy and
+ * recycled between reads: memory is bounded by a read chunk plus the content
+ * check window, whatever the size of the body. As a consequence, there is one
+ * instance per monitor, used by a single probe at a time.
+ *
+ * <p>
+ * Bodies are either pulled from an okio source ({@link #consume(BufferedSource)})
+ * or pushed chunk by chunk by a non-blocking client ({@link #begin()},
+ * {@link #accept(ByteBuffer)} then {@link #end()}).
+ */
+public final class BodyPolicy {
+
+  private static final long CHUNK = 8192;
+
+  private static final int DEFAULT_CHECK_WINDOW = 16 * 1024;
+
+  private final Body.Policy policy;
+  private final long limit;
+  private final ByteString contains;
+  private final Pattern matches;
+  private final int checkWindow;
+
+  private final Buffer scratch = new Buffer();
+
+  /**
+   * For the {@link #matches} check, the body is decoded once, chunk by chunk,
+   * into {@link #window}: the tail of the previous chunks ({@link #checkWindow}
+   * characters at most) followed by the latest chunk. Bytes of a character
+   * split across chunks wait in {@link #undecoded} for the next chunk.
+   */
+  private final CharsetDecoder decoder;
+  private final ByteBuffer undecoded;
+  private final CharBuffer window;
+  private final Matcher matcher;
+
+  /**
+   * State of the body being read.
+   */
+  private long remaining;
+  private boolean checked;
+
+  /**
+   * Raised when the body does not pass the content check.
+   */
+  public static final class ContentCheckException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    ContentCheckException(String message) {
+      super(message);
+    }
+  }
+
+  private BodyPolicy(Body.Policy policy, long limit, ByteString contains, Pattern matches, int checkWindow) {
+    this.policy = policy;
+    this.limit = limit;
+    this.contains = contains;
+    this.matches = matches;
+    this.checkWindow = checkWindow;
+    if (matches != null) {
+      this.decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      this.undecoded = ByteBuffer.allocate((int)CHUNK);
+      this.window = CharBuffer.allocate(checkWindow + (int)CHUNK);
+      this.matcher = matches.matcher("");
+    } else {
+      this.decoder = null;
+      this.undecoded = null;
+      this.window = null;
+      this.matcher = null;
+    }
+  }
+
+  /**
+   * @param body configuration, {@code null} for the default policy (discard)
+   */
+  public static BodyPolicy of(Body body) {
+    if (body == null) {
+      return new BodyPolicy(Body.Policy.DISCARD, Long.MAX_VALUE, null, null, DEFAULT_CHECK_WINDOW);
+    }
+    Body.Policy policy = body.policy() != null ? body.policy() : Body.Policy.DISCARD;
+    Preconditions.checkArgument(policy != Body.Policy.LIMIT || (body.limit() != null && body.limit() > 0), 
+      "The limit body policy requires a positive limit");
+    Preconditions.checkArgument(policy != Body.Policy.HEAD_ONLY || (body.contains() == null && body.matches() == null), 
+      "Content checks require the body, they can't be used with the head_only body policy");
+    int checkWindow = body.checkWindow() != null ? body.checkWindow() : DEFAULT_CHECK_WINDOW;
+    ByteString contains = body.contains() != null ? ByteString.encodeUtf8(body.contains()) : null;
+    Preconditions.checkArgument(contains == null || (contains.size() > 0 && contains.size() <= checkWindow), 
+      "contains must be non empty and not longer than check_window");
+    return new BodyPolicy(policy, 
+      policy == Body.Policy.LIMIT ? body.limit() : Long.MAX_VALUE, 
+      contains, 
+      body.matches() != null ? Pattern.compile(body.matches()) : null, 
+      checkWindow);
+  }
+
+  /**
+   * Whether probes must use the HEAD method.
+   */
+  public boolean headOnly() {
+    return policy == Body.Policy.HEAD_ONLY;
+  }
+
+  /**
+   * Whether the content of the body is checked.
+   */
+  public boolean checksContent() {
+    return contains != null || matches != null;
+  }
+
+  /**
+   * Consumes the body according to the policy. Closing the response is up to
+   * the caller.
+   *
+   * @throws ContentCheckException if the body does not pass the content check
+   */
+  public void consume(BufferedSource source) throws IOException {
+    if (headOnly()) {
+      return;
+    }
+    begin();
+    try {
+      long read;
+      while (remaining > 0 && (read = source.read(scratch, Math.min(CHUNK, remaining))) != -1) {
+        remaining -= read;
+        afterRead();
+      }
+      end();
+    } finally {
+      scratch.clear();
+    }
+  }
+
+  /**
+   * Starts reading a body pushed by chunks.
+   */
+  public void begin() {
+    remaining = headOnly() ? 0 : limit;
+    checked = !checksContent();
+    scratch.clear();
+    if (matches != null) {
+      decoder.reset();
+      undecoded.clear();
+      window.clear();
+    }
+  }
+
+  /**
+   * Reads a chunk of the body started by {@link #begin()}. The chunk is fully
+   * consumed (its position is moved to its limit), even past the limit of the
+   * policy.
+   *
+   * @return whether the policy needs more of the body: once it does not, the
+   *         rest of the body can be dropped
+   */
+  public boolean accept(ByteBuffer chunk) throws IOException {
+    int read = (int)Math.min(chunk.remaining(), remaining);
+    if (!checked && read > 0) {
+      int end = chunk.limit();
+      chunk.limit(chunk.position() + read);
+      scratch.write(chunk);
+      chunk.limit(end);
+      remaining -= read;
+      afterRead();
+    } else {
+      remaining -= read;
+    }
+    chunk.position(chunk.limit());
+    return remaining > 0;
+  }
+
+  /**
+   * Ends the body started by {@link #begin()}, whether it was fully read or
+   * dropped as per {@link #accept(ByteBuffer)}.
+   *
+   * @throws ContentCheckException if the body does not pass the content check
+   */
+  public void end() throws ContentCheckException {
+    scratch.clear();
+    if (!checked) {
+      throw new ContentCheckException(contains != null 
+        ? "Body does not contain '" + contains.utf8() + "'" 
+        : "Body does not match '" + matches.pattern() + "'");
+    }
+  }
+
+  private void afterRead() throws IOException {
+    if (!checked) {
+      checked = check();
+    } else {
+      scratch.clear();
+    }
+  }
+
+  /**
+   * Checks the content of the scratch buffer, which holds the tail of the
+   * previous chunks followed by the latest chunk, then trims it to the tail
+   * needed for matches spanning the next chunk.
+   */
+  private boolean check() throws IOException {
+    if (contains != null) {
+      if (scratch.indexOf(contains) != -1) {
+        scratch.clear();
+        return true;
+      }
+      trim(contains.size() - 1);
+      return false;
+    }
+    return checkMatches();
+  }
+
+  /**
+   * Decodes the latest chunk (the whole scratch buffer) after the tail of the
+   * previous ones in {@link #window}, and looks for a match, in as many steps
+   * as the window needs to hold the chunk.
+   */
+  private boolean checkMatches() throws IOException {
+    while (true) {
+      if (!scratch.exhausted()) {
+        scratch.read(undecoded);
+      }
+      undecoded.flip();
+      CoderResult result = decoder.decode(undecoded, window, false);
+      undecoded.compact();
+      window.flip();
+      if (matcher.reset(window).find()) {
+        scratch.clear();
+        return true;
+      }
+      // keep the tail, for matches spanning the next chunk
+      if (window.remaining() > checkWindow) {
+        window.position(window.limit() - checkWindow);
+      }
+      window.compact();
+      if (scratch.exhausted() && !result.isOverflow()) {
+        return false;
+      }
+    }
+  }
+
+  private void trim(long keep) throws IOException {
+    long size = scratch.size();
+    if (size > keep) {
+      scratch.skip(size - keep);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HTTP clients shared by all HTTP monitors.
+ *
+ * <ul>
+ * <li>All clients share a single connection pool, sized after the number of
+ * distinct origins (scheme, host and port) rather than the number of monitors,
+ * and keeping idle connections longer than the longest monitor period, so that
+ * probes of monitors targeting the same origin reuse the same connections (a
+ * single multiplexed one with HTTP/2).</li>
+ * <li>Monitors with the same timeouts share the same client instance.</li>
+ * <li>Probes in {@link HttpMonitor.ProbeMode#ASYNC} mode all go through a
+ * single JDK {@link HttpClient}, whose I/O is multiplexed on a selector thread
+ * and whose callbacks run on a small executor: unlike OkHttp, which holds a
+ * thread for each call in flight, a slow target does not hold any thread. Their
+ * concurrency is bounded overall and per origin (with optional limits for
+ * specific origins) by a {@link ProbeLimiter}.</li>
+ * <li>{@link #prewarm(HttpMonitor.ProbeMode)} opens a connection to each
+ * origin before the first probes, so that their latency does not include DNS
+ * resolution and handshakes, and so that concurrent first probes of an HTTP/2 origin do not
+ * race to open redundant connections.</li>
+ * </ul>
+ */
+public final class HttpClients {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(HttpClients.class);
+
+  private static final int MIN_IDLE_CONNECTIONS = 5;
+  private static final Duration MIN_KEEP_ALIVE = Duration.ofMinutes(5);
+
+  private final OkHttpClient base;
+
+  private final Supplier<HttpClient> asyncClient;
+
+  private final ProbeLimiter limiter;
+
+  /**
+   * First target of each origin
+   */
+  private final ImmutableMap<HttpUrl, HttpUrl> origins;
+
+  private final boolean phaseLatencies;
+
+  private final Map<List<Duration>, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+  private HttpClients(OkHttpClient base, Supplier<HttpClient> asyncClient, ProbeLimiter limiter, ImmutableMap<HttpUrl, HttpUrl> origins, 
+      boolean phaseLatencies) {
+    this.base = base;
+    this.asyncClient = asyncClient;
+    this.limiter = limiter;
+    this.origins = origins;
+    this.phaseLatencies = phaseLatencies;
+  }
+
+  /**
+   * Clients without limits on asynchronous probes, whose JDK client uses its
+   * default executor.
+   *
+   * @see #create(OkHttpClient, Executor, int, int, Collection, Duration)
+   */
+  public static HttpClients create(OkHttpClient client, Collection<String> targets, Duration maxPeriod) {
+    return create(client, null, Integer.MAX_VALUE, Integer.MAX_VALUE, targets, maxPeriod);
+  }
+
+  /**
+   * Clients with the same limit of asynchronous probes in flight for all
+   * origins.
+   *
+   * @see #create(OkHttpClient, Executor, int, int, Map, Collection, Duration)
+   */
+  public static HttpClients create(OkHttpClient client, Executor asyncExecutor, int maxInflightProbes, int maxRequestsPerHost, 
+      Collection<String> targets, Duration maxPeriod) {
+    return create(client, asyncExecutor, maxInflightProbes, maxRequestsPerHost, ImmutableMap.of(), targets, maxPeriod);
+  }
+
+  /**
+   * @param client               client whose dispatcher and interceptors are
+   *                             shared
+   * @param asyncExecutor        executor of the JDK client callbacks, and of
+   *                             the probes that waited for the limits, which
+   *                             never block, or {@code null} for the JDK
+   *                             default (and the common pool)
+   * @param maxInflightProbes    maximum number of asynchronous probes in
+   *                             flight
+   * @param maxRequestsPerHost   maximum number of asynchronous probes in
+   *                             flight to a single origin
+   * @param maxRequestsPerOrigin maximum number of asynchronous probes in
+   *                             flight to specific origins, instead of
+   *                             {@code maxRequestsPerHost}, by URL of the
+   *                             origin (only its scheme, host and port count)
+   * @param targets              targets of all monitors
+   * @param maxPeriod            longest probing period
+   * @throws IllegalArgumentException if an origin of
+   *                                  {@code maxRequestsPerOrigin} is not an
+   *                                  HTTP URL, or its limit is not positive
+   */
+  public static HttpClients create(OkHttpClient client, Executor asyncExecutor, int maxInflightProbes, int maxRequestsPerHost, 
+      Map<String, Integer> maxRequestsPerOrigin, Collection<String> targets, Duration maxPeriod) {
+    Map<HttpUrl, Integer> maxPerOrigin = new LinkedHashMap<>();
+    maxRequestsPerOrigin.forEach((url, max) -> {
+      HttpUrl origin = HttpUrl.parse(url);
+      Preconditions.checkArgument(origin != null, "Invalid origin '%s', expected an http(s) URL", url);
+      Preconditions.checkArgument(max > 0, "Maximum number of requests to %s must be positive", url);
+      maxPerOrigin.put(origin(origin), max);
+    });
+    Map<HttpUrl, HttpUrl> origins = new LinkedHashMap<>();
+    for (String target : targets) {
+      HttpUrl url = HttpUrl.parse(target);
+      if (url != null) {
+        origins.putIfAbsent(origin(url), url);
+      }
+    }
+    Duration keepAlive = maxPeriod.multipliedBy(2).compareTo(MIN_KEEP_ALIVE) > 0 ? maxPeriod.multipliedBy(2) : MIN_KEEP_ALIVE;
+    // each origin gets 2 idle connections: one is enough with HTTP/2, HTTP/1.1 probes may overlap
+    ConnectionPool pool = new ConnectionPool(Math.max(MIN_IDLE_CONNECTIONS, 2 * origins.size()), keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+    LOGGER.info("{} targets on {} origins, idle connections are kept for {}", targets.size(), origins.size(), keepAlive);
+    for (HttpUrl origin : maxPerOrigin.keySet()) {
+      if (!origins.containsKey(origin)) {
+        LOGGER.warn("No monitor targets {}, its maximum number of requests in flight is unused", origin);
+      }
+    }
+    // only created when used, as it starts its selector thread
+    Supplier<HttpClient> asyncClient = Suppliers.memoize(() -> {
+      // as OkHttp, follows redirects, even across schemes. The connect timeout
+      // of the JDK client is shared by all monitors, so none is set: connecting
+      // is bounded by the request timeout, which covers the response headers
+      // (connect plus read timeouts, see HttpMonitor). Idle connections are
+      // kept for 20 minutes
+      HttpClient.Builder builder = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS);
+      if (asyncExecutor != null) {
+        builder.executor(asyncExecutor);
+      }
+      return builder.build();
+    });
+    return new HttpClients(client.newBuilder().connectionPool(pool).build(), asyncClient, 
+      new ProbeLimiter(maxInflightProbes, maxRequestsPerHost, maxPerOrigin, asyncExecutor != null ? asyncExecutor : ForkJoinPool.commonPool()), 
+      ImmutableMap.copyOf(origins), false);
+  }
+
+  /**
+   * These clients, sharing the same connections and limits, with the network
+   * events of {@link HttpMonitor.ProbeMode#BLOCKING} probes timed by a
+   * {@link ProbeTimingsEventListener}, so that monitors keep per-phase latency
+   * histograms. The JDK client of {@link HttpMonitor.ProbeMode#ASYNC} probes
+   * does not report these events: their phases are never timed.
+   */
+  public HttpClients withPhaseLatencies() {
+    return new HttpClients(base.newBuilder().eventListener(ProbeTimingsEventListener.INSTANCE).build(), asyncClient, limiter, origins, true);
+  }
+
+  /**
+   * Whether {@link HttpMonitor.ProbeMode#BLOCKING} probes are broken down in
+   * phases, see {@link #withPhaseLatencies()}.
+   */
+  public boolean phaseLatencies() {
+    return phaseLatencies;
+  }
+
+  static HttpUrl origin(HttpUrl url) {
+    return new HttpUrl.Builder().scheme(url.scheme()).host(url.host()).port(url.port()).build();
+  }
+
+  /**
+   * Client with the given timeouts, sharing connections with all other clients.
+   */
+  public OkHttpClient client(Duration connectTimeout, Duration readTimeout) {
+    return clients.computeIfAbsent(List.of(connectTimeout, readTimeout), k -> base.newBuilder()
+      .connectTimeout(connectTimeout)
+      .readTimeout(readTimeout)
+      .build());
+  }
+
+  /**
+   * The client of {@link HttpMonitor.ProbeMode#ASYNC} probes.
+   */
+  HttpClient asyncClient() {
+    return asyncClient.get();
+  }
+
+  ProbeLimiter limiter() {
+    return limiter;
+  }
+
+  public int originsCount() {
+    return origins.size();
+  }
+
+  /**
+   * Number of asynchronous probes in flight.
+   */
+  public int inFlightProbes() {
+    return limiter.inFlight();
+  }
+
+  /**
+   * Number of asynchronous probes waiting for the limits to allow them.
+   */
+  public int waitingProbes() {
+    return limiter.waiting();
+  }
+
+  /**
+   * Sends a HEAD request to each origin (to the first target of the origin),
+   * with the client of the probes in {@code probeMode}, to get a pooled
+   * connection. Failures are ignored: probes will report them.
+   *
+   * @return a future completed once all requests completed
+   */
+  public CompletableFuture<Void> prewarm(HttpMonitor.ProbeMode probeMode) {
+    if (probeMode == HttpMonitor.ProbeMode.ASYNC) {
+      HttpClient client = asyncClient();
+      return CompletableFuture.allOf(origins.values().stream()
+        .map(target -> client.sendAsync(HttpRequest.newBuilder(target.uri())
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .version(target.isHttps() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+            .build(), HttpResponse.BodyHandlers.discarding())
+          .handle((response, e) -> {
+            if (e != null) {
+              LOGGER.debug("Unable to prewarm connection to {}", target, e);
+            }
+            return null;
+          }))
+        .toArray(CompletableFuture[]::new));
+    }
+    CompletableFuture<?>[] calls = origins.values().stream().map(target -> {
+      CompletableFuture<Void> done = new CompletableFuture<>();
+      base.newCall(new Request.Builder().url(target).head().build()).enqueue(new Callback() {
+        @Override
+        public void onResponse(Call call, Response response) {
+          response.close();
+          done.complete(null);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+          LOGGER.debug("Unable to prewarm connection to {}", target, e);
+          done.complete(null);
+        }
+      });
+      return done;
+    }).toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(calls);
+  }
+}
@@ -0,0 +1,564 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLException;
+
+import com.google.common.base.Throwables;
+
+import org.eclipsefoundation.cerberus.archive.ProbeArchive;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.configuration.HttpMonitorConfiguration;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.monitors.LatencyHistogram;
+import org.eclipsefoundation.cerberus.monitors.Monitor;
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournal;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Base class of monitors probing an HTTP target. It takes care of executing the
+ * probes (blocking or asynchronous), of never having more than one probe in
+ * flight per monitor, and of keeping per-phase latency histograms (see
+ * {@link ProbeTimings.Phase}) over the monitoring history of
+ * {@link ProbeMode#BLOCKING} probes, when the clients time them (see
+ * {@link HttpClients#withPhaseLatencies()}). Clients come from
+ * {@link HttpClients}.
+ */
+public abstract class HttpMonitor extends Monitor {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(HttpMonitor.class);
+
+  /**
+   * Number of slices of the per-phase histograms. Kept low as there are
+   * several histograms per monitor: the window slides by half its duration.
+   */
+  private static final int PHASE_HISTORY_SLICES = 2;
+
+  private static final ProbeTimings.Phase[] PHASES = ProbeTimings.Phase.values();
+
+  /**
+   * Labels of the probe counters: index 0 counts probes that ended with an
+   * exception, index n counts nxx status codes.
+   */
+  private static final String[] STATUS_CLASSES = { "none", "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+  public static enum ProbeMode {
+    /**
+     * The probe is executed on the calling (scheduler) thread, which is blocked
+     * until the response has been read or the call timed out.
+     */
+    BLOCKING,
+    /**
+     * The probe is sent with the non-blocking JDK client, and its result is
+     * recorded from the completion callback: the calling thread only dispatches,
+     * and no thread is held while the probe is in flight. The connect and read
+     * timeouts add up to bound the wait for the response headers, then the read
+     * timeout bounds the reading of the body. Phases are not timed, as the JDK
+     * client does not report connection events: the time to the first byte
+     * would silently include DNS resolution, connection and handshake.
+     */
+    ASYNC;
+  }
+
+  protected final OkHttpClient client;
+
+  private final HttpClient asyncClient;
+
+  private final ProbeLimiter limiter;
+
+  /**
+   * Key of the target in the {@link #limiter}.
+   */
+  private final HttpUrl origin;
+
+  private final Duration headersTimeout;
+
+  private final Duration bodyTimeout;
+
+  protected final List<ComponentUpdater> updaters;
+
+  private final ProbeMode probeMode;
+
+  private final BodyPolicy bodyPolicy;
+
+  /**
+   * Set while a probe is waiting for its response, so that a slow target never
+   * has more than one probe in flight (whatever the probe mode or executor).
+   * The release of the flag after a probe completion happens-before the
+   * acquisition for the next probe, so completions are a single writer.
+   * Once cancelled, the flag is taken for good by whoever sees the monitor
+   * idle last, which completes {@link #drained}.
+   */
+  private final AtomicBoolean probeInFlight = new AtomicBoolean();
+
+  /**
+   * Completed once cancelled and without a probe in flight, see
+   * {@link #cancel()}.
+   */
+  private final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+  private final ProbeTimings timings = new ProbeTimings();
+
+  private final ProbeRequest probeRequest;
+
+  /**
+   * By {@link ProbeTimings.Phase#ordinal()}, or {@code null} if phases are not
+   * timed.
+   */
+  private final LatencyHistogram[] phaseLatencies;
+
+  private final LongAdder[] probes = new LongAdder[STATUS_CLASSES.length];
+
+  /**
+   * Where probe results are persisted, or {@code null}.
+   */
+  private final ProbeJournal journal;
+
+  /**
+   * Where probe results are archived, or {@code null}.
+   */
+  private final ProbeArchive.Writer archive;
+
+  private final int statusCodeMin;
+  private final int statusCodeMax;
+
+  /**
+   * Latest status published to the updaters.
+   */
+  private volatile Status status = Status.UNKNOWN;
+
+  /**
+   * Time of the first published status, 0 until then.
+   */
+  private volatile long firstStatusEpochNanos;
+
+  /**
+   * @param previous monitor of the same component replaced by this one (e.g.
+   *                 after a configuration reload), or {@code null}. Its
+   *                 counters and status are carried over, as well as its phase
+   *                 latencies if both record them and they are compatible (see
+   *                 {@link #sameProbes(HttpMonitorConfiguration, HttpMonitorConfiguration)}).
+   *                 It must have been cancelled.
+   * @param journal  where probe results are persisted, or {@code null}
+   * @param archive  where probe results are archived, or {@code null}
+   */
+  protected HttpMonitor(HttpMonitorConfiguration configuration, HttpClients clients, List<ComponentUpdater> updaters, ProbeMode probeMode, HttpMonitor previous, 
+      ProbeJournal journal, ProbeArchive.Writer archive) {
+    this.client = clients.client(configuration.connectTimeout(), configuration.readTimeout());
+    this.asyncClient = probeMode == ProbeMode.ASYNC ? clients.asyncClient() : null;
+    this.limiter = clients.limiter();
+    this.origin = HttpClients.origin(HttpUrl.get(configuration.target()));
+    this.headersTimeout = configuration.connectTimeout().plus(configuration.readTimeout());
+    this.bodyTimeout = configuration.readTimeout();
+    this.journal = journal;
+    this.archive = archive;
+    this.statusCodeMin = configuration.statusCodeMin();
+    this.statusCodeMax = configuration.statusCodeMax();
+    this.updaters = updaters;
+    this.probeMode = probeMode;
+    this.bodyPolicy = BodyPolicy.of(configuration.body());
+    this.probeRequest = new ProbeRequest(configuration.target(), configuration.method(), 
+      Boolean.TRUE.equals(configuration.conditional()), bodyPolicy, timings);
+    if (clients.phaseLatencies() && probeMode == ProbeMode.BLOCKING) {
+      boolean inheritLatencies = previous != null && previous.phaseLatencies != null && sameProbes(configuration, previous.configuration()) 
+        && configuration.monitoringHistory().equals(previous.configuration().monitoringHistory());
+      this.phaseLatencies = new LatencyHistogram[PHASES.length];
+      for (int i = 0; i < PHASES.length; i++) {
+        phaseLatencies[i] = inheritLatencies ? previous.phaseLatencies[i] : new LatencyHistogram(configuration.monitoringHistory(), PHASE_HISTORY_SLICES);
+      }
+    } else {
+      this.phaseLatencies = null;
+    }
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = previous != null ? previous.probes[i] : new LongAdder();
+    }
+    if (previous != null) {
+      this.status = previous.status;
+      this.firstStatusEpochNanos = previous.firstStatusEpochNanos;
+    }
+  }
+
+  @Override
+  public abstract HttpMonitorConfiguration configuration();
+
+  /**
+   * Whether probes of both configurations are the same, so that results of the
+   * probes of one are relevant to the other.
+   */
+  protected static boolean sameProbes(HttpMonitorConfiguration a, HttpMonitorConfiguration b) {
+    return Objects.equals(a.target(), b.target()) 
+      && Objects.equals(a.method(), b.method()) 
+      && Objects.equals(a.body(), b.body());
+  }
+
+  /**
+   * Replays the probe results of the journal (if any) that are within the
+   * monitoring history, so that the first anomalies detection after a restart
+   * does not run on an empty history. Meant to be called by constructors of
+   * subclasses, for monitors that do not replace a previous one. Results that
+   * have not been archived yet are archived.
+   */
+  protected void replayJournal(ProbeJournal.Visitor visitor) {
+    if (journal == null) {
+      return;
+    }
+    long now = MonitorHistory.nowEpochNanos();
+    long since = now - configuration().monitoringHistory().toNanos();
+    int[] replayed = new int[1];
+    journal.replay(Long.MIN_VALUE, (time, latency, statusCode, errorClass) -> {
+      if (archive != null) {
+        archive.append(time, latency, statusCode, errorClass, isFailure(statusCode));
+      }
+      if (time >= since && time <= now) {
+        visitor.record(time, latency, statusCode, errorClass);
+        replayed[0]++;
+      }
+    });
+    LOGGER.info("Restored {} probes of component {} from {}", replayed[0], configuration().componentName(), journal.file());
+  }
+
+  /**
+   * Whether a probe ended with {@code statusCode} counts as a failure, in the
+   * archive as in anomalies detection: status codes out of the configured
+   * range, or no status code. 429 (Too Many Requests, i.e. rate limiting) is
+   * considered a success.
+   */
+  protected boolean isFailure(int statusCode) {
+    return (statusCode < statusCodeMin || statusCode > statusCodeMax) && statusCode != 429;
+  }
+
+  /**
+   * Pushes the status of the monitored component to all updaters.
+   */
+  protected void publishStatus(Status newStatus) {
+    if (firstStatusEpochNanos == 0) {
+      firstStatusEpochNanos = MonitorHistory.nowEpochNanos();
+    }
+    status = newStatus;
+    updaters.forEach(u -> u.updateStatus(configuration().componentName(), newStatus));
+  }
+
+  public Status status() {
+    return status;
+  }
+
+  /**
+   * Time of the first status published by this monitor, see
+   * {@link MonitorHistory#nowEpochNanos()}, or 0 if there was none yet.
+   */
+  public long firstStatusEpochNanos() {
+    return firstStatusEpochNanos;
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    super.writeMetrics(writer);
+    String component = configuration().componentName();
+    for (int i = 0; i < probes.length; i++) {
+      writer.counter("cerberus_probes_total", "Number of completed probes, by status code class", probes[i].sum(), 
+        "component", component, "class", STATUS_CLASSES[i]);
+    }
+    for (Status s : Status.values()) {
+      writer.gauge("cerberus_component_status", "Status of the component as last computed by the monitor (1 for the current status)",
+        s == status ? 1 : 0, "component", component, "status", s.name().toLowerCase());
+    }
+    if (probeRequest.conditional()) {
+      writer.counter("cerberus_probes_not_modified_total", "Number of conditional probes answered with 304 Not Modified", 
+        probeRequest.notModified(), "component", component);
+    }
+    if (phaseLatencies == null) {
+      return;
+    }
+    long now = MonitorHistory.nowEpochNanos();
+    for (ProbeTimings.Phase phase : PHASES) {
+      writer.summary("cerberus_probe_phase_seconds", "Duration of the phases of probes over the monitoring history", 
+        phaseLatencies[phase.ordinal()], now, "component", component, "phase", phase.name().toLowerCase());
+    }
+  }
+
+  /**
+   * Latencies of {@code phase} over the monitoring history, for probes where
+   * that phase happened, or {@code null} if phases are not timed.
+   */
+  public LatencyHistogram phaseLatency(ProbeTimings.Phase phase) {
+    return phaseLatencies != null ? phaseLatencies[phase.ordinal()] : null;
+  }
+
+  /**
+   * One line summary of the 95th percentile of each phase, for logging, as
+   * {@code " (p95 dns=...)"}, or an empty string if phases are not timed.
+   */
+  protected String phasesSummary(long nowEpochNanos) {
+    if (phaseLatencies == null) {
+      return "";
+    }
+    StringBuilder summary = new StringBuilder(" (p95");
+    for (ProbeTimings.Phase phase : PHASES) {
+      LatencyHistogram histogram = phaseLatencies[phase.ordinal()];
+      summary.append(' ').append(phase.name().toLowerCase()).append('=');
+      if (histogram.count(nowEpochNanos) == 0) {
+        summary.append('-');
+      } else {
+        summary.append(histogram.percentile(95, nowEpochNanos).toMillis()).append("ms");
+      }
+    }
+    return summary.append(')').toString();
+  }
+
+  /**
+   * Called once per probe, never concurrently.
+   *
+   * @param time       start of the probe, see {@link MonitorHistory#nowEpochNanos()}
+   * @param latency    duration of the probe in nanoseconds, until the body has
+   *                   been consumed as per the {@link BodyPolicy}
+   * @param statusCode the response status code (the one of the revalidated
+   *                   response for a 304 to a conditional probe), or
+   *                   {@link MonitorHistory#NO_STATUS_CODE}
+   *                   (including when the body failed the content check)
+   * @param exception  the exception that ended the probe, if any
+   */
+  protected abstract void onProbeCompleted(long time, long latency, int statusCode, Optional<Exception> exception);
+
+  @Override
+  public void run() {
+    if (!probeInFlight.compareAndSet(false, true)) {
+      if (isCancelled()) {
+        return;
+      }
+      LOGGER.warn("Previous probe of {} is still in flight, skipping this one", configuration().target());
+      return;
+    }
+    if (probeMode == ProbeMode.ASYNC) {
+      limiter.submit(origin, this::sendAsync);
+      return;
+    }
+    timings.reset();
+    Request r = probeRequest.request();
+    long now = MonitorHistory.nowEpochNanos();
+    long start = System.nanoTime();
+    try (Response response = client.newCall(r).execute()) {
+      bodyPolicy.consume(response.body().source());
+      completed(now, System.nanoTime() - start, probeRequest.onResponse(response), Optional.empty());
+    } catch (IOException e) {
+      LOGGER.error("Exception while monitoring {}", configuration().target(), e);
+      completed(now, System.nanoTime() - start, MonitorHistory.NO_STATUS_CODE, Optional.of(e));
+    } finally {
+      probeDone();
+    }
+  }
+
+  /**
+   * Sends the probe once the {@link #limiter} allows it, which is when its time
+   * and latency start.
+   */
+  private void sendAsync() {
+    if (isCancelled()) {
+      // waited for the limiter past its cancellation
+      probeDone();
+      limiter.release(origin);
+      return;
+    }
+    long now = MonitorHistory.nowEpochNanos();
+    long start = System.nanoTime();
+    CompletableFuture<HttpResponse<Void>> response;
+    try {
+      response = asyncClient.sendAsync(probeRequest.httpRequest(headersTimeout), info -> new PolicySubscriber());
+    } catch (RuntimeException e) {
+      response = CompletableFuture.failedFuture(e);
+    }
+    response.whenComplete((r, error) -> {
+      try {
+        if (error == null) {
+          completed(now, System.nanoTime() - start, probeRequest.onResponse(r), Optional.empty());
+        } else {
+          Exception e = asException(error);
+          if (e instanceof TimeoutException) {
+            // from the body timeout of PolicySubscriber
+            e = new HttpTimeoutException("Response body not read within " + bodyTimeout);
+          }
+          LOGGER.error("Exception while monitoring {}", configuration().target(), e);
+          completed(now, System.nanoTime() - start, MonitorHistory.NO_STATUS_CODE, Optional.of(e));
+        }
+      } finally {
+        probeDone();
+        limiter.release(origin);
+      }
+    });
+  }
+
+  private void probeDone() {
+    probeInFlight.set(false);
+    if (isCancelled() && probeInFlight.compareAndSet(false, true)) {
+      drained.complete(null);
+    }
+  }
+
+  /**
+   * The returned future completes once the probe in flight, if any, has been
+   * recorded: the journal and archive of this monitor can then be handed over
+   * to its replacement, as they must have a single writer.
+   */
+  @Override
+  public CompletableFuture<Void> cancel() {
+    super.cancel();
+    // either this or the completion of the probe in flight sees the other's write
+    if (probeInFlight.compareAndSet(false, true)) {
+      drained.complete(null);
+    }
+    return drained;
+  }
+
+  private static Exception asException(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    return cause instanceof Exception ? (Exception)cause : new IOException(cause);
+  }
+
+  /**
+   * Feeds the body of a response of the JDK client to the {@link BodyPolicy}
+   * as it arrives, and drops the rest of it once the policy does not need it.
+   * Signals are serialized by the client, as the probe they belong to.
+   */
+  private final class PolicySubscriber implements HttpResponse.BodySubscriber<Void> {
+
+    private final CompletableFuture<Void> body = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      bodyPolicy.begin();
+      body.orTimeout(bodyTimeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((v, e) -> {
+        if (e instanceof TimeoutException) {
+          subscription.cancel();
+        }
+      });
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> chunks) {
+      if (body.isDone()) {
+        return;
+      }
+      try {
+        boolean more = true;
+        for (ByteBuffer chunk : chunks) {
+          if (more) {
+            more = bodyPolicy.accept(chunk);
+          }
+        }
+        if (more) {
+          subscription.request(1);
+        } else {
+          subscription.cancel();
+          onComplete();
+        }
+      } catch (IOException e) {
+        subscription.cancel();
+        body.completeExceptionally(e);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      if (body.isDone()) {
+        return;
+      }
+      try {
+        bodyPolicy.end();
+        body.complete(null);
+      } catch (BodyPolicy.ContentCheckException e) {
+        body.completeExceptionally(e);
+      }
+    }
+
+    @Override
+    public CompletionStage<Void> getBody() {
+      return body;
+    }
+  }
+
+  private void completed(long time, long latency, int statusCode, Optional<Exception> exception) {
+    if (journal != null || archive != null) {
+      ProbeJournal.ErrorClass errorClass = exception.isPresent() ? errorClass(exception.get()) : ProbeJournal.ErrorClass.NONE;
+      if (journal != null) {
+        journal.append(time, latency, statusCode, errorClass);
+      }
+      if (archive != null) {
+        archive.append(time, latency, statusCode, errorClass, isFailure(statusCode));
+      }
+    }
+    int statusClass = statusCode / 100;
+    probes[statusClass >= 1 && statusClass < STATUS_CLASSES.length ? statusClass : 0].increment();
+    if (phaseLatencies != null) {
+      for (int i = 0; i < PHASES.length; i++) {
+        long duration = timings.duration(PHASES[i]);
+        if (duration >= 0) {
+          phaseLatencies[i].record(time, duration);
+        }
+      }
+    }
+    onProbeCompleted(time, latency, statusCode, exception);
+  }
+
+  /**
+   * The JDK client wraps the causes of failures, e.g. in a
+   * {@link ConnectException} for an unknown host, so the whole causal chain is
+   * searched, from the most specific class.
+   */
+  private static ProbeJournal.ErrorClass errorClass(Exception exception) {
+    List<Throwable> chain = Throwables.getCausalChain(exception);
+    if (chain.stream().anyMatch(BodyPolicy.ContentCheckException.class::isInstance)) {
+      return ProbeJournal.ErrorClass.CONTENT_CHECK;
+    } else if (chain.stream().anyMatch(t -> t instanceof UnknownHostException || t instanceof UnresolvedAddressException)) {
+      return ProbeJournal.ErrorClass.DNS;
+    } else if (chain.stream().anyMatch(SSLException.class::isInstance)) {
+      return ProbeJournal.ErrorClass.TLS;
+    } else if (chain.stream().anyMatch(t -> t instanceof InterruptedIOException || t instanceof HttpTimeoutException || t instanceof TimeoutException)) {
+      return ProbeJournal.ErrorClass.TIMEOUT;
+    } else if (chain.stream().anyMatch(ConnectException.class::isInstance)) {
+      return ProbeJournal.ErrorClass.CONNECT;
+    }
+    return ProbeJournal.ErrorClass.OTHER;
+  }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.google.common.collect.ImmutableMap;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Limits the number of asynchronous probes in flight, overall and per origin
+ * (the same limit for all origins, unless overridden for specific ones, e.g.
+ * a fragile target or a CDN edge able to take far more), without ever blocking
+ * a thread: probes over a limit wait in a queue of their origin, and are
+ * handed to an executor when a previous probe completes, the way the OkHttp
+ * {@code Dispatcher} promotes its ready calls.
+ *
+ * <p>
+ * Origins with waiting probes and a free slot, i.e. only held by the overall
+ * limit, are queued as ready: a completion promotes the first probe of the
+ * first ready origin, so that it costs O(1) whatever the number of waiting
+ * probes, and ready origins take turns. Probes of an origin start in the order
+ * they were submitted.
+ */
+final class ProbeLimiter {
+
+  private final int maxInFlight;
+  private final int maxPerOrigin;
+  /**
+   * Limits of the origins that do not get {@link #maxPerOrigin}.
+   */
+  private final ImmutableMap<HttpUrl, Integer> maxPerOriginOverrides;
+  /**
+   * Runs the probes that waited, rather than the thread completing a probe:
+   * the completion of a probe that starts right away would otherwise recurse.
+   */
+  private final Executor executor;
+
+  /**
+   * Origins with probes in flight or waiting, others are removed.
+   */
+  private final Map<HttpUrl, Origin> origins = new HashMap<>();
+  /**
+   * Origins with waiting probes and a free slot.
+   */
+  private final ArrayDeque<Origin> ready = new ArrayDeque<>();
+  private int inFlight;
+  private int waiting;
+
+  private static final class Origin {
+    final int max;
+    final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    int inFlight;
+    /**
+     * Whether the origin is in {@link ProbeLimiter#ready}
+     */
+    boolean ready;
+
+    Origin(int max) {
+      this.max = max;
+    }
+  }
+
+  /**
+   * @param maxPerOriginOverrides limits of specific origins (see
+   *                              {@link HttpClients#origin(HttpUrl)}), instead
+   *                              of {@code maxPerOrigin}
+   * @param executor              runs the probes that waited for a slot
+   */
+  ProbeLimiter(int maxInFlight, int maxPerOrigin, Map<HttpUrl, Integer> maxPerOriginOverrides, Executor executor) {
+    this.maxInFlight = maxInFlight;
+    this.maxPerOrigin = maxPerOrigin;
+    this.maxPerOriginOverrides = ImmutableMap.copyOf(maxPerOriginOverrides);
+    this.executor = executor;
+  }
+
+  /**
+   * Runs {@code probe} on the calling thread if the limits allow it, or later
+   * on the executor once a slot is released. The probe must not block, and its
+   * completion must call {@link #release(HttpUrl)}.
+   */
+  void submit(HttpUrl url, Runnable probe) {
+    synchronized (this) {
+      Origin origin = origins.computeIfAbsent(url, u -> new Origin(maxPerOriginOverrides.getOrDefault(u, maxPerOrigin)));
+      // ready origins are only held by the overall limit, so none is when it is not reached
+      if (!origin.waiting.isEmpty() || origin.inFlight >= origin.max || inFlight >= maxInFlight) {
+        origin.waiting.add(probe);
+        waiting++;
+        markReady(origin);
+        return;
+      }
+      origin.inFlight++;
+      inFlight++;
+    }
+    probe.run();
+  }
+
+  /**
+   * Frees the slot of a completed probe of {@code url}, and hands the waiting
+   * probes it unblocks to the executor.
+   */
+  void release(HttpUrl url) {
+    List<Runnable> unblocked = null;
+    synchronized (this) {
+      Origin origin = origins.get(url);
+      origin.inFlight--;
+      inFlight--;
+      markReady(origin);
+      while (inFlight < maxInFlight && !ready.isEmpty()) {
+        Origin next = ready.poll();
+        next.ready = false;
+        if (unblocked == null) {
+          unblocked = new ArrayList<>(1);
+        }
+        unblocked.add(next.waiting.poll());
+        waiting--;
+        next.inFlight++;
+        inFlight++;
+        // behind the other ready origins
+        markReady(next);
+      }
+      if (origin.inFlight == 0 && origin.waiting.isEmpty()) {
+        origins.remove(url);
+      }
+    }
+    if (unblocked != null) {
+      unblocked.forEach(executor::execute);
+    }
+  }
+
+  /**
+   * Queues {@code origin} as ready if it has waiting probes and a free slot.
+   */
+  private void markReady(Origin origin) {
+    if (!origin.ready && !origin.waiting.isEmpty() && origin.inFlight < origin.max) {
+      origin.ready = true;
+      ready.add(origin);
+    }
+  }
+
+  synchronized int inFlight() {
+    return inFlight;
+  }
+
+  synchronized int waiting() {
+    return waiting;
+  }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import java.net.HttpURLConnection;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Request template of the probes of a monitor, built once: probes reuse the
+ * same immutable {@link Request} (or {@link HttpRequest} for the JDK client)
+ * until it must change.
+ *
+ * <p>
+ * Conditional probes revalidate the last successful response: its
+ * {@code ETag} and {@code Last-Modified} validators are sent back as
+ * {@code If-None-Match} and {@code If-Modified-Since}, so a healthy origin
+ * whose content did not change answers {@code 304 Not Modified} without a
+ * body. The conditional request is only rebuilt when the validators change.
+ *
+ * <p>
+ * Not thread safe: like {@link ProbeTimings}, it is only used by the probe of
+ * the monitor in flight, and the flag guarding probes orders successive
+ * probes.
+ */
+final class ProbeRequest {
+
+  private final Request template;
+  private final boolean conditional;
+
+  private final LongAdder notModified = new LongAdder();
+
+  private Request request;
+  /**
+   * JDK counterpart of {@link #request}, built on first use.
+   */
+  private HttpRequest httpRequest;
+  private Duration httpTimeout;
+  private String eTag;
+  private String lastModified;
+  /**
+   * Status code of the response that provided the validators.
+   */
+  private int validatedStatusCode;
+
+  /**
+   * @param method      HTTP method, {@code null} for GET
+   * @param conditional whether to send conditional requests
+   */
+  ProbeRequest(String target, String method, boolean conditional, BodyPolicy bodyPolicy, ProbeTimings timings) {
+    String m = bodyPolicy.headOnly() ? "HEAD" : method == null ? "GET" : method.toUpperCase();
+    Preconditions.checkArgument(!"HEAD".equals(m) || !bodyPolicy.checksContent(), 
+      "Content checks require the body, they can't be used with the HEAD method");
+    // rejects methods requiring a request body
+    this.template = new Request.Builder().url(target).method(m, null).tag(ProbeTimings.class, timings).build();
+    this.conditional = conditional;
+    this.request = template;
+  }
+
+  /**
+   * The request of the next probe.
+   */
+  Request request() {
+    return request;
+  }
+
+  /**
+   * The request of the next probe, for the JDK client.
+   *
+   * @param timeout how long to wait for the response headers
+   */
+  HttpRequest httpRequest(Duration timeout) {
+    if (httpRequest == null || !timeout.equals(httpTimeout)) {
+      HttpRequest.Builder builder = HttpRequest.newBuilder(request.url().uri())
+        .method(request.method(), HttpRequest.BodyPublishers.noBody())
+        .timeout(timeout);
+      if (!request.isHttps()) {
+        // no cleartext HTTP/2 upgrade attempt, as OkHttp
+        builder.version(HttpClient.Version.HTTP_1_1);
+      }
+      for (int i = 0; i < request.headers().size(); i++) {
+        builder.header(request.headers().name(i), request.headers().value(i));
+      }
+      httpRequest = builder.build();
+      httpTimeout = timeout;
+    }
+    return httpRequest;
+  }
+
+  boolean conditional() {
+    return conditional;
+  }
+
+  /**
+   * Number of probes answered with {@code 304 Not Modified}.
+   */
+  long notModified() {
+    return notModified.sum();
+  }
+
+  /**
+   * Updates the validators from the response of a probe, and returns the status
+   * code to report: the one of the validated response for a {@code 304 Not
+   * Modified}, which means it is still current.
+   */
+  int onResponse(Response response) {
+    return conditional ? onResponse(response.code(), response.header("ETag"), response.header("Last-Modified")) : response.code();
+  }
+
+  /**
+   * Same as {@link #onResponse(Response)}, for a response of the JDK client.
+   */
+  int onResponse(HttpResponse<?> response) {
+    int code = response.statusCode();
+    return conditional 
+      ? onResponse(code, response.headers().firstValue("ETag").orElse(null), response.headers().firstValue("Last-Modified").orElse(null)) 
+      : code;
+  }
+
+  private int onResponse(int code, String newETag, String newLastModified) {
+    if (code == HttpURLConnection.HTTP_NOT_MODIFIED && request != template) {
+      notModified.increment();
+      return validatedStatusCode;
+    }
+    if (code >= 200 && code < 300) {
+      validatedStatusCode = code;
+      if (!Objects.equals(newETag, eTag) || !Objects.equals(newLastModified, lastModified)) {
+        eTag = newETag;
+        lastModified = newLastModified;
+        request = buildRequest();
+        httpRequest = null;
+      }
+    }
+    return code;
+  }
+
+  private Request buildRequest() {
+    if (eTag == null && lastModified == null) {
+      return template;
+    }
+    Request.Builder builder = template.newBuilder();
+    if (eTag != null) {
+      builder.header("If-None-Match", eTag);
+    }
+    if (lastModified != null) {
+      builder.header("If-Modified-Since", lastModified);
+    }
+    return builder.build();
+  }
+}
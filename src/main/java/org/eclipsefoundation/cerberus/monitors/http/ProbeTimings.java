@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+/**
+ * {@link System#nanoTime()} of the network events of a probe, as reported by
+ * {@link ProbeTimingsEventListener}.
+ *
+ * <p>
+ * There is one instance per monitor, reused by all its probes: it is attached
+ * to the request as a tag, so the listener finds it without any lookup, and
+ * it is reset before each probe. As probes of a monitor never overlap, it has
+ * a single writer at a time, and the flag guarding probes orders the writes of
+ * successive probes. Events that did not happen (e.g. DNS and connect phases on
+ * a pooled connection) are left to 0. With redirects, the timings of the last
+ * hop win.
+ */
+public final class ProbeTimings {
+
+  public static enum Phase {
+    /** Name resolution */
+    DNS,
+    /** TCP connection, TLS handshake excluded */
+    CONNECT,
+    /** TLS handshake */
+    TLS,
+    /** Writing request headers and body */
+    REQUEST,
+    /** Waiting for the first byte of the response (server time) */
+    TTFB,
+    /** Reading response headers and body */
+    RESPONSE;
+  }
+
+  long dnsStart;
+  long dnsEnd;
+  long connectStart;
+  long secureConnectStart;
+  long secureConnectEnd;
+  long connectEnd;
+  long requestStart;
+  long requestEnd;
+  long responseStart;
+  long responseEnd;
+
+  void reset() {
+    dnsStart = 0;
+    dnsEnd = 0;
+    connectStart = 0;
+    secureConnectStart = 0;
+    secureConnectEnd = 0;
+    connectEnd = 0;
+    requestStart = 0;
+    requestEnd = 0;
+    responseStart = 0;
+    responseEnd = 0;
+  }
+
+  /**
+   * Duration of {@code phase} in nanoseconds, or -1 if it did not happen (or did
+   * not complete).
+   */
+  public long duration(Phase phase) {
+    switch (phase) {
+      case DNS:
+        return between(dnsStart, dnsEnd);
+      case CONNECT:
+        return between(connectStart, secureConnectStart != 0 ? secureConnectStart : connectEnd);
+      case TLS:
+        return between(secureConnectStart, secureConnectEnd);
+      case REQUEST:
+        return between(requestStart, requestEnd);
+      case TTFB:
+        return between(requestEnd, responseStart);
+      case RESPONSE:
+        return between(responseStart, responseEnd);
+      default:
+        throw new IllegalArgumentException("Unknown phase " + phase);
+    }
+  }
+
+  private static long between(long start, long end) {
+    return start != 0 && end != 0 && end >= start ? end - start : -1;
+  }
+}
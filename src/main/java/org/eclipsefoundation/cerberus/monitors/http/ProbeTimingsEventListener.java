@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Stateless listener recording the network events of probes into the
+ * {@link ProbeTimings} attached to their request. Calls without such a tag are
+ * ignored. A single instance is shared by all clients, so there is no
+ * per-call allocation.
+ */
+public final class ProbeTimingsEventListener extends EventListener {
+
+  public static final ProbeTimingsEventListener INSTANCE = new ProbeTimingsEventListener();
+
+  private ProbeTimingsEventListener() {
+  }
+
+  private static ProbeTimings timings(Call call) {
+    return call.request().tag(ProbeTimings.class);
+  }
+
+  @Override
+  public void dnsStart(Call call, String domainName) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.dnsStart = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.dnsEnd = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.connectStart = System.nanoTime();
+      // a previous route may have failed after its handshake started
+      t.secureConnectStart = 0;
+      t.secureConnectEnd = 0;
+    }
+  }
+
+  @Override
+  public void secureConnectStart(Call call) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.secureConnectStart = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void secureConnectEnd(Call call, Handshake handshake) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.secureConnectEnd = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.connectEnd = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void requestHeadersStart(Call call) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.requestStart = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void requestHeadersEnd(Call call, Request request) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.requestEnd = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void requestBodyEnd(Call call, long byteCount) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.requestEnd = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void responseHeadersStart(Call call) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.responseStart = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void responseHeadersEnd(Call call, Response response) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      // overwritten by responseBodyEnd if the body is read
+      t.responseEnd = System.nanoTime();
+    }
+  }
+
+  @Override
+  public void responseBodyEnd(Call call, long byteCount) {
+    ProbeTimings t = timings(call);
+    if (t != null) {
+      t.responseEnd = System.nanoTime();
+    }
+  }
+}
@@ -7,106 +7,148 @@
  *******************************************************************************/
 package org.eclipsefoundation.cerberus.monitors.http.responsetime;
 
-public class HttpResponseTimeMonitor {
-
-  // private static Logger LOG = LoggerFactory.getLogger(HttpResponseTimeMonitor.class);
-  
-  // private final Configuration config;
-
-  // private final EvictingQueue<Report> datapoints;
-  // /**
-  //  * The lock protecting datapoints
-  //  */
-  // private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-
-  // private final OkHttpClient client;
-  // private final ResponseTimeEventListener.Factory factory;
-
-  // public static class HttpResponseTimeMonitorFactory implements Monitor.Factory {
-    
-  //   private final ConnectionPool connectionPool;
-
-  //   public HttpResponseTimeMonitorFactory(ConnectionPool connectionPool) {
-  //     this.connectionPool = connectionPool;
-  //   }
-
-  //   public HttpResponseTimeMonitor createMonitor(Configuration config, OkHttpClient client) {
-  //     return new HttpResponseTimeMonitor(config, client.newBuilder()
-  //       .connectionPool(connectionPool)
-  //       .eventListenerFactory(new ResponseTimeEventListener.Factory())
-  //       .callTimeout(config.timeout()).build());
-  //   }
-  // }
-
-  // HttpResponseTimeMonitor(Configuration config, OkHttpClient client) {
-  //   this.config = config;
-  //   this.client = client;
-  //   this.datapoints = null;//EvictingQueue.create(Ints.checkedCast(config.monitoringHistory().dividedBy(config.period())));
-  //   this.factory = ((ResponseTimeEventListener.Factory)client.eventListenerFactory());
-  // }
-
-  // @Override
-  // public MonitorConfiguration configuration() {
-  //   return null;//this.config;
-  // }
-  
-  // public void run() {
-  //   Request r = new Request.Builder().url(config.url()).get().build();
-  //   OffsetDateTime now = OffsetDateTime.now();
-  //   Call call = client.newCall(r);
-  //   try (Response response = call.execute()) {
-  //     response.body().source().readByteString();
-  //     ResponseTimeEventListener eventListener = factory.getAndRemove(call);
-  //     addDatapoint(now, eventListener.responseTime(), response.code(), Optional.empty());
-  //   } catch (IOException e) {
-  //     addDatapoint(now, Duration.ZERO, Integer.MIN_VALUE, Optional.of(e));
-  //   }
-  // }
-
-  // private void addDatapoint(OffsetDateTime time, Duration responseTime, int code, Optional<Exception> exception) {
-  //   try {
-  //     lock.writeLock().lockInterruptibly();
-  //     try {
-  //       Report report = Report.create(time, responseTime, code, exception);
-  //       LOG.debug(config.url() + " " + report);
-  //       datapoints.add(report);
-  //     } finally {
-  //       lock.writeLock().unlock();;
-  //     }
-  //   } catch (InterruptedException e) {
-  //     Thread.currentThread().interrupt();
-  //   }
-  // }
-
-  // @Override
-  // public void detectAnomalies() {
-  //   long[] anomalies = new long[0];
-  //   try {
-  //     lock.readLock().lockInterruptibly();
-  //     try {
-  //       anomalies = datapoints.stream()
-  //         .filter(Predicate.not(r -> Range.closed(200, 399).contains(r.statusCode())))
-  //         .map(Report::responseTime)
-  //         .mapToLong(Duration::toMillis)
-  //         .toArray();
-  //     } finally {
-  //       lock.readLock().unlock();
-  //     }
-  //   } catch (InterruptedException e) {
-  //     Thread.currentThread().interrupt();
-  //   }
-
-  //   Map<Integer, Double> q = Quantiles.percentiles().indexes(config.outagePercentile()).compute(anomalies);
-    
-  //   // if (config.partialOutageAnomalyCountRange().contains(anomalyCount)) {
-  //   //   LOG.debug(Component.Status.PARTIAL_OUTAGE + " ("  + anomalyCount + " anomalies in the last " + config.monitoringHistory() + ")");
-  //   //   return Component.Status.PARTIAL_OUTAGE;
-  //   // } else if (config.majorOutageAnomalyCountRange().contains(anomalyCount)) {
-  //   //   LOG.debug(Component.Status.MAJOR_OUTAGE + " ("  + anomalyCount + " anomalies in the last " + config.monitoringHistory() + ")");
-  //   //   return Component.Status.MAJOR_OUTAGE;
-  //   // } else {
-  //   //   LOG.debug(Component.Status.OPERATIONAL + " ("  + anomalyCount + " anomalies in the last " + config.monitoringHistory() + ")");
-  //   //   return Component.Status.OPERATIONAL;
-  //   // }
-  // }
-}
\ No newline at end of file
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.primitives.Ints;
+
+import org.eclipsefoundation.cerberus.archive.ProbeArchive;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.monitors.LatencyHistogram;
+import org.eclipsefoundation.cerberus.monitors.Monitor;
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournals;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.eclipsefoundation.cerberus.monitors.http.HttpClients;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Derives the status of a component from the 95th and 99th percentiles of the
+ * response time of its target over the monitoring history. Only successful
+ * probes (status code within the configured range) are taken into account,
+ * failures are the business of {@code http_status} monitors.
+ */
+public class HttpResponseTimeMonitor extends HttpMonitor {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(HttpResponseTimeMonitor.class);
+
+  /**
+   * Number of slices the monitoring history is split in. The window slides by
+   * 1/HISTORY_SLICES of its duration.
+   */
+  private static final int HISTORY_SLICES = 10;
+
+  /**
+   * Kind of the monitor, as in the configuration, used to name its journal.
+   */
+  public static final String KIND = "http_response_time";
+
+  private final CerberusConfiguration.Monitor.HttpResponseTime configuration;
+
+  private final LatencyHistogram responseTimes;
+
+  public static class HttpResponseTimeMonitorFactory implements Monitor.Factory {
+
+    private final HttpClients clients;
+
+    private final ProbeMode probeMode;
+
+    private final ProbeJournals journals;
+
+    private final ProbeArchive archive;
+
+    public HttpResponseTimeMonitorFactory(HttpClients clients, ProbeMode probeMode) {
+      this(clients, probeMode, ProbeJournals.disabled(), null);
+    }
+
+    /**
+     * @param journals where probe results are persisted
+     * @param archive  where probe results are archived, or {@code null}
+     */
+    public HttpResponseTimeMonitorFactory(HttpClients clients, ProbeMode probeMode, ProbeJournals journals, ProbeArchive archive) {
+      this.clients = clients;
+      this.probeMode = probeMode;
+      this.journals = journals;
+      this.archive = archive;
+    }
+
+    public HttpResponseTimeMonitor createMonitor(CerberusConfiguration.Monitor.HttpResponseTime configuration, List<ComponentUpdater> updaters) {
+      return createMonitor(configuration, updaters, null);
+    }
+
+    /**
+     * @param previous cancelled monitor replaced by the new one, whose response
+     *                 times are carried over if they are compatible, or
+     *                 {@code null}
+     */
+    public HttpResponseTimeMonitor createMonitor(CerberusConfiguration.Monitor.HttpResponseTime configuration, List<ComponentUpdater> updaters, 
+        HttpResponseTimeMonitor previous) {
+      return new HttpResponseTimeMonitor(configuration, clients, updaters, probeMode, previous, 
+        journals, archive != null ? archive.writer(KIND, configuration.componentName()) : null);
+    }
+  }
+
+  private HttpResponseTimeMonitor(CerberusConfiguration.Monitor.HttpResponseTime configuration, HttpClients clients, List<ComponentUpdater> updaters, ProbeMode probeMode, 
+      HttpResponseTimeMonitor previous, ProbeJournals journals, ProbeArchive.Writer archive) {
+    super(configuration, clients, updaters, probeMode, previous, journals.journal(KIND, configuration.componentName(), 
+      Math.max(1, Ints.checkedCast(configuration.monitoringHistory().dividedBy(configuration.period())))), archive);
+    this.configuration = configuration;
+    // the histogram covers a fixed window of successful probes: it can only be kept as is
+    this.responseTimes = previous != null && sameProbes(configuration, previous.configuration) 
+        && configuration.monitoringHistory().equals(previous.configuration.monitoringHistory())
+        && configuration.statusCodeMin().equals(previous.configuration.statusCodeMin())
+        && configuration.statusCodeMax().equals(previous.configuration.statusCodeMax())
+      ? previous.responseTimes 
+      : new LatencyHistogram(configuration.monitoringHistory(), HISTORY_SLICES);
+    if (previous == null) {
+      replayJournal((time, latency, statusCode, errorClass) -> record(time, latency, statusCode));
+    }
+  }
+
+  @Override
+  public CerberusConfiguration.Monitor.HttpResponseTime configuration() {
+    return configuration;
+  }
+
+  @Override
+  protected void onProbeCompleted(long time, long latency, int statusCode, Optional<Exception> exception) {
+    record(time, latency, statusCode);
+  }
+
+  private void record(long time, long latency, int statusCode) {
+    if (statusCode >= configuration.statusCodeMin() && statusCode <= configuration.statusCodeMax()) {
+      responseTimes.record(time, latency);
+      LOGGER.debug("{} - {} in {}ms", configuration.target(), statusCode, latency / 1_000_000);
+    }
+  }
+
+  @Override
+  public void detectAnomalies() {
+    long now = MonitorHistory.nowEpochNanos();
+    long samples = responseTimes.count(now);
+    if (samples == 0) {
+      LOGGER.debug("Component {}: no successful probe in the last {}, status is left unchanged", configuration.componentName(), configuration.monitoringHistory());
+      return;
+    }
+    Duration p95 = responseTimes.percentile(95, now);
+    Duration p99 = responseTimes.percentile(99, now);
+    Status newStatus = configuration.anomaliesDetection().statusFromPercentiles(p95, p99);
+    LOGGER.debug("Component {}: {} (p95={}, p99={} over {} samples in the last {})", configuration.componentName(), newStatus, p95, p99, samples, configuration.monitoringHistory());
+    if (newStatus != Status.OPERATIONAL && LOGGER.isInfoEnabled()) {
+      LOGGER.info("Component {}: {}{}", configuration.componentName(), newStatus, phasesSummary(now));
+    }
+    publishStatus(newStatus);
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    super.writeMetrics(writer);
+    writer.summary("cerberus_probe_duration_seconds", "Duration of successful probes over the monitoring history",
+      responseTimes, MonitorHistory.nowEpochNanos(), "component", configuration.componentName());
+  }
+}
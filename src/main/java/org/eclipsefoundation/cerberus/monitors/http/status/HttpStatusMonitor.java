@@ -7,70 +7,190 @@
  *******************************************************************************/
 package org.eclipsefoundation.cerberus.monitors.http.status;
 
-import java.io.IOException;
-import java.time.OffsetDateTime;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.Predicate;
 
 import com.google.common.collect.EvictingQueue;
-import com.google.common.collect.Range;
+import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
 
+import org.eclipsefoundation.cerberus.archive.ProbeArchive;
 import org.eclipsefoundation.cerberus.component.Component.Status;
 import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
 import org.eclipsefoundation.cerberus.monitors.Monitor;
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournal;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournal.ErrorClass;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournals;
+import org.eclipsefoundation.cerberus.monitors.http.HttpMonitor;
+import org.eclipsefoundation.cerberus.monitors.http.HttpClients;
 import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import okhttp3.ConnectionPool;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
-public class HttpStatusMonitor extends Monitor {
+public class HttpStatusMonitor extends HttpMonitor {
 
   private static Logger LOGGER = LoggerFactory.getLogger(HttpStatusMonitor.class);
 
-  private final CerberusConfiguration.Monitor.HttpStatus configuration;
+  private static final int MAX_RECENT_FAILURES = 16;
+
+  /**
+   * Kind of the monitor, as in the configuration, used to name its journal.
+   */
+  public static final String KIND = "http_status";
 
-  private final Range<Integer> statusCodeRange;
+  private final CerberusConfiguration.Monitor.HttpStatus configuration;
 
-  private final EvictingQueue<Report> datapoints;
   /**
-   * The lock protecting datapoints
+   * Only written from the completion of probes, which never overlap (see
+   * {@link HttpMonitor}). Read without locking by {@link #detectAnomalies()}.
    */
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final MonitorHistory datapoints;
 
-  private final OkHttpClient client;
+  /**
+   * Details of the latest failures (with their exception)
+   */
+  private final EvictingQueue<Report> recentFailures = EvictingQueue.create(MAX_RECENT_FAILURES);
 
-  private final List<ComponentUpdater> updaters;
+  private volatile Report lastFailure;
 
   public static class HttpStatusMonitorFactory implements Monitor.Factory {
 
-    private final ConnectionPool connectionPool;
+    private final HttpClients clients;
+
+    private final ProbeMode probeMode;
+
+    private final ProbeJournals journals;
+
+    private final ProbeArchive archive;
+
+    public HttpStatusMonitorFactory(HttpClients clients) {
+      this(clients, ProbeMode.BLOCKING);
+    }
+
+    public HttpStatusMonitorFactory(HttpClients clients, ProbeMode probeMode) {
+      this(clients, probeMode, ProbeJournals.disabled(), null);
+    }
 
-    public HttpStatusMonitorFactory(ConnectionPool connectionPool) {
-      this.connectionPool = connectionPool;
+    /**
+     * @param journals where probe results are persisted
+     * @param archive  where probe results are archived, or {@code null}
+     */
+    public HttpStatusMonitorFactory(HttpClients clients, ProbeMode probeMode, ProbeJournals journals, ProbeArchive archive) {
+      this.clients = clients;
+      this.probeMode = probeMode;
+      this.journals = journals;
+      this.archive = archive;
     }
 
-    public HttpStatusMonitor createMonitor(CerberusConfiguration.Monitor.HttpStatus configuration, OkHttpClient client, List<ComponentUpdater> updaters) {
-      return new HttpStatusMonitor(configuration, client.newBuilder()
-        .connectionPool(connectionPool)
-        .connectTimeout(configuration.connectTimeout())
-        .readTimeout(configuration.readTimeout())
-        .build(), updaters);
+    public HttpStatusMonitor createMonitor(CerberusConfiguration.Monitor.HttpStatus configuration, List<ComponentUpdater> updaters) {
+      return createMonitor(configuration, updaters, null);
+    }
+
+    /**
+     * @param previous cancelled monitor replaced by the new one, whose history
+     *                 is carried over if it probed the same way, or {@code null}
+     */
+    public HttpStatusMonitor createMonitor(CerberusConfiguration.Monitor.HttpStatus configuration, List<ComponentUpdater> updaters, HttpStatusMonitor previous) {
+      int capacity = capacity(configuration);
+      return new HttpStatusMonitor(configuration, clients, updaters, probeMode, previous, 
+        journals.journal(KIND, configuration.componentName(), capacity), capacity,
+        archive != null ? archive.writer(KIND, configuration.componentName()) : null);
     }
   }
 
-  private HttpStatusMonitor(CerberusConfiguration.Monitor.HttpStatus configuration, OkHttpClient client, List<ComponentUpdater> updaters) {
+  private HttpStatusMonitor(CerberusConfiguration.Monitor.HttpStatus configuration, HttpClients clients, List<ComponentUpdater> updaters, ProbeMode probeMode, 
+      HttpStatusMonitor previous, ProbeJournal journal, int capacity, ProbeArchive.Writer archive) {
+    super(configuration, clients, updaters, probeMode, previous, journal, archive);
     this.configuration = configuration;
-    this.statusCodeRange = Range.closed(configuration.statusCodeMin(), configuration.statusCodeMax());
-    this.client = client;
-    this.updaters = updaters;
-    this.datapoints = EvictingQueue.create(Ints.checkedCast(configuration.monitoringHistory().dividedBy(configuration.period())));
+    // probes are evicted by time as well: with an adaptive period the number of
+    // probes in the monitoring history varies, and anomalies must expire when
+    // probes stop completing
+    this.datapoints = new MonitorHistory(capacity, configuration.monitoringHistory(), this::isAnomaly);
+    if (previous != null && sameProbes(configuration, previous.configuration)) {
+      // anomalies are re-evaluated with the new status code range
+      datapoints.addAll(previous.datapoints);
+      synchronized (previous.recentFailures) {
+        recentFailures.addAll(previous.recentFailures);
+      }
+      lastFailure = previous.lastFailure;
+    } else if (previous == null) {
+      JournalReplay replay = new JournalReplay();
+      replayJournal(replay);
+      replay.finish();
+    }
+  }
+
+  /**
+   * Adds replayed probes to the history. The weight of a probe is only known
+   * once the next one is replayed, so each probe is held until then.
+   */
+  private final class JournalReplay implements ProbeJournal.Visitor {
+    private boolean holding;
+    private long heldTime;
+    private int heldStatusCode;
+
+    @Override
+    public void record(long epochNanos, long latencyNanos, int statusCode, ErrorClass errorClass) {
+      if (holding) {
+        datapoints.add(heldTime, heldStatusCode, replayedWeight(epochNanos - heldTime));
+      }
+      holding = true;
+      heldTime = epochNanos;
+      heldStatusCode = statusCode;
+    }
+
+    /**
+     * Adds the latest replayed probe, weighted as if the next probe followed
+     * after the configured period.
+     */
+    void finish() {
+      if (holding) {
+        datapoints.add(heldTime, heldStatusCode, weight(configuration.period().toNanos()));
+        holding = false;
+      }
+    }
+  }
+
+  /**
+   * Maximum number of probes in the monitoring history. The adaptive period,
+   * if any, must have been validated (see
+   * {@link CerberusConfiguration.Monitor.HttpStatus#validate()}).
+   */
+  private static int capacity(CerberusConfiguration.Monitor.HttpStatus configuration) {
+    CerberusConfiguration.Monitor.HttpStatus.AdaptivePeriod adaptive = configuration.adaptivePeriod();
+    Duration minPeriod = adaptive != null ? adaptive.minPeriod() : configuration.period();
+    return Ints.checkedCast(configuration.monitoringHistory().dividedBy(minPeriod));
+  }
+
+  /**
+   * Weight of a probe in the history, in milliseconds: the time it stands for,
+   * until the next probe.
+   */
+  private static int weight(long periodNanos) {
+    return (int)Math.max(1, periodNanos / 1_000_000);
+  }
+
+  /**
+   * Weight of a replayed probe followed by another one {@code spacingNanos}
+   * later.
+   */
+  private int replayedWeight(long spacingNanos) {
+    CerberusConfiguration.Monitor.HttpStatus.AdaptivePeriod adaptive = configuration.adaptivePeriod();
+    if (adaptive == null) {
+      return weight(configuration.period().toNanos());
+    }
+    return weight(Math.min(adaptive.maxPeriod().toNanos(), Math.max(adaptive.minPeriod().toNanos(), spacingNanos)));
+  }
+
+  /**
+   * Time-weighted number of anomalies in the monitoring history ending at
+   * {@code nowEpochNanos}, in periods.
+   */
+  private double anomalies(long nowEpochNanos) {
+    return datapoints.anomaliesWeight(nowEpochNanos) / (double)Math.max(1, configuration.period().toMillis());
   }
 
   @Override
@@ -79,61 +199,60 @@ public class HttpStatusMonitor extends Monitor {
   }
 
   @Override
-  public void run() {
-    Request r = new Request.Builder().url(configuration.target()).get().build();
-    OffsetDateTime now = OffsetDateTime.now();
-    try (Response response = client.newCall(r).execute()) {
-      response.body().source().readByteString();
-      addDatapoint(now, response.code(), Optional.empty());
-    } catch (IOException e) {
-      LOGGER.error("Exception while monitoring {}", configuration.target(), e);
-      addDatapoint(now, Integer.MIN_VALUE, Optional.of(e));
+  protected void onProbeCompleted(long time, long latency, int statusCode, Optional<Exception> exception) {
+    long periodNanos = configuration.period().toNanos();
+    if (configuration.adaptivePeriod() != null) {
+      Status status = status();
+      adaptPeriod(isAnomaly(statusCode) || (status != Status.OPERATIONAL && status != Status.UNKNOWN), 
+        status == Status.OPERATIONAL && datapoints.anomaliesCount(time) == 0);
+      periodNanos = period().toNanos();
     }
+    addDatapoint(time, statusCode, weight(periodNanos), exception);
   }
 
-  private void addDatapoint(OffsetDateTime time, int code, Optional<Exception> exception) {
-    try {
-      lock.writeLock().lockInterruptibly();
-      try {
-        Report report = Report.create(time, code, exception);
-        // The HTTP 429 Too Many Requests response status code indicates the user has sent too many requests in a given amount of time ("rate limiting").
-        // consider it a success
-        if (!statusCodeRange.contains(code) && code != 429) {
-          LOGGER.warn("{} - {}", configuration.target(), report);
-        } else {
-          LOGGER.debug("{} - {}", configuration.target(), report);
-        }
-        datapoints.add(report);
-      } finally {
-        lock.writeLock().unlock();
+  private void addDatapoint(long time, int code, int weight, Optional<Exception> exception) {
+    if (isAnomaly(code)) {
+      Report report = Report.create(MonitorHistory.toOffsetDateTime(time), code, exception);
+      LOGGER.warn("{} - {}", configuration.target(), report);
+      synchronized (recentFailures) {
+        recentFailures.add(report);
       }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+      lastFailure = report;
+    } else if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("{} - {}", configuration.target(), Report.create(MonitorHistory.toOffsetDateTime(time), code, exception));
+    }
+    datapoints.add(time, code, weight);
+  }
+
+  /**
+   * Details of the latest failures, from the oldest to the most recent.
+   */
+  public List<Report> recentFailures() {
+    synchronized (recentFailures) {
+      return ImmutableList.copyOf(recentFailures);
     }
   }
 
+  private boolean isAnomaly(int code) {
+    return isFailure(code);
+  }
+
   @Override
   public void detectAnomalies() {
-    int anomaliesCount = 0;
-    try {
-      lock.readLock().lockInterruptibly();
-      try {
-        anomaliesCount = (int)datapoints.stream()
-          .map(Report::statusCode)
-          .filter(Predicate.not(statusCodeRange))
-          // The HTTP 429 Too Many Requests response status code indicates the user has sent too many requests in a given amount of time ("rate limiting").
-          // consider it a success
-          .filter(status -> status != 429)
-          .count();
-      } finally {
-        lock.readLock().unlock();
-      }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+    long now = MonitorHistory.nowEpochNanos();
+    double anomaliesCount = anomalies(now);
+    Status newStatus = configuration.anomaliesDetection().statusFromAnomaliesCount(anomaliesCount);
+    LOGGER.debug("Component {}: {} ({} anomalies in the last {}, last failure: {})", configuration.componentName(), newStatus, anomaliesCount, configuration().monitoringHistory(), lastFailure);
+    if (newStatus != Status.OPERATIONAL && LOGGER.isInfoEnabled()) {
+      LOGGER.info("Component {}: {}{}", configuration.componentName(), newStatus, phasesSummary(now));
     }
+    publishStatus(newStatus);
+  }
 
-    Status newStatus = configuration.anomaliesDetection().statusFromAnomaliesCount(anomaliesCount);
-    LOGGER.debug("Component {}: {} ({} anomalies in the last {})", configuration.componentName(), newStatus, anomaliesCount, configuration().monitoringHistory());
-    updaters.forEach(u -> u.updateStatus(configuration.componentName(), newStatus));
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    super.writeMetrics(writer);
+    writer.gauge("cerberus_monitor_anomalies", "Time-weighted number of anomalies in the monitoring history, as used by the anomalies detection",
+      anomalies(MonitorHistory.nowEpochNanos()), "component", configuration.componentName());
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.quorum;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.eclipsefoundation.cerberus.component.Component;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ComponentUpdater} stage that only hands a status to other updaters
+ * once a quorum of vantage points (Cerberus instances monitoring the same
+ * components from different hosts) agree on it.
+ *
+ * <ul>
+ * <li>Statuses published by the local monitors are the votes of this vantage
+ * point. Every {@code period}, the votes that changed since the previous
+ * period are sent to each peer, in UDP datagrams of 9 bytes per vote (see
+ * {@link QuorumProtocol}). A period without changes sends an empty datagram,
+ * which serves as a heartbeat.</li>
+ * <li>Votes of a peer only count while it has been heard from within
+ * {@code timeout}. A peer that restarted, or whose datagrams were lost (per
+ * their sequence numbers), is asked for all its votes again.</li>
+ * <li>The decided status of a component is the most severe one such that at
+ * least {@code quorum} vantage points, this one included, voted for it or for
+ * a more severe one. E.g. with 3 vantage points and a quorum of 2, a single
+ * vantage point seeing a {@code PARTIAL_OUTAGE} is overruled, while one seeing
+ * a {@code MAJOR_OUTAGE} and another seeing a {@code PARTIAL_OUTAGE} decide a
+ * {@code PARTIAL_OUTAGE}. Without a quorum of live votes, nothing is
+ * decided and the components keep their current status.</li>
+ * <li>The decision is handed to the other updaters on each local vote, as
+ * monitors would do, and when a vote of a peer changes it.</li>
+ * </ul>
+ *
+ * Every vantage point pushes the same decisions to the status pages, and
+ * updates that are already applied are dropped by the updaters.
+ */
+public final class QuorumComponentUpdater implements ComponentUpdater, MetricsSource, AutoCloseable {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(QuorumComponentUpdater.class);
+
+  /**
+   * Statuses that can be voted, from the least to the most severe.
+   */
+  private static final Status[] SEVERITIES = { Status.OPERATIONAL, Status.DEGRADED_PERFORMANCE, Status.PARTIAL_OUTAGE, Status.MAJOR_OUTAGE };
+
+  private final DatagramChannel channel;
+  private final List<Peer> peers;
+  private final Map<SocketAddress, Peer> peersByAddress;
+  private final int quorum;
+  private final long timeoutNanos;
+  private final List<ComponentUpdater> delegates;
+  /**
+   * Random and non-zero, 0 stands for a peer that was never heard from.
+   */
+  private final long incarnation = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+  private final Map<Long, Votes> votes = new ConcurrentHashMap<>();
+  /**
+   * Keys of the components whose local vote changed since the latest DELTA.
+   */
+  private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+  /**
+   * Only used by {@link #flush()}.
+   */
+  private final ByteBuffer sendBuffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+  /**
+   * Only used by the receiver thread.
+   */
+  private final QuorumProtocol.Message receivedMessage = new QuorumProtocol.Message();
+
+  private final LongAdder datagramsSent = new LongAdder();
+  private final LongAdder bytesSent = new LongAdder();
+  private final LongAdder datagramsReceived = new LongAdder();
+  private final LongAdder datagramsDropped = new LongAdder();
+  private final LongAdder resyncs = new LongAdder();
+  private final LongAdder withheld = new LongAdder();
+  private final LongAdder overruled = new LongAdder();
+
+  private volatile ScheduledFuture<?> task;
+
+  /**
+   * Sends and receives votes only when {@link #flush()} and
+   * {@link #receive(SocketAddress, ByteBuffer)} are called, see
+   * {@link #start}.
+   */
+  QuorumComponentUpdater(DatagramChannel channel, List<InetSocketAddress> peerAddresses, int quorum, Duration timeout,
+      List<ComponentUpdater> delegates) {
+    this.channel = channel;
+    ImmutableList.Builder<Peer> peersBuilder = ImmutableList.builder();
+    ImmutableMap.Builder<SocketAddress, Peer> byAddress = ImmutableMap.builder();
+    for (int i = 0; i < peerAddresses.size(); i++) {
+      Peer peer = new Peer(i, peerAddresses.get(i));
+      peersBuilder.add(peer);
+      byAddress.put(peer.address, peer);
+    }
+    this.peers = peersBuilder.build();
+    this.peersByAddress = byAddress.build();
+    this.quorum = quorum;
+    this.timeoutNanos = timeout.toNanos();
+    this.delegates = delegates;
+  }
+
+  /**
+   * Binds the UDP port of this vantage point, receives the votes of the peers
+   * on a thread of {@code threadFactory}, and sends the votes of this vantage
+   * point every {@code period} on {@code executor}.
+   *
+   * @param peers     addresses of the other vantage points, which must be the
+   *                  addresses their datagrams come from (datagrams from other
+   *                  addresses are dropped)
+   * @param quorum    number of vantage points, this one included, that must
+   *                  agree on a status
+   * @param timeout   how long after its latest datagram the votes of a peer
+   *                  stop counting
+   * @param delegates updaters the decided statuses are handed to, which may
+   *                  change over time
+   */
+  public static QuorumComponentUpdater start(int port, List<InetSocketAddress> peers, int quorum, Duration period, Duration timeout,
+      List<ComponentUpdater> delegates, ScheduledExecutorService executor, ThreadFactory threadFactory) throws IOException {
+    Preconditions.checkArgument(quorum > 0 && quorum <= peers.size() + 1, "quorum must be between 1 and the number of vantage points (%s)", peers.size() + 1);
+    Preconditions.checkArgument(timeout.compareTo(period) > 0, "timeout must be longer than the period");
+    for (InetSocketAddress peer : peers) {
+      Preconditions.checkArgument(!peer.isUnresolved(), "unable to resolve vantage point %s", peer);
+    }
+    DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress(port));
+    QuorumComponentUpdater updater = new QuorumComponentUpdater(channel, peers, quorum, timeout, delegates);
+    Thread receiver = threadFactory.newThread(updater::receive);
+    receiver.setDaemon(true);
+    receiver.start();
+    updater.task = executor.scheduleAtFixedRate(() -> {
+      try {
+        updater.flush();
+      } catch (RuntimeException e) {
+        LOGGER.error("Error while sending votes to the vantage points", e);
+      }
+    }, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    LOGGER.info("Voting on port {} with {} vantage points, quorum {}", port, peers.size() + 1, quorum);
+    return updater;
+  }
+
+  /**
+   * Components of the status pages of the delegates.
+   */
+  @Override
+  public List<Component> components() {
+    return delegates.stream().flatMap(u -> u.components().stream()).collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Records the local vote for the component, and hands the decided status to
+   * the delegates, if any.
+   *
+   * @return a future completed once the delegates applied the decided status,
+   *         or right away if nothing is decided
+   */
+  @Override
+  public CompletableFuture<Void> updateStatus(String componentName, Status status) {
+    long key = QuorumProtocol.key(componentName);
+    Votes v = votes.computeIfAbsent(key, k -> new Votes(peers.size()));
+    Status decision;
+    synchronized (v) {
+      v.name = componentName;
+      if (v.local != status) {
+        v.local = status;
+        changed.add(key);
+      }
+      decision = decide(v, System.nanoTime());
+      if (decision != null) {
+        v.decided = decision;
+      }
+    }
+    if (decision == null) {
+      withheld.increment();
+      LOGGER.debug("Component {}: {} locally, no quorum", componentName, status);
+      return CompletableFuture.completedFuture(null);
+    }
+    if (decision != status) {
+      overruled.increment();
+      LOGGER.info("Component {}: {} locally, {} by quorum", componentName, status, decision);
+    }
+    return forward(componentName, decision);
+  }
+
+  @Override
+  public CompletableFuture<Void> ready() {
+    return CompletableFuture.allOf(delegates.stream().map(ComponentUpdater::ready).toArray(CompletableFuture[]::new));
+  }
+
+  private CompletableFuture<Void> forward(String componentName, Status status) {
+    return CompletableFuture.allOf(delegates.stream().map(u -> u.updateStatus(componentName, status)).toArray(CompletableFuture[]::new));
+  }
+
+  /**
+   * Most severe status voted by at least {@code quorum} live vantage points
+   * (counting votes for more severe statuses), or {@code null}.
+   */
+  private Status decide(Votes v, long nowNanos) {
+    int[] atLeast = new int[SEVERITIES.length];
+    count(v.local, atLeast);
+    for (Peer peer : peers) {
+      if (peer.isAlive(nowNanos, timeoutNanos)) {
+        count(v.peers[peer.index], atLeast);
+      }
+    }
+    for (int i = SEVERITIES.length - 1; i >= 0; i--) {
+      if (atLeast[i] >= quorum) {
+        return SEVERITIES[i];
+      }
+    }
+    return null;
+  }
+
+  private static void count(Status vote, int[] atLeast) {
+    for (int i = 0; i < SEVERITIES.length; i++) {
+      atLeast[i]++;
+      if (SEVERITIES[i] == vote) {
+        return;
+      }
+    }
+    // not a vote (e.g. UNKNOWN), undo
+    for (int i = 0; i < SEVERITIES.length; i++) {
+      atLeast[i]--;
+    }
+  }
+
+  /**
+   * Receives datagrams until the channel is closed.
+   */
+  private void receive() {
+    ByteBuffer buffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+    while (true) {
+      SocketAddress from;
+      buffer.clear();
+      try {
+        from = channel.receive(buffer);
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        LOGGER.warn("Unable to receive votes", e);
+        continue;
+      }
+      buffer.flip();
+      try {
+        receive(from, buffer);
+      } catch (RuntimeException e) {
+        LOGGER.error("Error while handling votes from {}", from, e);
+      }
+    }
+  }
+
+  /**
+   * Handles a datagram, dropped unless it is a valid message from a peer.
+   * Receiver thread only.
+   */
+  void receive(SocketAddress from, ByteBuffer datagram) {
+    Peer peer = peersByAddress.get(from);
+    if (peer == null || !receivedMessage.decode(datagram)) {
+      datagramsDropped.increment();
+      LOGGER.debug("Dropped a datagram of {} bytes from {}", datagram.remaining(), from);
+      return;
+    }
+    datagramsReceived.increment();
+    handle(peer, receivedMessage);
+  }
+
+  private void handle(Peer peer, QuorumProtocol.Message message) {
+    long now = System.nanoTime();
+    if (message.incarnation != peer.incarnation) {
+      LOGGER.info("Vantage point {} {}, asking for all its votes", peer.address, peer.incarnation == 0 ? "joined" : "restarted");
+      if (peer.incarnation != 0) {
+        forget(peer);
+      }
+      peer.incarnation = message.incarnation;
+      peer.requestFull = true;
+    } else if (message.sequence - peer.sequence <= 0) {
+      // reordered, older than votes already applied
+      datagramsDropped.increment();
+      return;
+    } else if (message.sequence - peer.sequence != 1) {
+      LOGGER.debug("Lost {} datagrams from vantage point {}, asking for all its votes", message.sequence - peer.sequence - 1, peer.address);
+      peer.requestFull = true;
+    }
+    peer.sequence = message.sequence;
+    peer.lastHeardNanos = now;
+    peer.heard = true;
+    if (message.type == QuorumProtocol.SYNC) {
+      peer.sendFull = true;
+      return;
+    }
+    for (int i = 0; i < message.entries; i++) {
+      vote(peer, message.key(i), message.status(i), now);
+    }
+  }
+
+  /**
+   * Records the vote of a peer, and hands the decided status to the delegates
+   * if it changed.
+   */
+  private void vote(Peer peer, long key, Status status, long nowNanos) {
+    Votes v = votes.computeIfAbsent(key, k -> new Votes(peers.size()));
+    String name;
+    Status decision;
+    synchronized (v) {
+      if (v.peers[peer.index] == status) {
+        return;
+      }
+      v.peers[peer.index] = status;
+      name = v.name;
+      if (name == null) {
+        // not monitored by this vantage point (yet)
+        return;
+      }
+      decision = decide(v, nowNanos);
+      if (decision == null || decision == v.decided) {
+        return;
+      }
+      v.decided = decision;
+    }
+    LOGGER.info("Component {}: {} by quorum after a vote of {} from {}", name, decision, status, peer.address);
+    forward(name, decision);
+  }
+
+  /**
+   * Drops the votes of a peer, e.g. after it restarted.
+   */
+  private void forget(Peer peer) {
+    for (Votes v : votes.values()) {
+      synchronized (v) {
+        v.peers[peer.index] = Status.UNKNOWN;
+      }
+    }
+  }
+
+  /**
+   * Sends the changed votes to each peer (all votes to peers that asked for
+   * them), and asks peers for all their votes when needed.
+   */
+  synchronized void flush() {
+    List<Long> delta = new ArrayList<>();
+    for (Iterator<Long> it = changed.iterator(); it.hasNext();) {
+      delta.add(it.next());
+      it.remove();
+    }
+    long now = System.nanoTime();
+    for (Peer peer : peers) {
+      boolean alive = peer.isAlive(now, timeoutNanos);
+      if (alive != peer.wasAlive) {
+        if (alive) {
+          LOGGER.info("Vantage point {} is reachable", peer.address);
+        } else {
+          LOGGER.warn("Vantage point {} is unreachable, its votes no longer count", peer.address);
+        }
+        peer.wasAlive = alive;
+      }
+      if (peer.requestFull) {
+        peer.requestFull = false;
+        resyncs.increment();
+        send(peer, QuorumProtocol.SYNC, ImmutableList.of());
+      }
+      if (peer.sendFull) {
+        peer.sendFull = false;
+        send(peer, QuorumProtocol.FULL, votes.keySet());
+      } else {
+        send(peer, QuorumProtocol.DELTA, delta);
+      }
+    }
+  }
+
+  /**
+   * Sends the local votes of the given components to {@code peer}, in as many
+   * datagrams as needed (at least one).
+   */
+  private void send(Peer peer, byte type, Collection<Long> keys) {
+    QuorumProtocol.writeHeader(sendBuffer, type, incarnation, ++peer.sentSequence);
+    for (Long key : keys) {
+      Votes v = votes.get(key);
+      Status local;
+      synchronized (v) {
+        local = v.local;
+      }
+      if (local == Status.UNKNOWN) {
+        continue;
+      }
+      if (QuorumProtocol.isFull(sendBuffer)) {
+        sendDatagram(peer);
+        QuorumProtocol.writeHeader(sendBuffer, type, incarnation, ++peer.sentSequence);
+      }
+      QuorumProtocol.writeEntry(sendBuffer, key, local);
+    }
+    sendDatagram(peer);
+  }
+
+  private void sendDatagram(Peer peer) {
+    sendBuffer.flip();
+    int bytes = sendBuffer.remaining();
+    try {
+      channel.send(sendBuffer, peer.address);
+      datagramsSent.increment();
+      bytesSent.add(bytes);
+    } catch (IOException e) {
+      LOGGER.debug("Unable to send votes to {}", peer.address, e);
+    }
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    long now = System.nanoTime();
+    writer.gauge("cerberus_quorum_vantage_points_alive", "Number of vantage points whose votes count, this one included",
+      1 + peers.stream().filter(p -> p.isAlive(now, timeoutNanos)).count());
+    writer.counter("cerberus_quorum_datagrams_sent_total", "Number of datagrams of votes sent to the other vantage points", datagramsSent.sum());
+    writer.counter("cerberus_quorum_sent_bytes_total", "Number of bytes of votes sent to the other vantage points", bytesSent.sum());
+    writer.counter("cerberus_quorum_datagrams_received_total", "Number of datagrams of votes received from the other vantage points",
+      datagramsReceived.sum());
+    writer.counter("cerberus_quorum_datagrams_dropped_total", "Number of datagrams received from unknown addresses, invalid, or out of order",
+      datagramsDropped.sum());
+    writer.counter("cerberus_quorum_resyncs_total", "Number of times all the votes of another vantage point were asked for, after it restarted or "
+      + "datagrams were lost", resyncs.sum());
+    writer.counter("cerberus_quorum_withheld_total", "Number of statuses published by local monitors that were not handed to the status pages "
+      + "because less than a quorum of vantage points voted", withheld.sum());
+    writer.counter("cerberus_quorum_overruled_total", "Number of statuses published by local monitors that were overruled by the quorum",
+      overruled.sum());
+  }
+
+  /**
+   * Stops sending and receiving votes. Delegates are left untouched.
+   */
+  @Override
+  public void close() {
+    ScheduledFuture<?> t = task;
+    if (t != null) {
+      t.cancel(false);
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to close the vantage point channel", e);
+    }
+  }
+
+  /**
+   * Votes of the vantage points for a component, guarded by the instance.
+   */
+  private static final class Votes {
+    /**
+     * Name of the component, {@code null} until voted by the local monitors
+     */
+    String name;
+    Status local = Status.UNKNOWN;
+    final Status[] peers;
+    /**
+     * Latest decision handed to the delegates, {@code null} if none
+     */
+    Status decided;
+
+    Votes(int peersCount) {
+      this.peers = new Status[peersCount];
+      Arrays.fill(this.peers, Status.UNKNOWN);
+    }
+  }
+
+  private static final class Peer {
+    final int index;
+    final InetSocketAddress address;
+
+    // receiver thread only
+    long incarnation;
+    int sequence;
+
+    // flush only
+    int sentSequence;
+    boolean wasAlive;
+
+    volatile long lastHeardNanos;
+    volatile boolean heard;
+    /**
+     * Whether this peer must be asked for all its votes
+     */
+    volatile boolean requestFull;
+    /**
+     * Whether this peer asked for all the votes of this vantage point
+     */
+    volatile boolean sendFull;
+
+    Peer(int index, InetSocketAddress address) {
+      this.index = index;
+      this.address = address;
+    }
+
+    boolean isAlive(long nowNanos, long timeoutNanos) {
+      return heard && nowNanos - lastHeardNanos < timeoutNanos;
+    }
+  }
+}
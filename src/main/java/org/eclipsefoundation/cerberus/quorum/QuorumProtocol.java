@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.quorum;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.eclipsefoundation.cerberus.component.Component.Status;
+
+/**
+ * Binary format of the datagrams exchanged by vantage points (big endian).
+ *
+ * <pre>
+ * header (20 bytes):
+ *   int   magic
+ *   byte  version
+ *   byte  type: DELTA, FULL or SYNC
+ *   short number of entries
+ *   long  incarnation of the sender (random, drawn on startup)
+ *   int   sequence number, per sender and receiver
+ * entries (9 bytes each):
+ *   long  key of the component (hash of its name)
+ *   byte  status voted by the sender (ordinal)
+ * </pre>
+ *
+ * A DELTA holds the votes that changed since the previous DELTA (none for a
+ * heartbeat), a FULL holds all the votes of the sender, and a SYNC asks the
+ * receiver for its FULL votes. Messages larger than a datagram are split.
+ */
+final class QuorumProtocol {
+
+  private static final int MAGIC = 0x43425156;
+  private static final byte VERSION = 1;
+
+  static final byte DELTA = 0;
+  static final byte FULL = 1;
+  static final byte SYNC = 2;
+
+  static final int HEADER_BYTES = 20;
+  static final int ENTRY_BYTES = 9;
+  /**
+   * Fits in the minimum IPv6 MTU, so datagrams are never fragmented.
+   */
+  static final int MAX_DATAGRAM_BYTES = 1200;
+  static final int MAX_ENTRIES = (MAX_DATAGRAM_BYTES - HEADER_BYTES) / ENTRY_BYTES;
+
+  private static final HashFunction KEY_HASH = Hashing.murmur3_128();
+  private static final Status[] STATUSES = Status.values();
+
+  private QuorumProtocol() {
+  }
+
+  /**
+   * Key of a component in datagrams. 64 bits, so that collisions are
+   * negligible with thousands of components.
+   */
+  static long key(String componentName) {
+    return KEY_HASH.hashString(componentName, StandardCharsets.UTF_8).asLong();
+  }
+
+  /**
+   * Starts a datagram in {@code buffer} (cleared first), with no entries.
+   */
+  static void writeHeader(ByteBuffer buffer, byte type, long incarnation, int sequence) {
+    buffer.clear();
+    buffer.putInt(MAGIC).put(VERSION).put(type).putShort((short)0).putLong(incarnation).putInt(sequence);
+  }
+
+  /**
+   * Appends an entry to the datagram in {@code buffer}, which must have room
+   * for it (see {@link #isFull(ByteBuffer)}).
+   */
+  static void writeEntry(ByteBuffer buffer, long key, Status status) {
+    buffer.putLong(key).put((byte)status.ordinal());
+    buffer.putShort(6, (short)(buffer.getShort(6) + 1));
+  }
+
+  static boolean isFull(ByteBuffer buffer) {
+    return buffer.position() + ENTRY_BYTES > MAX_DATAGRAM_BYTES;
+  }
+
+  /**
+   * A decoded datagram. Entries are read from the buffer it was decoded from.
+   * Mutable, so that the receiver reuses a single instance.
+   */
+  static final class Message {
+    byte type;
+    long incarnation;
+    int sequence;
+    int entries;
+    private ByteBuffer buffer;
+
+    /**
+     * Decodes the datagram between the position and the limit of
+     * {@code buffer}.
+     *
+     * @return false if it is not a valid datagram of this version
+     */
+    boolean decode(ByteBuffer buffer) {
+      if (buffer.remaining() < HEADER_BYTES) {
+        return false;
+      }
+      int start = buffer.position();
+      if (buffer.getInt(start) != MAGIC || buffer.get(start + 4) != VERSION) {
+        return false;
+      }
+      type = buffer.get(start + 5);
+      entries = Short.toUnsignedInt(buffer.getShort(start + 6));
+      incarnation = buffer.getLong(start + 8);
+      sequence = buffer.getInt(start + 16);
+      if (type < DELTA || type > SYNC || buffer.remaining() != HEADER_BYTES + entries * ENTRY_BYTES) {
+        return false;
+      }
+      for (int i = 0; i < entries; i++) {
+        int status = buffer.get(start + HEADER_BYTES + i * ENTRY_BYTES + Long.BYTES);
+        if (status < 0 || status >= STATUSES.length) {
+          return false;
+        }
+      }
+      this.buffer = buffer;
+      return true;
+    }
+
+    long key(int entry) {
+      return buffer.getLong(buffer.position() + HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    Status status(int entry) {
+      return STATUSES[buffer.get(buffer.position() + HEADER_BYTES + entry * ENTRY_BYTES + Long.BYTES)];
+    }
+  }
+}
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+import org.eclipsefoundation.cerberus.component.Component;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ComponentUpdater} stage that coalesces status updates before handing
+ * them to another updater.
+ *
+ * <ul>
+ * <li>Updates that the delegate reports as up to date are dropped right away,
+ * without waiting nor consuming budget.</li>
+ * <li>Other updates are queued per component: a later update of a queued
+ * component replaces its status but keeps its place in the queue, so a
+ * flapping component costs a single request per window.</li>
+ * <li>An update that is identical to the one in flight for the same component
+ * is deduplicated. Otherwise it waits for the update in flight to complete.</li>
+ * <li>Every {@code window}, the queue is drained in order on the given
+ * executor, issuing at most {@code budget} updates per window, and never more
+ * than {@code budget} updates in flight.</li>
+ * <li>Each update takes a permit of the rate limiter of the page before it is
+ * issued. When none is available, updates stay queued (and keep coalescing)
+ * and the drain resumes once a permit is available, so no thread waits for
+ * the rate limiter.</li>
+ * <li>Failed updates are queued again after an exponential backoff (starting
+ * at {@code window}, with jitter), unless a more recent update of the same
+ * component superseded them or the component reached the desired status in
+ * the meantime. The latest desired status thus always lands eventually.</li>
+ * </ul>
+ */
+public class CoalescingComponentUpdater implements ComponentUpdater, MetricsSource {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(CoalescingComponentUpdater.class);
+
+  public static final Duration DEFAULT_WINDOW = Duration.ofSeconds(5);
+
+  /**
+   * statuspage.io allows about 1 request per second and per token, fetches
+   * included.
+   */
+  public static final int DEFAULT_BUDGET = 4;
+
+  private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+
+  private final ScheduledExecutorService executor;
+  private final String name;
+  private final ComponentUpdater delegate;
+  private final Duration window;
+  private final int budget;
+  private final TokenBucket rateLimiter;
+
+  /**
+   * Guarded by {@code this}. Both maps are small, and critical sections only
+   * move entries around.
+   */
+  private final LinkedHashMap<String, Update> queued = new LinkedHashMap<>();
+  private final Map<String, Update> inFlight = new HashMap<>();
+  /**
+   * Number of updates issued in the current window.
+   */
+  private int issuedInWindow;
+  /**
+   * Whether a drain is scheduled for when a permit is available.
+   */
+  private boolean waitingForPermit;
+
+  private volatile ScheduledFuture<?> drainTask;
+
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder issued = new LongAdder();
+  private final LongAdder retried = new LongAdder();
+
+  private static final class Update {
+    final String componentName;
+    Status status;
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    /**
+     * Number of failed attempts
+     */
+    int failures;
+
+    Update(String componentName, Status status) {
+      this.componentName = componentName;
+      this.status = status;
+    }
+  }
+
+  private CoalescingComponentUpdater(ScheduledExecutorService executor, String name, ComponentUpdater delegate, Duration window, int budget, 
+      TokenBucket rateLimiter) {
+    this.executor = executor;
+    this.name = name;
+    this.delegate = delegate;
+    this.window = window;
+    this.budget = budget;
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * @param name label of this pipeline in logs and metrics, e.g. the page id
+   */
+  public static CoalescingComponentUpdater create(ScheduledExecutorService executor, String name, ComponentUpdater delegate, Duration window, int budget) {
+    return create(executor, name, delegate, window, budget, null);
+  }
+
+  /**
+   * @param name        label of this pipeline in logs and metrics, e.g. the page
+   *                    id
+   * @param rateLimiter limiter of the API calls of the delegate, or
+   *                    {@code null}
+   */
+  public static CoalescingComponentUpdater create(ScheduledExecutorService executor, String name, ComponentUpdater delegate, Duration window, int budget, 
+      TokenBucket rateLimiter) {
+    Preconditions.checkArgument(!window.isNegative() && !window.isZero(), "window must be positive");
+    Preconditions.checkArgument(budget > 0, "budget must be positive");
+    CoalescingComponentUpdater ret = new CoalescingComponentUpdater(executor, name, delegate, window, budget, rateLimiter);
+    ret.drainTask = executor.scheduleWithFixedDelay(ret::drain, window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+    return ret;
+  }
+
+  @Override
+  public List<Component> components() {
+    return delegate.components();
+  }
+
+  @Override
+  public boolean isUpToDate(String componentName, Status status) {
+    return delegate.isUpToDate(componentName, status);
+  }
+
+  @Override
+  public CompletableFuture<Void> ready() {
+    return delegate.ready();
+  }
+
+  @Override
+  public void close() {
+    drainTask.cancel(false);
+    synchronized (this) {
+      if (!queued.isEmpty()) {
+        LOGGER.info("Dropping {} queued updates of {}", queued.size(), name);
+      }
+      queued.clear();
+    }
+    delegate.close();
+  }
+
+  @Override
+  public CompletableFuture<Void> updateStatus(String componentName, Status status) {
+    Update obsolete = null;
+    CompletableFuture<Void> ret;
+    synchronized (this) {
+      Update current = inFlight.get(componentName);
+      Update next = queued.get(componentName);
+      if (current == null && delegate.isUpToDate(componentName, status)) {
+        // the latest desired status is the remote one, a queued update would revert it
+        obsolete = queued.remove(componentName);
+        ret = CompletableFuture.completedFuture(null);
+      } else if (next != null) {
+        next.status = status;
+        coalesced.increment();
+        ret = next.future;
+      } else if (current != null && current.status == status) {
+        coalesced.increment();
+        ret = current.future;
+      } else {
+        Update update = new Update(componentName, status);
+        queued.put(componentName, update);
+        ret = update.future;
+      }
+    }
+    if (obsolete != null) {
+      obsolete.future.complete(null);
+    }
+    return ret;
+  }
+
+  private void drain() {
+    synchronized (this) {
+      issuedInWindow = 0;
+    }
+    issue();
+  }
+
+  private void resumeDrain() {
+    synchronized (this) {
+      waitingForPermit = false;
+    }
+    issue();
+  }
+
+  private void issue() {
+    List<Update> batch = new ArrayList<>();
+    long permitWait = 0;
+    synchronized (this) {
+      Iterator<Update> it = queued.values().iterator();
+      while (it.hasNext() && issuedInWindow < budget && inFlight.size() < budget) {
+        Update update = it.next();
+        if (!inFlight.containsKey(update.componentName)) {
+          if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+            if (!waitingForPermit) {
+              waitingForPermit = true;
+              permitWait = Math.max(1, rateLimiter.nanosUntilAvailable());
+            }
+            break;
+          }
+          it.remove();
+          inFlight.put(update.componentName, update);
+          batch.add(update);
+          issuedInWindow++;
+        }
+      }
+    }
+    if (permitWait > 0) {
+      try {
+        executor.schedule(this::resumeDrain, permitWait, TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException e) {
+        // closing: queued updates are dropped
+      }
+    }
+    if (!batch.isEmpty()) {
+      LOGGER.debug("{}: issuing {} status updates, {} still queued", name, batch.size(), queuedCount());
+    }
+    for (Update update : batch) {
+      issued.increment();
+      CompletableFuture<Void> result;
+      try {
+        result = delegate.updateStatus(update.componentName, update.status);
+      } catch (RuntimeException e) {
+        result = CompletableFuture.failedFuture(e);
+      }
+      result.whenComplete((r, t) -> {
+        synchronized (this) {
+          inFlight.remove(update.componentName);
+        }
+        if (t != null) {
+          retryLater(update, t);
+        } else {
+          update.future.complete(null);
+        }
+      });
+    }
+  }
+
+  private void retryLater(Update update, Throwable cause) {
+    update.failures++;
+    long backoffMillis = Math.min(MAX_BACKOFF.toMillis(), window.toMillis() << Math.min(update.failures - 1, 20));
+    // "equal jitter": between half and the whole backoff, so that retries of a burst of failures spread out
+    long delayMillis = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+    LOGGER.warn("{}: update of component {} to {} failed ({} time(s)), retrying in {}ms", name, update.componentName, update.status, 
+      update.failures, delayMillis);
+    try {
+      executor.schedule(() -> requeue(update), delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      update.future.completeExceptionally(cause);
+    }
+  }
+
+  private void requeue(Update update) {
+    Update superseding;
+    synchronized (this) {
+      superseding = queued.get(update.componentName);
+      if (superseding == null) {
+        superseding = inFlight.get(update.componentName);
+      }
+      if (superseding == null && !delegate.isUpToDate(update.componentName, update.status)) {
+        retried.increment();
+        queued.put(update.componentName, update);
+        return;
+      }
+    }
+    if (superseding == null) {
+      update.future.complete(null);
+    } else {
+      superseding.future.whenComplete((r, t) -> {
+        if (t != null) {
+          update.future.completeExceptionally(t);
+        } else {
+          update.future.complete(null);
+        }
+      });
+    }
+  }
+
+  private synchronized int queuedCount() {
+    return queued.size();
+  }
+
+  private synchronized int inFlightCount() {
+    return inFlight.size();
+  }
+
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    if (delegate instanceof MetricsSource) {
+      ((MetricsSource) delegate).writeMetrics(writer);
+    }
+    writer.gauge("cerberus_statuspage_queued_updates", "Number of status updates waiting for the next window", queuedCount(), "page", name);
+    writer.gauge("cerberus_statuspage_inflight_updates", "Number of status updates in flight", inFlightCount(), "page", name);
+    writer.counter("cerberus_statuspage_coalesced_updates_total", "Number of status updates merged into a queued or in flight one", coalesced.sum(), "page", name);
+    writer.counter("cerberus_statuspage_issued_updates_total", "Number of status updates handed to the status page", issued.sum(), "page", name);
+    writer.counter("cerberus_statuspage_retried_updates_total", "Number of failed status updates queued again", retried.sum(), "page", name);
+  }
+}
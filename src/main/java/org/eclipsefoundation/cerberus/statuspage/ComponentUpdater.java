@@ -8,6 +8,7 @@
 package org.eclipsefoundation.cerberus.statuspage;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipsefoundation.cerberus.component.Component;
 import org.eclipsefoundation.cerberus.component.Component.Status;
@@ -16,5 +17,36 @@ public interface ComponentUpdater {
 
   List<Component> components();
 
-  void updateStatus(String componentName, Status status);
-}
\ No newline at end of file
+  /**
+   * Sets the status of a component.
+   *
+   * @return a future completed once the status has been applied (or found to be
+   *         already applied), or completed exceptionally if the update failed
+   */
+  CompletableFuture<Void> updateStatus(String componentName, Status status);
+
+  /**
+   * Tells, without any remote call, whether setting {@code status} would be a
+   * no-op according to the latest known state of the component. Defaults to
+   * {@code false}, i.e. the update must always be performed.
+   */
+  default boolean isUpToDate(String componentName, Status status) {
+    return false;
+  }
+
+  /**
+   * Completes once {@link #components()} has been initialized, e.g. with a
+   * first successful fetch of the remote components. Never completes
+   * exceptionally. Defaults to an already completed future.
+   */
+  default CompletableFuture<Void> ready() {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Stops the background tasks of this updater (e.g. after a configuration
+   * reload removed its page). Pending updates are dropped.
+   */
+  default void close() {
+  }
+}
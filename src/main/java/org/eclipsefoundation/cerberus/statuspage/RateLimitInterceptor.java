@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Pauses the {@link TokenBucket} of a client for the duration of the
+ * {@code Retry-After} header of 429 and 503 responses. Responses are returned
+ * as is: retrying is up to the caller.
+ *
+ * <p>
+ * Permits are taken by the callers before they issue a call (see
+ * {@link CoalescingComponentUpdater}), so that no thread ever waits for the
+ * rate limiter in the call chain.
+ */
+public final class RateLimitInterceptor implements Interceptor {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(RateLimitInterceptor.class);
+
+  /**
+   * Pause applied on a 429 response without a (valid) Retry-After header.
+   */
+  static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(5);
+
+  private final TokenBucket bucket;
+  private final Duration defaultRetryAfter;
+
+  public RateLimitInterceptor(TokenBucket bucket) {
+    this(bucket, DEFAULT_RETRY_AFTER);
+  }
+
+  RateLimitInterceptor(TokenBucket bucket, Duration defaultRetryAfter) {
+    this.bucket = bucket;
+    this.defaultRetryAfter = defaultRetryAfter;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Response response = chain.proceed(chain.request());
+    if (response.code() == 429 || response.code() == 503) {
+      Duration retryAfter = retryAfter(response, defaultRetryAfter);
+      if (retryAfter != null) {
+        LOGGER.warn("{} answered {}, pausing calls for {}", chain.request().url().host(), response.code(), retryAfter);
+        bucket.pauseUntil(System.nanoTime() + retryAfter.toNanos());
+      }
+    }
+    return response;
+  }
+
+  /**
+   * Delay requested by the Retry-After header (in seconds or as an HTTP date),
+   * or the default delay for 429 responses without a usable header.
+   */
+  static Duration retryAfter(Response response, Duration defaultRetryAfter) {
+    String value = response.header("Retry-After");
+    if (value != null) {
+      try {
+        return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+      } catch (NumberFormatException e) {
+        Date date = response.headers().getDate("Retry-After");
+        if (date != null) {
+          return Duration.ofMillis(Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+      }
+    }
+    return response.code() == 429 ? defaultRetryAfter : null;
+  }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm (GCRA):
+ * the whole state is a single "theoretical arrival time" (TAT), updated with a
+ * compare-and-set. Each permit pushes the TAT one emission interval
+ * ({@code 1 / rate}) further, and a permit is available as long as the TAT is
+ * less than {@code burst} intervals ahead of now.
+ *
+ * <p>
+ * Times are {@link System#nanoTime()} values.
+ */
+public final class TokenBucket {
+
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final AtomicLong tat;
+
+  /**
+   * @param permitsPerSecond sustained rate
+   * @param burst            number of permits that can be taken at once after a
+   *                         quiet period
+   */
+  public TokenBucket(double permitsPerSecond, int burst) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+    Preconditions.checkArgument(burst > 0, "burst must be positive");
+    this.intervalNanos = Math.max(1, (long)(1e9 / permitsPerSecond));
+    this.toleranceNanos = (burst - 1) * intervalNanos;
+    this.tat = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Takes a permit if one is available right now.
+   *
+   * @return whether a permit was taken
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      long now = System.nanoTime();
+      long current = tat.get();
+      if (current - toleranceNanos - now > 0) {
+        return false;
+      }
+      if (tat.compareAndSet(current, Math.max(current, now) + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return how long (in nanoseconds) until a permit is available, 0 if one is
+   *         available right now
+   */
+  public long nanosUntilAvailable() {
+    return Math.max(0, tat.get() - toleranceNanos - System.nanoTime());
+  }
+
+  /**
+   * Makes sure that no permit is available before {@code nanoTime}, e.g. when
+   * the server asked to retry later. Permits already taken are not affected.
+   */
+  public void pauseUntil(long nanoTime) {
+    // the next permit is allowed when tat - tolerance is reached
+    long target = nanoTime + toleranceNanos;
+    tat.accumulateAndGet(target, (current, t) -> current - t < 0 ? t : current);
+  }
+}
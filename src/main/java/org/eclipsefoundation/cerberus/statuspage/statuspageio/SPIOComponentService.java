@@ -7,18 +7,25 @@
  *******************************************************************************/
 package org.eclipsefoundation.cerberus.statuspage.statuspageio;
 
-import java.util.List;
-
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.PATCH;
 import retrofit2.http.Path;
+import retrofit2.http.Streaming;
 
 interface SPIOComponentService {
 
+  /**
+   * The body is decoded by {@link SPIOComponentsReader}.
+   *
+   * @param eTag entity tag of the latest response, if any
+   */
+  @Streaming
   @GET("pages/{page_id}/components")
-  Call<List<SPIOComponent>> listComponents(@Path("page_id") String pageId);
+  Call<ResponseBody> listComponents(@Path("page_id") String pageId, @Header("If-None-Match") String eTag);
 
   @PATCH("pages/{page_id}/components/{component_id}")
   Call<SPIOComponent> updateComponent(@Path("page_id") String pageId, @Path("component_id") String componentId, @Body SPIOComponentUpdate component);
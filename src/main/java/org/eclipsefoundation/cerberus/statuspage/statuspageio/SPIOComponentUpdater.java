@@ -10,176 +10,246 @@ package org.eclipsefoundation.cerberus.statuspage.statuspageio;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
-import com.google.common.collect.ImmutableList;
-import com.squareup.moshi.FromJson;
 import com.squareup.moshi.Moshi;
-import com.squareup.moshi.ToJson;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.eclipsefoundation.cerberus.component.Component;
 import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.metrics.MetricsSource;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.monitors.LatencyHistogram;
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
 import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.eclipsefoundation.cerberus.statuspage.RateLimitInterceptor;
+import org.eclipsefoundation.cerberus.statuspage.TokenBucket;
 import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.moshi.MoshiConverterFactory;
 
-public class SPIOComponentUpdater implements ComponentUpdater {
+public class SPIOComponentUpdater implements ComponentUpdater, MetricsSource {
 
   private static Logger LOGGER = LoggerFactory.getLogger(SPIOComponentUpdater.class);
 
+  /**
+   * Window of the API latency metrics
+   */
+  private static final Duration METRICS_WINDOW = Duration.ofMinutes(10);
+
+  /**
+   * statuspage.io allows 1 request per second and per token.
+   */
+  public static final double DEFAULT_RATE_LIMIT = 1.0;
+  public static final int DEFAULT_RATE_LIMIT_BURST = 3;
+
   private final String pageId;
   private final SPIOComponentService componentService;
 
-  private volatile ImmutableList<SPIOComponent> components;
+  private final AtomicReference<SPIOComponents> components = new AtomicReference<>(SPIOComponents.EMPTY);
+
+  /**
+   * Completed by the first successful fetch of the components.
+   */
+  private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+  private volatile ScheduledFuture<?> fetchTask;
+
+  private final LatencyHistogram fetchLatency = new LatencyHistogram(METRICS_WINDOW, 10);
+  private final LongAdder fetchFailures = new LongAdder();
+  private final LongAdder notModifiedFetches = new LongAdder();
+  private final LongAdder unchangedFetches = new LongAdder();
+
+  /**
+   * Entity tag of the latest component list, sent back in If-None-Match
+   */
+  private volatile String componentsETag;
+  private final LatencyHistogram updateLatency = new LatencyHistogram(METRICS_WINDOW, 10);
+  private final LongAdder updateFailures = new LongAdder();
 
   SPIOComponentUpdater(String pageId, SPIOComponentService componentService) {
     this.pageId = pageId;
     this.componentService = componentService;
-    this.components = ImmutableList.of();
   }
 
-  public static ComponentUpdater create(ScheduledExecutorService executor, OkHttpClient client, String baseUrl, String pageId, String authToken, Duration fetchRate) {
-    Moshi moshi = new Moshi.Builder().add(new Object() {
-      @FromJson
-      Instant fromJson(String date) {
-        return Instant.parse(date);
-      }
-
-      @ToJson
-      String toJson(Instant date) {
-        return DateTimeFormatter.ISO_INSTANT.format(date);
-      }
-    }).add(new Object() {
-      @FromJson Status fromJson(String status) {
-        switch (status) {
-          case "operational": return Status.OPERATIONAL;
-          case "under_maintenance": return Status.UNDER_MAINTENANCE;
-          case "degraded_performance": return Status.DEGRADED_PERFORMANCE;
-          case "partial_outage": return Status.PARTIAL_OUTAGE;
-          case "major_outage": return Status.MAJOR_OUTAGE;
-          default: return Status.UNKNOWN;
-        }
-      }
-    
-      @ToJson String toJson(Status status) {
-        switch (status) {
-          case UNKNOWN: return "";
-          case OPERATIONAL: return "operational";
-          case UNDER_MAINTENANCE: return "under_maintenance";
-          case DEGRADED_PERFORMANCE: return "degraded_performance";
-          case PARTIAL_OUTAGE: return "partial_outage";
-          case MAJOR_OUTAGE: return "major_outage";
-          default: throw new RuntimeException("Unsuported Status kind " + status);
-        }
-      }
-    }).build();
+  /**
+   * Does not wait for the components to be fetched: the first fetch is started
+   * right away and retried every {@code fetchRate} until it succeeds, see
+   * {@link #ready()}.
+   *
+   * @param rateLimiter limits all the API calls of this page. Fetches take a
+   *                    permit, and are skipped until the next
+   *                    {@code fetchRate} when none is available. Updates are
+   *                    expected to take theirs before calling
+   *                    {@link #updateStatus(String, Status)}, see
+   *                    {@link org.eclipsefoundation.cerberus.statuspage.CoalescingComponentUpdater}
+   */
+  public static ComponentUpdater create(ScheduledExecutorService executor, OkHttpClient client, String baseUrl, String pageId, String authToken, Duration fetchRate, 
+      TokenBucket rateLimiter) {
+    Moshi moshi = new Moshi.Builder()
+        .add(Instant.class, SPIOJsonAdapters.INSTANT)
+        .add(Status.class, SPIOJsonAdapters.STATUS)
+        .build();
     MoshiConverterFactory moshiConverterFactory = MoshiConverterFactory.create(moshi);
-    OkHttpClient authClient = client.newBuilder().addInterceptor(
-        (chain) -> chain.proceed(chain.request().newBuilder().header("Authorization", "OAuth " + authToken).build()))
+    OkHttpClient authClient = client.newBuilder()
+        .addInterceptor(new RateLimitInterceptor(rateLimiter))
+        .addInterceptor((chain) -> chain.proceed(chain.request().newBuilder().header("Authorization", "OAuth " + authToken).build()))
         .build();
     Retrofit retrofit = new Retrofit.Builder().baseUrl(baseUrl).client(authClient)
         .addConverterFactory(moshiConverterFactory).build();
 
     SPIOComponentUpdater ret = new SPIOComponentUpdater(pageId, retrofit.create(SPIOComponentService.class));
-    ret.fetchComponents().join();
-    executor.scheduleWithFixedDelay(ret::fetchComponents, fetchRate.toMillis(), fetchRate.toMillis(), TimeUnit.MILLISECONDS);
+    ret.fetchTask = executor.scheduleWithFixedDelay(() -> {
+      if (rateLimiter.tryAcquire()) {
+        ret.fetchComponents();
+      } else {
+        LOGGER.debug("Rate limit of statuspage.io {} reached, skipping fetch", pageId);
+      }
+    }, 0, fetchRate.toMillis(), TimeUnit.MILLISECONDS);
     return ret;
   }
   
 
   @Override
-  public void updateStatus(String componentName, Status status) {
-    Optional<SPIOComponent> componentByName = componentByName(componentName);
+  public CompletableFuture<Void> updateStatus(String componentName, Status status) {
+    Optional<SPIOComponent> componentByName = components.get().byName(componentName);
 
     if (componentByName.isPresent()) {
       SPIOComponent component = componentByName.get();
       if (component.status() ==  Status.UNDER_MAINTENANCE) {
         LOGGER.info("Component {} is under maintenance, its status won't be updated", componentName);
       } else if (component.status() != status) {
-        doUpdateStatus(component, status);
+        return doUpdateStatus(component, status);
       } else {
         LOGGER.debug("Not necessary to update component {} as its remote and local status are identical ({})", componentName, status);
       }
     } else {
       LOGGER.error("Unable to find remote component with name {}", componentName);
     }
+    return CompletableFuture.completedFuture(null);
   }
 
-  private void doUpdateStatus(SPIOComponent component, Status status) {
+  @Override
+  public boolean isUpToDate(String componentName, Status status) {
+    Optional<SPIOComponent> component = components.get().byName(componentName);
+    return component.isPresent() && (component.get().status() == status || component.get().status() == Status.UNDER_MAINTENANCE);
+  }
+
+  private CompletableFuture<Void> doUpdateStatus(SPIOComponent component, Status status) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
     SPIOComponentUpdate componentUpdate = SPIOComponentUpdate.updateWithStatus(component, status);
     Call<SPIOComponent> call = componentService.updateComponent(pageId, component.id(), componentUpdate);
+    long start = System.nanoTime();
     call.enqueue(new Callback<SPIOComponent>(){
       @Override
       public void onResponse(Call<SPIOComponent> call, Response<SPIOComponent> response) {
+        updateLatency.record(MonitorHistory.nowEpochNanos(), System.nanoTime() - start);
         if (response.isSuccessful()) {
           LOGGER.info("Status of component {} has been changed ({} -> {})", component.name(), component.status(), status);
-          fetchComponents();
+          // the response is the updated component: no need to list the whole page again
+          if (response.body() != null) {
+            components.updateAndGet(c -> c.withUpdated(response.body()));
+          }
+          future.complete(null);
         } else {
+          updateFailures.increment();
           try {
             LOGGER.error("Unable to update status of component {} (code={}): {}", component.name(), response.code(),
                 response.errorBody().string());
           } catch (IOException e) {
             LOGGER.error("Unable to update status of component {} (code={})", component.name(), response.code());
           }
+          future.completeExceptionally(new Exception("Unable to update status of component " + component.name() + " (code=" + response.code() + ")"));
         }
       }
     
       @Override
       public void onFailure(Call<SPIOComponent> call, Throwable t) {
+        updateFailures.increment();
         LOGGER.error("Unable to update status of component {} from {} to {}", component.name(), component.status(), status, t);
+        future.completeExceptionally(t);
       }
     });
+    return future;
+  }
+
+  @Override
+  public CompletableFuture<Void> ready() {
+    return ready;
   }
 
-  private Optional<SPIOComponent> componentByName(String name) {
-    return this.components.stream()
-      .filter(c -> name.equals(c.name()))
-      .findFirst();
+  @Override
+  public void close() {
+    fetchTask.cancel(false);
   }
 
   @Override
   public List<Component> components() {
-    return this.components.stream()
-      .map(SPIOComponentUpdater::fromSTIOComponent)
-      .collect(ImmutableList.toImmutableList());
+    return components.get().components();
   }
 
   private CompletableFuture<List<SPIOComponent>> fetchComponents() {
     CompletableFuture<List<SPIOComponent>> future = new CompletableFuture<>();
-    componentService.listComponents(pageId).enqueue(new Callback<List<SPIOComponent>>() {
+    long start = System.nanoTime();
+    componentService.listComponents(pageId, componentsETag).enqueue(new Callback<ResponseBody>() {
       @Override
-      public void onResponse(Call<List<SPIOComponent>> call, Response<List<SPIOComponent>> response) {
-        if (response.isSuccessful()) {
-          ImmutableList<SPIOComponent> newComponents = ImmutableList.copyOf(response.body());
-          SPIOComponentUpdater.this.components = newComponents;
-          future.complete(newComponents);
-          LOGGER.debug("{} components have been fetched from statuspage.io {}", components.size(), pageId);
-          LOGGER.debug("Components names: {}", components.stream().map(SPIOComponent::name).collect(Collectors.joining(", ")));
-        } else {
-          try {
-            LOGGER.error("Unable to fetch components from statuspage.io {} (code={}): {}", pageId, response.code(), response.errorBody().string());
-            future.completeExceptionally(new Exception("Unable to fetch components from statuspage.io"));
-          } catch (IOException e) {
-            LOGGER.error("Unable to fetch components from statuspage.io {} (code={})", pageId, response.code());
+      public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+        try {
+          if (response.code() == 304) {
+            fetchLatency.record(MonitorHistory.nowEpochNanos(), System.nanoTime() - start);
+            notModifiedFetches.increment();
+            LOGGER.debug("Components of statuspage.io {} have not been modified", pageId);
+            future.complete(components.get().all());
+          } else if (response.isSuccessful()) {
+            SPIOComponents previous = components.get();
+            SPIOComponents newComponents;
+            try (ResponseBody body = response.body()) {
+              newComponents = SPIOComponentsReader.read(body.source(), previous);
+            }
+            fetchLatency.record(MonitorHistory.nowEpochNanos(), System.nanoTime() - start);
+            componentsETag = response.headers().get("ETag");
+            if (newComponents == previous) {
+              unchangedFetches.increment();
+              LOGGER.debug("Components of statuspage.io {} are unchanged", pageId);
+            } else {
+              // an update applied locally while this fetch was in flight may be reverted until the next fetch
+              components.set(newComponents);
+              LOGGER.debug("{} components have been fetched from statuspage.io {}", newComponents.size(), pageId);
+              LOGGER.debug("Components names: {}", newComponents.all().stream().map(SPIOComponent::name).collect(Collectors.joining(", ")));
+            }
+            ready.complete(null);
+            future.complete(newComponents.all());
+          } else {
+            fetchLatency.record(MonitorHistory.nowEpochNanos(), System.nanoTime() - start);
+            fetchFailures.increment();
+            try {
+              LOGGER.error("Unable to fetch components from statuspage.io {} (code={}): {}", pageId, response.code(), response.errorBody().string());
+            } catch (IOException e) {
+              LOGGER.error("Unable to fetch components from statuspage.io {} (code={})", pageId, response.code());
+            }
             future.completeExceptionally(new Exception("Unable to fetch components from statuspage.io"));
           }
+        } catch (IOException | RuntimeException e) {
+          onFailure(call, e);
         }
       }
       @Override
-      public void onFailure(Call<List<SPIOComponent>> call, Throwable t) {
+      public void onFailure(Call<ResponseBody> call, Throwable t) {
+        fetchFailures.increment();
         LOGGER.error("Unable to fetch components of page {}", pageId, t);
         future.completeExceptionally(t);
       }
@@ -187,10 +257,22 @@ public class SPIOComponentUpdater implements ComponentUpdater {
     return future;
   }
 
-  private static Component fromSTIOComponent(SPIOComponent c) {
-    return Component.builder()
-      .name(c.name())
-      .status(c.status())
-      .build();
+  @Override
+  public void writeMetrics(MetricsWriter writer) {
+    long now = MonitorHistory.nowEpochNanos();
+    writer.summary("cerberus_statuspage_request_seconds", "Latency of status page API calls over the last " + METRICS_WINDOW.toMinutes() + " minutes",
+      fetchLatency, now, "page", pageId, "operation", "fetch");
+    writer.summary("cerberus_statuspage_request_seconds", "Latency of status page API calls over the last " + METRICS_WINDOW.toMinutes() + " minutes",
+      updateLatency, now, "page", pageId, "operation", "update");
+    writer.counter("cerberus_statuspage_request_failures_total", "Number of failed status page API calls",
+      fetchFailures.sum(), "page", pageId, "operation", "fetch");
+    writer.counter("cerberus_statuspage_fetch_shortcuts_total", "Number of component list fetches that were not modified (304) or unchanged (same updated_at)",
+      notModifiedFetches.sum(), "page", pageId, "result", "not_modified");
+    writer.counter("cerberus_statuspage_fetch_shortcuts_total", "Number of component list fetches that were not modified (304) or unchanged (same updated_at)",
+      unchangedFetches.sum(), "page", pageId, "result", "unchanged");
+    writer.counter("cerberus_statuspage_request_failures_total", "Number of failed status page API calls",
+      updateFailures.sum(), "page", pageId, "operation", "update");
+    writer.gauge("cerberus_statuspage_components", "Number of components of the status page, as of the latest fetch",
+      components.get().size(), "page", pageId);
   }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage.statuspageio;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.eclipsefoundation.cerberus.component.Component;
+
+/**
+ * Immutable snapshot of the components of a page, indexed by name and by id.
+ * A new snapshot is built on each fetch and swapped atomically, so lookups are
+ * O(1) and lock-free. When several components have the same name, the first
+ * one wins.
+ */
+final class SPIOComponents {
+
+  static final SPIOComponents EMPTY = new SPIOComponents(ImmutableList.of());
+
+  private final ImmutableList<SPIOComponent> all;
+  private final ImmutableMap<String, SPIOComponent> byName;
+  private final ImmutableMap<String, SPIOComponent> byId;
+  private final ImmutableList<Component> components;
+
+  private SPIOComponents(ImmutableList<SPIOComponent> all) {
+    this.all = all;
+    Map<String, SPIOComponent> names = new LinkedHashMap<>();
+    Map<String, SPIOComponent> ids = new LinkedHashMap<>();
+    for (SPIOComponent c : all) {
+      if (c.name() != null) {
+        names.putIfAbsent(c.name(), c);
+      }
+      if (c.id() != null) {
+        ids.putIfAbsent(c.id(), c);
+      }
+    }
+    this.byName = ImmutableMap.copyOf(names);
+    this.byId = ImmutableMap.copyOf(ids);
+    this.components = all.stream()
+      .map(SPIOComponents::fromSPIOComponent)
+      .collect(ImmutableList.toImmutableList());
+  }
+
+  static SPIOComponents of(List<SPIOComponent> components) {
+    return new SPIOComponents(ImmutableList.copyOf(components));
+  }
+
+  /**
+   * Copy of this snapshot where the component with the same id as
+   * {@code updated} is replaced by it. Returns this snapshot if there is no
+   * such component.
+   */
+  SPIOComponents withUpdated(SPIOComponent updated) {
+    if (updated.id() == null || !byId.containsKey(updated.id())) {
+      return this;
+    }
+    return new SPIOComponents(all.stream()
+      .map(c -> updated.id().equals(c.id()) ? updated : c)
+      .collect(ImmutableList.toImmutableList()));
+  }
+
+  Optional<SPIOComponent> byName(String name) {
+    return Optional.ofNullable(byName.get(name));
+  }
+
+  Optional<SPIOComponent> byId(String id) {
+    return Optional.ofNullable(byId.get(id));
+  }
+
+  ImmutableList<SPIOComponent> all() {
+    return all;
+  }
+
+  ImmutableList<Component> components() {
+    return components;
+  }
+
+  int size() {
+    return all.size();
+  }
+
+  private static Component fromSPIOComponent(SPIOComponent c) {
+    return Component.builder()
+      .name(c.name())
+      .status(c.status())
+      .build();
+  }
+}
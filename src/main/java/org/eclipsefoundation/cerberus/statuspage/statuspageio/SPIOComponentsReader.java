@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage.statuspageio;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.moshi.JsonReader;
+
+import okio.BufferedSource;
+
+/**
+ * Streaming decoder of the component list of a page.
+ *
+ * <p>
+ * Instead of binding the whole document, it walks it with a {@link JsonReader}:
+ * unknown fields are skipped without being decoded, and as soon as both the id
+ * and the {@code updated_at} of a component are read and match a component of
+ * the previous snapshot, the remaining fields of that component are skipped
+ * and the previous instance is reused. If all components are reused in the
+ * same order, the previous snapshot itself is returned, so an unchanged page
+ * costs neither allocations of components nor index rebuilding.
+ */
+final class SPIOComponentsReader {
+
+  private static final JsonReader.Options FIELDS = JsonReader.Options.of(
+    "id", "page_id", "group_id", "created_at", "updated_at", "group", "name", "description", 
+    "position", "status", "showcase", "only_show_if_degraded", "automation_email");
+
+  private SPIOComponentsReader() {
+  }
+
+  static SPIOComponents read(BufferedSource source, SPIOComponents previous) throws IOException {
+    try (JsonReader reader = JsonReader.of(source)) {
+      ImmutableList.Builder<SPIOComponent> components = ImmutableList.builder();
+      ImmutableList<SPIOComponent> previousComponents = previous.all();
+      boolean unchanged = true;
+      int index = 0;
+      reader.beginArray();
+      while (reader.hasNext()) {
+        SPIOComponent component = readComponent(reader, previous);
+        unchanged &= index < previousComponents.size() && previousComponents.get(index) == component;
+        components.add(component);
+        index++;
+      }
+      reader.endArray();
+      if (unchanged && index == previousComponents.size()) {
+        return previous;
+      }
+      return SPIOComponents.of(components.build());
+    }
+  }
+
+  private static SPIOComponent readComponent(JsonReader reader, SPIOComponents previous) throws IOException {
+    SPIOComponent.Builder builder = SPIOComponent.builder()
+      .group(false)
+      .position(0)
+      .showcase(false)
+      .onlyShowIfDegraded(false);
+    String id = null;
+    Instant updatedAt = null;
+    SPIOComponent reused = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reused != null) {
+        reader.skipName();
+        reader.skipValue();
+        continue;
+      }
+      int field = reader.selectName(FIELDS);
+      if (field == -1) {
+        reader.skipName();
+        reader.skipValue();
+        continue;
+      }
+      if (reader.peek() == JsonReader.Token.NULL) {
+        reader.nextNull();
+        continue;
+      }
+      switch (field) {
+        case 0: id = reader.nextString(); builder.id(id); break;
+        case 1: builder.pageId(reader.nextString()); break;
+        case 2: builder.groupId(reader.nextString()); break;
+        case 3: builder.createdAt(Instant.parse(reader.nextString())); break;
+        case 4: updatedAt = Instant.parse(reader.nextString()); builder.updatedAt(updatedAt); break;
+        case 5: builder.group(reader.nextBoolean()); break;
+        case 6: builder.name(reader.nextString()); break;
+        case 7: builder.description(reader.nextString()); break;
+        case 8: builder.position(reader.nextInt()); break;
+        case 9: builder.status(SPIOStatuses.fromJson(reader.nextString())); break;
+        case 10: builder.showcase(reader.nextBoolean()); break;
+        case 11: builder.onlyShowIfDegraded(reader.nextBoolean()); break;
+        case 12: builder.automationEmail(reader.nextString()); break;
+        default: reader.skipValue();
+      }
+      if (id != null && updatedAt != null && (field == 0 || field == 4)) {
+        Optional<SPIOComponent> known = previous.byId(id);
+        if (known.isPresent() && updatedAt.equals(known.get().updatedAt())) {
+          reused = known.get();
+        }
+      }
+    }
+    reader.endObject();
+    return reused != null ? reused : builder.build();
+  }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage.statuspageio;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+
+import org.eclipsefoundation.cerberus.component.Component.Status;
+
+/**
+ * Adapters of the scalar types of the statuspage.io API. They are plain
+ * {@link JsonAdapter}s, so that Moshi does not need reflection to use them
+ * (e.g. in native images).
+ */
+final class SPIOJsonAdapters {
+
+  static final JsonAdapter<Instant> INSTANT = new JsonAdapter<Instant>() {
+    @Override
+    public Instant fromJson(JsonReader reader) throws IOException {
+      return Instant.parse(reader.nextString());
+    }
+
+    @Override
+    public void toJson(JsonWriter writer, Instant instant) throws IOException {
+      writer.value(DateTimeFormatter.ISO_INSTANT.format(instant));
+    }
+  }.nullSafe();
+
+  static final JsonAdapter<Status> STATUS = new JsonAdapter<Status>() {
+    @Override
+    public Status fromJson(JsonReader reader) throws IOException {
+      return SPIOStatuses.fromJson(reader.nextString());
+    }
+
+    @Override
+    public void toJson(JsonWriter writer, Status status) throws IOException {
+      writer.value(SPIOStatuses.toJson(status));
+    }
+  }.nullSafe();
+
+  private SPIOJsonAdapters() {
+  }
+}
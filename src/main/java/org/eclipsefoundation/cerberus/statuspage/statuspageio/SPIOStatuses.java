@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage.statuspageio;
+
+import org.eclipsefoundation.cerberus.component.Component.Status;
+
+/**
+ * JSON representation of {@link Status} in the statuspage.io API.
+ */
+final class SPIOStatuses {
+
+  private SPIOStatuses() {
+  }
+
+  static Status fromJson(String status) {
+    switch (status) {
+      case "operational": return Status.OPERATIONAL;
+      case "under_maintenance": return Status.UNDER_MAINTENANCE;
+      case "degraded_performance": return Status.DEGRADED_PERFORMANCE;
+      case "partial_outage": return Status.PARTIAL_OUTAGE;
+      case "major_outage": return Status.MAJOR_OUTAGE;
+      default: return Status.UNKNOWN;
+    }
+  }
+
+  static String toJson(Status status) {
+    switch (status) {
+      case UNKNOWN: return "";
+      case OPERATIONAL: return "operational";
+      case UNDER_MAINTENANCE: return "under_maintenance";
+      case DEGRADED_PERFORMANCE: return "degraded_performance";
+      case PARTIAL_OUTAGE: return "partial_outage";
+      case MAJOR_OUTAGE: return "major_outage";
+      default: throw new RuntimeException("Unsuported Status kind " + status);
+    }
+  }
+}
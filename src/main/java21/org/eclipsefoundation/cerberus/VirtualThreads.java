@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Virtual threads factory (Java 21+ version).
+ */
+final class VirtualThreads {
+
+  private static Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+  private VirtualThreads() {}
+
+  static boolean isSupported() {
+    return true;
+  }
+
+  static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+      .name(namePrefix, 0)
+      .uncaughtExceptionHandler((thread, throwable) ->
+        LOGGER.error("Exception in thread {}.\n{}", thread.getName(), throwable))
+      .factory());
+  }
+}
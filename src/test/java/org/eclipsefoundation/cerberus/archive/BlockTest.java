@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import org.eclipsefoundation.cerberus.monitors.MonitorHistory;
+import org.eclipsefoundation.cerberus.monitors.ProbeJournal.ErrorClass;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlockTest {
+
+  /**
+   * Start of a block span.
+   */
+  private static final long START = Block.span(1_600_000_000_000L);
+
+  @Test
+  void steadyTimestamps() throws IOException {
+    List<Probe> probes = new ArrayList<>();
+    for (int i = 0; i < 600; i++) {
+      probes.add(new Probe(START + i * 1000L, 1234, 200, ErrorClass.NONE, false));
+    }
+    Block.Header header = assertRoundTrip(probes);
+    // the first time and delta, then a single bit per probe
+    assertTrue(header.timesLength <= 8 + 2 + 600 / 8 + 1, "times column of " + header.timesLength + " bytes");
+    // a single run of status codes
+    assertEquals(2 + 2 + 1, header.codesLength);
+    // the first latency, then a single bit per probe
+    assertTrue(header.latenciesLength <= 4 + 600 / 8 + 1, "latencies column of " + header.latenciesLength + " bytes");
+    assertEquals(START, header.startMillis);
+    assertEquals(START + 599_000, header.endMillis);
+    assertEquals(600, header.totals.probes());
+    assertEquals(0, header.totals.failures());
+  }
+
+  @Test
+  void jitteredTimestamps() throws IOException {
+    Random random = new Random(42);
+    // jitter amplitudes hitting every prefix code of the delta-of-deltas
+    for (int jitter : new int[] { 10, 100, 1000, 4000, 100_000 }) {
+      List<Probe> probes = new ArrayList<>();
+      long time = START;
+      for (int i = 0; i < 500; i++) {
+        probes.add(new Probe(time, random.nextInt(1_000_000), 200, ErrorClass.NONE, false));
+        time += 1000 + random.nextInt(2 * jitter + 1) - jitter;
+      }
+      assertRoundTrip(probes);
+    }
+  }
+
+  @Test
+  void deltaOfDeltasAtCodeBoundaries() throws IOException {
+    long[] deltaOfDeltas = { 0, -63, 64, -64, 65, -255, 256, -256, 257, -2047, 2048, -2048, 2049, -100_000, 100_000, 5_000 };
+    List<Probe> probes = new ArrayList<>();
+    long time = START + 300_000;
+    long delta = 0;
+    probes.add(new Probe(time, 0, 200, ErrorClass.NONE, false));
+    for (long deltaOfDelta : deltaOfDeltas) {
+      delta += deltaOfDelta;
+      time += delta;
+      probes.add(new Probe(time, 0, 200, ErrorClass.NONE, false));
+    }
+    assertRoundTrip(probes);
+  }
+
+  @Test
+  void negativeDeltaOfDeltas() throws IOException {
+    // slowing down, then probes going back in time (e.g. the clock was set back)
+    long[] times = { START + 1000, START + 61_000, START + 61_500, START + 61_501, START + 61_501, START + 40_000, START + 39_999, START + 100_000 };
+    List<Probe> probes = new ArrayList<>();
+    for (long time : times) {
+      probes.add(new Probe(time, 100, 200, ErrorClass.NONE, false));
+    }
+    Block.Header header = assertRoundTrip(probes);
+    assertEquals(START + 1000, header.startMillis);
+    assertEquals(START + 100_000, header.endMillis);
+  }
+
+  @Test
+  void latencyXorWindows() throws IOException {
+    int[] latencies = {
+      0,
+      // 31 meaningful bits, the most a (non-negative) latency can have
+      Integer.MAX_VALUE,
+      0,
+      1,
+      // fits in the previous window
+      0,
+      1 << 30,
+      (1 << 30) | 1,
+      // reuses the window of the previous XOR (bits 0 to 30)
+      (1 << 29) | 1,
+      Integer.MAX_VALUE,
+      Integer.MAX_VALUE - 1,
+      0x5555_5555,
+      0x2AAA_AAAA,
+      1000,
+      1001,
+      1000,
+      1 << 16,
+      (1 << 16) + (1 << 4) };
+    List<Probe> probes = new ArrayList<>();
+    for (int i = 0; i < latencies.length; i++) {
+      probes.add(new Probe(START + i * 1000L, latencies[i], 200, ErrorClass.NONE, false));
+    }
+    assertRoundTrip(probes);
+  }
+
+  @Test
+  void latenciesAreClamped() throws IOException {
+    Block block = new Block();
+    block.add(START, -5, 200, ErrorClass.NONE, false);
+    block.add(START + 1000, 1L << 40, 200, ErrorClass.NONE, false);
+    List<Probe> read = read(write(block));
+    assertEquals(0, read.get(0).latencyMicros);
+    assertEquals(Integer.MAX_VALUE, read.get(1).latencyMicros);
+  }
+
+  @Test
+  void statusCodesAndFlags() throws IOException {
+    List<Probe> probes = new ArrayList<>();
+    long time = START;
+    // runs longer than a single byte varint
+    for (int i = 0; i < 300; i++) {
+      probes.add(new Probe(time += 1000, 10, 200, ErrorClass.NONE, false));
+    }
+    for (ErrorClass errorClass : ErrorClass.values()) {
+      probes.add(new Probe(time += 1000, 10, MonitorHistory.NO_STATUS_CODE, errorClass, true));
+    }
+    probes.add(new Probe(time += 1000, 10, 503, ErrorClass.NONE, true));
+    probes.add(new Probe(time += 1000, 10, 429, ErrorClass.NONE, false));
+    probes.add(new Probe(time += 1000, 10, 599, ErrorClass.NONE, false));
+    for (int i = 0; i < 200; i++) {
+      probes.add(new Probe(time += 1000, 10, 304, ErrorClass.NONE, false));
+    }
+    Block.Header header = assertRoundTrip(probes);
+    assertEquals(probes.size(), header.totals.probes());
+    assertEquals(ErrorClass.values().length + 1, header.totals.failures());
+  }
+
+  @Test
+  void archiveTruncatesBlockWrittenPartially(@TempDir Path root) throws IOException {
+    MonitorArchive archive = MonitorArchive.open(root, "http_status", "web");
+    archive.write(block(START, 100, false));
+    archive.write(block(START + Block.SPAN_MILLIS, 100, true));
+    Path directory = MonitorArchive.list(root).get(0);
+    Path segment = directory.resolve(MonitorArchive.segmentName(Math.floorDiv(START, MonitorArchive.DAY_MILLIS) * MonitorArchive.DAY_MILLIS));
+    long validLength = Files.size(segment);
+
+    // crash while writing the body of a third block
+    byte[] third = write(block(START + 2 * Block.SPAN_MILLIS, 100, false));
+    Files.write(segment, Arrays.copyOf(third, third.length / 2), StandardOpenOption.APPEND);
+    Totals totals = MonitorArchive.query(directory, START, START + MonitorArchive.DAY_MILLIS);
+    assertEquals(200, totals.probes());
+
+    archive = MonitorArchive.open(root, "http_status", "web");
+    assertEquals(validLength, Files.size(segment));
+    assertEquals(START + Block.SPAN_MILLIS + 99_000, archive.lastMillis());
+
+    // crash while writing a header
+    Files.write(segment, Arrays.copyOf(third, 10), StandardOpenOption.APPEND);
+    archive = MonitorArchive.open(root, "http_status", "web");
+    assertEquals(validLength, Files.size(segment));
+
+    // the archive goes on after the truncated block
+    archive.write(block(START + 2 * Block.SPAN_MILLIS, 50, true));
+    totals = MonitorArchive.query(directory, START, START + MonitorArchive.DAY_MILLIS);
+    assertEquals(250, totals.probes());
+    assertEquals(150, totals.failures());
+    // only the probes of the first block, the one of the boundary is decoded
+    totals = MonitorArchive.query(directory, START, START + 50_500);
+    assertEquals(51, totals.probes());
+    assertEquals(0, totals.failures());
+  }
+
+  /**
+   * A block of {@code count} probes, one per second.
+   */
+  private static Block block(long start, int count, boolean failed) {
+    Block block = new Block();
+    for (int i = 0; i < count; i++) {
+      block.add(start + i * 1000L, 1000 + i, failed ? 500 : 200, ErrorClass.NONE, failed);
+    }
+    return block;
+  }
+
+  private static Block.Header assertRoundTrip(List<Probe> probes) throws IOException {
+    Block block = new Block();
+    for (Probe probe : probes) {
+      block.add(probe.epochMillis, probe.latencyMicros, probe.statusCode, probe.errorClass, probe.failed);
+    }
+    byte[] bytes = write(block);
+    assertEquals(probes, read(bytes));
+    Block.Header header = Block.Header.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    assertEquals(bytes.length, Block.HEADER_SIZE + header.bodyLength());
+    return header;
+  }
+
+  private static byte[] write(Block block) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    block.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  private static List<Probe> read(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    List<Probe> probes = new ArrayList<>();
+    Block.read(Block.Header.read(in), in, (time, latency, statusCode, errorClass, failed) ->
+      probes.add(new Probe(time, latency, statusCode, errorClass, failed)));
+    return probes;
+  }
+
+  private static final class Probe {
+    final long epochMillis;
+    final long latencyMicros;
+    final int statusCode;
+    final ErrorClass errorClass;
+    final boolean failed;
+
+    Probe(long epochMillis, long latencyMicros, int statusCode, ErrorClass errorClass, boolean failed) {
+      this.epochMillis = epochMillis;
+      this.latencyMicros = latencyMicros;
+      this.statusCode = statusCode;
+      this.errorClass = errorClass;
+      this.failed = failed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Probe)) {
+        return false;
+      }
+      Probe other = (Probe)o;
+      return epochMillis == other.epochMillis && latencyMicros == other.latencyMicros && statusCode == other.statusCode
+        && errorClass == other.errorClass && failed == other.failed;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(epochMillis, latencyMicros, statusCode, errorClass, failed);
+    }
+
+    @Override
+    public String toString() {
+      return epochMillis + " " + latencyMicros + "us " + statusCode + " " + errorClass + (failed ? " failed" : "");
+    }
+  }
+}
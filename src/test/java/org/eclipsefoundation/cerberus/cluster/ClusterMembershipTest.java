@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Other nodes are played by files that are not locked, as a JVM cannot take a
+ * lock held by itself.
+ */
+class ClusterMembershipTest {
+
+  private static final Duration HEARTBEAT = Duration.ofMillis(50);
+  private static final Duration TIMEOUT = Duration.ofMillis(500);
+
+  @TempDir
+  Path directory;
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * A node that just created its file has neither locked it nor written its
+   * first heartbeat yet.
+   */
+  @Test
+  void recentFilesAreNotDeleted() throws IOException {
+    Path joining = Files.createFile(directory.resolve("joining" + ClusterMembership.EXTENSION));
+    Path dead = Files.createFile(directory.resolve("dead" + ClusterMembership.EXTENSION));
+    Files.setLastModifiedTime(dead, FileTime.from(Instant.now().minus(Duration.ofMinutes(1))));
+    try (ClusterMembership membership = ClusterMembership.join(directory, "node", HEARTBEAT, TIMEOUT, members -> {})) {
+      membership.start(executor);
+      assertEquals(Set.of("node"), membership.members());
+      assertTrue(Files.exists(joining));
+      assertFalse(Files.exists(dead));
+    }
+  }
+
+  @Test
+  void deletedNodeFileIsRecreated() throws IOException, InterruptedException {
+    Path file = directory.resolve("node" + ClusterMembership.EXTENSION);
+    try (ClusterMembership membership = ClusterMembership.join(directory, "node", HEARTBEAT, TIMEOUT, members -> {})) {
+      membership.start(executor);
+      Files.delete(file);
+      long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+      while (!Files.exists(file) && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(Files.exists(file));
+      // with heartbeats
+      Thread.sleep(HEARTBEAT.multipliedBy(3).toMillis());
+      assertEquals(Long.BYTES, Files.size(file));
+    }
+    assertFalse(Files.exists(file));
+  }
+}
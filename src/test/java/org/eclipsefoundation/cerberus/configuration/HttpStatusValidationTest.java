@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.HttpStatus;
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.HttpStatus.AdaptivePeriod;
+import org.junit.jupiter.api.Test;
+
+class HttpStatusValidationTest {
+
+  @Test
+  void withoutAdaptivePeriod() {
+    HttpStatus monitor = monitor(null);
+    assertSame(monitor, monitor.validate());
+  }
+
+  @Test
+  void validAdaptivePeriods() {
+    monitor(adaptive(Duration.ofSeconds(2), Duration.ofMinutes(5), 2.0)).validate();
+    // bounds are inclusive
+    monitor(adaptive(Duration.ofSeconds(30), Duration.ofMinutes(10), 1.0)).validate();
+  }
+
+  @Test
+  void invalidAdaptivePeriods() {
+    assertInvalid(adaptive(null, Duration.ofMinutes(5), 2.0), "adaptive_period of web requires min_period and max_period");
+    assertInvalid(adaptive(Duration.ofSeconds(2), null, 2.0), "adaptive_period of web requires min_period and max_period");
+    assertInvalid(adaptive(Duration.ZERO, Duration.ofMinutes(5), 2.0), "adaptive_period of web requires 0 < min_period <= period <= max_period");
+    assertInvalid(adaptive(Duration.ofMinutes(1), Duration.ofMinutes(5), 2.0), "adaptive_period of web requires 0 < min_period <= period <= max_period");
+    assertInvalid(adaptive(Duration.ofSeconds(2), Duration.ofSeconds(10), 2.0), "adaptive_period of web requires 0 < min_period <= period <= max_period");
+    assertInvalid(adaptive(Duration.ofSeconds(2), Duration.ofMinutes(11), 2.0), "max_period of web must not exceed its monitoring_history");
+    assertInvalid(adaptive(Duration.ofSeconds(2), Duration.ofMinutes(5), 0.5), "backoff_factor of web must be at least 1");
+  }
+
+  private static void assertInvalid(AdaptivePeriod adaptivePeriod, String message) {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> monitor(adaptivePeriod).validate());
+    assertEquals(message, e.getMessage());
+  }
+
+  private static AdaptivePeriod adaptive(Duration minPeriod, Duration maxPeriod, Double backoffFactor) {
+    return AdaptivePeriod.builder()
+      .minPeriod(minPeriod)
+      .maxPeriod(maxPeriod)
+      .backoffFactor(backoffFactor)
+      .build();
+  }
+
+  private static HttpStatus monitor(AdaptivePeriod adaptivePeriod) {
+    return HttpStatus.builder()
+      .componentName("web")
+      .target("https://www.example.org/")
+      .method("GET")
+      .statusCodeMin(200)
+      .statusCodeMax(399)
+      .connectTimeout(Duration.ofSeconds(10))
+      .readTimeout(Duration.ofSeconds(10))
+      .monitoringHistory(Duration.ofMinutes(10))
+      .initialDelay(Duration.ZERO)
+      .period(Duration.ofSeconds(30))
+      .adaptivePeriod(adaptivePeriod)
+      .build();
+  }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  private static final long SECOND = Duration.ofSeconds(1).toNanos();
+  private static final long MILLI = Duration.ofMillis(1).toNanos();
+
+  @Test
+  void percentiles() {
+    LatencyHistogram histogram = new LatencyHistogram(Duration.ofSeconds(10), 10);
+    assertEquals(Duration.ZERO, histogram.percentile(95, 0));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 10 * MILLI, i * MILLI);
+    }
+    assertEquals(100, histogram.count(SECOND));
+    assertWithinBucket(Duration.ofMillis(50), histogram.percentile(50, SECOND));
+    assertWithinBucket(Duration.ofMillis(95), histogram.percentile(95, SECOND));
+    assertWithinBucket(Duration.ofMillis(100), histogram.percentile(100, SECOND));
+
+    long[] counts = new long[LatencyHistogram.bucketsCount()];
+    assertEquals(100, histogram.snapshot(SECOND, counts));
+    assertEquals(histogram.percentile(99, SECOND), LatencyHistogram.percentile(counts, 100, 99));
+  }
+
+  @Test
+  void slidingWindow() {
+    LatencyHistogram histogram = new LatencyHistogram(Duration.ofSeconds(10), 10);
+    // one sample per second, the latency of the first ones being the largest
+    for (int second = 0; second < 10; second++) {
+      histogram.record(second * SECOND, (10 - second) * 100 * MILLI);
+    }
+    assertEquals(10, histogram.count(9 * SECOND));
+    assertWithinBucket(Duration.ofSeconds(1), histogram.percentile(100, 9 * SECOND));
+
+    // reading evicts slices as well, without any new sample
+    assertEquals(7, histogram.count(12 * SECOND));
+    assertWithinBucket(Duration.ofMillis(700), histogram.percentile(100, 12 * SECOND));
+    assertEquals(0, histogram.count(19 * SECOND));
+    assertEquals(Duration.ZERO, histogram.percentile(50, 19 * SECOND));
+
+    // slices are reused for newer samples, far after the previous ones
+    histogram.record(100 * SECOND, 5 * MILLI);
+    assertEquals(1, histogram.count(100 * SECOND));
+    assertWithinBucket(Duration.ofMillis(5), histogram.percentile(100, 100 * SECOND));
+  }
+
+  @Test
+  void lateSamplesCountInTheLatestSlice() {
+    LatencyHistogram histogram = new LatencyHistogram(Duration.ofSeconds(10), 10);
+    histogram.record(50 * SECOND, MILLI);
+    histogram.record(20 * SECOND, 2 * MILLI);
+    assertEquals(2, histogram.count(50 * SECOND));
+    // and leave the window with it
+    assertEquals(0, histogram.count(60 * SECOND));
+  }
+
+  /**
+   * Readers never block writers, and concurrent writers and slice rotations do
+   * not lose samples of the window.
+   */
+  @Test
+  void concurrentWritersAndReaders() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram(Duration.ofSeconds(1000), 4);
+    int writers = 4;
+    int samples = 100_000;
+    AtomicBoolean done = new AtomicBoolean();
+    Thread reader = new Thread(() -> {
+      long[] counts = new long[LatencyHistogram.bucketsCount()];
+      while (!done.get()) {
+        histogram.snapshot(3000 * SECOND, counts);
+        histogram.count(3000 * SECOND);
+      }
+    });
+    reader.start();
+    List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      Thread writer = new Thread(() -> {
+        for (int i = 0; i < samples; i++) {
+          // moves through 4 slices, the last one being cleared from earlier rounds
+          histogram.record((i * 4L / samples) * 250 * SECOND + 2000 * SECOND, (i % 100) * MILLI);
+        }
+      });
+      threads.add(writer);
+      writer.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    done.set(true);
+    reader.join();
+    assertEquals((long)writers * samples, histogram.count(2750 * SECOND));
+    long[] counts = new long[LatencyHistogram.bucketsCount()];
+    assertEquals((long)writers * samples, histogram.snapshot(2750 * SECOND, counts));
+  }
+
+  /**
+   * Percentiles are the upper bound of their bucket, within about 6%.
+   */
+  private static void assertWithinBucket(Duration expected, Duration actual) {
+    assertTrue(actual.compareTo(expected) >= 0 && actual.toNanos() <= expected.toNanos() * 1.07, "expected about " + expected + ", got " + actual);
+  }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.Test;
+
+class MonitorHistoryTest {
+
+  private static final IntPredicate SERVER_ERRORS = code -> code == MonitorHistory.NO_STATUS_CODE || code >= 500;
+
+  @Test
+  void wrapAround() {
+    MonitorHistory history = new MonitorHistory(4, SERVER_ERRORS);
+    for (int i = 1; i <= 10; i++) {
+      history.add(i, 200 + i);
+      long[] times = new long[4];
+      short[] codes = new short[4];
+      int n = history.snapshot(times, codes);
+      assertEquals(Math.min(i, 4), n);
+      for (int j = 0; j < n; j++) {
+        // from the oldest to the most recent, whatever the position of the head
+        assertEquals(i - n + 1 + j, times[j]);
+        assertEquals(200 + times[j], codes[j]);
+      }
+    }
+  }
+
+  @Test
+  void evictionByCapacity() {
+    MonitorHistory history = new MonitorHistory(3, SERVER_ERRORS);
+    history.add(1, 500, 10);
+    history.add(2, MonitorHistory.NO_STATUS_CODE, 20);
+    history.add(3, 200, 30);
+    assertEquals(2, history.anomaliesCount());
+    assertEquals(30, history.anomaliesWeight());
+
+    history.add(4, 200, 40);
+    assertEquals(1, history.anomaliesCount());
+    assertEquals(20, history.anomaliesWeight());
+
+    history.add(5, 503, 50);
+    assertEquals(1, history.anomaliesCount());
+    assertEquals(50, history.anomaliesWeight());
+
+    history.add(6, 200, 60);
+    history.add(7, 200, 70);
+    assertSnapshot(history, new long[] { 5, 6, 7 }, new int[] { 503, 200, 200 }, new int[] { 50, 60, 70 });
+    assertEquals(1, history.anomaliesCount());
+    assertEquals(50, history.anomaliesWeight());
+
+    history.add(8, 200, 80);
+    assertEquals(0, history.anomaliesCount());
+    assertEquals(0, history.anomaliesWeight());
+  }
+
+  @Test
+  void evictionByWindow() {
+    MonitorHistory history = new MonitorHistory(100, Duration.ofNanos(10), SERVER_ERRORS);
+    history.add(0, 500, 1);
+    history.add(5, 500, 2);
+    history.add(10, 200, 3);
+    // exactly one window older than the most recent datapoint: kept
+    assertSnapshot(history, new long[] { 0, 5, 10 }, new int[] { 500, 500, 200 }, new int[] { 1, 2, 3 });
+    assertEquals(2, history.anomaliesCount());
+    assertEquals(3, history.anomaliesWeight());
+
+    history.add(16, 502, 4);
+    assertSnapshot(history, new long[] { 10, 16 }, new int[] { 200, 502 }, new int[] { 3, 4 });
+    assertEquals(1, history.anomaliesCount());
+    assertEquals(4, history.anomaliesWeight());
+
+    // a gap longer than the window empties the ring but for the new datapoint
+    history.add(100, 200, 5);
+    assertSnapshot(history, new long[] { 100 }, new int[] { 200 }, new int[] { 5 });
+    assertEquals(0, history.anomaliesCount());
+    assertEquals(0, history.anomaliesWeight());
+  }
+
+  @Test
+  void evictionByCapacityAndWindow() {
+    MonitorHistory history = new MonitorHistory(2, Duration.ofNanos(100), SERVER_ERRORS);
+    history.add(0, 500, 7);
+    history.add(1, 500, 7);
+    history.add(2, 500, 7);
+    assertEquals(2, history.anomaliesCount());
+    assertEquals(14, history.anomaliesWeight());
+    history.add(200, 500, 7);
+    assertEquals(1, history.anomaliesCount());
+    assertEquals(7, history.anomaliesWeight());
+  }
+
+  @Test
+  void anomaliesExpireWithoutNewDatapoints() {
+    MonitorHistory history = new MonitorHistory(100, Duration.ofNanos(10), SERVER_ERRORS);
+    history.add(0, 500, 1);
+    history.add(5, 200, 2);
+    history.add(8, 503, 4);
+    assertEquals(2, history.anomaliesCount(10));
+    assertEquals(5, history.anomaliesWeight(10));
+    // read after the probes stopped
+    assertEquals(1, history.anomaliesCount(12));
+    assertEquals(4, history.anomaliesWeight(12));
+    assertEquals(0, history.anomaliesCount(100));
+    assertEquals(0, history.anomaliesWeight(100));
+    // reads do not evict, the writer does
+    assertEquals(2, history.anomaliesCount());
+
+    // without a window, only the writer evicts
+    MonitorHistory unbounded = new MonitorHistory(3, SERVER_ERRORS);
+    unbounded.add(0, 500, 1);
+    assertEquals(1, unbounded.anomaliesCount(1_000));
+    assertEquals(1, unbounded.anomaliesWeight(1_000));
+  }
+
+  @Test
+  void noStatusCode() {
+    MonitorHistory history = new MonitorHistory(2, SERVER_ERRORS);
+    history.add(1, MonitorHistory.NO_STATUS_CODE);
+    long[] times = new long[2];
+    short[] codes = new short[2];
+    assertEquals(1, history.snapshot(times, codes));
+    assertEquals(MonitorHistory.NO_STATUS_CODE, MonitorHistory.decode(codes[0]));
+    assertEquals(1, history.anomaliesCount());
+  }
+
+  @Test
+  void addAllWithDifferentPredicate() {
+    MonitorHistory previous = new MonitorHistory(6, SERVER_ERRORS);
+    int[] codes = { 200, 404, 500, 429, 403, MonitorHistory.NO_STATUS_CODE };
+    for (int i = 0; i < codes.length; i++) {
+      previous.add(i, codes[i], i + 1);
+    }
+    assertEquals(2, previous.anomaliesCount());
+    assertEquals(3 + 6, previous.anomaliesWeight());
+
+    // e.g. the status code range changed on a reload: anomalies are re-evaluated
+    MonitorHistory clientErrors = new MonitorHistory(6, code -> code >= 400 && code != 429);
+    clientErrors.addAll(previous);
+    assertEquals(3, clientErrors.anomaliesCount());
+    assertEquals(2 + 3 + 5, clientErrors.anomaliesWeight());
+    assertSnapshot(clientErrors, new long[] { 0, 1, 2, 3, 4, 5 }, codes, new int[] { 1, 2, 3, 4, 5, 6 });
+
+    // only the most recent datapoints fit in a smaller history
+    MonitorHistory smaller = new MonitorHistory(3, SERVER_ERRORS);
+    smaller.addAll(previous);
+    assertSnapshot(smaller, new long[] { 3, 4, 5 }, new int[] { 429, 403, MonitorHistory.NO_STATUS_CODE }, new int[] { 4, 5, 6 });
+    assertEquals(1, smaller.anomaliesCount());
+    assertEquals(6, smaller.anomaliesWeight());
+
+    // the source is left untouched
+    assertEquals(2, previous.anomaliesCount());
+  }
+
+  @Test
+  void snapshotArraysTooSmall() {
+    MonitorHistory history = new MonitorHistory(4, SERVER_ERRORS);
+    assertThrows(IllegalArgumentException.class, () -> history.snapshot(new long[3], new short[4]));
+    assertThrows(IllegalArgumentException.class, () -> history.snapshot(new long[4], new short[4], new int[2]));
+  }
+
+  /**
+   * A writer records datapoints whose status code and weight derive from their
+   * time, as fast as it can, while readers check that each snapshot is a
+   * consistent window of consecutive datapoints.
+   */
+  @Test
+  void snapshotsAreConsistentUnderConcurrentWrites() throws InterruptedException {
+    int capacity = 257;
+    MonitorHistory history = new MonitorHistory(capacity, SERVER_ERRORS);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> inconsistency = new AtomicReference<>();
+    Thread writer = new Thread(() -> {
+      for (long time = 1; time <= 3_000_000; time++) {
+        history.add(time, code(time), weight(time));
+      }
+      done.set(true);
+    });
+    Thread[] readers = new Thread[2];
+    long[] snapshots = new long[readers.length];
+    for (int r = 0; r < readers.length; r++) {
+      int reader = r;
+      readers[r] = new Thread(() -> {
+        long[] times = new long[capacity];
+        short[] codes = new short[capacity];
+        int[] weights = new int[capacity];
+        long previousLatest = 0;
+        while (!done.get() && inconsistency.get() == null) {
+          int n = history.snapshot(times, codes, weights);
+          snapshots[reader]++;
+          if (n == 0) {
+            continue;
+          }
+          long latest = times[n - 1];
+          if (n != Math.min(capacity, latest) || latest < previousLatest) {
+            inconsistency.compareAndSet(null, n + " datapoints up to " + latest + " after " + previousLatest);
+          }
+          for (int i = 0; i < n; i++) {
+            long time = latest - n + 1 + i;
+            if (times[i] != time || MonitorHistory.decode(codes[i]) != code(time) || weights[i] != weight(time)) {
+              inconsistency.compareAndSet(null, "datapoint " + i + " of " + Arrays.toString(Arrays.copyOf(times, n)));
+              break;
+            }
+          }
+          previousLatest = latest;
+        }
+      });
+    }
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    writer.start();
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertNull(inconsistency.get());
+    for (long count : snapshots) {
+      assertTrue(count > 0);
+    }
+    long anomalies = 0;
+    long anomaliesWeight = 0;
+    for (long time = 3_000_000 - capacity + 1; time <= 3_000_000; time++) {
+      if (SERVER_ERRORS.test(code(time))) {
+        anomalies++;
+        anomaliesWeight += weight(time);
+      }
+    }
+    assertEquals(anomalies, history.anomaliesCount());
+    assertEquals(anomaliesWeight, history.anomaliesWeight());
+  }
+
+  private static int code(long time) {
+    return time % 7 == 0 ? 503 : time % 11 == 0 ? MonitorHistory.NO_STATUS_CODE : 200;
+  }
+
+  private static int weight(long time) {
+    return (int)(time % 1000) + 1;
+  }
+
+  private static void assertSnapshot(MonitorHistory history, long[] expectedTimes, int[] expectedCodes, int[] expectedWeights) {
+    long[] times = new long[history.capacity()];
+    short[] codes = new short[history.capacity()];
+    int[] weights = new int[history.capacity()];
+    int n = history.snapshot(times, codes, weights);
+    assertArrayEquals(expectedTimes, Arrays.copyOf(times, n));
+    int[] decoded = new int[n];
+    for (int i = 0; i < n; i++) {
+      decoded[i] = MonitorHistory.decode(codes[i]);
+    }
+    assertArrayEquals(expectedCodes, decoded);
+    assertArrayEquals(expectedWeights, Arrays.copyOf(weights, n));
+  }
+}
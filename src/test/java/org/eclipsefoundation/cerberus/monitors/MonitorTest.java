@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.eclipsefoundation.cerberus.configuration.MonitorConfiguration;
+import org.junit.jupiter.api.Test;
+
+class MonitorTest {
+
+  @Test
+  void cancelledMonitorsAreNotScheduled() {
+    RecordingScheduler scheduler = new RecordingScheduler();
+    TestMonitor monitor = new TestMonitor();
+    monitor.cancel();
+    CompletableFuture<?> future = monitor.schedule(scheduler);
+    assertEquals(0, scheduler.registrations.size());
+    assertFalse(future.isDone());
+  }
+
+  @Test
+  void cancelStopsScheduledTasks() {
+    RecordingScheduler scheduler = new RecordingScheduler();
+    TestMonitor monitor = new TestMonitor();
+    monitor.schedule(scheduler);
+    assertEquals(2, scheduler.registrations.size());
+    monitor.cancel();
+    assertEquals(List.of(true, true), scheduler.registrations.stream().map(r -> r.cancelled).collect(Collectors.toList()));
+  }
+
+  private static final class TestMonitor extends Monitor {
+
+    private final MonitorConfiguration configuration = new MonitorConfiguration() {
+      @Override
+      public String componentName() {
+        return "web";
+      }
+
+      @Override
+      public String target() {
+        return "https://www.example.org/";
+      }
+
+      @Override
+      public Duration monitoringHistory() {
+        return Duration.ofMinutes(10);
+      }
+
+      @Override
+      public Duration initialDelay() {
+        return Duration.ZERO;
+      }
+
+      @Override
+      public Duration period() {
+        return Duration.ofSeconds(30);
+      }
+
+      @Override
+      public AnomaliesDetectionConfiguration anomaliesDetection() {
+        return new AnomaliesDetectionConfiguration() {
+          @Override
+          public Duration period() {
+            return Duration.ofMinutes(1);
+          }
+
+          @Override
+          public Duration initialDelay() {
+            return Duration.ZERO;
+          }
+        };
+      }
+    };
+
+    @Override
+    public MonitorConfiguration configuration() {
+      return configuration;
+    }
+
+    @Override
+    public void run() {
+    }
+
+    @Override
+    public void detectAnomalies() {
+    }
+  }
+
+  /**
+   * Only records registrations, tasks never run.
+   */
+  private static final class RecordingScheduler implements MonitorScheduler {
+
+    private final List<RecordedRegistration> registrations = new ArrayList<>();
+
+    @Override
+    public Registration scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+      return register();
+    }
+
+    @Override
+    public Registration scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay) {
+      return register();
+    }
+
+    @Override
+    public Registration schedule(Runnable task, Duration delay) {
+      return register();
+    }
+
+    @Override
+    public Duration spread(Duration window) {
+      return Duration.ZERO;
+    }
+
+    private Registration register() {
+      RecordedRegistration registration = new RecordedRegistration();
+      registrations.add(registration);
+      return registration;
+    }
+  }
+
+  private static final class RecordedRegistration implements MonitorScheduler.Registration {
+
+    private boolean cancelled;
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipsefoundation.cerberus.monitors.MonitorScheduler.Registration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tasks run on the timer thread itself (a direct worker), so that a slow task
+ * holds the wheel as it would hold a saturated worker.
+ */
+class TimingWheelMonitorSchedulerTest {
+
+  private static final Duration TICK = Duration.ofMillis(10);
+  private static final long TICK_NANOS = TICK.toNanos();
+  private static final ThreadFactory TIMER = r -> {
+    Thread thread = new Thread(r, "TimingWheelMonitorSchedulerTest");
+    thread.setDaemon(true);
+    return thread;
+  };
+
+  private final List<TimingWheelMonitorScheduler> schedulers = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() {
+    schedulers.forEach(TimingWheelMonitorScheduler::shutdown);
+  }
+
+  @Test
+  void wheelSizeIsRoundedUpToAPowerOfTwo() {
+    int[][] sizes = { { 1, 1 }, { 2, 2 }, { 3, 4 }, { 4, 4 }, { 5, 8 }, { 511, 512 }, { 512, 512 }, { 513, 1024 } };
+    for (int[] size : sizes) {
+      assertEquals(size[1], scheduler(size[0]).wheelSize(), "wheel of " + size[0]);
+    }
+    assertThrows(IllegalArgumentException.class, () -> new TimingWheelMonitorScheduler(TICK, 0, TIMER, Runnable::run));
+    assertThrows(IllegalArgumentException.class, () -> new TimingWheelMonitorScheduler(Duration.ZERO, 8, TIMER, Runnable::run));
+  }
+
+  @Test
+  void delaysWithinOneRevolution() throws InterruptedException {
+    TimingWheelMonitorScheduler scheduler = scheduler(16);
+    List<String> order = synchronizedList();
+    CountDownLatch done = new CountDownLatch(4);
+    long start = System.nanoTime();
+    long[] delaysMillis = { 80, 20, 50, 0 };
+    long[] elapsed = new long[delaysMillis.length];
+    for (int i = 0; i < delaysMillis.length; i++) {
+      int task = i;
+      scheduler.schedule(() -> {
+        elapsed[task] = System.nanoTime() - start;
+        order.add(delaysMillis[task] + "ms");
+        done.countDown();
+      }, Duration.ofMillis(delaysMillis[i]));
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("0ms", "20ms", "50ms", "80ms"), order);
+    for (int i = 0; i < delaysMillis.length; i++) {
+      // never early, at most about a tick late
+      long delay = TimeUnit.MILLISECONDS.toNanos(delaysMillis[i]);
+      assertTrue(elapsed[i] >= delay && elapsed[i] < delay + 10 * TICK_NANOS, delaysMillis[i] + "ms task ran after " + elapsed[i] + "ns");
+    }
+  }
+
+  /**
+   * With 4 slots of 10ms, tasks due in more than 40ms share slots with tasks of
+   * earlier revolutions, and must wait for their own.
+   */
+  @Test
+  void delaysOfSeveralRevolutions() throws InterruptedException {
+    TimingWheelMonitorScheduler scheduler = scheduler(4);
+    List<String> order = synchronizedList();
+    CountDownLatch done = new CountDownLatch(5);
+    long start = System.nanoTime();
+    long[] delaysMillis = { 170, 10, 90, 50, 130 };
+    long[] elapsed = new long[delaysMillis.length];
+    for (int i = 0; i < delaysMillis.length; i++) {
+      int task = i;
+      scheduler.schedule(() -> {
+        elapsed[task] = System.nanoTime() - start;
+        order.add(delaysMillis[task] + "ms");
+        done.countDown();
+      }, Duration.ofMillis(delaysMillis[i]));
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("10ms", "50ms", "90ms", "130ms", "170ms"), order);
+    for (int i = 0; i < delaysMillis.length; i++) {
+      assertTrue(elapsed[i] >= TimeUnit.MILLISECONDS.toNanos(delaysMillis[i]), delaysMillis[i] + "ms task ran after " + elapsed[i] + "ns");
+    }
+  }
+
+  /**
+   * A fixed rate task keeps its schedule whatever its duration, while a fixed
+   * delay task waits for the delay after each completion.
+   */
+  @Test
+  void fixedRateAndFixedDelay() throws InterruptedException {
+    Duration period = Duration.ofMillis(50);
+    Duration duration = Duration.ofMillis(30);
+    int runs = 8;
+
+    TimingWheelMonitorScheduler scheduler = scheduler(16);
+    long scheduled = System.nanoTime();
+    List<long[]> fixedRate = runs(scheduler, runs, duration, (s, task) -> s.scheduleAtFixedRate(task, Duration.ZERO, period));
+    for (int i = 1; i < runs; i++) {
+      // never early, and late runs do not shift the next ones
+      long expected = scheduled + i * period.toNanos();
+      long start = fixedRate.get(i)[0];
+      assertTrue(start >= expected && start < expected + period.toNanos(), "run " + i + " started " + (start - expected) + "ns after its schedule");
+    }
+
+    List<long[]> fixedDelay = runs(scheduler(16), runs, duration, (s, task) -> s.scheduleWithFixedDelay(task, Duration.ZERO, period));
+    for (int i = 1; i < runs; i++) {
+      long gap = fixedDelay.get(i)[0] - fixedDelay.get(i - 1)[1];
+      assertTrue(gap >= period.toNanos(), "run " + i + " started " + gap + "ns after the previous one ended");
+    }
+  }
+
+  @Test
+  void periodsAreAtLeastOneTick() throws InterruptedException {
+    long start = System.nanoTime();
+    List<long[]> runs = runs(scheduler(8), 5, Duration.ZERO, (s, task) -> s.scheduleAtFixedRate(task, Duration.ZERO, Duration.ofNanos(1)));
+    assertTrue(runs.get(4)[0] - start >= 4 * TICK_NANOS, "5 runs in " + (runs.get(4)[0] - start) + "ns");
+  }
+
+  @Test
+  void cancelledEntriesNeverRun() throws InterruptedException {
+    TimingWheelMonitorScheduler scheduler = scheduler(4);
+    AtomicInteger ran = new AtomicInteger();
+    // cancelled while still pending
+    scheduler.schedule(ran::incrementAndGet, Duration.ofMillis(20)).cancel();
+    // cancelled while waiting in its slot, a few revolutions ahead
+    Registration later = scheduler.schedule(ran::incrementAndGet, Duration.ofMillis(150));
+    Registration periodic = scheduler.scheduleAtFixedRate(ran::incrementAndGet, Duration.ofMillis(100), TICK);
+    Thread.sleep(50);
+    later.cancel();
+    periodic.cancel();
+    awaitTicks(scheduler, Duration.ofMillis(200));
+    assertEquals(0, ran.get());
+  }
+
+  @Test
+  void cancelStopsPeriodicExecutions() throws InterruptedException {
+    TimingWheelMonitorScheduler scheduler = scheduler(8);
+    AtomicInteger fixedRateRuns = new AtomicInteger();
+    AtomicInteger fixedDelayRuns = new AtomicInteger();
+    Registration[] registrations = new Registration[2];
+    CountDownLatch cancelled = new CountDownLatch(2);
+    registrations[0] = scheduler.scheduleAtFixedRate(() -> {
+      if (fixedRateRuns.incrementAndGet() == 3) {
+        registrations[0].cancel();
+        cancelled.countDown();
+      }
+    }, Duration.ZERO, TICK);
+    registrations[1] = scheduler.scheduleWithFixedDelay(() -> {
+      if (fixedDelayRuns.incrementAndGet() == 3) {
+        registrations[1].cancel();
+        cancelled.countDown();
+      }
+    }, Duration.ZERO, TICK);
+    assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    awaitTicks(scheduler, TICK.multipliedBy(10));
+    assertEquals(3, fixedRateRuns.get());
+    assertEquals(3, fixedDelayRuns.get());
+  }
+
+  /**
+   * Execution count of a fixed rate task over a number of periods, whatever the
+   * wheel size.
+   */
+  @Test
+  void executionCounts() throws InterruptedException {
+    for (int wheelSize : new int[] { 1, 3, 64 }) {
+      TimingWheelMonitorScheduler scheduler = scheduler(wheelSize);
+      AtomicInteger runs = new AtomicInteger();
+      CountDownLatch tenth = new CountDownLatch(10);
+      long start = System.nanoTime();
+      Registration registration = scheduler.scheduleAtFixedRate(() -> {
+        runs.incrementAndGet();
+        tenth.countDown();
+      }, TICK.multipliedBy(2), TICK.multipliedBy(3));
+      assertTrue(tenth.await(5, TimeUnit.SECONDS));
+      long elapsed = System.nanoTime() - start;
+      registration.cancel();
+      // the initial delay and 9 periods
+      assertTrue(elapsed >= 29 * TICK_NANOS, "wheel of " + wheelSize + ": 10 runs in " + elapsed + "ns");
+      awaitTicks(scheduler, TICK.multipliedBy(6));
+      assertTrue(runs.get() <= 11, "wheel of " + wheelSize + ": " + runs.get() + " runs");
+    }
+  }
+
+  private TimingWheelMonitorScheduler scheduler(int wheelSize) {
+    TimingWheelMonitorScheduler scheduler = new TimingWheelMonitorScheduler(TICK, wheelSize, TIMER, Runnable::run);
+    schedulers.add(scheduler);
+    return scheduler;
+  }
+
+  /**
+   * Start and end times of the first {@code count} runs of a task lasting
+   * {@code duration}, scheduled by {@code schedule}.
+   */
+  private static List<long[]> runs(TimingWheelMonitorScheduler scheduler, int count, Duration duration, Scheduling schedule)
+      throws InterruptedException {
+    List<long[]> runs = synchronizedList();
+    CountDownLatch done = new CountDownLatch(count);
+    Registration registration = schedule.schedule(scheduler, () -> {
+      long start = System.nanoTime();
+      if (!duration.isZero()) {
+        sleep(duration);
+      }
+      runs.add(new long[] { start, System.nanoTime() });
+      done.countDown();
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    registration.cancel();
+    return runs;
+  }
+
+  /**
+   * Waits until the wheel went past {@code delay} from now.
+   */
+  private static void awaitTicks(TimingWheelMonitorScheduler scheduler, Duration delay) throws InterruptedException {
+    CountDownLatch passed = new CountDownLatch(1);
+    scheduler.schedule(passed::countDown, delay);
+    assertTrue(passed.await(5, TimeUnit.SECONDS));
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static <T> List<T> synchronizedList() {
+    return Collections.synchronizedList(new ArrayList<>());
+  }
+
+  @FunctionalInterface
+  private interface Scheduling {
+    Registration schedule(TimingWheelMonitorScheduler scheduler, Runnable task);
+  }
+}
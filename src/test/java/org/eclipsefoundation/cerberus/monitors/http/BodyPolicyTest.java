@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipsefoundation.cerberus.configuration.CerberusConfiguration.Monitor.Body;
+import org.junit.jupiter.api.Test;
+
+import okio.Buffer;
+
+class BodyPolicyTest {
+
+  @Test
+  void matchesAcrossChunks() throws IOException {
+    BodyPolicy policy = BodyPolicy.of(body(null, "\"status\":\\s*\"UP\"", 64));
+    byte[] body = ("{\"padding\":\"" + "x".repeat(50_000) + "\",\"status\": \"UP\"}").getBytes(StandardCharsets.UTF_8);
+    for (int chunkSize : new int[] { 1, 3, 7, 100, 8192, 20_000, body.length }) {
+      assertAccepted(policy, body, chunkSize);
+    }
+    assertDoesNotThrow(() -> policy.consume(new Buffer().write(body)));
+  }
+
+  /**
+   * Characters whose bytes are split across chunks are decoded once the next
+   * chunk comes.
+   */
+  @Test
+  void multiByteCharactersSplitAcrossChunks() throws IOException {
+    BodyPolicy policy = BodyPolicy.of(body(null, "\u00e9tat: \u6b63\u5e38 \ud83d\udfe2", 32));
+    byte[] body = ("ok ".repeat(5000) + "\u00e9tat: \u6b63\u5e38 \ud83d\udfe2" + " ok".repeat(10)).getBytes(StandardCharsets.UTF_8);
+    for (int chunkSize = 1; chunkSize <= 8; chunkSize++) {
+      assertAccepted(policy, body, chunkSize);
+    }
+    assertAccepted(policy, body, 15_007);
+  }
+
+  @Test
+  void noMatch() throws IOException {
+    BodyPolicy policy = BodyPolicy.of(body(null, "UP", null));
+    byte[] body = "DOWN ".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+    for (int chunkSize : new int[] { 1, 4096, body.length }) {
+      assertRejected(policy, body, chunkSize);
+    }
+    assertThrows(BodyPolicy.ContentCheckException.class, () -> policy.consume(new Buffer().write(body)));
+  }
+
+  /**
+   * Only the latest {@code check_window} characters are kept from previous
+   * chunks: a longer match is not found across chunks.
+   */
+  @Test
+  void matchesLongerThanTheWindow() throws IOException {
+    BodyPolicy policy = BodyPolicy.of(body(null, "a{20}", 10));
+    byte[] body = "a".repeat(20).getBytes(StandardCharsets.UTF_8);
+    assertRejected(policy, body, 5);
+    // but within a single chunk
+    assertAccepted(policy, body, 20);
+  }
+
+  @Test
+  void malformedBytesDoNotBreakDecoding() throws IOException {
+    BodyPolicy policy = BodyPolicy.of(body(null, "after", 16));
+    byte[] prefix = { 'b', (byte)0xC3, (byte)0xFF, (byte)0xE6, (byte)0xAD };
+    byte[] suffix = " after".getBytes(StandardCharsets.UTF_8);
+    byte[] body = Arrays.copyOf(prefix, prefix.length + suffix.length);
+    System.arraycopy(suffix, 0, body, prefix.length, suffix.length);
+    for (int chunkSize = 1; chunkSize <= body.length; chunkSize++) {
+      assertAccepted(policy, body, chunkSize);
+    }
+  }
+
+  @Test
+  void stateIsResetBetweenBodies() throws IOException {
+    // the tail of a body does not match with the next body
+    BodyPolicy policy = BodyPolicy.of(body(null, "AB", 8));
+    assertRejected(policy, "xA".getBytes(StandardCharsets.UTF_8), 1);
+    assertRejected(policy, "B and more".getBytes(StandardCharsets.UTF_8), 1);
+    assertAccepted(policy, "xAB".getBytes(StandardCharsets.UTF_8), 2);
+
+    // nor does the first byte of a character ending a body
+    BodyPolicy split = BodyPolicy.of(body(null, "\u00e9", 8));
+    assertRejected(split, new byte[] { 'x', (byte)0xC3 }, 1);
+    assertRejected(split, new byte[] { (byte)0xA9, 'x' }, 1);
+    assertAccepted(split, new byte[] { 'x', (byte)0xC3, (byte)0xA9 }, 1);
+  }
+
+  @Test
+  void containsAcrossChunks() throws IOException {
+    BodyPolicy policy = BodyPolicy.of(body("\u00e9tat", null, null));
+    byte[] body = ("x".repeat(10_000) + "\u00e9tat").getBytes(StandardCharsets.UTF_8);
+    for (int chunkSize : new int[] { 1, 2, 3, 4096 }) {
+      assertAccepted(policy, body, chunkSize);
+    }
+  }
+
+  private static void assertAccepted(BodyPolicy policy, byte[] body, int chunkSize) throws IOException {
+    push(policy, body, chunkSize);
+    assertDoesNotThrow(policy::end, "chunks of " + chunkSize + " bytes");
+  }
+
+  private static void assertRejected(BodyPolicy policy, byte[] body, int chunkSize) throws IOException {
+    push(policy, body, chunkSize);
+    assertThrows(BodyPolicy.ContentCheckException.class, policy::end, "chunks of " + chunkSize + " bytes");
+  }
+
+  /**
+   * Pushes {@code body} by chunks, as a non-blocking client would. The discard
+   * policy reads bodies to their end.
+   */
+  private static void push(BodyPolicy policy, byte[] body, int chunkSize) throws IOException {
+    policy.begin();
+    for (int offset = 0; offset < body.length; offset += chunkSize) {
+      ByteBuffer chunk = ByteBuffer.wrap(body, offset, Math.min(chunkSize, body.length - offset));
+      assertTrue(policy.accept(chunk));
+      assertFalse(chunk.hasRemaining());
+    }
+  }
+
+  private static Body body(String contains, String matches, Integer checkWindow) {
+    return new Body() {
+      @Override
+      public Policy policy() {
+        return null;
+      }
+
+      @Override
+      public Long limit() {
+        return null;
+      }
+
+      @Override
+      public String contains() {
+        return contains;
+      }
+
+      @Override
+      public String matches() {
+        return matches;
+      }
+
+      @Override
+      public Integer checkWindow() {
+        return checkWindow;
+      }
+    };
+  }
+}
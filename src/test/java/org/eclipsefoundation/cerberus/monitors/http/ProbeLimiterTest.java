@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.monitors.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+class ProbeLimiterTest {
+
+  private static final HttpUrl FRAGILE = HttpUrl.get("https://fragile.example.org/");
+  private static final HttpUrl CDN = HttpUrl.get("https://cdn.example.org/");
+  private static final HttpUrl OTHER = HttpUrl.get("https://other.example.org/");
+
+  @Test
+  void perOriginLimits() {
+    ProbeLimiter limiter = new ProbeLimiter(100, 2, Map.of(FRAGILE, 1, CDN, 4), Runnable::run);
+    List<String> started = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      for (HttpUrl origin : List.of(FRAGILE, CDN, OTHER)) {
+        String probe = origin.host() + " " + i;
+        limiter.submit(origin, () -> started.add(probe));
+      }
+    }
+    assertEquals(1 + 4 + 2, limiter.inFlight());
+    assertEquals(15 - 7, limiter.waiting());
+    assertEquals(List.of("fragile.example.org 0", "cdn.example.org 0", "other.example.org 0", "cdn.example.org 1", "other.example.org 1",
+      "cdn.example.org 2", "cdn.example.org 3"), started);
+
+    // a completed probe only unblocks probes of its origin
+    started.clear();
+    limiter.release(FRAGILE);
+    assertEquals(List.of("fragile.example.org 1"), started);
+    limiter.release(CDN);
+    limiter.release(CDN);
+    assertEquals(List.of("fragile.example.org 1", "cdn.example.org 4"), started);
+    assertEquals(1 + 3 + 2, limiter.inFlight());
+  }
+
+  @Test
+  void overallLimitAppliesToOverriddenOrigins() {
+    ProbeLimiter limiter = new ProbeLimiter(3, 1, Map.of(CDN, 10), Runnable::run);
+    List<String> started = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      String probe = "cdn " + i;
+      limiter.submit(CDN, () -> started.add(probe));
+    }
+    assertEquals(List.of("cdn 0", "cdn 1", "cdn 2"), started);
+    limiter.submit(OTHER, () -> started.add("other"));
+    limiter.release(CDN);
+    // in the order they were submitted
+    assertEquals(List.of("cdn 0", "cdn 1", "cdn 2", "cdn 3"), started);
+    assertEquals(2, limiter.waiting());
+    // ready origins take turns
+    limiter.release(CDN);
+    limiter.release(CDN);
+    assertEquals(List.of("cdn 0", "cdn 1", "cdn 2", "cdn 3", "other", "cdn 4"), started);
+    assertEquals(0, limiter.waiting());
+  }
+
+  /**
+   * Probes that waited run on the executor: a probe completing right away does
+   * not start the next one from its own completion.
+   */
+  @Test
+  void unblockedProbesRunOnTheExecutor() {
+    ArrayDeque<Runnable> executor = new ArrayDeque<>();
+    ProbeLimiter limiter = new ProbeLimiter(100, 1, Map.of(), executor::add);
+    List<String> started = new ArrayList<>();
+    limiter.submit(OTHER, () -> started.add("probe 0"));
+    for (int i = 1; i < 1000; i++) {
+      // the next ones complete as soon as they start
+      String probe = "probe " + i;
+      limiter.submit(OTHER, () -> {
+        started.add(probe);
+        limiter.release(OTHER);
+      });
+    }
+    limiter.release(OTHER);
+    assertEquals(List.of("probe 0"), started);
+    assertEquals(1, executor.size());
+    for (Runnable task; (task = executor.poll()) != null;) {
+      task.run();
+      assertTrue(executor.size() <= 1);
+    }
+    assertEquals(1000, started.size());
+    assertEquals(0, limiter.inFlight());
+    assertEquals(0, limiter.waiting());
+  }
+
+  @Test
+  void originsOfOverridesIgnorePaths() {
+    HttpClients clients = HttpClients.create(new OkHttpClient(), null, 100, 2, Map.of("https://fragile.example.org/some/path?q=1", 1),
+      List.of("https://fragile.example.org/health"), Duration.ofMinutes(1));
+    List<String> started = new ArrayList<>();
+    HttpUrl origin = HttpClients.origin(HttpUrl.get("https://fragile.example.org/health"));
+    clients.limiter().submit(origin, () -> started.add("first"));
+    clients.limiter().submit(origin, () -> started.add("second"));
+    assertEquals(List.of("first"), started);
+  }
+
+  @Test
+  void invalidOverrides() {
+    assertThrows(IllegalArgumentException.class, () -> HttpClients.create(new OkHttpClient(), null, 100, 2, Map.of("fragile.example.org", 1),
+      List.of(), Duration.ofMinutes(1)));
+    assertThrows(IllegalArgumentException.class, () -> HttpClients.create(new OkHttpClient(), null, 100, 2, Map.of("https://fragile.example.org", 0),
+      List.of(), Duration.ofMinutes(1)));
+  }
+}
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.quorum;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipsefoundation.cerberus.component.Component;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.eclipsefoundation.cerberus.metrics.MetricsWriter;
+import org.eclipsefoundation.cerberus.statuspage.ComponentUpdater;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 3 vantage points with a quorum of 2: this one and two peers, played by the
+ * test. Datagrams of the peers are handed to the updater directly, while its
+ * own datagrams are sent to sockets of the peers.
+ */
+class QuorumComponentUpdaterTest {
+
+  private static final int A = 0;
+  private static final int B = 1;
+
+  private final DatagramSocket[] peers = new DatagramSocket[2];
+  private final int[] sequences = new int[peers.length];
+  private final RecordingUpdater delegate = new RecordingUpdater();
+  private QuorumComponentUpdater updater;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    for (int i = 0; i < peers.length; i++) {
+      peers[i] = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      peers[i].setSoTimeout(200);
+    }
+    updater = updater(Duration.ofMinutes(1));
+  }
+
+  @AfterEach
+  void tearDown() {
+    updater.close();
+    for (DatagramSocket peer : peers) {
+      peer.close();
+    }
+  }
+
+  @Test
+  void severityCounting() {
+    heartbeat(A, 1);
+    heartbeat(B, 1);
+
+    // at least 2 votes for PARTIAL_OUTAGE or worse
+    vote(A, 1, "partial", Status.MAJOR_OUTAGE);
+    vote(B, 1, "partial", Status.OPERATIONAL);
+    updater.updateStatus("partial", Status.PARTIAL_OUTAGE);
+    assertEquals(Status.PARTIAL_OUTAGE, delegate.statuses.get("partial"));
+
+    // a single vantage point seeing an outage is overruled
+    vote(A, 1, "overruled", Status.OPERATIONAL);
+    vote(B, 1, "overruled", Status.OPERATIONAL);
+    updater.updateStatus("overruled", Status.MAJOR_OUTAGE);
+    assertEquals(Status.OPERATIONAL, delegate.statuses.get("overruled"));
+    assertEquals(1, metric("cerberus_quorum_overruled_total"));
+
+    // the peers outvote this vantage point
+    vote(A, 1, "major", Status.MAJOR_OUTAGE);
+    vote(B, 1, "major", Status.MAJOR_OUTAGE);
+    updater.updateStatus("major", Status.OPERATIONAL);
+    assertEquals(Status.MAJOR_OUTAGE, delegate.statuses.get("major"));
+
+    // three distinct votes, the middle one wins
+    vote(A, 1, "degraded", Status.PARTIAL_OUTAGE);
+    vote(B, 1, "degraded", Status.OPERATIONAL);
+    updater.updateStatus("degraded", Status.DEGRADED_PERFORMANCE);
+    assertEquals(Status.DEGRADED_PERFORMANCE, delegate.statuses.get("degraded"));
+
+    // statuses that are not votes count for nothing
+    vote(A, 1, "maintenance", Status.PARTIAL_OUTAGE);
+    vote(B, 1, "maintenance", Status.MAJOR_OUTAGE);
+    updater.updateStatus("maintenance", Status.UNDER_MAINTENANCE);
+    assertEquals(Status.PARTIAL_OUTAGE, delegate.statuses.get("maintenance"));
+    assertEquals(0, metric("cerberus_quorum_withheld_total"));
+  }
+
+  @Test
+  void peerVotesChangeTheDecision() {
+    heartbeat(A, 1);
+    heartbeat(B, 1);
+    vote(A, 1, "web", Status.OPERATIONAL);
+    vote(B, 1, "web", Status.OPERATIONAL);
+    updater.updateStatus("web", Status.PARTIAL_OUTAGE);
+    assertEquals(List.of("web=OPERATIONAL"), delegate.updates);
+
+    vote(A, 1, "web", Status.MAJOR_OUTAGE);
+    vote(B, 1, "web", Status.MAJOR_OUTAGE);
+    vote(B, 1, "web", Status.MAJOR_OUTAGE);
+    vote(A, 1, "web", Status.DEGRADED_PERFORMANCE);
+    assertEquals(List.of("web=OPERATIONAL", "web=PARTIAL_OUTAGE", "web=MAJOR_OUTAGE", "web=PARTIAL_OUTAGE"), delegate.updates);
+  }
+
+  @Test
+  void noQuorumWithholds() {
+    // no peer heard from
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of(), delegate.updates);
+    assertEquals(1, metric("cerberus_quorum_withheld_total"));
+
+    // peers heard from, but not voting for the component
+    heartbeat(A, 1);
+    vote(B, 1, "web", Status.UNDER_MAINTENANCE);
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of(), delegate.updates);
+    assertEquals(2, metric("cerberus_quorum_withheld_total"));
+
+    vote(A, 1, "web", Status.OPERATIONAL);
+    assertEquals(List.of("web=OPERATIONAL"), delegate.updates);
+  }
+
+  @Test
+  void votesOfUnreachablePeersDoNotCount() throws IOException, InterruptedException {
+    updater.close();
+    updater = updater(Duration.ofMillis(200));
+    vote(A, 1, "web", Status.MAJOR_OUTAGE);
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=MAJOR_OUTAGE"), delegate.updates);
+    assertEquals(2, metric("cerberus_quorum_vantage_points_alive"));
+
+    Thread.sleep(300);
+    assertEquals(1, metric("cerberus_quorum_vantage_points_alive"));
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=MAJOR_OUTAGE"), delegate.updates);
+    assertEquals(1, metric("cerberus_quorum_withheld_total"));
+
+    // heard from again
+    heartbeat(A, 1);
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=MAJOR_OUTAGE", "web=MAJOR_OUTAGE"), delegate.updates);
+  }
+
+  @Test
+  void sequenceGapAsksForAllVotes() throws IOException {
+    heartbeat(A, 1);
+    updater.flush();
+    // a peer that joined is asked for all its votes
+    assertEquals(List.of(QuorumProtocol.SYNC, QuorumProtocol.DELTA), types(received(A)));
+    assertEquals(List.of(QuorumProtocol.DELTA), types(received(B)));
+
+    heartbeat(A, 1);
+    updater.flush();
+    assertEquals(List.of(QuorumProtocol.DELTA), types(received(A)));
+    assertEquals(1, metric("cerberus_quorum_resyncs_total"));
+
+    // the datagram of sequence 3 is lost
+    sequences[A]++;
+    vote(A, 1, "web", Status.OPERATIONAL);
+    updater.flush();
+    assertEquals(List.of(QuorumProtocol.SYNC, QuorumProtocol.DELTA), types(received(A)));
+    assertEquals(2, metric("cerberus_quorum_resyncs_total"));
+    assertEquals(0, metric("cerberus_quorum_datagrams_dropped_total"));
+
+    // then arrives late, older than the votes already applied
+    send(A, message(QuorumProtocol.DELTA, 1, 3, "web", Status.MAJOR_OUTAGE));
+    assertEquals(1, metric("cerberus_quorum_datagrams_dropped_total"));
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=OPERATIONAL"), delegate.updates);
+    assertEquals(4, metric("cerberus_quorum_datagrams_received_total"));
+  }
+
+  @Test
+  void incarnationReset() throws IOException {
+    sequences[A] = 41;
+    vote(A, 1, "web", Status.MAJOR_OUTAGE);
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=MAJOR_OUTAGE"), delegate.updates);
+    updater.flush();
+    received(A);
+
+    // restarted: its sequence starts over, and its previous votes are dropped
+    sequences[A] = 0;
+    heartbeat(A, 2);
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=MAJOR_OUTAGE"), delegate.updates);
+    assertEquals(1, metric("cerberus_quorum_withheld_total"));
+    updater.flush();
+    assertEquals(List.of(QuorumProtocol.SYNC, QuorumProtocol.DELTA), types(received(A)));
+
+    send(A, message(QuorumProtocol.FULL, 2, ++sequences[A], "web", Status.MAJOR_OUTAGE));
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of("web=MAJOR_OUTAGE", "web=MAJOR_OUTAGE"), delegate.updates);
+    assertEquals(0, metric("cerberus_quorum_datagrams_dropped_total"));
+  }
+
+  @Test
+  void syncIsAnsweredWithAllVotes() throws IOException {
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    updater.updateStatus("api", Status.OPERATIONAL);
+    updater.updateStatus("db", Status.UNKNOWN);
+    updater.flush();
+    List<Datagram> delta = received(B);
+    assertEquals(1, delta.size());
+    assertEquals(Map.of(QuorumProtocol.key("web"), Status.MAJOR_OUTAGE, QuorumProtocol.key("api"), Status.OPERATIONAL), delta.get(0).votes);
+
+    // only changes are sent afterwards
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    updater.updateStatus("api", Status.DEGRADED_PERFORMANCE);
+    updater.flush();
+    delta = received(B);
+    assertEquals(Map.of(QuorumProtocol.key("api"), Status.DEGRADED_PERFORMANCE), delta.get(0).votes);
+
+    send(B, message(QuorumProtocol.SYNC, 1, ++sequences[B], null, null));
+    updater.flush();
+    List<Datagram> full = received(B);
+    assertEquals(List.of(QuorumProtocol.SYNC, QuorumProtocol.FULL), types(full));
+    assertEquals(Map.of(QuorumProtocol.key("web"), Status.MAJOR_OUTAGE, QuorumProtocol.key("api"), Status.DEGRADED_PERFORMANCE), full.get(1).votes);
+    // one sequence per peer, with no gap
+    assertEquals(3, full.get(0).sequence);
+    assertEquals(4, full.get(1).sequence);
+    // the other peer got the changes only
+    assertEquals(List.of(QuorumProtocol.DELTA, QuorumProtocol.DELTA, QuorumProtocol.DELTA), types(received(A)));
+  }
+
+  @Test
+  void invalidDatagramsAreDropped() {
+    ByteBuffer truncated = message(QuorumProtocol.DELTA, 1, 1, "web", Status.MAJOR_OUTAGE);
+    truncated.limit(truncated.limit() - 1);
+    send(A, truncated);
+    // not a peer
+    updater.receive(new InetSocketAddress(InetAddress.getLoopbackAddress(), 9), message(QuorumProtocol.DELTA, 1, 1, "web", Status.MAJOR_OUTAGE));
+    assertEquals(2, metric("cerberus_quorum_datagrams_dropped_total"));
+    assertEquals(0, metric("cerberus_quorum_datagrams_received_total"));
+    updater.updateStatus("web", Status.MAJOR_OUTAGE);
+    assertEquals(List.of(), delegate.updates);
+  }
+
+  private QuorumComponentUpdater updater(Duration timeout) throws IOException {
+    DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (DatagramSocket peer : peers) {
+      addresses.add((InetSocketAddress)peer.getLocalSocketAddress());
+    }
+    return new QuorumComponentUpdater(channel, addresses, 2, timeout, List.of(delegate));
+  }
+
+  private void heartbeat(int peer, long incarnation) {
+    send(peer, message(QuorumProtocol.DELTA, incarnation, ++sequences[peer], null, null));
+  }
+
+  private void vote(int peer, long incarnation, String componentName, Status status) {
+    send(peer, message(QuorumProtocol.DELTA, incarnation, ++sequences[peer], componentName, status));
+  }
+
+  private void send(int peer, ByteBuffer datagram) {
+    updater.receive(peers[peer].getLocalSocketAddress(), datagram);
+  }
+
+  private static ByteBuffer message(byte type, long incarnation, int sequence, String componentName, Status status) {
+    ByteBuffer buffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+    QuorumProtocol.writeHeader(buffer, type, incarnation, sequence);
+    if (componentName != null) {
+      QuorumProtocol.writeEntry(buffer, QuorumProtocol.key(componentName), status);
+    }
+    return buffer.flip();
+  }
+
+  /**
+   * Datagrams sent to a peer so far.
+   */
+  private List<Datagram> received(int peer) throws IOException {
+    List<Datagram> datagrams = new ArrayList<>();
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    while (true) {
+      DatagramPacket packet = new DatagramPacket(new byte[QuorumProtocol.MAX_DATAGRAM_BYTES], QuorumProtocol.MAX_DATAGRAM_BYTES);
+      try {
+        peers[peer].receive(packet);
+      } catch (SocketTimeoutException e) {
+        return datagrams;
+      }
+      assertTrue(message.decode(ByteBuffer.wrap(packet.getData(), 0, packet.getLength())));
+      datagrams.add(new Datagram(message));
+    }
+  }
+
+  private static List<Byte> types(List<Datagram> datagrams) {
+    List<Byte> types = new ArrayList<>();
+    datagrams.forEach(d -> types.add(d.type));
+    return types;
+  }
+
+  private long metric(String name) {
+    MetricsWriter writer = new MetricsWriter();
+    updater.writeMetrics(writer);
+    for (String line : writer.toString().split("\n")) {
+      if (line.startsWith(name + " ")) {
+        return Long.parseLong(line.substring(name.length() + 1));
+      }
+    }
+    return fail("no metric " + name);
+  }
+
+  private static final class Datagram {
+    final byte type;
+    final int sequence;
+    final Map<Long, Status> votes = new HashMap<>();
+
+    Datagram(QuorumProtocol.Message message) {
+      this.type = message.type;
+      this.sequence = message.sequence;
+      for (int i = 0; i < message.entries; i++) {
+        votes.put(message.key(i), message.status(i));
+      }
+    }
+  }
+
+  /**
+   * Records the statuses handed by the quorum, in order.
+   */
+  private static final class RecordingUpdater implements ComponentUpdater {
+
+    final List<String> updates = new ArrayList<>();
+    final Map<String, Status> statuses = new ConcurrentHashMap<>();
+
+    @Override
+    public List<Component> components() {
+      return List.of();
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> updateStatus(String componentName, Status status) {
+      updates.add(componentName + "=" + status);
+      statuses.put(componentName, status);
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+}
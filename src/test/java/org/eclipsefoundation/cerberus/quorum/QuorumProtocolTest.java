@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.quorum;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.junit.jupiter.api.Test;
+
+class QuorumProtocolTest {
+
+  @Test
+  void roundTrip() {
+    ByteBuffer buffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+    QuorumProtocol.writeHeader(buffer, QuorumProtocol.FULL, -42L, Integer.MAX_VALUE);
+    Status[] statuses = Status.values();
+    for (int i = 0; i < statuses.length; i++) {
+      QuorumProtocol.writeEntry(buffer, QuorumProtocol.key("component" + i), statuses[i]);
+    }
+    buffer.flip();
+    assertEquals(QuorumProtocol.HEADER_BYTES + statuses.length * QuorumProtocol.ENTRY_BYTES, buffer.remaining());
+
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    assertTrue(message.decode(buffer));
+    assertEquals(QuorumProtocol.FULL, message.type);
+    assertEquals(-42L, message.incarnation);
+    assertEquals(Integer.MAX_VALUE, message.sequence);
+    assertEquals(statuses.length, message.entries);
+    for (int i = 0; i < statuses.length; i++) {
+      assertEquals(QuorumProtocol.key("component" + i), message.key(i));
+      assertEquals(statuses[i], message.status(i));
+    }
+  }
+
+  @Test
+  void emptyMessages() {
+    ByteBuffer buffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    for (byte type : new byte[] { QuorumProtocol.DELTA, QuorumProtocol.FULL, QuorumProtocol.SYNC }) {
+      QuorumProtocol.writeHeader(buffer, type, 7, 3);
+      buffer.flip();
+      assertEquals(QuorumProtocol.HEADER_BYTES, buffer.remaining());
+      assertTrue(message.decode(buffer));
+      assertEquals(type, message.type);
+      assertEquals(0, message.entries);
+    }
+  }
+
+  @Test
+  void fullDatagram() {
+    ByteBuffer buffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+    QuorumProtocol.writeHeader(buffer, QuorumProtocol.DELTA, 1, 1);
+    int entries = 0;
+    while (!QuorumProtocol.isFull(buffer)) {
+      QuorumProtocol.writeEntry(buffer, entries, Status.MAJOR_OUTAGE);
+      entries++;
+    }
+    assertEquals(QuorumProtocol.MAX_ENTRIES, entries);
+    assertTrue(buffer.position() <= QuorumProtocol.MAX_DATAGRAM_BYTES);
+    buffer.flip();
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    assertTrue(message.decode(buffer));
+    assertEquals(entries, message.entries);
+    assertEquals(entries - 1, message.key(entries - 1));
+  }
+
+  /**
+   * Entries are read relative to the position of the buffer the datagram was
+   * decoded from.
+   */
+  @Test
+  void decodeAtOffset() {
+    ByteBuffer datagram = datagram(QuorumProtocol.DELTA, Status.PARTIAL_OUTAGE);
+    ByteBuffer buffer = ByteBuffer.allocate(5 + datagram.remaining());
+    buffer.position(5);
+    buffer.put(datagram);
+    buffer.position(5);
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    assertTrue(message.decode(buffer));
+    assertEquals(QuorumProtocol.key("web"), message.key(0));
+    assertEquals(Status.PARTIAL_OUTAGE, message.status(0));
+  }
+
+  @Test
+  void truncatedDatagrams() {
+    ByteBuffer datagram = datagram(QuorumProtocol.DELTA, Status.OPERATIONAL);
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    for (int length = 0; length < datagram.remaining(); length++) {
+      ByteBuffer truncated = datagram.duplicate();
+      truncated.limit(length);
+      assertFalse(message.decode(truncated), length + " bytes");
+    }
+    // trailing bytes after the last entry
+    ByteBuffer longer = ByteBuffer.allocate(datagram.remaining() + 1);
+    longer.put(datagram.duplicate()).put((byte)0).flip();
+    assertFalse(message.decode(longer));
+  }
+
+  @Test
+  void invalidDatagrams() {
+    QuorumProtocol.Message message = new QuorumProtocol.Message();
+    assertTrue(message.decode(datagram(QuorumProtocol.DELTA, Status.OPERATIONAL)));
+
+    ByteBuffer magic = datagram(QuorumProtocol.DELTA, Status.OPERATIONAL);
+    magic.put(0, (byte)(magic.get(0) + 1));
+    assertFalse(message.decode(magic));
+
+    ByteBuffer version = datagram(QuorumProtocol.DELTA, Status.OPERATIONAL);
+    version.put(4, (byte)(version.get(4) + 1));
+    assertFalse(message.decode(version));
+
+    assertFalse(message.decode(datagram((byte)(QuorumProtocol.SYNC + 1), Status.OPERATIONAL)));
+    assertFalse(message.decode(datagram((byte)-1, Status.OPERATIONAL)));
+
+    // more entries announced than present
+    ByteBuffer entries = datagram(QuorumProtocol.DELTA, Status.OPERATIONAL);
+    entries.putShort(6, (short)2);
+    assertFalse(message.decode(entries));
+
+    ByteBuffer status = datagram(QuorumProtocol.DELTA, Status.OPERATIONAL);
+    int statusOffset = QuorumProtocol.HEADER_BYTES + Long.BYTES;
+    status.put(statusOffset, (byte)Status.values().length);
+    assertFalse(message.decode(status));
+    status.put(statusOffset, (byte)-1);
+    assertFalse(message.decode(status));
+  }
+
+  @Test
+  void keysOfDistinctComponents() {
+    assertEquals(QuorumProtocol.key("web"), QuorumProtocol.key("web"));
+    assertNotEquals(QuorumProtocol.key("web"), QuorumProtocol.key("Web"));
+  }
+
+  /**
+   * A datagram with a single entry for the {@code web} component.
+   */
+  private static ByteBuffer datagram(byte type, Status status) {
+    ByteBuffer buffer = ByteBuffer.allocate(QuorumProtocol.MAX_DATAGRAM_BYTES);
+    QuorumProtocol.writeHeader(buffer, type, 1, 1);
+    QuorumProtocol.writeEntry(buffer, QuorumProtocol.key("web"), status);
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Eclipse Foundation and others.
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License 2.0
+ * which is available at http://www.eclipse.org/legal/epl-v20.html
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+package org.eclipsefoundation.cerberus.statuspage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipsefoundation.cerberus.component.Component;
+import org.eclipsefoundation.cerberus.component.Component.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+class RateLimitInterceptorTest {
+
+  private static final Duration DEFAULT_RETRY_AFTER = Duration.ofMillis(500);
+
+  private MockWebServer server;
+  private ScheduledExecutorService executor;
+  private TokenBucket bucket;
+  private OkHttpClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    executor = Executors.newSingleThreadScheduledExecutor();
+    bucket = new TokenBucket(20, 1);
+    client = new OkHttpClient.Builder()
+      .addInterceptor(new RateLimitInterceptor(bucket, DEFAULT_RETRY_AFTER))
+      .build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    executor.shutdownNow();
+    server.close();
+  }
+
+  @Test
+  void pausesForRetryAfter() throws IOException {
+    server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "2"));
+    try (Response response = call()) {
+      assertEquals(429, response.code());
+    }
+    assertFalse(bucket.tryAcquire());
+    long pause = bucket.nanosUntilAvailable();
+    assertTrue(pause > TimeUnit.MILLISECONDS.toNanos(1500) && pause <= TimeUnit.SECONDS.toNanos(2), "paused for " + pause + "ns");
+  }
+
+  @Test
+  void pausesByDefaultOn429WithoutRetryAfter() throws IOException {
+    server.enqueue(new MockResponse().setResponseCode(429));
+    try (Response response = call()) {
+      assertEquals(429, response.code());
+    }
+    assertFalse(bucket.tryAcquire());
+    long pause = bucket.nanosUntilAvailable();
+    assertTrue(pause > DEFAULT_RETRY_AFTER.dividedBy(2).toNanos() && pause <= DEFAULT_RETRY_AFTER.toNanos(), "paused for " + pause + "ns");
+  }
+
+  @Test
+  void doesNotPauseOn503WithoutRetryAfter() throws IOException {
+    server.enqueue(new MockResponse().setResponseCode(503));
+    try (Response response = call()) {
+      assertEquals(503, response.code());
+    }
+    assertTrue(bucket.tryAcquire());
+  }
+
+  @Test
+  void retryAfterParsing() {
+    assertEquals(Duration.ofSeconds(7), RateLimitInterceptor.retryAfter(response(429, "7"), DEFAULT_RETRY_AFTER));
+    assertEquals(Duration.ZERO, RateLimitInterceptor.retryAfter(response(503, "-3"), DEFAULT_RETRY_AFTER));
+    assertEquals(DEFAULT_RETRY_AFTER, RateLimitInterceptor.retryAfter(response(429, "soon"), DEFAULT_RETRY_AFTER));
+    assertNull(RateLimitInterceptor.retryAfter(response(503, null), DEFAULT_RETRY_AFTER));
+    Duration date = RateLimitInterceptor.retryAfter(response(503, "Thu, 01 Jan 1970 00:00:00 GMT"), DEFAULT_RETRY_AFTER);
+    assertEquals(Duration.ZERO, date);
+  }
+
+  /**
+   * Rate limited responses pause the bucket, during which the coalescing
+   * updater keeps the update queued (and merges newer statuses into it) instead
+   * of holding a thread, then the latest desired status lands.
+   */
+  @Test
+  void latestStatusLandsAfterRateLimitedRetries() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    server.enqueue(new MockResponse().setResponseCode(429));
+    server.enqueue(new MockResponse().setResponseCode(200));
+    HttpComponentUpdater delegate = new HttpComponentUpdater();
+    CoalescingComponentUpdater updater = CoalescingComponentUpdater.create(executor, "test", delegate, Duration.ofMillis(50), 4, bucket);
+    try {
+      CompletableFuture<Void> first = updater.updateStatus("web", Status.MAJOR_OUTAGE);
+      RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+      long firstAt = System.nanoTime();
+      assertNotNull(request);
+      assertEquals("MAJOR_OUTAGE", request.getBody().readUtf8());
+
+      // the component recovered partially while the page was rate limited
+      CompletableFuture<Void> latest = updater.updateStatus("web", Status.PARTIAL_OUTAGE);
+
+      request = server.takeRequest(5, TimeUnit.SECONDS);
+      long secondAt = System.nanoTime();
+      assertNotNull(request);
+      assertEquals("PARTIAL_OUTAGE", request.getBody().readUtf8());
+      assertTrue(secondAt - firstAt >= TimeUnit.MILLISECONDS.toNanos(900), "Retry-After was not honored: " + (secondAt - firstAt) + "ns");
+
+      request = server.takeRequest(5, TimeUnit.SECONDS);
+      long thirdAt = System.nanoTime();
+      assertNotNull(request);
+      assertEquals("PARTIAL_OUTAGE", request.getBody().readUtf8());
+      assertTrue(thirdAt - secondAt >= DEFAULT_RETRY_AFTER.toNanos() * 9 / 10, "default pause was not honored: " + (thirdAt - secondAt) + "ns");
+
+      latest.get(5, TimeUnit.SECONDS);
+      first.get(5, TimeUnit.SECONDS);
+      assertEquals(Status.PARTIAL_OUTAGE, delegate.remote.get("web"));
+      assertEquals(3, server.getRequestCount());
+    } finally {
+      updater.close();
+    }
+  }
+
+  private Response call() throws IOException {
+    return client.newCall(new Request.Builder().url(server.url("/")).build()).execute();
+  }
+
+  private static Response response(int code, String retryAfter) {
+    Response.Builder builder = new Response.Builder()
+      .request(new Request.Builder().url("http://localhost/").build())
+      .protocol(Protocol.HTTP_1_1)
+      .code(code)
+      .message("");
+    if (retryAfter != null) {
+      builder.header("Retry-After", retryAfter);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Sends the status of a component as the body of a {@code PATCH}, through
+   * the rate limited client.
+   */
+  private final class HttpComponentUpdater implements ComponentUpdater {
+
+    final Map<String, Status> remote = new ConcurrentHashMap<>();
+
+    @Override
+    public List<Component> components() {
+      return List.of();
+    }
+
+    @Override
+    public boolean isUpToDate(String componentName, Status status) {
+      return remote.get(componentName) == status;
+    }
+
+    @Override
+    public CompletableFuture<Void> updateStatus(String componentName, Status status) {
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      Request request = new Request.Builder()
+        .url(server.url("/components/" + componentName))
+        .patch(RequestBody.create(status.name(), MediaType.get("text/plain")))
+        .build();
+      client.newCall(request).enqueue(new Callback() {
+        @Override
+        public void onResponse(Call call, Response response) {
+          try (response) {
+            if (response.isSuccessful()) {
+              remote.put(componentName, status);
+              future.complete(null);
+            } else {
+              future.completeExceptionally(new IOException("code=" + response.code()));
+            }
+          }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+          future.completeExceptionally(e);
+        }
+      });
+      return future;
+    }
+  }
+}